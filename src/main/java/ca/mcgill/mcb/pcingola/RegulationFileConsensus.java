@@ -7,6 +7,8 @@ import java.util.List;
 
 import ca.mcgill.mcb.pcingola.fileIterator.RegulationFileIterator;
 import ca.mcgill.mcb.pcingola.interval.Regulation;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.util.Gpr;
 import ca.mcgill.mcb.pcingola.util.Timer;
 
@@ -140,7 +142,7 @@ public class RegulationFileConsensus {
 	}
 
 	/**
-	 * Save databases (one file per cellType)
+	 * Save databases (one file per cellType). Each database is also saved as a compact interval track
 	 * @param outputDir
 	 */
 	public void save(String outputDir) {
@@ -148,6 +150,12 @@ public class RegulationFileConsensus {
 			String fileName = outputDir + "/regulation_" + cellType + ".bin";
 			Timer.showStdErr("Saving database '" + cellType + "' in file '" + fileName + "'");
 			Gpr.toFileSerializeGz(fileName, regByCell.get(cellType));
+
+			// Compact interval track
+			IntervalTrack track = new IntervalTrack(cellType, EffectType.REGULATION);
+			for (Regulation reg : regByCell.get(cellType))
+				track.add(reg);
+			track.save(outputDir + "/regulation_" + cellType + IntervalTrack.FILE_EXTENSION);
 		}
 	}
 
@@ -34,6 +34,11 @@ public class DnaNSequence extends DnaSequence {
 		hasN = new OpenBitSet(length);
 	}
 
+	public DnaNSequence(int length, long codes[], OpenBitSet hasN) {
+		super(length, codes);
+		this.hasN = hasN;
+	}
+
 	public DnaNSequence(String seqStr) {
 		super(null);
 		if( seqStr == null ) hasN = new OpenBitSet();
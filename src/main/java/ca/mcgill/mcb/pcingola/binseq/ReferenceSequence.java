@@ -0,0 +1,180 @@
+package ca.mcgill.mcb.pcingola.binseq;
+
+import java.util.Arrays;
+
+import ca.mcgill.mcb.pcingola.binseq.coder.DnaCoder;
+import ca.mcgill.mcb.pcingola.collections.OpenBitSet;
+
+/**
+ * A reference sequence (e.g. a chromosome) packed using 2 bits per base plus an 'N' mask (see DnaNSequence)
+ *
+ * Notes:
+ * 		- The sequence is created incrementally (e.g. one FASTA line at a time), so the
+ * 		  whole sequence is never stored as a String
+ * 		- Bases other than {A, C, G, T, N} (e.g. IUPAC codes) are rare, so they are
+ * 		  stored separately (sorted by position)
+ * 		- Bases are reported in upper case (i.e. same as 'sequence.substring(start, end).toUpperCase()')
+ *
+ * @author pcingola
+ */
+public class ReferenceSequence {
+
+	public static final int INITIAL_CAPACITY = 64 * 1024; // Initial capacity (in bases)
+
+	DnaCoder coder = DnaCoder.get();
+	String name;
+	int length;
+	long codes[]; // Packed bases (same format as DnaSequence)
+	OpenBitSet hasN; // A bit set indicating if there is an 'N' (or any base not in {A, C, G, T})
+	long word; // Current word (not yet stored in 'codes')
+	int basesInWord; // Number of bases in current word
+	int numOther; // Number of 'other' bases
+	int otherPos[]; // Positions of bases other than {A, C, G, T, N}
+	char otherBase[]; // Bases other than {A, C, G, T, N}
+	DnaNSequence sequence; // Packed sequence (created after all bases are appended)
+
+	public ReferenceSequence(String name) {
+		this.name = name;
+		codes = new long[coder.length2words(INITIAL_CAPACITY)];
+		hasN = new OpenBitSet(INITIAL_CAPACITY);
+		otherPos = new int[16];
+		otherBase = new char[16];
+	}
+
+	/**
+	 * Append bases to this sequence
+	 */
+	public void append(String bases) {
+		if (sequence != null) throw new RuntimeException("Cannot append bases to sequence '" + name + "': Sequence already packed");
+
+		int len = bases.length();
+		ensureCapacity(length + len);
+
+		int basesPerWord = coder.basesPerWord();
+		for (int i = 0; i < len; i++, length++) {
+			char base = bases.charAt(i);
+
+			int code;
+			switch (base) {
+			case 'a':
+			case 'A':
+				code = 0;
+				break;
+
+			case 'c':
+			case 'C':
+				code = 1;
+				break;
+
+			case 'g':
+			case 'G':
+				code = 2;
+				break;
+
+			case 't':
+			case 'T':
+				code = 3;
+				break;
+
+			default:
+				code = 0;
+				hasN.fastSet(length);
+				char upper = Character.toUpperCase(base);
+				if (upper != 'N') appendOther(length, upper);
+			}
+
+			// Add to current word (first bases are the most significant bits)
+			word = (word << 2) | code;
+			basesInWord++;
+			if (basesInWord >= basesPerWord) {
+				codes[length / basesPerWord] = word;
+				word = 0;
+				basesInWord = 0;
+			}
+		}
+	}
+
+	/**
+	 * Add a base other than {A, C, G, T, N}
+	 */
+	void appendOther(int pos, char base) {
+		if (numOther >= otherPos.length) {
+			otherPos = Arrays.copyOf(otherPos, 2 * otherPos.length);
+			otherBase = Arrays.copyOf(otherBase, 2 * otherBase.length);
+		}
+		otherPos[numOther] = pos;
+		otherBase[numOther] = base;
+		numOther++;
+	}
+
+	/**
+	 * Make sure there is enough space for 'numBases'
+	 */
+	void ensureCapacity(int numBases) {
+		int numWords = coder.length2words(numBases);
+		if (numWords > codes.length) codes = Arrays.copyOf(codes, Math.max(numWords, codes.length + (codes.length >> 1)));
+		hasN.ensureCapacity(numBases);
+	}
+
+	/**
+	 * Get 'len' bases starting at 'start' (upper case)
+	 */
+	public String getBases(int start, int len) {
+		if ((start < 0) || (len < 0) || (start + len > length)) throw new IndexOutOfBoundsException("Requested bases [" + start + ", " + (start + len) + "), sequence '" + name + "' length is " + length);
+		pack();
+
+		String bases = sequence.getBases(start, len).toUpperCase();
+
+		// Any 'other' bases in this range?
+		int idx = Arrays.binarySearch(otherPos, 0, numOther, start);
+		if (idx < 0) idx = -idx - 1;
+		int end = start + len;
+		if ((idx >= numOther) || (otherPos[idx] >= end)) return bases;
+
+		// Replace 'other' bases
+		char seq[] = bases.toCharArray();
+		for (; (idx < numOther) && (otherPos[idx] < end); idx++)
+			seq[otherPos[idx] - start] = otherBase[idx];
+		return new String(seq);
+	}
+
+	/**
+	 * Packed sequence
+	 */
+	public DnaNSequence getDnaNSequence() {
+		pack();
+		return sequence;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * No more bases will be added: Store last word and trim arrays
+	 */
+	public void pack() {
+		if (sequence != null) return;
+
+		// Last word: Shift the last bits
+		if (basesInWord > 0) codes[length / coder.basesPerWord()] = word << ((coder.basesPerWord() - basesInWord) << 1);
+
+		codes = Arrays.copyOf(codes, coder.length2words(length));
+		int numWordsN = OpenBitSet.bits2words(length);
+		OpenBitSet hasNpacked = new OpenBitSet(Arrays.copyOf(hasN.getBits(), numWordsN), numWordsN);
+		hasN = null;
+		otherPos = Arrays.copyOf(otherPos, numOther);
+		otherBase = Arrays.copyOf(otherBase, numOther);
+
+		sequence = new DnaNSequence(length, codes, hasNpacked);
+	}
+
+	@Override
+	public String toString() {
+		return name + "\t" + length;
+	}
+}
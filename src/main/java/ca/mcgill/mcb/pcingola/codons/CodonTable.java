@@ -1,14 +1,17 @@
 package ca.mcgill.mcb.pcingola.codons;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 
+import ca.mcgill.mcb.pcingola.binseq.DnaSequence;
 import ca.mcgill.mcb.pcingola.binseq.coder.DnaCoder;
 
 /**
  * A codon translation table
+ *
+ * Codons are encoded as 6 bit integers (2 bits per base), so translating
+ * a codon is a lookup in a 64 entry array (no strings are created).
+ *
  * @author pcingola
  */
 public class CodonTable {
@@ -44,24 +47,75 @@ public class CodonTable {
 		aa3letter.put("*", "*");
 	}
 
+	public static final int NUM_CODONS = 64; // Codons are encoded as 6 bit integers (2 bits per base)
+	public static final char UNKNOWN_AA = '?';
+	static final byte BASE_CODE[]; // Base to 2 bit code. Same codes as DnaCoder ({a,c,g,t} <-> {0,1,2,3})
+
+	static {
+		BASE_CODE = new byte[128];
+		Arrays.fill(BASE_CODE, (byte) -1);
+		for (int i = 0; i < DnaCoder.TO_BASE.length; i++) {
+			char base = DnaCoder.TO_BASE[i];
+			BASE_CODE[base] = BASE_CODE[Character.toUpperCase(base)] = (byte) i;
+		}
+	}
+
 	String name;
-	HashMap<String, String> codon2aa;
 	HashMap<String, String> aa2codon;
-	HashSet<String> startCodons;
-	HashSet<String> stopCodons;
-	HashMap<String, Integer> degeneracy;
+	char codon2aa[]; // Amino acid for each codon code (0 if the codon is not in the table)
+	boolean startCodons[], stopCodons[];
+	byte degeneracy[]; // Degeneracy for each codon code and position: degeneracy[3 * codonCode + pos]
+
+	/**
+	 * Encode a codon as a 6 bit integer
+	 * @return Codon code or -1 if any base is not one of {A, C, G, T} (case insensitive)
+	 */
+	public static int codonCode(char base1, char base2, char base3) {
+		if ((base1 | base2 | base3) >= 128) return -1;
+		int b1 = BASE_CODE[base1], b2 = BASE_CODE[base2], b3 = BASE_CODE[base3];
+		if ((b1 | b2 | b3) < 0) return -1;
+		return (b1 << 4) | (b2 << 2) | b3;
+	}
+
+	/**
+	 * Encode a codon from a sequence
+	 * @return Codon code or -1 if the codon is incomplete or has an unknown base
+	 */
+	public static int codonCode(CharSequence seq, int start) {
+		if (start + 3 > seq.length()) return -1;
+		return codonCode(seq.charAt(start), seq.charAt(start + 1), seq.charAt(start + 2));
+	}
+
+	/**
+	 * Decode a codon code into a (upper case) string
+	 */
+	public static String codonStr(int codonCode) {
+		char c[] = new char[3];
+		for (int i = 2; i >= 0; i--, codonCode >>= 2)
+			c[i] = Character.toUpperCase(DnaCoder.TO_BASE[codonCode & 3]);
+		return new String(c);
+	}
 
 	public CodonTable(String name, String table) {
 		this.name = name;
-		codon2aa = new HashMap<String, String>();
 		aa2codon = new HashMap<String, String>();
-		startCodons = new HashSet<String>();
-		stopCodons = new HashSet<String>();
-		//		startAas = new HashSet<String>();
+		codon2aa = new char[NUM_CODONS];
+		startCodons = new boolean[NUM_CODONS];
+		stopCodons = new boolean[NUM_CODONS];
 		parse(table);
 		calcDegeneracy();
 	}
 
+	/**
+	 * Translate a codon code to an amino acid
+	 * @return Amino acid or '?' if the codon is unknown
+	 */
+	public char aa(int codonCode) {
+		if (codonCode < 0) return UNKNOWN_AA;
+		char aa = codon2aa[codonCode];
+		return aa != 0 ? aa : UNKNOWN_AA;
+	}
+
 	/**
 	 * Translate codons to an amino acid sequence
 	 * @param codons
@@ -69,23 +123,43 @@ public class CodonTable {
 	 */
 	public String aa(String codons) {
 		if (codons.isEmpty()) return "";
+		return aa(codons, 0, codons.length());
+	}
 
-		char bases[] = codons.toCharArray();
-		StringBuilder aas = new StringBuilder();
-
-		for (int i = 0; i < bases.length;) {
-			// Append bases to codon
-			String cod = "";
-			for (int j = 0; (j < 3) && (i < bases.length); j++, i++)
-				cod += bases[i];
+	/**
+	 * Translate 'len' bases (starting at 'start') to an amino acid sequence.
+	 * A trailing incomplete codon is translated as '?'
+	 */
+	public String aa(CharSequence bases, int start, int len) {
+		int end = start + len;
+		char aas[] = new char[(len + 2) / 3];
+		for (int i = start, j = 0; i < end; i += 3, j++)
+			aas[j] = (i + 3 <= end) ? aa(codonCode(bases, i)) : UNKNOWN_AA;
+		return new String(aas);
+	}
 
-			// Translate codon to amino acid
-			String aa = codon2aa.get(cod.toUpperCase());
-			if (aa == null) aa = "?";
-			aas.append(aa);
-		}
+	/**
+	 * Translate 'len' bases (starting at 'start') to an amino acid sequence.
+	 * A trailing incomplete codon is translated as '?'
+	 */
+	public String aa(char bases[], int start, int len) {
+		int end = start + len;
+		char aas[] = new char[(len + 2) / 3];
+		for (int i = start, j = 0; i < end; i += 3, j++)
+			aas[j] = (i + 3 <= end) ? aa(codonCode(bases[i], bases[i + 1], bases[i + 2])) : UNKNOWN_AA;
+		return new String(aas);
+	}
 
-		return aas.toString();
+	/**
+	 * Translate 'len' bases (starting at 'start') to an amino acid sequence.
+	 * Bases are read directly from DnaSequence's codes (no conversion to characters)
+	 */
+	public String aa(DnaSequence seq, int start, int len) {
+		int end = start + len;
+		char aas[] = new char[(len + 2) / 3];
+		for (int i = start, j = 0; i < end; i += 3, j++)
+			aas[j] = (i + 3 <= end) ? aa((seq.getCode(i) << 4) | (seq.getCode(i + 1) << 2) | seq.getCode(i + 2)) : UNKNOWN_AA;
+		return new String(aas);
 	}
 
 	public String aaThreeLetterCode(char aa) {
@@ -121,31 +195,22 @@ public class CodonTable {
 	 * Calculate degeneracy table
 	 */
 	void calcDegeneracy() {
-		degeneracy = new HashMap<String, Integer>();
-
-		for (char base1 : DnaCoder.TO_BASE)
-			for (char base2 : DnaCoder.TO_BASE)
-				for (char base3 : DnaCoder.TO_BASE) {
-
-					char c[] = { base1, base2, base3 };
-					String codonStrOld = new String(c);
-					String aaOld = aa(codonStrOld);
+		degeneracy = new byte[3 * NUM_CODONS];
 
-					for (int pos = 0; pos < 3; pos++) {
-						int count = 0;
-						for (char baseNew : DnaCoder.TO_BASE) {
-							char codon[] = { base1, base2, base3 };
-							codon[pos] = baseNew;
-							String codonStrNew = new String(codon);
-							String aaNew = aa(codonStrNew);
+		for (int codon = 0; codon < NUM_CODONS; codon++) {
+			char aaOld = aa(codon);
 
-							if (aaOld.equals(aaNew)) count++; // Same AA after changing base[pos]? => count (it's a degenerate)
-						}
-
-						String key = codonStrOld.toUpperCase() + "_" + pos;
-						degeneracy.put(key, count);
-					}
+			for (int pos = 0; pos < 3; pos++) {
+				int shift = 2 * (2 - pos);
+				int count = 0;
+				for (int baseNew = 0; baseNew < 4; baseNew++) {
+					int codonNew = (codon & ~(3 << shift)) | (baseNew << shift);
+					if (aaOld == aa(codonNew)) count++; // Same AA after changing base[pos]? => count (it's a degenerate)
 				}
+
+				degeneracy[3 * codon + pos] = (byte) count;
+			}
+		}
 	}
 
 	/**
@@ -179,10 +244,9 @@ public class CodonTable {
 	 * @return Degenracy level, or '-1' if not available
 	 */
 	public int degenerate(String codon, int pos) {
-		// if( codon.length() != 3 ) throw new RuntimeException("Error: Codon does not have three bases '" + codon + "'");
-		String key = codon.toUpperCase() + "_" + pos;
-		Integer degLevel = degeneracy.get(key);
-		return degLevel != null ? degLevel : -1; // Return '-1'
+		if ((codon.length() != 3) || (pos < 0) || (pos > 2)) return -1;
+		int codonCode = codonCode(codon, 0);
+		return codonCode >= 0 ? degeneracy[3 * codonCode + pos] : -1; // Return '-1'
 	}
 
 	public String getName() {
@@ -195,25 +259,25 @@ public class CodonTable {
 	 * @return
 	 */
 	public boolean isStart(String codon) {
-		if (codon.length() == 3) return startCodons.contains(codon.toUpperCase());
-
-		for (int i = 0; i < codon.length(); i += 3) {
-			int max = Math.min(codon.length(), i + 3);
-			String codonSigle = codon.substring(i, max);
-			if (startCodons.contains(codonSigle.toUpperCase())) return true;
-		}
-
+		for (int i = 0; i < codon.length(); i += 3)
+			if (isStart(codonCode(codon, i))) return true;
 		return false;
 	}
 
+	/**
+	 * Is 'codonCode' a start codon in this table?
+	 */
+	public boolean isStart(int codonCode) {
+		return (codonCode >= 0) && startCodons[codonCode];
+	}
+
 	/**
 	 * Is the first codon a 'start' codon?
 	 * @param codon
 	 * @return
 	 */
 	public boolean isStartFirst(String codon) {
-		if (codon.length() < 3) return false;
-		return isStart(codon.substring(0, 3));
+		return isStart(codonCode(codon, 0));
 	}
 
 	/**
@@ -222,17 +286,18 @@ public class CodonTable {
 	 * @return
 	 */
 	public boolean isStop(String codon) {
-		if (codon.length() == 3) return stopCodons.contains(codon.toUpperCase());
-
-		for (int i = 0; i < codon.length(); i += 3) {
-			int max = Math.min(codon.length(), i + 3);
-			String codonSigle = codon.substring(i, max);
-			if (stopCodons.contains(codonSigle.toUpperCase())) return true;
-		}
-
+		for (int i = 0; i < codon.length(); i += 3)
+			if (isStop(codonCode(codon, i))) return true;
 		return false;
 	}
 
+	/**
+	 * Is 'codonCode' a stop codon in this table?
+	 */
+	public boolean isStop(int codonCode) {
+		return (codonCode >= 0) && stopCodons[codonCode];
+	}
+
 	/**
 	 * Is there a stop codon in this amino acid sequence
 	 * @param aas
@@ -259,20 +324,24 @@ public class CodonTable {
 			if (entry.length() > 0) {
 				String t[] = entry.split("/");
 				if (t.length == 2) {
-					String codon = t[0];
-					String aa = t[1];
+					String codon = t[0].trim();
+					String aa = t[1].trim();
+					int codonCode = (codon.length() == 3 ? codonCode(codon, 0) : -1);
 
 					// If it contains a '+' then is is a START codon as well
 					if (aa.indexOf('+') >= 0) {
-						startCodons.add(codon);
+						if (codonCode >= 0) startCodons[codonCode] = true;
 						aa = aa.replaceAll("\\+", ""); // Remove all '+' signs
 					}
 
+					// Sanity check
+					if ((codonCode < 0) || (aa.length() != 1)) throw new RuntimeException("Error reading codon table. Cannot parse entry: '" + entry + "'\n\tTable: '" + table + "'");
+
 					// If it contains a '*' then is is a STOP codon
-					if (aa.indexOf('*') >= 0) stopCodons.add(codon);
+					if (aa.indexOf('*') >= 0) stopCodons[codonCode] = true;
 
 					aa2codon.put(aa, codon);
-					codon2aa.put(codon, aa);
+					codon2aa[codonCode] = aa.charAt(0);
 				} else throw new RuntimeException("Error reading codon table. Cannot parse entry: '" + entry + "'\n\tTable: '" + table + "'");
 			}
 		}
@@ -282,11 +351,9 @@ public class CodonTable {
 	public String toString() {
 		StringBuilder sb = new StringBuilder("codon." + name + ": ");
 
-		ArrayList<String> codons = new ArrayList<String>();
-		codons.addAll(codon2aa.keySet());
-		Collections.sort(codons);
-		for (String codon : codons)
-			sb.append(" " + codon + "/" + aa(codon) + (isStart(codon) ? "+" : "") + ",");
+		// Codon codes are sorted in alphabetical order
+		for (int codonCode = 0; codonCode < NUM_CODONS; codonCode++)
+			if (codon2aa[codonCode] != 0) sb.append(" " + codonStr(codonCode) + "/" + aa(codonCode) + (isStart(codonCode) ? "+" : "") + ",");
 		sb.deleteCharAt(sb.length() - 1); // Remove last comma
 
 		return sb.toString();
@@ -3,19 +3,20 @@ package ca.mcgill.mcb.pcingola.coverage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.List;
 
 import net.sf.samtools.SAMFileReader;
 import net.sf.samtools.SAMFileReader.ValidationStringency;
 import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMRecordIterator;
 import ca.mcgill.mcb.pcingola.fileIterator.BedFileIterator;
 import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
 import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Genome;
 import ca.mcgill.mcb.pcingola.interval.Marker;
-import ca.mcgill.mcb.pcingola.interval.Markers;
 import ca.mcgill.mcb.pcingola.interval.Variant;
 import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
 import ca.mcgill.mcb.pcingola.stats.CountByKey;
 import ca.mcgill.mcb.pcingola.stats.CountByType;
@@ -39,6 +40,7 @@ public class CountReads {
 	int countExceptions = 0;
 	long readLengthSum;
 	String fileName;
+	String chrName; // Only count reads in this chromosome (null means all chromosomes)
 	Genome genome;
 	SnpEffectPredictor snpEffectPredictor;
 	CountByType countTypes;
@@ -47,9 +49,19 @@ public class CountReads {
 	MarkerTypes markerTypes;
 	CoverageByType coverageByType;
 	ArrayList<CoverageByType> coverageByExons;
+	MarkerSweep markerSweep; // Find markers intersecting reads (walks reads and markers together if reads are sorted)
 
 	public CountReads(String fileName, SnpEffectPredictor snpEffectPredictor) {
+		this(fileName, null, snpEffectPredictor);
+	}
+
+	/**
+	 * Count reads from one chromosome only
+	 * Note: Requires an indexed BAM file
+	 */
+	public CountReads(String fileName, String chrName, SnpEffectPredictor snpEffectPredictor) {
 		this.fileName = fileName;
+		this.chrName = chrName;
 
 		if (snpEffectPredictor != null) this.snpEffectPredictor = snpEffectPredictor;
 		else this.snpEffectPredictor = new SnpEffectPredictor(new Genome());
@@ -73,19 +85,24 @@ public class CountReads {
 	/**
 	 * Count markers from a file
 	 */
-	public void count() {
+	public CountReads count() {
 		genome = snpEffectPredictor.getGenome();
 
 		readLengthSum = 0;
 		readLengthCount = 0;
 
+		// Markers are used as keys: Each track interval must always be the same marker object
+		for (IntervalTrack track : snpEffectPredictor.getIntervalTracks())
+			track.setCacheMarkers(true);
+
 		// Iterate over all BAM/SAM files
 		try {
-			if (verbose) Timer.showStdErr("Reading file '" + fileName + "'");
+			if (verbose) Timer.showStdErr("Reading file '" + fileName + "'" + (chrName != null ? ", chromosome '" + chrName + "'" : ""));
 			countReads = new CountByKey<Marker>();
 			countBases = new CountByKey<Marker>();
 			countTypes = new CountByType();
 			coverageByType = new CoverageByType();
+			markerSweep = new MarkerSweep(snpEffectPredictor);
 			countFile(fileName);
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -96,6 +113,7 @@ public class CountReads {
 			Timer.showStdErr("Finished reding file " + fileName + "\n\tTotal reads: " + countTotalReads);
 		}
 		if (verbose) Timer.showStdErr("Done.");
+		return this;
 	}
 
 	/**
@@ -136,43 +154,37 @@ public class CountReads {
 	 * Count one marker
 	 */
 	void countMarker(String fileName, Marker read) {
-		// Find all intersects
-		Markers regions = snpEffectPredictor.queryDeep(read);
+		// Find all intersects (each marker is reported only once)
+		List<Marker> regions = markerSweep.query(read);
 
 		// Count total reads
 		countTotalReads++;
 
 		// Count each marker
-		HashSet<Marker> done = new HashSet<Marker>();
 		for (Marker m : regions) {
-			// Make sure we count only once each marker
-			if (!done.contains(m)) {
-				done.add(m);
-
-				countReads.inc(m); // Count reads
-				countBases.inc(m, m.intersectSize(read)); // Count number bases that intersect
+			countReads.inc(m); // Count reads
+			countBases.inc(m, m.intersectSize(read)); // Count number bases that intersect
 
-				// Count by marker type (make sure we only count once per read)
-				String type = markerTypes.getType(m);
-				String subtype = markerTypes.getSubType(m);
-				String typeRank = markerTypes.getTypeRank(m);
+			// Count by marker type (make sure we only count once per read)
+			String type = markerTypes.getType(m);
+			String subtype = markerTypes.getSubType(m);
+			String typeRank = markerTypes.getTypeRank(m);
 
-				countTypes.inc(type); // Count reads
+			countTypes.inc(type); // Count reads
 
-				// Coverage by type
-				PosStats posStats = coverageByType.getOrCreate(type);
-				posStats.sample(read, m);
+			// Coverage by type
+			PosStats posStats = coverageByType.getOrCreate(type);
+			posStats.sample(read, m);
 
-				// Coverage by number of exons
-				coverageByExons(read, m, typeRank);
+			// Coverage by number of exons
+			coverageByExons(read, m, typeRank);
 
-				// Count sub-type if any
-				if (subtype != null) {
-					countTypes.inc(subtype); // Count reads
+			// Count sub-type if any
+			if (subtype != null) {
+				countTypes.inc(subtype); // Count reads
 
-					posStats = coverageByType.getOrCreate(subtype);
-					posStats.sample(read, m);
-				}
+				posStats = coverageByType.getOrCreate(subtype);
+				posStats.sample(read, m);
 			}
 		}
 	}
@@ -201,7 +213,10 @@ public class CountReads {
 		SAMFileReader sam = new SAMFileReader(new File(fileName));
 		sam.setValidationStringency(ValidationStringency.SILENT);
 
-		for (SAMRecord samRecord : sam) {
+		// Iterate over all reads or only over one chromosome (using the index)
+		SAMRecordIterator it = (chrName != null ? sam.queryOverlapping(chrName, 0, 0) : sam.iterator());
+		while (it.hasNext()) {
+			SAMRecord samRecord = it.next();
 			try {
 				if (!samRecord.getReadUnmappedFlag()) { // Mapped?
 					Chromosome chr = genome.getOrCreateChromosome(samRecord.getReferenceName());
@@ -224,6 +239,7 @@ public class CountReads {
 			}
 
 		}
+		it.close();
 		sam.close();
 	}
 
@@ -331,6 +347,26 @@ public class CountReads {
 	void init(SnpEffectPredictor snpEffectPredictor) {
 	}
 
+	/**
+	 * Add all counts from 'countReads' (e.g. the same file, counted on another chromosome) to this object
+	 */
+	public void merge(CountReads countReads) {
+		countTotalReads += countReads.countTotalReads;
+		countExceptions += countReads.countExceptions;
+		readLengthCount += countReads.readLengthCount;
+		readLengthSum += countReads.readLengthSum;
+
+		this.countReads.merge(countReads.countReads);
+		countBases.merge(countReads.countBases);
+		countTypes.merge(countReads.countTypes);
+		coverageByType.merge(countReads.coverageByType);
+
+		for (int exons = 0; exons < countReads.coverageByExons.size(); exons++) {
+			if (coverageByExons.size() <= exons) coverageByExons.add(new CoverageByType());
+			coverageByExons.get(exons).merge(countReads.coverageByExons.get(exons));
+		}
+	}
+
 	public void setMarkerTypes(MarkerTypes markerTypes) {
 		this.markerTypes = markerTypes;
 	}
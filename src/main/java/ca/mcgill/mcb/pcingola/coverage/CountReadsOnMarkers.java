@@ -1,15 +1,27 @@
 package ca.mcgill.mcb.pcingola.coverage;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMSequenceRecord;
 
 import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Gene;
 import ca.mcgill.mcb.pcingola.interval.Genome;
 import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
 import ca.mcgill.mcb.pcingola.probablility.Binomial;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
 import ca.mcgill.mcb.pcingola.stats.CountByType;
@@ -31,6 +43,7 @@ public class CountReadsOnMarkers {
 	public static boolean debug = true;
 
 	boolean verbose = false; // Be verbose
+	int numWorkers = 1; // Number of threads used for counting
 	List<String> fileNames;
 	List<String> names;
 	Genome genome;
@@ -78,19 +91,92 @@ public class CountReadsOnMarkers {
 	public void count() {
 		genome = snpEffectPredictor.getGenome();
 
-		// Iterate over all BAM/SAM files
-		for (String fileName : fileNames) {
-			CountReads countReads = new CountReads(fileName, snpEffectPredictor);
-			countReads.setMarkerTypes(markerTypes);
-			countReads.setVerbose(verbose);
-			countReads.count();
+		// Markers are used as keys: Each track interval must always be the same marker object (set before tasks run in parallel)
+		for (IntervalTrack track : snpEffectPredictor.getIntervalTracks())
+			track.setCacheMarkers(true);
 
-			countReadsByFile.add(countReads); // Add count to list
+		if (numWorkers > 1) countParallel();
+		else {
+			// Iterate over all BAM/SAM files
+			for (String fileName : fileNames)
+				countReadsByFile.add(newCountReads(fileName, null).count()); // Add count to list
 		}
 
 		if (verbose) Timer.showStdErr("Done.");
 	}
 
+	/**
+	 * Count markers from all files using 'numWorkers' threads.
+	 * Indexed BAM files are split into one task per chromosome, other files
+	 * are processed in one task. Each task has its own counters, which are
+	 * merged (by file) once all tasks finish.
+	 */
+	void countParallel() {
+		// Create tasks
+		ArrayList<String> taskFileNames = new ArrayList<String>();
+		ArrayList<CountReads> tasks = new ArrayList<CountReads>();
+		for (String fileName : fileNames) {
+			String fl = fileName.toLowerCase();
+			List<String> chrNames = null;
+			if (fl.endsWith(".bam") || fl.endsWith(".sam")) {
+				SAMFileReader sam = new SAMFileReader(new File(fileName));
+				chrNames = new ArrayList<String>();
+				for (SAMSequenceRecord sr : sam.getFileHeader().getSequenceDictionary().getSequences()) {
+					chrNames.add(sr.getSequenceName());
+					genome.getOrCreateChromosome(sr.getSequenceName()); // Create chromosomes now: The genome must not be modified while counting
+				}
+				if (!sam.hasIndex()) chrNames = null;
+				sam.close();
+			}
+
+			if (chrNames == null) {
+				tasks.add(newCountReads(fileName, null));
+				taskFileNames.add(fileName);
+			} else {
+				for (String chrName : chrNames) {
+					tasks.add(newCountReads(fileName, chrName));
+					taskFileNames.add(fileName);
+				}
+			}
+		}
+
+		// Introns are created on demand: Create them before counting
+		for (Gene gene : genome.getGenes())
+			for (Transcript tr : gene)
+				tr.introns();
+
+		// Run tasks
+		if (verbose) Timer.showStdErr("Counting " + fileNames.size() + " files (" + tasks.size() + " tasks) using " + numWorkers + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+		ArrayList<Future<CountReads>> results = new ArrayList<Future<CountReads>>();
+		try {
+			for (final CountReads task : tasks)
+				results.add(executor.submit(new Callable<CountReads>() {
+					@Override
+					public CountReads call() throws Exception {
+						return task.count();
+					}
+				}));
+
+			// Merge results by file (in input order)
+			HashMap<String, CountReads> countReadsByName = new HashMap<String, CountReads>();
+			for (int i = 0; i < results.size(); i++) {
+				CountReads countReads = results.get(i).get();
+				CountReads countReadsFile = countReadsByName.get(taskFileNames.get(i));
+				if (countReadsFile == null) {
+					countReadsByName.put(taskFileNames.get(i), countReads);
+					countReadsByFile.add(countReads);
+				} else countReadsFile.merge(countReads);
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	/**
 	 * Count how many of each marker type are there
 	 * @return
@@ -110,6 +196,10 @@ public class CountReadsOnMarkers {
 		return markerTypes;
 	}
 
+	public int getNumWorkers() {
+		return numWorkers;
+	}
+
 	/**
 	 * Average read length
 	 * @return
@@ -294,6 +384,16 @@ public class CountReadsOnMarkers {
 		else this.snpEffectPredictor = new SnpEffectPredictor(new Genome());
 	}
 
+	/**
+	 * Create a counter for a file (and optionally only one chromosome)
+	 */
+	CountReads newCountReads(String fileName, String chrName) {
+		CountReads countReads = new CountReads(fileName, chrName, snpEffectPredictor);
+		countReads.setMarkerTypes(markerTypes);
+		countReads.setVerbose(verbose);
+		return countReads;
+	}
+
 	/**
 	 * Show probabilities
 	 * 
@@ -345,6 +445,10 @@ public class CountReadsOnMarkers {
 		return sb.toString();
 	}
 
+	public void setNumWorkers(int numWorkers) {
+		this.numWorkers = numWorkers;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
@@ -4,16 +4,47 @@ import java.io.Serializable;
 
 /**
  * Base by base coverage (one chromsome)
- * 
+ *
+ * Coverage is stored as a 'difference array' (increment at start, decrement
+ * after end), so that incrementing a region is O(1) instead of O(region size).
+ * Coverage values are calculated (cumulative sum) only when they are needed.
+ *
+ * The array is split in blocks that are allocated on demand, so regions that
+ * are never covered do not use any memory (they are stored as a constant value
+ * per block, i.e. run-length). Coverage values are 32 bits (saturated at
+ * Integer.MAX_VALUE, see getCoverage). getCount() still returns 'short' values
+ * (saturated at Short.MAX_VALUE), as in previous versions.
+ *
  * @author pcingola
  */
 public class CoverageChr implements Serializable {
 
 	private static final long serialVersionUID = -5620938926858131251L;
-	short count[];
+
+	public static final int BLOCK_BITS = 16;
+	public static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+	public static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	int len;
+	int blocks[][]; // Differences (or coverage, once 'calculated'). A null block means 'no changes'
+	int blockValue[]; // Coverage value for null blocks (only valid when 'calculated')
+	boolean calculated; // Are blocks holding coverage (instead of differences)?
 
 	public CoverageChr(int len) {
-		count = new short[len];
+		this.len = len;
+		int numBlocks = (len >> BLOCK_BITS) + 1;
+		blocks = new int[numBlocks][];
+		blockValue = new int[numBlocks];
+	}
+
+	/**
+	 * Add 'value' to the difference array at position 'pos'
+	 */
+	void add(int pos, int value) {
+		if (pos >= len) return; // After chromosome end: Nothing to do
+		int b = pos >> BLOCK_BITS;
+		if (blocks[b] == null) blocks[b] = new int[BLOCK_SIZE];
+		blocks[b][pos & BLOCK_MASK] += value;
 	}
 
 	/**
@@ -24,38 +55,141 @@ public class CoverageChr implements Serializable {
 		return ((double) coverage(start, end)) / ((double) (end - start + 1));
 	}
 
+	/**
+	 * Convert differences to coverage values (cumulative sum)
+	 */
+	void calculate() {
+		if (calculated) return;
+
+		long cov = 0;
+		for (int b = 0; b < blocks.length; b++) {
+			int block[] = blocks[b];
+			if (block == null) blockValue[b] = saturate(cov); // No changes in this block: Coverage is constant
+			else {
+				for (int i = 0; i < BLOCK_SIZE; i++) {
+					cov += block[i];
+					block[i] = saturate(cov);
+				}
+			}
+		}
+
+		calculated = true;
+	}
+
 	/**
 	 * Calculate Coverage per base
 	 * @return Average coverage per base
 	 */
 	public long coverage(int start, int end) {
-		// Calculate the average coverage
+		calculate();
+
+		// Calculate the total coverage
 		long sum = 0;
-		for( int i = start; i <= end; i++ )
-			sum += count[i];
+		end = Math.min(end, len - 1);
+		for (int pos = start; pos <= end;) {
+			int b = pos >> BLOCK_BITS;
+			int blockEnd = Math.min(end, (b << BLOCK_BITS) + BLOCK_MASK);
+			int block[] = blocks[b];
+
+			if (block == null) sum += ((long) blockValue[b]) * (blockEnd - pos + 1);
+			else {
+				for (int i = pos & BLOCK_MASK, last = blockEnd & BLOCK_MASK; i <= last; i++)
+					sum += block[i];
+			}
+
+			pos = blockEnd + 1;
+		}
 
 		return sum;
 	}
 
+	/**
+	 * Coverage at position 'pos'
+	 */
+	public int get(int pos) {
+		calculate();
+		int b = pos >> BLOCK_BITS;
+		return blocks[b] == null ? blockValue[b] : blocks[b][pos & BLOCK_MASK];
+	}
+
+	/**
+	 * Coverage for every base in the chromosome, saturated at Short.MAX_VALUE
+	 * Note: This creates a new array as large as the chromosome (changing it does not change coverage)
+	 */
 	public short[] getCount() {
+		short count[] = new short[len];
+		for (int i = 0; i < len; i++)
+			count[i] = (short) Math.min(get(i), Short.MAX_VALUE);
 		return count;
 	}
 
+	/**
+	 * Coverage for every base in the chromosome, saturated at Integer.MAX_VALUE
+	 * Note: This creates a new array as large as the chromosome
+	 */
+	public int[] getCoverage() {
+		int coverage[] = new int[len];
+		for (int i = 0; i < len; i++)
+			coverage[i] = get(i);
+		return coverage;
+	}
+
 	/**
 	 * Increment a region
 	 * @param start
 	 * @param end
 	 */
 	public void inc(int start, int end) {
-		for( int i = start; i <= end; i++ )
-			if( count[i] < Short.MAX_VALUE ) count[i]++;
+		if (calculated) uncalculate();
+		add(start, 1);
+		add(end + 1, -1);
+	}
+
+	public int length() {
+		return len;
+	}
+
+	int saturate(long cov) {
+		return cov > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) cov;
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		for( int i = 0; i < count.length; i++ )
-			if( count[i] != 0 ) sb.append(i + "\t" + count[i] + "\n");
+		for (int i = 0; i < len; i++) {
+			int count = get(i);
+			if (count != 0) sb.append(i + "\t" + count + "\n");
+		}
 		return sb.toString();
 	}
+
+	/**
+	 * Convert coverage values back to differences (e.g. to increment more regions after calculating coverage)
+	 * Note: Coverage values are saturated, so coverage over Integer.MAX_VALUE is lost at this point (it
+	 * is converted back as Integer.MAX_VALUE). Since coverage can only be incremented, those bases stay
+	 * saturated, so values returned by get() or getCoverage() are not affected.
+	 */
+	void uncalculate() {
+		int prev = 0;
+		for (int b = 0; b < blocks.length; b++) {
+			int block[] = blocks[b];
+			if (block == null) {
+				// Constant coverage in this block: Only the first position can change
+				if (blockValue[b] != prev) {
+					block = blocks[b] = new int[BLOCK_SIZE];
+					block[0] = blockValue[b] - prev;
+					prev = blockValue[b];
+				}
+			} else {
+				for (int i = 0; i < BLOCK_SIZE; i++) {
+					int cov = block[i];
+					block[i] = cov - prev;
+					prev = cov;
+				}
+			}
+			blockValue[b] = 0;
+		}
+
+		calculated = false;
+	}
 }
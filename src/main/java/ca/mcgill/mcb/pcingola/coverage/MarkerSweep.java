@@ -0,0 +1,149 @@
+package ca.mcgill.mcb.pcingola.coverage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.IntervalComparatorByStart;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
+
+/**
+ * Find all markers intersecting a read (same markers as 'SnpEffectPredictor.queryDeep()', without duplicates)
+ *
+ * When reads are sorted by position (e.g. a sorted BAM file), reads and markers
+ * are walked together (markers sorted by start), keeping a list of 'active'
+ * markers, instead of performing one interval query per read.
+ *
+ * If reads are not sorted, it falls back to one 'queryDeep' per read.
+ *
+ * @author pcingola
+ */
+public class MarkerSweep {
+
+	SnpEffectPredictor snpEffectPredictor;
+	boolean sorted = true; // Are reads sorted so far?
+	String chrName; // Current chromosome
+	int lastStart; // Last read's start
+	ArrayList<Marker> markers; // Markers in current chromosome, sorted by start
+	int next; // Next marker (in 'markers') to be added to 'active'
+	ArrayList<Marker> active; // Markers that may intersect current (or any later) read
+	HashSet<String> chrDone; // Chromosomes already processed
+	ArrayList<Marker> hits; // Results (reused)
+	HashSet<Marker> done; // Avoid duplicates in results (reused)
+	Markers queryResults; // Query results (reused)
+
+	public MarkerSweep(SnpEffectPredictor snpEffectPredictor) {
+		this.snpEffectPredictor = snpEffectPredictor;
+		active = new ArrayList<Marker>();
+		chrDone = new HashSet<String>();
+		hits = new ArrayList<Marker>();
+		done = new HashSet<Marker>();
+		queryResults = new Markers();
+	}
+
+	/**
+	 * Load all markers in a chromosome (the ones 'queryDeep' can return), sorted by start
+	 */
+	void chromosome(Marker read) {
+		// A marker covering the whole chromosome. Note: We don't set the parent
+		// chromosome in the constructor, so that the chromosome is not adjusted
+		Chromosome chr = read.getChromosome();
+		Marker chrMarker = new Marker(null, 0, Integer.MAX_VALUE - 1, 1, "");
+		chrMarker.setParent(chr != null ? chr : new Chromosome(null, 0, 0, 1, ""));
+
+		// Find all markers in this chromosome
+		queryResults.clear();
+		snpEffectPredictor.queryDeep(chrMarker, queryResults);
+
+		markers = new ArrayList<Marker>();
+		done.clear();
+		for (Marker m : queryResults)
+			if (done.add(m)) markers.add(m);
+		queryResults.clear();
+		done.clear();
+		Collections.sort(markers, new IntervalComparatorByStart());
+
+		chrName = read.getChromosomeName();
+		chrDone.add(chrName);
+		active.clear();
+		next = 0;
+		lastStart = Integer.MIN_VALUE;
+	}
+
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	/**
+	 * Find all markers intersecting 'read'
+	 * Note: The list returned is reused on the next invocation
+	 */
+	public List<Marker> query(Marker read) {
+		hits.clear();
+
+		// Are reads still sorted?
+		if (sorted) {
+			if (!read.getChromosomeName().equals(chrName)) {
+				if (chrDone.contains(read.getChromosomeName())) unsorted();
+				else chromosome(read);
+			} else if (read.getStart() < lastStart) unsorted();
+		}
+
+		if (sorted) sweep(read);
+		else queryDeep(read);
+
+		return hits;
+	}
+
+	/**
+	 * Find intersecting markers using an interval query
+	 */
+	void queryDeep(Marker read) {
+		queryResults.clear();
+		snpEffectPredictor.queryDeep(read, queryResults);
+
+		done.clear();
+		for (Marker m : queryResults)
+			if (done.add(m)) hits.add(m);
+		queryResults.clear();
+	}
+
+	/**
+	 * Advance markers to 'read' and find intersecting ones
+	 */
+	void sweep(Marker read) {
+		lastStart = read.getStart();
+
+		// Add markers starting before read's end
+		int readEnd = read.getEnd();
+		for (; (next < markers.size()) && (markers.get(next).getStart() <= readEnd); next++)
+			active.add(markers.get(next));
+
+		// Remove markers ending before read's start (they cannot intersect any later read)
+		// and report the ones intersecting the read
+		int readStart = read.getStart();
+		int j = 0;
+		for (int i = 0; i < active.size(); i++) {
+			Marker m = active.get(i);
+			if (m.getEnd() < readStart) continue;
+			active.set(j++, m);
+			if (m.getStart() <= readEnd) hits.add(m);
+		}
+		while (active.size() > j)
+			active.remove(active.size() - 1);
+	}
+
+	/**
+	 * Reads are not sorted: Switch to interval queries
+	 */
+	void unsorted() {
+		sorted = false;
+		markers = null;
+		active.clear();
+	}
+
+}
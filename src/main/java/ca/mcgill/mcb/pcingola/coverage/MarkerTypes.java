@@ -3,8 +3,9 @@ package ca.mcgill.mcb.pcingola.coverage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ca.mcgill.mcb.pcingola.interval.Exon;
 import ca.mcgill.mcb.pcingola.interval.Intron;
@@ -19,11 +20,11 @@ import ca.mcgill.mcb.pcingola.interval.Transcript;
 public class MarkerTypes {
 
 	HashMap<Marker, String> marker2type;
-	HashSet<String> markerTypesClass;
+	Set<String> markerTypesClass;
 
 	public MarkerTypes() {
 		marker2type = new HashMap<Marker, String>();
-		markerTypesClass = new HashSet<String>();
+		markerTypesClass = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()); // Updated while counting (possibly from many threads)
 	}
 
 	public void addType(Marker marker, String type) {
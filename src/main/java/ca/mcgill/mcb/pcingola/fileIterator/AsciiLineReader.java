@@ -0,0 +1,276 @@
+package ca.mcgill.mcb.pcingola.fileIterator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import ca.mcgill.mcb.pcingola.util.BgzfInputStream;
+
+/**
+ * A byte oriented line reader.
+ *
+ * Lines are found by scanning raw bytes for '\n' (no charset decoding is
+ * performed while scanning). Each line is converted to a String only once,
+ * using a plain byte to char copy for ASCII lines (ISO-8859-1), so there is
+ * no UTF-16 decoding path involved for typical (ASCII) files. Lines having
+ * non-ASCII bytes are decoded using the platform's default charset (same
+ * as InputStreamReader).
+ *
+ * Uncompressed files are memory mapped (in windows of 'mapSize' bytes),
+ * compressed files and streams are read into a large buffer. BGZF compressed
+ * files (e.g. 'bgzip') are decompressed in parallel.
+ *
+ * Note: It is a drop-in replacement for 'BufferedReader.readLine()', other
+ * 'read' methods are not supported.
+ *
+ * @author pcingola
+ */
+public class AsciiLineReader extends BufferedReader {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	public static final int MAP_SIZE = 256 * 1024 * 1024; // Memory map files in windows of this size
+	public static final int INITIAL_LINE_SIZE = 64 * 1024;
+
+	String fileName;
+	int bufferSize;
+	int mapSize;
+	ByteBuffer buffer; // Current buffer (either a wrapped array or a memory mapped region)
+	byte bytes[]; // Buffer array used when reading from a stream
+	byte line[]; // Used to join lines spanning more than one buffer
+	int lineLen;
+	InputStream in; // Input stream (compressed files and stdin)
+	RandomAccessFile raf; // Memory mapped file
+	FileChannel channel;
+	long mapPos, fileSize; // Next position to map, file size
+
+	public AsciiLineReader(InputStream in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	public AsciiLineReader(InputStream in, int bufferSize) {
+		super(new NullReader());
+		init(bufferSize);
+		this.in = in;
+		bytes = new byte[bufferSize];
+	}
+
+	public AsciiLineReader(String fileName) throws IOException {
+		this(fileName, DEFAULT_BUFFER_SIZE, MAP_SIZE);
+	}
+
+	public AsciiLineReader(String fileName, int bufferSize) throws IOException {
+		this(fileName, bufferSize, bufferSize);
+	}
+
+	/**
+	 * Open a file using the same rules as 'Gpr.reader()'
+	 * @param fileName : File to open ('-' means STDIN). If it doesn't exist, 'fileName.gz' is tried
+	 * @param bufferSize : Buffer size (for compressed files and STDIN)
+	 * @param mapSize : Memory map window size (uncompressed files)
+	 */
+	public AsciiLineReader(String fileName, int bufferSize, int mapSize) throws IOException {
+		super(new NullReader());
+		init(bufferSize);
+		this.mapSize = mapSize;
+		this.fileName = fileName;
+
+		if (fileName.equals("-")) {
+			in = System.in;
+		} else if (fileName.endsWith(".gz")) {
+			in = gzip(fileName);
+		} else if (new File(fileName).exists()) {
+			raf = new RandomAccessFile(fileName, "r");
+			channel = raf.getChannel();
+			fileSize = channel.size();
+			mapPos = 0;
+		} else if (new File(fileName + ".gz").exists()) {
+			in = gzip(fileName + ".gz");
+		} else throw new RuntimeException("File not found '" + fileName + "'");
+
+		if (in != null) bytes = new byte[bufferSize];
+	}
+
+	/**
+	 * Append bytes [start, end[ from the current buffer to 'line'
+	 */
+	void append(int start, int end) {
+		int len = end - start;
+		if (lineLen + len > line.length) {
+			byte newLine[] = new byte[Math.max(2 * line.length, lineLen + len)];
+			System.arraycopy(line, 0, newLine, 0, lineLen);
+			line = newLine;
+		}
+
+		buffer.position(start);
+		buffer.get(line, lineLen, len);
+		lineLen += len;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null && in != System.in) in.close();
+		if (raf != null) raf.close();
+		in = null;
+		raf = null;
+		channel = null;
+		buffer = null;
+	}
+
+	/**
+	 * Create a string from bytes (remove trailing '\r')
+	 */
+	String decode(byte b[], int offset, int len, boolean ascii) {
+		if ((len > 0) && (b[offset + len - 1] == '\r')) len--;
+		if (ascii) return new String(b, offset, len, StandardCharsets.ISO_8859_1);
+		return new String(b, offset, len, Charset.defaultCharset());
+	}
+
+	/**
+	 * Read more data into the buffer
+	 * @return false on end of file
+	 */
+	boolean fill() throws IOException {
+		if (in != null) {
+			// Read from stream
+			int len = in.read(bytes);
+			if (len < 0) return false;
+			buffer = ByteBuffer.wrap(bytes, 0, len);
+			return true;
+		}
+
+		// Map next window
+		if ((channel == null) || (mapPos >= fileSize)) return false;
+		long size = Math.min(mapSize, fileSize - mapPos);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapPos, size);
+		mapPos += size;
+		return true;
+	}
+
+	/**
+	 * Open a compressed file. BGZF files are decompressed in parallel
+	 */
+	InputStream gzip(String fileName) throws IOException {
+		if (BgzfInputStream.isBgzf(fileName)) return new BgzfInputStream(new FileInputStream(fileName));
+		return new GZIPInputStream(new FileInputStream(fileName), 64 * 1024);
+	}
+
+	void init(int bufferSize) {
+		this.bufferSize = bufferSize;
+		line = new byte[Math.min(INITIAL_LINE_SIZE, bufferSize)];
+		buffer = ByteBuffer.allocate(0);
+	}
+
+	public boolean isMapped() {
+		return channel != null;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("Unimplemented method!");
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public int read() throws IOException {
+		throw new IOException("Unimplemented method!");
+	}
+
+	@Override
+	public int read(char[] buff) throws IOException {
+		throw new IOException("Unimplemented method!");
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		throw new IOException("Unimplemented method!");
+	}
+
+	@Override
+	public int read(CharBuffer arg0) throws IOException {
+		throw new IOException("Unimplemented method!");
+	}
+
+	/**
+	 * Read a line. Lines are terminated by '\n' (a trailing '\r' is removed)
+	 * @return A line (without line terminators) or null at end of file
+	 */
+	@Override
+	public String readLine() throws IOException {
+		if (buffer == null) return null; // Closed
+
+		boolean ascii = true;
+		boolean any = false;
+		lineLen = 0;
+
+		while (true) {
+			if (!buffer.hasRemaining() && !fill()) {
+				if (!any) return null; // End of file
+				break;
+			}
+			any = true;
+
+			// Scan bytes looking for a new line
+			int start = buffer.position();
+			int limit = buffer.limit();
+			int i;
+			for (i = start; i < limit; i++) {
+				byte b = buffer.get(i);
+				if (b == '\n') break;
+				if (b < 0) ascii = false;
+			}
+
+			if (i < limit) {
+				// Whole line in buffer? Create string directly from buffer's array
+				if ((lineLen == 0) && buffer.hasArray()) {
+					buffer.position(i + 1);
+					return decode(buffer.array(), buffer.arrayOffset() + start, i - start, ascii);
+				}
+
+				append(start, i);
+				buffer.position(i + 1);
+				break;
+			}
+
+			// Line continues in next buffer
+			append(start, limit);
+		}
+
+		return decode(line, 0, lineLen, ascii);
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		if (buffer == null) return false;
+		if (buffer.hasRemaining()) return true;
+		if (in != null) return in.available() > 0;
+		return mapPos < fileSize;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("Unimplemented method!");
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		throw new IOException("Unimplemented method!");
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":" + fileName + (isMapped() ? " (mapped)" : "");
+	}
+}
@@ -0,0 +1,75 @@
+package ca.mcgill.mcb.pcingola.fileIterator;
+
+import java.io.IOException;
+
+import ca.mcgill.mcb.pcingola.binseq.ReferenceSequence;
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+
+/**
+ * Opens a fasta file and iterates over all fasta sequences in the file.
+ *
+ * Sequences are packed while reading (see ReferenceSequence), so only one
+ * packed sequence (e.g. one chromosome) is in memory at any time.
+ * Empty sequences are skipped.
+ *
+ * @author pcingola
+ */
+public class FastaReferenceFileIterator extends FileIterator<ReferenceSequence> {
+
+	String header = null;
+
+	public FastaReferenceFileIterator(String fastaFileName) {
+		super(fastaFileName);
+	}
+
+	/**
+	 * Current sequence header
+	 * @return
+	 */
+	public String getHeader() {
+		return header;
+	}
+
+	/**
+	 * Sequence name (first 'word'), same as FastaFileIterator.getName()
+	 * @return
+	 */
+	public String getName() {
+		if (header == null) return "";
+		String name = header.split("\\s+")[0];
+		return Chromosome.simpleName(name);
+	}
+
+	/**
+	 * Read a sequence from the file
+	 * @return
+	 */
+	@Override
+	protected ReferenceSequence readNext() {
+		ReferenceSequence seq = null;
+		try {
+			while (ready()) {
+				if (line == null) line = readLine();
+
+				if (line.startsWith(">")) {
+					// We finished reading this sequence (keep 'line' for next sequence)
+					if ((seq != null) && (seq.length() > 0)) break;
+
+					// New sequence
+					header = line.substring(1).trim(); // Remove starting '>' as well as leading and trailing spaces
+					seq = new ReferenceSequence(getName());
+				} else if (seq != null) seq.append(line.trim());
+
+				line = null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		// Not finished reading a sequence
+		if ((seq == null) || (seq.length() <= 0)) return null;
+
+		seq.pack();
+		return seq;
+	}
+}
@@ -91,7 +91,7 @@ public abstract class FileIterator<T> implements Iterable<T>, Iterator<T> {
 		lineNum = 0;
 		next = null;
 		this.fileName = fileName;
-		if (fileName != null) reader = Gpr.reader(fileName);
+		if (fileName != null) reader = openReader(fileName);
 	}
 
 	@Override
@@ -121,6 +121,13 @@ public abstract class FileIterator<T> implements Iterable<T>, Iterator<T> {
 		return null;
 	}
 
+	/**
+	 * Open a reader for file 'fileName'
+	 */
+	protected BufferedReader openReader(String fileName) {
+		return Gpr.reader(fileName);
+	}
+
 	/**
 	 * Read a line from reader
 	 * @throws IOException
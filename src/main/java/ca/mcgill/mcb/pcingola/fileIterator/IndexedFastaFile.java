@@ -0,0 +1,469 @@
+package ca.mcgill.mcb.pcingola.fileIterator;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.util.BgzfInputStream;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+import ca.mcgill.mcb.pcingola.util.Timer;
+
+/**
+ * Random access to sequences in a FASTA file using a FASTA index ('.fai' file, see 'samtools faidx')
+ *
+ * Notes:
+ * 		- Only the requested bases are read, so the genome is never loaded into memory
+ * 		- Plain FASTA files are memory mapped
+ * 		- BGZF compressed FASTA files (see 'bgzip') are inflated one block at a time, using
+ * 		  the '.gzi' index (if it exists) and a small LRU cache of inflated blocks
+ * 		- If the '.fai' file does not exist, the index is created by scanning the FASTA file
+ * 		- Sequences can be accessed either by name or by simple chromosome name (e.g. 'chr1' or '1')
+ * 		- Coordinates are zero-based and intervals are closed (same as markers)
+ *
+ * @author pcingola
+ */
+public class IndexedFastaFile {
+
+	/**
+	 * An entry in a FASTA index (a line in a '.fai' file)
+	 */
+	public static class FastaIndexEntry {
+		String name;
+		int length; // Sequence length (bases)
+		long offset; // Position of the first base (uncompressed file coordinates)
+		int lineBases; // Bases per line
+		int lineWidth; // Bytes per line (including new line characters)
+
+		public FastaIndexEntry(String name, long offset) {
+			this.name = name;
+			this.offset = offset;
+		}
+
+		/**
+		 * Parse a '.fai' line
+		 */
+		public static FastaIndexEntry parse(String line) {
+			String fields[] = line.split("\t");
+			if (fields.length < 5) throw new RuntimeException("Invalid FASTA index line (expected 5 fields): '" + line + "'");
+
+			FastaIndexEntry entry = new FastaIndexEntry(fields[0], Long.parseLong(fields[2]));
+			entry.length = Gpr.parseIntSafe(fields[1]);
+			entry.lineBases = Gpr.parseIntSafe(fields[3]);
+			entry.lineWidth = Gpr.parseIntSafe(fields[4]);
+			return entry;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Position of base 'pos' in the file (uncompressed file coordinates)
+		 */
+		long position(int pos) {
+			return offset + ((long) (pos / lineBases)) * lineWidth + (pos % lineBases);
+		}
+
+		@Override
+		public String toString() {
+			return name + "\t" + length + "\t" + offset + "\t" + lineBases + "\t" + lineWidth;
+		}
+	}
+
+	public static final String FAI_EXTENSION = ".fai";
+	public static final String GZI_EXTENSION = ".gzi";
+	public static final int DEFAULT_CACHE_BLOCKS = 64; // Number of inflated BGZF blocks kept in memory
+	public static final long MAP_SEGMENT_SIZE = 1L << 30; // Plain files are memory mapped in segments of (at most) this size
+
+	boolean verbose = false;
+	boolean bgzf; // Is this a BGZF compressed file?
+	String fastaFileName;
+	ArrayList<FastaIndexEntry> entries;
+	HashMap<String, FastaIndexEntry> entryByName; // Entries by name and by simple chromosome name
+	RandomAccessFile file;
+	FileChannel channel;
+	MappedByteBuffer segments[]; // Memory mapped segments (plain files)
+	long blockOffsets[]; // BGZF block positions (compressed file coordinates)
+	long blockStarts[]; // BGZF block positions (uncompressed file coordinates)
+	int cacheBlocks = DEFAULT_CACHE_BLOCKS;
+	LinkedHashMap<Integer, byte[]> cache; // Inflated BGZF blocks (least recently used are removed first)
+
+	public IndexedFastaFile(String fastaFileName) {
+		this(fastaFileName, false);
+	}
+
+	public IndexedFastaFile(String fastaFileName, boolean verbose) {
+		this.fastaFileName = fastaFileName;
+		this.verbose = verbose;
+		open();
+	}
+
+	/**
+	 * Add an index entry
+	 */
+	void add(FastaIndexEntry entry) {
+		entries.add(entry);
+		entryByName.put(entry.name, entry);
+
+		String simpleName = Chromosome.simpleName(entry.name);
+		if (!entryByName.containsKey(simpleName)) entryByName.put(simpleName, entry);
+	}
+
+	/**
+	 * Get an inflated block (BGZF files)
+	 */
+	byte[] block(int blockNum) throws IOException {
+		byte block[] = cache.get(blockNum);
+		if (block != null) return block;
+
+		channel.position(blockOffsets[blockNum]);
+		byte cblock[] = BgzfInputStream.readBlock(Channels.newInputStream(channel));
+		if (cblock == null) throw new IOException("Unexpected end of file reading BGZF block " + blockNum + ", file '" + fastaFileName + "'");
+		block = BgzfInputStream.inflate(cblock);
+
+		cache.put(blockNum, block);
+		return block;
+	}
+
+	public synchronized void close() {
+		try {
+			if (file != null) file.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			file = null;
+			channel = null;
+			segments = null;
+			if (cache != null) cache.clear();
+		}
+	}
+
+	/**
+	 * Create index by scanning the FASTA file
+	 */
+	void createIndex() {
+		if (verbose) Timer.showStdErr("Indexing FASTA file '" + fastaFileName + "'");
+
+		InputStream in = null;
+		try {
+			in = bgzf ? new BgzfInputStream(new FileInputStream(fastaFileName)) : new BufferedInputStream(new FileInputStream(fastaFileName));
+
+			byte buffer[] = new byte[64 * 1024];
+			long pos = 0;
+			FastaIndexEntry entry = null;
+			StringBuilder header = null; // Header line being read (null if reading sequence lines)
+			boolean lastLine = false; // A short line was found: No more sequence lines are expected for this entry
+			int lineWidth = 0, lineBases = 0;
+
+			for (int len; (len = in.read(buffer)) >= 0;) {
+				for (int i = 0; i < len; i++, pos++) {
+					byte b = buffer[i];
+
+					if ((lineWidth == 0) && (b == '>')) {
+						if (entry != null) add(entry);
+						header = new StringBuilder();
+						entry = null;
+						lastLine = false;
+					}
+					lineWidth++;
+
+					if (header != null) {
+						// Header line
+						if (b == '\n') {
+							String name = header.substring(1).trim().split("\\s+")[0];
+							entry = new FastaIndexEntry(name, pos + 1);
+							header = null;
+							lineWidth = 0;
+						} else header.append((char) b);
+					} else if (b == '\n') {
+						lastLine = indexLine(entry, lineBases, lineWidth, lastLine);
+						lineWidth = lineBases = 0;
+					} else if (b != '\r') lineBases++;
+				}
+			}
+
+			// Last line (no new line at the end of the file)
+			if ((header == null) && (lineWidth > 0)) indexLine(entry, lineBases, lineWidth, lastLine);
+			if (entry != null) add(entry);
+		} catch (IOException e) {
+			throw new RuntimeException("Error indexing FASTA file '" + fastaFileName + "'", e);
+		} finally {
+			try {
+				if (in != null) in.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Find BGZF blocks by reading all compressed blocks (no '.gzi' index available)
+	 */
+	void createIndexBgzf() throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(fastaFileName));
+		try {
+			ArrayList<Long> offsets = new ArrayList<Long>();
+			ArrayList<Long> starts = new ArrayList<Long>();
+			long offset = 0, start = 0;
+			for (byte cblock[]; (cblock = BgzfInputStream.readBlock(in)) != null;) {
+				int size = BgzfInputStream.inflatedSize(cblock);
+				if (size > 0) { // Skip empty blocks (e.g. EOF marker)
+					offsets.add(offset);
+					starts.add(start);
+				}
+				offset += cblock.length;
+				start += size;
+			}
+
+			blockOffsets = new long[offsets.size()];
+			blockStarts = new long[starts.size()];
+			for (int i = 0; i < blockOffsets.length; i++) {
+				blockOffsets[i] = offsets.get(i);
+				blockStarts[i] = starts.get(i);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	public List<FastaIndexEntry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Get index entry
+	 * @param name : Sequence name or simple chromosome name
+	 * @return Index entry or null if not found
+	 */
+	public FastaIndexEntry getEntry(String name) {
+		FastaIndexEntry entry = entryByName.get(name);
+		if (entry == null) entry = entryByName.get(Chromosome.simpleName(name));
+		return entry;
+	}
+
+	/**
+	 * Sequence length
+	 * @return Length or -1 if the sequence is not found
+	 */
+	public int getLength(String name) {
+		FastaIndexEntry entry = getEntry(name);
+		return entry != null ? entry.length : -1;
+	}
+
+	/**
+	 * Get bases in interval [start, end] (zero-based, closed interval)
+	 * Note: Bases are reported as they are in the FASTA file (i.e. case is not changed)
+	 *
+	 * @param name : Sequence name (or simple chromosome name)
+	 */
+	public synchronized String getSequence(String name, int start, int end) {
+		FastaIndexEntry entry = getEntry(name);
+		if (entry == null) throw new RuntimeException("Sequence '" + name + "' not found in FASTA index, file '" + fastaFileName + "'");
+		if ((start < 0) || (end >= entry.length)) throw new IndexOutOfBoundsException("Requested interval [" + start + ", " + end + "], sequence '" + name + "' length is " + entry.length);
+		if (end < start) return "";
+		if (file == null) throw new RuntimeException("FASTA file '" + fastaFileName + "' is closed");
+
+		// Read all bytes (bases and new lines) and remove new lines
+		long startPos = entry.position(start);
+		byte bytes[] = new byte[(int) (entry.position(end) - startPos + 1)];
+		try {
+			read(startPos, bytes);
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading sequence '" + name + "', file '" + fastaFileName + "'", e);
+		}
+
+		char bases[] = new char[end - start + 1];
+		int len = 0;
+		for (byte b : bytes)
+			if ((b != '\n') && (b != '\r')) bases[len++] = (char) b;
+
+		if (len != bases.length) throw new RuntimeException("Inconsistent FASTA index, sequence '" + name + "', interval [" + start + ", " + end + "], file '" + fastaFileName + "'");
+		return new String(bases);
+	}
+
+	/**
+	 * Update index entry using a sequence line
+	 * @return true if this is the last line in the sequence (i.e. a line shorter than the previous ones)
+	 */
+	boolean indexLine(FastaIndexEntry entry, int lineBases, int lineWidth, boolean lastLine) {
+		if (lineBases <= 0) return true; // Empty line: Only allowed at the end of a sequence
+		if (entry == null) throw new RuntimeException("Invalid FASTA file '" + fastaFileName + "': Sequence before first header line");
+
+		if (lastLine) throw new RuntimeException("Invalid FASTA file '" + fastaFileName + "': Different line lengths in sequence '" + entry.name + "'");
+		entry.length += lineBases;
+
+		// First line
+		if (entry.lineBases == 0) {
+			entry.lineBases = lineBases;
+			entry.lineWidth = lineWidth;
+			return false;
+		}
+
+		if (lineBases > entry.lineBases) throw new RuntimeException("Invalid FASTA file '" + fastaFileName + "': Different line lengths in sequence '" + entry.name + "'");
+		return (lineBases < entry.lineBases) || (lineWidth != entry.lineWidth);
+	}
+
+	public boolean isBgzf() {
+		return bgzf;
+	}
+
+	/**
+	 * Load BGZF blocks from '.gzi' index (little endian 64 bit integers: Number of
+	 * entries followed by pairs of compressed / uncompressed offsets).
+	 * The first block (offsets 0, 0) is not included in the index.
+	 */
+	void loadIndexBgzf(String gziFile) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(gziFile))).order(ByteOrder.LITTLE_ENDIAN);
+		int num = (int) buffer.getLong();
+
+		blockOffsets = new long[num + 1];
+		blockStarts = new long[num + 1];
+		for (int i = 1; i <= num; i++) {
+			blockOffsets[i] = buffer.getLong();
+			blockStarts[i] = buffer.getLong();
+		}
+	}
+
+	/**
+	 * Load index from a '.fai' file
+	 */
+	void loadIndex(String faiFile) {
+		for (String line : Gpr.readFile(faiFile).split("\n")) {
+			if (line.isEmpty()) continue;
+			add(FastaIndexEntry.parse(line));
+		}
+	}
+
+	/**
+	 * Open file and load (or create) indexes
+	 */
+	void open() {
+		if (!Gpr.canRead(fastaFileName)) throw new RuntimeException("Cannot read FASTA file '" + fastaFileName + "'");
+		bgzf = BgzfInputStream.isBgzf(fastaFileName);
+
+		// FASTA index
+		entries = new ArrayList<FastaIndexEntry>();
+		entryByName = new HashMap<String, FastaIndexEntry>();
+		String faiFile = fastaFileName + FAI_EXTENSION;
+		if (Gpr.canRead(faiFile)) {
+			if (verbose) Timer.showStdErr("Reading FASTA index '" + faiFile + "'");
+			loadIndex(faiFile);
+		} else {
+			createIndex();
+			saveIndex(faiFile);
+		}
+
+		try {
+			file = new RandomAccessFile(fastaFileName, "r");
+			channel = file.getChannel();
+
+			if (bgzf) {
+				// BGZF blocks
+				String gziFile = fastaFileName + GZI_EXTENSION;
+				if (Gpr.canRead(gziFile)) loadIndexBgzf(gziFile);
+				else createIndexBgzf();
+
+				cache = new LinkedHashMap<Integer, byte[]>(2 * cacheBlocks, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+						return size() > cacheBlocks;
+					}
+				};
+			} else {
+				// Memory map the whole file
+				long size = channel.size();
+				segments = new MappedByteBuffer[(int) ((size + MAP_SEGMENT_SIZE - 1) / MAP_SEGMENT_SIZE)];
+				for (int i = 0; i < segments.length; i++) {
+					long start = i * MAP_SEGMENT_SIZE;
+					segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_SEGMENT_SIZE, size - start));
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error opening FASTA file '" + fastaFileName + "'", e);
+		}
+	}
+
+	/**
+	 * Read bytes starting at 'pos' (uncompressed file coordinates)
+	 */
+	void read(long pos, byte bytes[]) throws IOException {
+		for (int len = 0; len < bytes.length;) {
+			int n;
+			if (bgzf) {
+				// Find block
+				int blockNum = Arrays.binarySearch(blockStarts, pos);
+				if (blockNum < 0) blockNum = -blockNum - 2;
+				byte block[] = block(blockNum);
+
+				int blockPos = (int) (pos - blockStarts[blockNum]);
+				if (blockPos >= block.length) throw new IOException("Position " + pos + " beyond end of file '" + fastaFileName + "'");
+				n = Math.min(bytes.length - len, block.length - blockPos);
+				System.arraycopy(block, blockPos, bytes, len, n);
+			} else {
+				// Memory mapped segment (use a duplicate buffer, so that the segment's position is never changed)
+				MappedByteBuffer segment = segments[(int) (pos / MAP_SEGMENT_SIZE)];
+				int segmentPos = (int) (pos % MAP_SEGMENT_SIZE);
+				n = Math.min(bytes.length - len, segment.limit() - segmentPos);
+				ByteBuffer buffer = segment.duplicate();
+				buffer.position(segmentPos);
+				buffer.get(bytes, len, n);
+			}
+
+			len += n;
+			pos += n;
+		}
+	}
+
+	/**
+	 * Save index to a '.fai' file (only if the file can be written)
+	 */
+	void saveIndex(String faiFile) {
+		try {
+			Gpr.toFile(faiFile, toString());
+			if (verbose) Timer.showStdErr("FASTA index saved to '" + faiFile + "'");
+		} catch (Throwable t) {
+			if (verbose) Timer.showStdErr("Cannot save FASTA index to '" + faiFile + "': " + t.getMessage());
+		}
+	}
+
+	/**
+	 * Maximum number of inflated BGZF blocks in cache
+	 */
+	public synchronized void setCacheBlocks(int cacheBlocks) {
+		this.cacheBlocks = cacheBlocks;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (FastaIndexEntry entry : entries)
+			sb.append(entry + "\n");
+		return sb.toString();
+	}
+}
@@ -24,6 +24,7 @@ public abstract class MarkerFileIterator<M extends Marker> extends FileIterator<
 	protected int inOffset;
 	protected TabixReader tabixReader;
 	protected TabixIterator tabixIterator;
+	protected boolean tabixQuery; // Reading entries from a tabix query (see seek) instead of scanning the file
 
 	public MarkerFileIterator(BufferedReader reader, int inOffset) {
 		super(reader);
@@ -59,9 +60,13 @@ public abstract class MarkerFileIterator<M extends Marker> extends FileIterator<
 		return genome;
 	}
 
+	public TabixReader getTabixReader() {
+		return tabixReader;
+	}
+
 	@Override
 	public boolean hasNext() {
-		if (tabixReader == null) return super.hasNext();
+		if (!tabixQuery) return super.hasNext();
 		if (tabixIterator == null) return false;
 
 		if (next == null) {
@@ -85,12 +90,13 @@ public abstract class MarkerFileIterator<M extends Marker> extends FileIterator<
 		this.fileName = fileName;
 
 		if (fileName != null) {
-			if (!initTabix(fileName)) reader = Gpr.reader(fileName);
+			reader = openReader(fileName); // Sequential scans always use the reader (tabix is only used to seek)
+			initTabix(fileName);
 		}
 	}
 
 	/**
-	 * Initialize tabix reader
+	 * Initialize tabix reader (only used to seek to a region, see seek)
 	 */
 	protected boolean initTabix(String fileName) {
 		try {
@@ -102,13 +108,8 @@ public abstract class MarkerFileIterator<M extends Marker> extends FileIterator<
 
 			// Open tabix reader
 			tabixReader = new TabixReader(fileName);
-			tabixIterator = tabixReader.iterator();
-
-			// We won't be using the reader
-			if (reader != null) {
-				reader.close();
-				reader = null;
-			}
+			tabixIterator = null;
+			tabixQuery = false;
 		} catch (IOException e) {
 			throw new RuntimeException("Error opening tabix file '" + fileName + "'", e);
 		}
@@ -145,7 +146,7 @@ public abstract class MarkerFileIterator<M extends Marker> extends FileIterator<
 
 	@Override
 	protected String readLine() throws IOException {
-		if (tabixReader == null) return super.readLine(); // No tabix => Do 'normal' readline()
+		if (!tabixQuery) return super.readLine(); // Not seeking => Do 'normal' readline()
 
 		if (nextLine != null) {
 			String nl = nextLine;
@@ -167,7 +168,7 @@ public abstract class MarkerFileIterator<M extends Marker> extends FileIterator<
 
 	@Override
 	protected boolean ready() throws IOException {
-		if (tabixReader == null) return super.ready();
+		if (!tabixQuery) return super.ready();
 
 		if (nextLine != null) return true; // Next line is null? then we have to try to read a line (to see if one is available)
 		return readLine() != null; // Line was read from the file? Then we are ready.
@@ -189,6 +190,7 @@ public abstract class MarkerFileIterator<M extends Marker> extends FileIterator<
 	public void seek(String chr) {
 		tabixReader.query(chr + ":1");
 		tabixIterator = tabixReader.iterator();
+		tabixQuery = true;
 	}
 
 	/**
@@ -200,6 +202,20 @@ public abstract class MarkerFileIterator<M extends Marker> extends FileIterator<
 		nextLine = null;
 		next = null;
 		tabixIterator = tabixReader.query(chr + ":" + pos);
+		tabixQuery = true;
+		return tabixIterator != null;
+	}
+
+	/**
+	 * Seek to a chr:start-end region (tabix query)
+	 * Note: Coordinates are zero-based, inclusive (as in Marker)
+	 * @return false if the region has no entries (according to the index)
+	 */
+	public boolean seek(String chr, int start, int end) {
+		nextLine = null;
+		next = null;
+		tabixIterator = tabixReader.query(chr + ":" + (start + 1) + "-" + (end + 1));
+		tabixQuery = true;
 		return tabixIterator != null;
 	}
 
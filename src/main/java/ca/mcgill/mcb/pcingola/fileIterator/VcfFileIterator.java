@@ -100,6 +100,18 @@ public class VcfFileIterator extends MarkerFileIterator<VcfEntry> implements Par
 		return headeSection;
 	}
 
+	/**
+	 * Use a byte oriented reader: VCF files are ASCII and can be huge
+	 */
+	@Override
+	protected BufferedReader openReader(String fileName) {
+		try {
+			return new AsciiLineReader(fileName);
+		} catch (IOException e) {
+			throw new RuntimeException("Error opening file '" + fileName + "'", e);
+		}
+	}
+
 	@Override
 	public Collection<VcfEntry> parse(String str) {
 		LinkedList<VcfEntry> list = new LinkedList<VcfEntry>();
@@ -1,53 +1,67 @@
 package ca.mcgill.mcb.pcingola.fileIterator;
 
+import java.util.Arrays;
+
 import ca.mcgill.mcb.pcingola.interval.Variant.VariantType;
 
 /**
- * Needleman-Wunsch (global sequence alignment) algorithm for sequence  alignment (short strings, since it's not memory optimized)
- * 
+ * Normalize REF / ALT strings from a VCF entry (find variant type and offset)
+ *
+ * REF / ALT pairs are resolved without calculating an alignment matrix, in linear time:
+ * 	- Same length: Either no change, a SNP or a MNP
+ * 	- Common bases are trimmed at the start (offset) and at the end
+ * 	- If no bases are left in the shorter allele, it's an insertion / deletion
+ * 	- Otherwise, if the shorter allele is contained in the longer one (linear time
+ * 	  search) it's an insertion / deletion, otherwise it's a mixed variant
+ *
+ * Note: Alignment is not performed (even for long sequences), so there is no
+ *       quadratic time / memory cost for long indels or structural variants
+ *
  * @author pcingola
  */
 public class VcfRefAltAlign extends NeedlemanWunsch {
 
-	public static final int MAX_SIZE = 10000; // 1024 * 1024;
-
-	String stringA, stringB;
+	int lenA, lenB; // Lengths after trimming common bases at the end
 	VariantType changeType;
 
+	/**
+	 * Find the first occurrence of 'pattern[0 .. patternLen-1]' in 'text[0 .. textLen-1]'
+	 * Knuth-Morris-Pratt algorithm, so it's linear in time even for repetitive sequences
+	 *
+	 * @return Index of first occurrence, or -1 if not found
+	 */
+	static int indexOf(char text[], int textLen, char pattern[], int patternLen) {
+		if (patternLen <= 0) return 0;
+
+		// Failure function
+		int fail[] = new int[patternLen];
+		for (int i = 1, k = 0; i < patternLen; i++) {
+			while ((k > 0) && (pattern[i] != pattern[k]))
+				k = fail[k - 1];
+			if (pattern[i] == pattern[k]) k++;
+			fail[i] = k;
+		}
+
+		// Search
+		for (int i = 0, k = 0; i < textLen; i++) {
+			while ((k > 0) && (text[i] != pattern[k]))
+				k = fail[k - 1];
+			if (text[i] == pattern[k]) k++;
+			if (k == patternLen) return i - patternLen + 1;
+		}
+
+		return -1;
+	}
+
 	public VcfRefAltAlign(String a, String b) {
 		super(a, b);
-		stringA = a;
-		stringB = b;
 	}
 
 	@Override
 	public String align() {
 		try {
-			if (simpleAlign()) {
-				// OK Nothing else to do 
-			} else {
-				// Perform alignment only of sequences are not too long (we don't want an 'out of memory' issue)
-				long size = ((long) stringA.length()) * stringB.length();
-				if ((size > 0) && (size < MAX_SIZE)) {
-					scoreMatrix();
-					calcAlignment();
-
-					if (stringB.length() > stringA.length()) {
-						if (alignment.startsWith("-")) {
-							changeType = VariantType.DEL;
-							return alignment;
-						}
-					} else if (stringB.length() < stringA.length()) {
-						if (alignment.startsWith("+")) {
-							changeType = VariantType.INS;
-							return alignment;
-						}
-					}
-				}
-
-				// Not an InDel? Then it's a substitution
-				substitution();
-			}
+			if (a.length == b.length) alignSameLength();
+			else alignInDel();
 		} catch (Throwable t) {
 			throw new RuntimeException("Error aligning sequences:\n\tSequence 1: " + new String(a) + "\n\tSequence 2: " + new String(b), t);
 		}
@@ -55,115 +69,84 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 		return alignment;
 	}
 
-	public VariantType getChangeType() {
-		return changeType;
-	}
-
-	public void setChangeType(VariantType changeType) {
-		this.changeType = changeType;
-	}
-
-	/**
-	 * Trim bases that are equal at the end of stringA / stringB
-	 * @param stringA
-	 * @param stringB
-	 */
-	void trimCommonBasesEnd() {
-		int ia = stringA.length() - 1;
-		int ib = stringB.length() - 1;
-		int count = 0;
-		for (; ia >= offset && ib >= offset; ia--, ib--, count++)
-			if (stringA.charAt(ia) != stringB.charAt(ib)) break;
-
-		// Trim last bases (they are equal)
-		if (count > 0) {
-			stringA = stringA.substring(0, ia + 1);
-			stringB = stringB.substring(0, ib + 1);
-		}
-	}
-
 	/**
-	 * Simplified alignment
-	 * @return
+	 * Different lengths: Insertion, deletion or mixed variant
 	 */
-	boolean simpleAlign() {
-
-		if (stringA.length() == stringB.length()) {
-			offset = 0;
-			if (stringA.equals(stringB)) {
-				// No change
-				changeType = VariantType.Interval;
-				return true;
-			} else if (stringA.length() == 1) {
-				// SNP
-				changeType = VariantType.SNP;
-				return true;
-			} else {
-				// MNP
-				offset = minCommonBase();
-				changeType = VariantType.MNP;
-				return true;
-			}
-		}
-
+	void alignInDel() {
 		offset = minCommonBase();
 		trimCommonBasesEnd();
 
-		if (stringA.length() < stringB.length()) {
+		if (lenA < lenB) {
 			// A has a deletion respect to B
-			int idx = stringB.indexOf(stringA);
-			if (idx >= 0) {
+			if (contains(b, lenB, a, lenA)) {
 				changeType = VariantType.DEL;
-				offset = stringA.length();
-				alignment = "-" + stringB.substring(stringA.length(), stringB.length());
-				return true;
-			}
-
-			changeType = VariantType.MIXED;
-			return true;
-		} else if (stringA.length() > stringB.length()) {
+				alignment = "-" + new String(b, lenA, lenB - lenA);
+				offset = lenA;
+			} else changeType = VariantType.MIXED;
+		} else {
 			// A has an insertion respect to B
-			int idx = stringA.indexOf(stringB);
-			if (idx >= 0) {
+			if (contains(a, lenA, b, lenB)) {
 				changeType = VariantType.INS;
-				offset = stringB.length();
-				alignment = "+" + stringA.substring(stringB.length(), stringA.length());
-				return true;
-			}
+				alignment = "+" + new String(a, lenB, lenA - lenB);
+				offset = lenB;
+			} else changeType = VariantType.MIXED;
+		}
+	}
 
-			changeType = VariantType.MIXED;
-			return true;
+	/**
+	 * Same length: No change, SNP or MNP
+	 */
+	void alignSameLength() {
+		offset = 0;
+		if (Arrays.equals(a, b)) changeType = VariantType.Interval; // No change
+		else if (a.length == 1) changeType = VariantType.SNP;
+		else {
+			offset = minCommonBase();
+			changeType = VariantType.MNP;
 		}
+	}
+
+	/**
+	 * Is 'pattern' (trimmed) contained in 'text' (trimmed)?
+	 */
+	boolean contains(char text[], int textLen, char pattern[], int patternLen) {
+		// All bases after the common ones were trimmed? Then it's a prefix (most common case)
+		if (patternLen <= offset) return true;
+		return indexOf(text, textLen, pattern, patternLen) >= 0;
+	}
 
-		return false;
+	public VariantType getChangeType() {
+		return changeType;
 	}
 
 	/**
 	 * Min position with a common base between stringA and stringB
-	 * @param stringA
-	 * @param stringB
 	 * @return
 	 */
 	int minCommonBase() {
-		int min = Math.min(stringA.length(), stringB.length());
+		int min = Math.min(a.length, b.length);
 		int i;
 		for (i = 0; i < min; i++)
-			if (stringA.charAt(i) != stringB.charAt(i)) return i;
+			if (a[i] != b[i]) return i;
 
 		return i;
 	}
 
+	public void setChangeType(VariantType changeType) {
+		this.changeType = changeType;
+	}
+
 	/**
-	 * If it is not a trivial alignment, then it's a mixed variant (a.k.a subtitution)
+	 * Trim bases that are equal at the end of 'a' / 'b' (never trim bases before 'offset')
+	 * Only lengths are updated (lenA / lenB), no arrays are copied
 	 */
-	void substitution() {
-		changeType = VariantType.MIXED;
-
-		// Offset
-		// Note: There must be a difference, otherwise this would be an InDel, captured in 'simpleAlign() method
-		int min = Math.min(stringA.length(), stringB.length());
-		for (int i = 0; i < min; i++)
-			if (stringA.charAt(i) == stringB.charAt(i)) offset = i;
-			else break;
+	void trimCommonBasesEnd() {
+		int ia = a.length - 1;
+		int ib = b.length - 1;
+		for (; ia >= offset && ib >= offset; ia--, ib--)
+			if (a[ia] != b[ib]) break;
+
+		lenA = ia + 1;
+		lenB = ib + 1;
 	}
 }
@@ -0,0 +1,132 @@
+package ca.mcgill.mcb.pcingola.fileIterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
+
+/**
+ * Iterate over VCF entries intersecting a set of regions, using a tabix index.
+ *
+ * Only the compressed blocks overlapping the regions are read, instead of
+ * scanning the whole file. Regions are merged and sorted in the same order
+ * as chromosomes appear in the index, so entries are returned in the same
+ * order as in the file. Each entry is returned only once, even if it
+ * intersects several regions.
+ *
+ * @author pcingola
+ */
+public class VcfRegionIterator implements Iterable<VcfEntry>, Iterator<VcfEntry> {
+
+	VcfFileIterator vcf;
+	ArrayList<Marker> regions; // Merged regions, sorted in file order
+	ArrayList<String> regionChrs; // Chromosome name (as used in the VCF file) for each region
+	int regionIdx;
+	VcfEntry next;
+
+	public VcfRegionIterator(VcfFileIterator vcf, Markers regions) {
+		if (!vcf.isTabix()) throw new RuntimeException("VCF file is not indexed (tabix)");
+		this.vcf = vcf;
+		vcf.setAutoClose(false); // Do not close the file when a region is exhausted
+		regionIdx = -1;
+		init(regions);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (next == null) {
+			if ((regionIdx >= 0) && vcf.hasNext()) {
+				VcfEntry ve = vcf.next();
+				if (!isDuplicate(ve)) next = ve;
+			} else {
+				// Current region finished: Seek to next one
+				regionIdx++;
+				if (regionIdx >= regions.size()) {
+					vcf.close();
+					return false;
+				}
+
+				Marker r = regions.get(regionIdx);
+				vcf.seek(regionChrs.get(regionIdx), r.getStart(), r.getEnd());
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Merge regions and sort them in the same order as the file
+	 */
+	void init(Markers markers) {
+		// Map simple chromosome names to names used in the file
+		String seqNames[] = vcf.getTabixReader().getSequenceNames();
+		final HashMap<String, Integer> chrOrder = new HashMap<String, Integer>();
+		HashMap<String, String> chrNames = new HashMap<String, String>();
+		for (int i = 0; i < seqNames.length; i++) {
+			String chr = Chromosome.simpleName(seqNames[i]);
+			chrOrder.put(chr, i);
+			chrNames.put(chr, seqNames[i]);
+		}
+
+		// Merge regions, remove the ones in chromosomes not present in the file
+		regions = new ArrayList<Marker>();
+		for (Marker m : markers.merge())
+			if (chrOrder.containsKey(Chromosome.simpleName(m.getChromosomeName()))) regions.add(m);
+
+		// Sort in file order
+		Collections.sort(regions, new Comparator<Marker>() {
+			@Override
+			public int compare(Marker m1, Marker m2) {
+				int c1 = chrOrder.get(Chromosome.simpleName(m1.getChromosomeName()));
+				int c2 = chrOrder.get(Chromosome.simpleName(m2.getChromosomeName()));
+				if (c1 != c2) return c1 - c2;
+				return m1.getStart() - m2.getStart();
+			}
+		});
+
+		regionChrs = new ArrayList<String>();
+		for (Marker r : regions)
+			regionChrs.add(chrNames.get(Chromosome.simpleName(r.getChromosomeName())));
+	}
+
+	/**
+	 * Has this entry already been returned (by the previous region's query)?
+	 * Regions are merged and sorted, so an entry starting before the end of the
+	 * previous region (in the same chromosome) also intersects that region.
+	 */
+	boolean isDuplicate(VcfEntry ve) {
+		if (regionIdx <= 0) return false;
+		if (!regionChrs.get(regionIdx - 1).equals(regionChrs.get(regionIdx))) return false;
+		return ve.getStart() <= regions.get(regionIdx - 1).getEnd();
+	}
+
+	@Override
+	public Iterator<VcfEntry> iterator() {
+		return this;
+	}
+
+	@Override
+	public VcfEntry next() {
+		if (hasNext()) {
+			VcfEntry ret = next;
+			next = null;
+			return ret;
+		}
+		return null;
+	}
+
+	@Override
+	public void remove() {
+		throw new RuntimeException("Unimplemented");
+	}
+
+	public int size() {
+		return regions.size();
+	}
+}
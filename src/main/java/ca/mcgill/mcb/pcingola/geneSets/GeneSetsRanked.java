@@ -105,11 +105,13 @@ public class GeneSetsRanked extends GeneSets {
 	public int getMaxRank() {
 		// Calculate it if needed
 		if (maxRank <= 0) { // Find max rank used 
-
+			// Note: Calculate it in a local variable, so that other threads never see a partial result
+			int max = 0;
 			for (String gene : rankByGene.keySet()) {
 				int rank = rankByGene.get(gene);
-				if (rank > maxRank) maxRank = rank;
+				if (rank > max) max = rank;
 			}
+			maxRank = max;
 		}
 		return maxRank;
 	}
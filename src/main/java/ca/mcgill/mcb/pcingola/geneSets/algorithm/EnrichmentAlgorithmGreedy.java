@@ -1,9 +1,14 @@
 package ca.mcgill.mcb.pcingola.geneSets.algorithm;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apfloat.Apfloat;
 
@@ -15,6 +20,10 @@ import ca.mcgill.mcb.pcingola.util.Gpr;
 /**
  * A generic greedy enrichment algorithm for selecting gene-sets
  * 
+ * On each iteration, p-values for all candidate gene sets can be calculated 
+ * in parallel ('numWorkers' threads). The best candidate is then selected in 
+ * the original gene set order, so results do not depend on the number of threads.
+ * 
  * @author pcingola
  */
 public abstract class EnrichmentAlgorithmGreedy extends EnrichmentAlgorithm {
@@ -24,12 +33,28 @@ public abstract class EnrichmentAlgorithmGreedy extends EnrichmentAlgorithm {
 	protected boolean adjustedPvalue = true;
 	protected double maxPvalue = DEFAULT_MAX_PVALUE;
 	protected double maxPvalueAjusted = DEFAULT_MAX_PVALUE;
+	int numWorkers = 1; // Number of threads used to calculate p-values
+	ExecutorService executor; // Only used when 'numWorkers > 1'
 	Date start, latest;
 
 	public EnrichmentAlgorithmGreedy(GeneSets geneSets, int numberToSelect) {
 		super(geneSets, numberToSelect);
 	}
 
+	/**
+	 * Create a new list of gene sets by adding 'geneSet' to 'geneSetList'
+	 */
+	List<GeneSet> geneSetList(List<GeneSet> geneSetList, GeneSet geneSet) {
+		List<GeneSet> geneSetListNew = new LinkedList<GeneSet>();
+		geneSetListNew.addAll(geneSetList);
+		geneSetListNew.add(geneSet);
+		return geneSetListNew;
+	}
+
+	public int getNumWorkers() {
+		return numWorkers;
+	}
+
 	/**
 	 * Calculate best list of terms by adding a new term to a list that minimize p-value (rank sum)
 	 * @return
@@ -45,10 +70,10 @@ public abstract class EnrichmentAlgorithmGreedy extends EnrichmentAlgorithm {
 	 * @return
 	 */
 	protected Result greedyPvalue(Result prevResult, int minGeneSetSize, int maxGeneSetSize) {
-		Apfloat pValue = Apfloat.ONE;
 		int geneSetCount = 0;
 		HashSet<GeneSet> genesetSet = new HashSet<GeneSet>();
 		if (prevResult.getGeneSets() != null) genesetSet.addAll(prevResult.getGeneSets());
+		List<GeneSet> geneSetListPrev = new ArrayList<GeneSet>(genesetSet);
 		start = new Date();
 		latest = new Date();
 
@@ -56,29 +81,31 @@ public abstract class EnrichmentAlgorithmGreedy extends EnrichmentAlgorithm {
 		Result best = new Result(prevResult);
 		best.setPvalue(1.0); // Any p-value should be less than this one
 
-		// For each geneSet...
+		// Find candidate gene sets
+		List<GeneSet> candidates = new ArrayList<GeneSet>();
 		for (GeneSet geneSet : geneSets) {
-
 			// Check GeneSet's conditions
 			if ((geneSet.getGeneCount() > 0) // This term is empty? => skip it
-					&& ((genesetSet == null) || (!genesetSet.contains(geneSet))) // Is this term already in the list? => skip it
+					&& (!genesetSet.contains(geneSet)) // Is this term already in the list? => skip it
 					&& (geneSet.getGeneCount() >= minGeneSetSize) // Use gene sets bigger than minGeneSetSize
 					&& (geneSet.getGeneCount() <= maxGeneSetSize) // Use gene sets smaller than maxGeneSetSize
-			) {
-				// Create a new geneSet by joining the original genes and adding a new one
-				List<GeneSet> geneSetListNew = new LinkedList<GeneSet>();
-				if (genesetSet != null) geneSetListNew.addAll(genesetSet);
-				geneSetListNew.add(geneSet);
+			) candidates.add(geneSet);
+		}
 
-				// Calculate p-value
-				pValue = pValue(geneSetListNew);
+		// Calculate p-values (this may be done in parallel)
+		Apfloat pValues[] = pValues(geneSetListPrev, candidates);
 
-				// Is it better? => Store it
-				if ((pValue.compareTo(Apfloat.ZERO) > 0) && (pValue.compareTo(best.getPvalue()) < 0)) best.set(geneSetListNew, pValue);
+		// For each candidate geneSet (in the original order)...
+		for (int i = 0; i < candidates.size(); i++) {
+			// Create a new geneSet by joining the original genes and adding a new one
+			List<GeneSet> geneSetListNew = geneSetList(geneSetListPrev, candidates.get(i));
+			Apfloat pValue = pValues[i];
 
-				showProgress(geneSetListNew, pValue, best); // Show some progress every now and then
-				geneSetCount++;
-			}
+			// Is it better? => Store it
+			if ((pValue.compareTo(Apfloat.ZERO) > 0) && (pValue.compareTo(best.getPvalue()) < 0)) best.set(geneSetListNew, pValue);
+
+			showProgress(geneSetListNew, pValue, best); // Show some progress every now and then
+			geneSetCount++;
 		}
 
 		// Update gene set counts. This is used in order to adjust pValue
@@ -87,6 +114,46 @@ public abstract class EnrichmentAlgorithmGreedy extends EnrichmentAlgorithm {
 		return best;
 	}
 
+	/**
+	 * Calculate p-values for each candidate gene set (joined to 'geneSetListPrev')
+	 * Use 'numWorkers' threads, if available
+	 */
+	Apfloat[] pValues(final List<GeneSet> geneSetListPrev, final List<GeneSet> candidates) {
+		final Apfloat pValues[] = new Apfloat[candidates.size()];
+
+		// Single thread
+		if (executor == null) {
+			for (int i = 0; i < candidates.size(); i++)
+				pValues[i] = pValue(geneSetList(geneSetListPrev, candidates.get(i)));
+			return pValues;
+		}
+
+		// Each worker calculates every 'numWorkers' candidate. Note that
+		// results are stored by index, so the order is always the same.
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int w = 0; w < numWorkers; w++) {
+			final int first = w;
+			futures.add(executor.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int i = first; i < candidates.size(); i += numWorkers)
+						pValues[i] = pValue(geneSetList(geneSetListPrev, candidates.get(i)));
+				}
+			}));
+		}
+
+		// Wait for all workers to finish
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+
+		return pValues;
+	}
+
 	@Override
 	void printTitle() {
 		if (htmlTable) System.out.println("<table border=0> <tr bgcolor=\"" + HTML_BG_COLOR_TITLE + "\"> <th>Iteration</th>\t<th>p-value</th>\t<th>p-value adj</th>\t<th>Latest result</th>\t<th>Size</th>\t<th>Description</th>\t<th>Interesting genes </th>\t<th> Score </th> </tr>");
@@ -103,18 +170,24 @@ public abstract class EnrichmentAlgorithmGreedy extends EnrichmentAlgorithm {
 
 		Result result = new Result();
 		int iteration;
-		for (iteration = 1; iteration <= numberToSelect; iteration++) {
-			// Use greedy algorithm to select next item
-			result = greedyPvalue(result);
-
-			// Show something
-			if (verbose) printResult(iteration, result);
-
-			// Stop here
-			if (stopCriteria(result)) {
-				if (debug) System.out.println("\tStop criteria met.");
-				break;
+		if (numWorkers > 1) executor = Executors.newFixedThreadPool(numWorkers);
+		try {
+			for (iteration = 1; iteration <= numberToSelect; iteration++) {
+				// Use greedy algorithm to select next item
+				result = greedyPvalue(result);
+
+				// Show something
+				if (verbose) printResult(iteration, result);
+
+				// Stop here
+				if (stopCriteria(result)) {
+					if (debug) System.out.println("\tStop criteria met.");
+					break;
+				}
 			}
+		} finally {
+			if (executor != null) executor.shutdown();
+			executor = null;
 		}
 
 		if (htmlTable) System.out.println("</table>");
@@ -145,6 +218,10 @@ public abstract class EnrichmentAlgorithmGreedy extends EnrichmentAlgorithm {
 		this.minGeneSetSize = minGeneSetSize;
 	}
 
+	public void setNumWorkers(int numWorkers) {
+		this.numWorkers = numWorkers;
+	}
+
 	@Override
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
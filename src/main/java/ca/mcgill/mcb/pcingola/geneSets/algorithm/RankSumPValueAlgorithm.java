@@ -4,14 +4,21 @@ import org.apfloat.Apfloat;
 
 import ca.mcgill.mcb.pcingola.geneSets.GeneSet;
 import ca.mcgill.mcb.pcingola.geneSets.GeneSetsRanked;
-import ca.mcgill.mcb.pcingola.probablility.RankSumNoReplacementPdf;
+import ca.mcgill.mcb.pcingola.probablility.RankSumCdf;
+import ca.mcgill.mcb.pcingola.probablility.RankSumNoReplacementLogCdf;
 
 public class RankSumPValueAlgorithm extends EnrichmentAlgorithm {
 
+	RankSumCdf rankSumCdf = RankSumNoReplacementLogCdf.get(); // Rank sum distribution used to calculate p-values
+
 	public RankSumPValueAlgorithm(GeneSetsRanked geneSets, int numberToSelect) {
 		super(geneSets, numberToSelect);
 	}
 
+	public RankSumCdf getRankSumCdf() {
+		return rankSumCdf;
+	}
+
 	/**
 	 * Create a new gene set using all gene sets and calculate pValue
 	 * @param geneSetList
@@ -20,7 +27,11 @@ public class RankSumPValueAlgorithm extends EnrichmentAlgorithm {
 	@Override
 	Apfloat pValue(GeneSet geneSet) {
 		long rankSum = geneSet.rankSum(); // Make sure rankSum is calculated
-		Apfloat pValue = RankSumNoReplacementPdf.get().cdf(((GeneSetsRanked) geneSets).getMaxRank(), geneSet.getRankedGenesCount(), rankSum);
+		Apfloat pValue = rankSumCdf.cdf(((GeneSetsRanked) geneSets).getMaxRank(), geneSet.getRankedGenesCount(), rankSum);
 		return pValue;
 	}
+
+	public void setRankSumCdf(RankSumCdf rankSumCdf) {
+		this.rankSumCdf = rankSumCdf;
+	}
 }
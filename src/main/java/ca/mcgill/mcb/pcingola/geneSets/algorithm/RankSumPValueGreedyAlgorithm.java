@@ -5,14 +5,21 @@ import org.apfloat.Apfloat;
 import ca.mcgill.mcb.pcingola.geneSets.GeneSet;
 import ca.mcgill.mcb.pcingola.geneSets.GeneSetsRanked;
 import ca.mcgill.mcb.pcingola.geneSets.Result;
-import ca.mcgill.mcb.pcingola.probablility.RankSumNoReplacementPdf;
+import ca.mcgill.mcb.pcingola.probablility.RankSumCdf;
+import ca.mcgill.mcb.pcingola.probablility.RankSumNoReplacementLogCdf;
 
 public class RankSumPValueGreedyAlgorithm extends EnrichmentAlgorithmGreedyVariableSize {
 
+	RankSumCdf rankSumCdf = RankSumNoReplacementLogCdf.get(); // Rank sum distribution used to calculate p-values
+
 	public RankSumPValueGreedyAlgorithm(GeneSetsRanked geneSets, int numberToSelect) {
 		super(geneSets, numberToSelect);
 	}
 
+	public RankSumCdf getRankSumCdf() {
+		return rankSumCdf;
+	}
+
 	/**
 	 * Create a new gene set using all gene sets and calculate pValue
 	 * @param geneSetList
@@ -21,10 +28,14 @@ public class RankSumPValueGreedyAlgorithm extends EnrichmentAlgorithmGreedyVaria
 	@Override
 	Apfloat pValue(GeneSet geneSet) {
 		long rankSum = geneSet.rankSum(); // Make sure rankSum is calculated
-		Apfloat pValue = RankSumNoReplacementPdf.get().cdf(((GeneSetsRanked) geneSets).getMaxRank(), geneSet.getRankedGenesCount(), rankSum);
+		Apfloat pValue = rankSumCdf.cdf(((GeneSetsRanked) geneSets).getMaxRank(), geneSet.getRankedGenesCount(), rankSum);
 		return pValue;
 	}
 
+	public void setRankSumCdf(RankSumCdf rankSumCdf) {
+		this.rankSumCdf = rankSumCdf;
+	}
+
 	/**
 	 * Stop criteria
 	 * @param result
@@ -7,6 +7,7 @@ import ca.mcgill.mcb.pcingola.util.Gpr;
 import ca.mcgill.mcb.pcingola.util.Timer;
 import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
 import ca.mcgill.mcb.pcingola.vcf.VcfGenotype;
+import ca.mcgill.mcb.pcingola.vcf.VcfGenotypeStore;
 
 /**
  * Simple test program
@@ -55,12 +56,14 @@ public class Genotypes implements Serializable {
 		VcfFileIterator vcf = new VcfFileIterator(vcfFileName);
 		int entryNum = 0;
 		for (VcfEntry ve : vcf) {
+			VcfGenotypeStore genotypes = ve.getGenotypeStore(); // Parse genotype codes without creating VcfGenotype objects
+
 			if (genotypeVectors == null) {
-				long mem = ((long) ve.getVcfGenotypes().size()) * numLines / 4L;
+				long mem = ((long) genotypes.size()) * numLines / 4L;
 				double memG = mem / (1024.0 * 1024 * 1024);
 				Timer.showStdErr(String.format("Initializing data structures. Expected memory consumption (lower bound): %d bytes (%.2f Gb).", mem, memG));
 
-				genotypeVectors = new GenotypeVector[ve.getVcfGenotypes().size()];
+				genotypeVectors = new GenotypeVector[genotypes.size()];
 				for (int i = 0; i < genotypeVectors.length; i++)
 					genotypeVectors[i] = new GenotypeVector(numLines);
 
@@ -68,13 +71,8 @@ public class Genotypes implements Serializable {
 				Timer.showStdErr("Loading: ");
 			}
 
-			//System.out.print(ve.getChromosomeName() + ":" + ve.getStart());
-			int sampleNum = 0;
-			for (VcfGenotype vg : ve) {
-				set(entryNum, sampleNum++, vg);
-				//System.out.print(String.format("%2d", code));
-			}
-			//System.out.println("");
+			for (int sampleNum = 0; sampleNum < genotypes.size(); sampleNum++)
+				set(entryNum, sampleNum, genotypes.getGenotypeCode(sampleNum));
 
 			entryNum++;
 			Gpr.showMark(entryNum, MARK);
@@ -107,6 +105,14 @@ public class Genotypes implements Serializable {
 		Gpr.toFileSerializeGz(fileName, this);
 	}
 
+	/**
+	 * Set an entry using a genotype code (see VcfGenotype.getGenotypeCode())
+	 * Note: Missing genotypes are converted to '0' (see GenotypeVector.set(sampleNum, vg))
+	 */
+	public void set(int entryNum, int sampleNum, int code) {
+		genotypeVectors[sampleNum].set(entryNum, code < 0 ? 0 : code);
+	}
+
 	/**
 	 * Set an entry
 	 * 
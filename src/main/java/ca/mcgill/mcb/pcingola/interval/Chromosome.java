@@ -1,6 +1,7 @@
 package ca.mcgill.mcb.pcingola.interval;
 
 import ca.mcgill.mcb.pcingola.binseq.DnaSequence;
+import ca.mcgill.mcb.pcingola.fileIterator.IndexedFastaFile;
 import ca.mcgill.mcb.pcingola.serializer.MarkerSerializer;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.util.Gpr;
@@ -68,6 +69,22 @@ public class Chromosome extends Marker {
 		return sequence.toString();
 	}
 
+	/**
+	 * Reference sequence in interval [start, end] (zero-based, closed interval, upper case)
+	 * If the chromosome's sequence is not in memory, bases are read from the
+	 * genome's indexed FASTA file (see Genome.setIndexedFasta)
+	 *
+	 * @return Sequence or null if not available
+	 */
+	public String getSequence(int start, int end) {
+		if (sequence != null) return sequence.getBases(start, end - start + 1).toUpperCase();
+
+		Genome genome = getGenome();
+		IndexedFastaFile indexedFasta = (genome != null ? genome.getIndexedFasta() : null);
+		if ((indexedFasta == null) || (indexedFasta.getEntry(id) == null)) return null;
+		return indexedFasta.getSequence(id, start, end).toUpperCase();
+	}
+
 	/**
 	 * Is this a mitochondrial chromosome?
 	 * Note: This is a wild guess just by looking at the name
@@ -211,11 +211,16 @@ public class Exon extends MarkerSeq implements MarkerWithFrame {
 	@Override
 	public Markers query(Marker marker) {
 		Markers markers = new Markers();
-		if ((spliceSiteAcceptor != null) && marker.intersects(spliceSiteAcceptor)) markers.add(spliceSiteAcceptor);
-		if ((spliceSiteDonor != null) && marker.intersects(spliceSiteDonor)) markers.add(spliceSiteDonor);
+		query(marker, markers);
 		return markers;
 	}
 
+	@Override
+	public void query(Marker marker, MarkerConsumer results) {
+		if ((spliceSiteAcceptor != null) && marker.intersects(spliceSiteAcceptor)) results.accept(spliceSiteAcceptor);
+		if ((spliceSiteDonor != null) && marker.intersects(spliceSiteDonor)) results.accept(spliceSiteDonor);
+	}
+
 	/**
 	 * Check that the base in the exon corresponds with the one in the SNP
 	 * @param seqChange
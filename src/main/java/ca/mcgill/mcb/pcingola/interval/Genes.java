@@ -131,6 +131,14 @@ public class Genes implements Iterable<Gene>, Serializable {
 		return genesById.values().iterator();
 	}
 
+	/**
+	 * Remove a gene from this collection
+	 * @param gene
+	 */
+	public void remove(Gene gene) {
+		genesById.remove(gene.getId());
+	}
+
 	public int size() {
 		return genesById.size();
 	}
@@ -12,7 +12,9 @@ import java.util.List;
 import java.util.Properties;
 
 import ca.mcgill.mcb.pcingola.fileIterator.FastaFileIterator;
+import ca.mcgill.mcb.pcingola.fileIterator.IndexedFastaFile;
 import ca.mcgill.mcb.pcingola.serializer.MarkerSerializer;
+import ca.mcgill.mcb.pcingola.snpEffect.AnnotationOptions;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.util.Gpr;
 
@@ -37,6 +39,8 @@ public class Genome extends Marker implements Serializable, Iterable<Chromosome>
 	HashMap<String, Chromosome> chromosomes;
 	Genes genes; // All genes, transcripts, exons, UTRs, CDS, etc.
 	Boolean codingInfo = null; // Do we have coding info from genes?
+	transient AnnotationOptions annotationOptions; // Options from the predictor using this genome (null if not set)
+	transient IndexedFastaFile indexedFasta; // Random access to the genome sequence (null if not set)
 
 	/**
 	 * Create a genome from a faidx file.
@@ -159,6 +163,14 @@ public class Genome extends Marker implements Serializable, Iterable<Chromosome>
 		return chr;
 	}
 
+	/**
+	 * Annotation options (if this genome is not used by any predictor, use default options)
+	 */
+	public AnnotationOptions getAnnotationOptions() {
+		AnnotationOptions annotationOptions = this.annotationOptions;
+		return annotationOptions != null ? annotationOptions : AnnotationOptions.DEFAULT;
+	}
+
 	public String[] getChromoFastaFiles() {
 		return chromoFastaFiles;
 	}
@@ -207,6 +219,25 @@ public class Genome extends Marker implements Serializable, Iterable<Chromosome>
 		return fastaDir;
 	}
 
+	public IndexedFastaFile getIndexedFasta() {
+		return indexedFasta;
+	}
+
+	/**
+	 * Reference sequence for a marker (positive strand, upper case)
+	 * Bases are read from the chromosome's sequence (if loaded) or from the indexed FASTA file (see setIndexedFasta)
+	 *
+	 * @return Sequence or null if not available
+	 */
+	public String getSequence(Marker marker) {
+		Chromosome chromosome = getChromosome(marker.getChromosomeName());
+		if (chromosome != null) return chromosome.getSequence(marker.getStart(), marker.getEnd());
+
+		// Chromosome not in this genome: Try indexed FASTA file
+		if ((indexedFasta == null) || (indexedFasta.getEntry(marker.getChromosomeName()) == null)) return null;
+		return indexedFasta.getSequence(marker.getChromosomeName(), marker.getStart(), marker.getEnd()).toUpperCase();
+	}
+
 	public Genes getGenes() {
 		return genes;
 	}
@@ -408,6 +439,34 @@ public class Genome extends Marker implements Serializable, Iterable<Chromosome>
 		;
 	}
 
+	/**
+	 * Options from the predictor using this genome (see SnpEffectPredictor.setAnnotationOptions())
+	 */
+	public void setAnnotationOptions(AnnotationOptions annotationOptions) {
+		this.annotationOptions = annotationOptions;
+	}
+
+	/**
+	 * Set coding info (e.g. when genes are not loaded yet)
+	 * @param codingInfo
+	 */
+	public void setCodingInfo(boolean codingInfo) {
+		this.codingInfo = codingInfo;
+	}
+
+	/**
+	 * Use an indexed FASTA file to access the genome sequence (the sequence is not loaded into memory)
+	 * @param fastaFile : Path to a FASTA file (plain or BGZF compressed). The index ('.fai') is created if it doesn't exist
+	 */
+	public void setIndexedFasta(String fastaFile) {
+		setIndexedFasta(new IndexedFastaFile(fastaFile));
+	}
+
+	public void setIndexedFasta(IndexedFastaFile indexedFasta) {
+		if ((this.indexedFasta != null) && (this.indexedFasta != indexedFasta)) this.indexedFasta.close();
+		this.indexedFasta = indexedFasta;
+	}
+
 	/**
 	 * Show number of genes, transcripts & exons 
 	 * @return true : If there is an error condition (most exons do not have sequences)
@@ -19,8 +19,8 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 
 	private static final long serialVersionUID = 1636197649250882952L;
 	HashMap<String, T> subIntervals;
-	ArrayList<T> sorted;
-	ArrayList<T> sortedStrand;
+	volatile ArrayList<T> sorted; // Lazy caches: Built into a local list and then published (no locking needed)
+	volatile ArrayList<T> sortedStrand;
 
 	public IntervalAndSubIntervals() {
 		super();
@@ -112,17 +112,22 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 	@Override
 	public Markers query(Marker marker) {
 		Markers markers = new Markers();
+		query(marker, markers);
+		return markers;
+	}
 
+	/**
+	 * Query all genomic regions that intersect 'marker'
+	 * Results are sent to 'results' (no intermediate collections are created)
+	 */
+	@Override
+	public void query(Marker marker, MarkerConsumer results) {
 		for (Marker m : this) {
 			if (m.intersects(marker)) {
-				markers.add(m);
-
-				Markers subMarkers = m.query(marker);
-				if (subMarkers != null) markers.add(subMarkers);
+				results.accept(m);
+				m.query(marker, results);
 			}
 		}
-
-		return markers;
 	}
 
 	/**
@@ -182,11 +187,15 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 	 * Return a collection of sub intervals sorted by natural order
 	 * @return
 	 */
-	public synchronized List<T> sorted() {
+	public List<T> sorted() {
+		ArrayList<T> sorted = this.sorted;
 		if (sorted != null) return sorted;
+
 		sorted = new ArrayList<T>();
 		sorted.addAll(subIntervals.values());
 		Collections.sort(sorted);
+
+		this.sorted = sorted;
 		return sorted;
 	}
 
@@ -195,7 +204,8 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 	 * by reverse end position (if strans < 0) 
 	 * @return
 	 */
-	public synchronized List<T> sortedStrand() {
+	public List<T> sortedStrand() {
+		ArrayList<T> sortedStrand = this.sortedStrand;
 		if (sortedStrand != null) return sortedStrand;
 
 		sortedStrand = new ArrayList<T>();
@@ -204,6 +214,7 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 		if (strand >= 0) Collections.sort(sortedStrand, new IntervalComparatorByStart()); // Sort by start position 
 		else Collections.sort(sortedStrand, new IntervalComparatorByEnd(true)); // Sort by end position (reversed) 
 
+		this.sortedStrand = sortedStrand;
 		return sortedStrand;
 	}
 
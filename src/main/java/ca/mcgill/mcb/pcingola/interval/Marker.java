@@ -519,6 +519,13 @@ public class Marker extends Interval implements TxtSerializable {
 		return null;
 	}
 
+	/**
+	 * Query all genomic regions that intersect 'marker' (this makes sense in Gene, Transcript, Exon, etc.)
+	 * Results are sent to 'results' (no intermediate collections are created)
+	 */
+	public void query(Marker marker, MarkerConsumer results) {
+	}
+
 	/**
 	 * Parse a line (form a file)
 	 * Format: "chromosome \t start \t end \t id \n" 
@@ -0,0 +1,18 @@
+package ca.mcgill.mcb.pcingola.interval;
+
+/**
+ * Receives markers (e.g. results from an interval query) one by one.
+ * 
+ * Querying using a consumer avoids creating intermediate 
+ * collections (Markers) for each query.
+ * 
+ * @author pcingola
+ */
+public interface MarkerConsumer {
+
+	/**
+	 * Process a marker
+	 */
+	public void accept(Marker marker);
+
+}
@@ -21,7 +21,7 @@ import ca.mcgill.mcb.pcingola.util.Gpr;
  * 
  * @author pcingola
  */
-public class Markers implements Serializable, Collection<Marker> {
+public class Markers implements Serializable, Collection<Marker>, MarkerConsumer {
 
 	private static final long serialVersionUID = 259791388087691277L;
 	protected ArrayList<Marker> markers;
@@ -75,6 +75,14 @@ public class Markers implements Serializable, Collection<Marker> {
 		return markers.add(marker);
 	}
 
+	/**
+	 * Add a marker (used when this collection is the result buffer of a query)
+	 */
+	@Override
+	public void accept(Marker marker) {
+		markers.add(marker);
+	}
+
 	/**
 	 * Add all intervals
 	 * @param markersToAdd
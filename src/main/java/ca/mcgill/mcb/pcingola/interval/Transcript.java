@@ -10,7 +10,7 @@ import ca.mcgill.mcb.pcingola.serializer.MarkerSerializer;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.ErrorWarningType;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffects;
-import ca.mcgill.mcb.pcingola.snpEffect.Config;
+import ca.mcgill.mcb.pcingola.snpEffect.AnnotationOptions;
 import ca.mcgill.mcb.pcingola.stats.ObservedOverExpectedCpG;
 import ca.mcgill.mcb.pcingola.util.Gpr;
 import ca.mcgill.mcb.pcingola.util.GprSeq;
@@ -37,18 +37,17 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	private static final long serialVersionUID = -2665025617916107311L;
 
 	boolean proteinCoding; // Is this a protein-coding transcript?
-	int cdsStart, cdsEnd;
 	String bioType = ""; // Transcript biotype
-	String cds; // Coding sequence
+	volatile String cds; // Coding sequence
 	String protein; // Protein sequence
 	ArrayList<SpliceSiteBranch> spliceBranchSites; // Branch splice sites
 	ArrayList<Utr> utrs; // UTRs
 	ArrayList<Cds> cdss; // CDS information
-	ArrayList<Intron> introns; // Intron markers
+	volatile ArrayList<Intron> introns; // Intron markers
 	Upstream upstream; // Upstream interval
 	Downstream downstream; // Downstream interval
-	Exon firstCodingExon; // First coding exon. I.e. where transcription start site (TSS) is.
-	int cds2pos[], aa2pos[];
+	volatile int cds2pos[], aa2pos[];
+	transient volatile TranscriptCoordinates coords; // Precomputed coordinates: CDS start / end, exon offsets, first coding exon, etc.
 
 	public Transcript() {
 		super();
@@ -68,17 +67,18 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 *
 	 * @returns An array mapping 'pos[aaNumber] = chromosmalPos'
 	 */
-	public synchronized int[] aaNumber2Pos() {
+	public int[] aaNumber2Pos() {
+		int aa2pos[] = this.aa2pos;
 		if (aa2pos != null) return aa2pos;
 
-		calcCdsStartEnd();
+		TranscriptCoordinates coords = coords();
 
 		aa2pos = new int[protein().length()];
 		for (int i = 0; i < aa2pos.length; i++)
 			aa2pos[i] = -1;
 
-		int cdsMin = Math.min(cdsStart, cdsEnd);
-		int cdsMax = Math.max(cdsStart, cdsEnd);
+		int cdsMin = Math.min(coords.getCdsStart(), coords.getCdsEnd());
+		int cdsMax = Math.max(coords.getCdsStart(), coords.getCdsEnd());
 
 		// For each exon, add CDS position to array
 		int aaBaseNum = 0;
@@ -89,6 +89,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 				if ((cdsMin <= pos) && (pos <= cdsMax)) aa2pos[aaBaseNum++] = pos;
 		}
 
+		this.aa2pos = aa2pos;
 		return aa2pos;
 	}
 
@@ -98,7 +99,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 */
 	public void add(Cds cdsInt) {
 		cdss.add(cdsInt);
-		cds = null;
+		resetCdsCache();
 	}
 
 	/**
@@ -115,7 +116,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 */
 	public void add(Utr utr) {
 		utrs.add(utr);
-		cds = null;
+		resetCdsCache();
 	}
 
 	/**
@@ -266,39 +267,14 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 *
 	 * @returns Base number or '-1' if it does not map to a coding base
 	 */
-	public synchronized int baseNumberCds(int pos, boolean usePrevBaseIntron) {
+	public int baseNumberCds(int pos, boolean usePrevBaseIntron) {
 		// Doesn't hit this transcript?
 		if (!intersects(pos)) return -1;
 
 		// Is it in UTR instead of CDS?
 		if (isUtr(pos)) return -1;
 
-		// Calculate cdsStart and cdsEnd (if not already done)
-		calcCdsStartEnd();
-
-		// All exons..
-		int firstCdsBaseInExon = 0; // Where the exon maps to the CDS (i.e. which CDS base number does the first base in this exon maps to).
-		for (Exon eint : sortedStrand()) {
-			if (eint.intersects(pos)) {
-				int cdsBaseInExon; // cdsBaseInExon: base number relative to the beginning of the coding part of this exon (i.e. excluding 5'UTRs)
-				if (strand >= 0) cdsBaseInExon = pos - Math.max(eint.getStart(), cdsStart);
-				else cdsBaseInExon = Math.min(eint.getEnd(), cdsStart) - pos;
-
-				cdsBaseInExon = Math.max(0, cdsBaseInExon);
-
-				return firstCdsBaseInExon + cdsBaseInExon;
-			} else {
-				// Before exon begins?
-				if ((isStrandPlus() && (pos < eint.getStart())) // Before exon begins (positive strand)?
-						|| (isStrandMinus() && (pos > eint.getEnd()))) // Before exon begins (negative strand)?
-					return firstCdsBaseInExon - (usePrevBaseIntron ? 1 : 0);
-			}
-
-			if (isStrandPlus()) firstCdsBaseInExon += Math.max(0, eint.getEnd() - Math.max(eint.getStart(), cdsStart) + 1);
-			else firstCdsBaseInExon += Math.max(0, Math.min(cdsStart, eint.getEnd()) - eint.getStart() + 1);
-		}
-
-		return firstCdsBaseInExon - 1;
+		return coords().baseNumberCds(pos, usePrevBaseIntron);
 	}
 
 	/**
@@ -317,17 +293,18 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 *
 	 * @returns An array mapping 'pos[cdsBaseNumber] = chromosmalPos'
 	 */
-	public synchronized int[] baseNumberCds2Pos() {
+	public int[] baseNumberCds2Pos() {
+		int cds2pos[] = this.cds2pos;
 		if (cds2pos != null) return cds2pos;
 
-		calcCdsStartEnd();
+		TranscriptCoordinates coords = coords();
 
 		cds2pos = new int[cds().length()];
 		for (int i = 0; i < cds2pos.length; i++)
 			cds2pos[i] = -1;
 
-		int cdsMin = Math.min(cdsStart, cdsEnd);
-		int cdsMax = Math.max(cdsStart, cdsEnd);
+		int cdsMin = Math.min(coords.getCdsStart(), coords.getCdsEnd());
+		int cdsMax = Math.max(coords.getCdsStart(), coords.getCdsEnd());
 
 		// For each exon, add CDS position to array
 		int cdsBaseNum = 0;
@@ -338,6 +315,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 				if ((cdsMin <= pos) && (pos <= cdsMax)) cds2pos[cdsBaseNum++] = pos;
 		}
 
+		this.cds2pos = cds2pos;
 		return cds2pos;
 	}
 
@@ -346,24 +324,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @param pos
 	 * @return
 	 */
-	public synchronized int baseNumberPreMRna(int pos) {
-		int count = 0;
-		for (Exon eint : sortedStrand()) {
-			if (eint.intersects(pos)) {
-				// Intersect this exon? Calculate the number of bases from the beginning
-				int dist = 0;
-				if (isStrandPlus()) dist = pos - eint.getStart();
-				else dist = eint.getEnd() - pos;
-
-				// Sanity check
-				if (dist < 0) throw new RuntimeException("Negative distance for position " + pos + ". This should never happen!\n" + this);
-
-				return count + dist;
-			}
-
-			count += eint.size();
-		}
-		return -1;
+	public int baseNumberPreMRna(int pos) {
+		return coords().baseNumberPreMRna(pos);
 	}
 
 	/**
@@ -371,74 +333,26 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @param baseNum
 	 * @return
 	 */
-	public synchronized int baseNumberPreMRna2Pos(int baseNum) {
-		for (Exon eint : sortedStrand()) {
-			if (eint.size() >= baseNum) return eint.getStart() + baseNum;
-			baseNum -= eint.size();
-		}
-
-		return -1;
+	public int baseNumberPreMRna2Pos(int baseNum) {
+		return coords().baseNumberPreMRna2Pos(baseNum);
 	}
 
 	/**
-	 * Calculate CDS start and CDS end
+	 * Create (or re-create) precomputed coordinates.
+	 * Note: Coordinates are also created on demand, but creating them in advance
+	 * (e.g. when the genome is loaded) avoids doing it while annotating.
 	 */
-	synchronized void calcCdsStartEnd() {
-		// Do we need to calculate these values?
-		if (cdsStart < 0) {
-			// Calculate coding start (after 5 prime UTR)
-
-			if (utrs.isEmpty()) {
-				// No UTRs => Use all exons
-				cdsStart = (isStrandPlus() ? end : start); // cdsStart is the position of the first base in the CDS (i.e. the first base after all 5'UTR)
-				cdsEnd = (isStrandPlus() ? start : end); // cdsEnd is the position of the last base in the CDS (i.e. the first base before all 3'UTR)
-
-				for (Exon ex : this) {
-					if (isStrandPlus()) {
-						cdsStart = Math.min(cdsStart, ex.getStart());
-						cdsEnd = Math.max(cdsEnd, ex.getEnd());
-					} else {
-						cdsStart = Math.max(cdsStart, ex.getEnd());
-						cdsEnd = Math.min(cdsEnd, ex.getStart());
-					}
-				}
-			} else {
-				// We have to take into account UTRs
-				cdsStart = (isStrandPlus() ? start : end); // cdsStart is the position of the first base in the CDS (i.e. the first base after all 5'UTR)
-				cdsEnd = (isStrandPlus() ? end : start); // cdsEnd is the position of the last base in the CDS (i.e. the first base before all 3'UTR)
-				int cdsStartNotExon = cdsStart;
-
-				for (Utr utr : utrs) {
-					if (utr instanceof Utr5prime) {
-						if (isStrandPlus()) cdsStart = Math.max(cdsStart, utr.getEnd() + 1);
-						else cdsStart = Math.min(cdsStart, utr.getStart() - 1);
-					} else if (utr instanceof Utr3prime) {
-						if (isStrandPlus()) cdsEnd = Math.min(cdsEnd, utr.getStart() - 1);
-						else cdsEnd = Math.max(cdsEnd, utr.getEnd() + 1);
-					}
-				}
-
-				// Make sure cdsStart and cdsEnd lie within an exon
-				if (isStrandPlus()) {
-					cdsStart = firstExonPositionAfter(cdsStart);
-					cdsEnd = lastExonPositionBefore(cdsEnd);
-				} else {
-					cdsStart = lastExonPositionBefore(cdsStart);
-					cdsEnd = firstExonPositionAfter(cdsEnd);
-				}
-
-				// We were not able to find cdsStart & cdsEnd within exon limits.
-				// Probably there is something wrong with the database and the transcript does
-				// not have a single coding base (e.g. all of it is UTR).
-				if (cdsStart < 0 || cdsEnd < 0) cdsStart = cdsEnd = cdsStartNotExon;
-			}
-		}
+	public TranscriptCoordinates buildCoordinates() {
+		TranscriptCoordinates coords = new TranscriptCoordinates(this);
+		this.coords = coords;
+		return coords;
 	}
 
 	/**
 	 * Retrieve coding sequence
 	 */
-	public synchronized String cds() {
+	public String cds() {
+		String cds = this.cds;
 		if (cds != null) return cds;
 
 		// Concatenate all exons
@@ -472,6 +386,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 			else cds = sequence.substring(utr5len, subEnd);
 		}
 
+		this.cds = cds;
 		return cds;
 	}
 
@@ -532,6 +447,17 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		return ret;
 	}
 
+	/**
+	 * Precomputed coordinates (lazy init).
+	 * Note: No locking is needed, coordinates are immutable. In the worst case,
+	 * two threads create them at the same time and one of them is discarded.
+	 */
+	TranscriptCoordinates coords() {
+		TranscriptCoordinates coords = this.coords;
+		if (coords != null) return coords;
+		return buildCoordinates();
+	}
+
 	/**
 	 * Calculate CpG bias: number of CpG / expected[CpG]
 	 * @return
@@ -776,7 +702,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 *
 	 * @return
 	 */
-	public synchronized boolean frameCorrection() {
+	public boolean frameCorrection() {
 		// Copy frame information form CDSs to Exons (if missing)
 		frameFromCds();
 
@@ -804,7 +730,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * We add a 'fake' UTR5 to compensate for reading frame.
 	 *
      */
-    synchronized boolean frameCorrectionFirstCodingExon() {
+    boolean frameCorrectionFirstCodingExon() {
         List<Exon> exons = sortedStrand();
 
 		// No exons? Nothing to do
@@ -841,7 +767,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	/**
 	 * Correct exons according to frame information
 	 */
-	synchronized boolean frameCorrectionNonFirstCodingExon() {
+	boolean frameCorrectionNonFirstCodingExon() {
 		boolean corrected = false;
 
 		// Concatenate all exons to create a CDS
@@ -990,13 +916,11 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	}
 
 	public int getCdsEnd() {
-		calcCdsStartEnd();
-		return cdsEnd;
+		return coords().getCdsEnd();
 	}
 
 	public int getCdsStart() {
-		calcCdsStartEnd();
-		return cdsStart;
+		return coords().getCdsStart();
 	}
 
 	public Downstream getDownstream() {
@@ -1007,18 +931,12 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * Get first coding exon
 	 * @return
 	 */
-	public synchronized Exon getFirstCodingExon() {
-		if (firstCodingExon == null) {
-			// Get transcription start position
-			long cstart = getCdsStart();
-
-			// Pick exon intersecting cdsStart (TSS)
-			for (Exon exon : sortedStrand())
-				if (exon.intersects(cstart)) firstCodingExon = exon;
+	public Exon getFirstCodingExon() {
+		// Exon intersecting cdsStart (TSS)
+		Exon firstCodingExon = coords().getFirstCodingExon();
 
-			// Sanity check
-			if (firstCodingExon == null) throw new RuntimeException("Error: Cannot find first coding exon for transcript:\n" + this);
-		}
+		// Sanity check
+		if (firstCodingExon == null) throw new RuntimeException("Error: Cannot find first coding exon for transcript:\n" + this);
 		return firstCodingExon;
 	}
 
@@ -1031,7 +949,6 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @return
 	 */
 	public Marker getTss() {
-		calcCdsStartEnd();
 		Marker tss = new Marker(this, start + (isStrandPlus() ? 0 : -1), start + (isStrandPlus() ? 1 : 0), 1, "TSS_" + id);
 		return tss;
 	}
@@ -1070,7 +987,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * Get all introns (lazy init)
 	 * @return
 	 */
-	public synchronized ArrayList<Intron> introns() {
+	public ArrayList<Intron> introns() {
+		ArrayList<Intron> introns = this.introns;
 		if (introns == null) {
 			introns = new ArrayList<Intron>();
 
@@ -1103,6 +1021,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 
 				exBefore = ex;
 			}
+
+			this.introns = introns;
 		}
 		return introns;
 	}
@@ -1124,6 +1044,15 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		return (isStrandPlus() ? (next.getStart() - exon.getEnd()) : (exon.getStart() - next.getEnd())) - 1;
 	}
 
+	/**
+	 * Exons changed: Precomputed coordinates are no longer valid
+	 */
+	@Override
+	protected void invalidateSorted() {
+		super.invalidateSorted();
+		coords = null;
+	}
+
 	@Override
 	protected boolean isAdjustIfParentDoesNotInclude(Marker parent) {
 		return true;
@@ -1135,14 +1064,13 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @return
 	 */
 	boolean isCds(Variant seqChange) {
-		calcCdsStartEnd();
-
-		int cs = cdsStart;
-		int ce = cdsEnd;
+		TranscriptCoordinates coords = coords();
+		int cs = coords.getCdsStart();
+		int ce = coords.getCdsEnd();
 
 		if (isStrandMinus()) {
-			cs = cdsEnd;
-			ce = cdsStart;
+			cs = coords.getCdsEnd();
+			ce = coords.getCdsStart();
 		}
 
 		return (seqChange.getEnd() >= cs) && (seqChange.getStart() <= ce);
@@ -1153,7 +1081,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @return true on Error
 	 */
 	public boolean isErrorProteinLength() {
-		if (!Config.get().isTreatAllAsProteinCoding() && !isProteinCoding()) return false;
+		if (!isTreatAllAsProteinCoding() && !isProteinCoding()) return false;
 		cds();
 		return (cds.length() % 3) != 0;
 	}
@@ -1163,7 +1091,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @return
 	 */
 	public boolean isErrorStartCodon() {
-		if (!Config.get().isTreatAllAsProteinCoding() && !isProteinCoding()) return false;
+		if (!isTreatAllAsProteinCoding() && !isProteinCoding()) return false;
 
 		// Not even one codon in this protein? Error
 		String cds = cds();
@@ -1178,7 +1106,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @return true on Error
 	 */
 	public boolean isErrorStopCodonsInCds() {
-		if (!Config.get().isTreatAllAsProteinCoding() && !isProteinCoding()) return false;
+		if (!isTreatAllAsProteinCoding() && !isProteinCoding()) return false;
 
 		// Get protein sequence
 		String prot = protein();
@@ -1204,6 +1132,16 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		return proteinCoding;
 	}
 
+	/**
+	 * Should we calculate effects as if this transcript was protein coding?
+	 * Note: Options are taken from the genome (i.e. from the predictor using it)
+	 */
+	boolean isTreatAllAsProteinCoding() {
+		Genome genome = getGenome();
+		AnnotationOptions options = (genome != null ? genome.getAnnotationOptions() : AnnotationOptions.DEFAULT);
+		return options.isTreatAllAsProteinCoding();
+	}
+
 	/**
 	 * Does this 'pos' hit a UTR?
 	 * @param pos
@@ -1222,7 +1160,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @return
 	 */
 	public boolean isWarningStopCodon() {
-		if (!Config.get().isTreatAllAsProteinCoding() && !isProteinCoding()) return false;
+		if (!isTreatAllAsProteinCoding() && !isProteinCoding()) return false;
 
 		// Not even one codon in this protein? Error
 		String cds = cds();
@@ -1293,7 +1231,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 */
 	public String protein() {
 		if (protein == null) {
-			if (!Config.get().isTreatAllAsProteinCoding() && !isProteinCoding()) protein = "";
+			if (!isTreatAllAsProteinCoding() && !isProteinCoding()) protein = "";
 			else protein = codonTable().aa(cds());
 		}
 		return protein;
@@ -1305,29 +1243,38 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	@Override
 	public Markers query(Marker marker) {
 		Markers markers = new Markers();
+		query(marker, markers);
+		return markers;
+	}
 
+	/**
+	 * Query all genomic regions that intersect 'marker'
+	 * Results are sent to 'results' (no intermediate collections are created)
+	 */
+	@Override
+	public void query(Marker marker, MarkerConsumer results) {
 		// Add exons
 		for (Exon e : this)
 			if (e.intersects(marker)) {
-				markers.add(e);
-				markers.add(e.query(marker));
+				results.accept(e);
+				e.query(marker, results);
 			}
 
 		// Ad splice sites
 		for (SpliceSiteBranch sb : spliceBranchSites)
-			if (sb.intersects(marker)) markers.add(sb);
+			if (sb.intersects(marker)) results.accept(sb);
 
 		// Ad UTRs
 		for (Utr u : utrs)
-			if (u.intersects(marker)) markers.add(u);
+			if (u.intersects(marker)) results.accept(u);
 
 		// Add CDSs
 		for (Cds m : cdss)
-			if (m.intersects(marker)) markers.add(m);
+			if (m.intersects(marker)) results.accept(m);
 
 		// Add introns
 		for (Intron m : introns())
-			if (m.intersects(marker)) markers.add(m);
+			if (m.intersects(marker)) results.accept(m);
 
 		// Note: Upstram and Downstream are technically NOT in the
 		// transcript. So we should not be returning them
@@ -1335,8 +1282,6 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		//		// Add upstream & downstream
 		//		if (upstream.intersects(marker)) markers.add(upstream);
 		//		if (downstream.intersects(marker)) markers.add(downstream);
-
-		return markers;
 	}
 
 	/**
@@ -1380,9 +1325,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	}
 
 	public void resetCdsCache() {
-		cdsStart = -1;
-		cdsEnd = -1;
-		firstCodingExon = null;
+		coords = null;
 		cds = null;
 		cds2pos = null;
 	}
@@ -1448,7 +1391,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		//---
 		// Analyze non-coding transcripts (or 'interval' seqChanges)
 		//---
-		if ((!Config.get().isTreatAllAsProteinCoding() && !isProteinCoding()) || seqChange.isInterval() || !seqChange.isVariant()) {
+		if ((!isTreatAllAsProteinCoding() && !isProteinCoding()) || seqChange.isInterval() || !seqChange.isVariant()) {
 			// Do we have exon information for this transcript?
 			if (!subintervals().isEmpty()) {
 				// Add all exons
@@ -0,0 +1,214 @@
+package ca.mcgill.mcb.pcingola.interval;
+
+import java.util.List;
+
+/**
+ * Precomputed (immutable) coordinate model of a transcript.
+ *
+ * Exons are stored in strand order (as in Transcript.sortedStrand()) using
+ * primitive arrays, together with cumulative CDS and pre-mRNA offsets, so
+ * that mapping genomic positions to CDS / cDNA base numbers is a binary
+ * search instead of a linear scan.
+ *
+ * Objects are never modified after creation, so they can be shared by
+ * several threads without any locking. If a transcript changes (e.g. exons
+ * are added or corrected), a new object is created.
+ *
+ * @author pcingola
+ */
+public class TranscriptCoordinates {
+
+	final boolean strandPlus;
+	final int cdsStart, cdsEnd; // Same as Transcript.getCdsStart() and Transcript.getCdsEnd()
+	final Exon exons[]; // Exons sorted in strand order
+	final int exonStarts[], exonEnds[];
+	final int exonLimits[]; // Monotonic (non-decreasing) key used for binary search (see findExon)
+	final int cdsOffsets[]; // CDS base number of the first coding base in each exon. Last item is the total number of coding bases
+	final int mrnaOffsets[]; // Pre-mRNA base number of the first base in each exon. Last item is the total exons length
+	final Exon firstCodingExon;
+
+	public TranscriptCoordinates(Transcript tr) {
+		strandPlus = tr.isStrandPlus();
+
+		// CDS start & end
+		int cdsStartEnd[] = calcCdsStartEnd(tr);
+		cdsStart = cdsStartEnd[0];
+		cdsEnd = cdsStartEnd[1];
+
+		// Exons in strand order
+		List<Exon> sorted = tr.sortedStrand();
+		int n = sorted.size();
+		exons = sorted.toArray(new Exon[n]);
+		exonStarts = new int[n];
+		exonEnds = new int[n];
+		exonLimits = new int[n];
+		cdsOffsets = new int[n + 1];
+		mrnaOffsets = new int[n + 1];
+
+		Exon firstCodingExon = null;
+		int limit = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			Exon ex = exons[i];
+			int start = ex.getStart(), end = ex.getEnd();
+			exonStarts[i] = start;
+			exonEnds[i] = end;
+
+			// Exons are sorted by start (positive strand) or by reverse end (negative strand)
+			// Note: Exons might overlap (e.g. errors in the database), so we use the cumulative max/min
+			limit = Math.max(limit, strandPlus ? end : -start);
+			exonLimits[i] = limit;
+
+			// Cumulative offsets
+			if (strandPlus) cdsOffsets[i + 1] = cdsOffsets[i] + Math.max(0, end - Math.max(start, cdsStart) + 1);
+			else cdsOffsets[i + 1] = cdsOffsets[i] + Math.max(0, Math.min(cdsStart, end) - start + 1);
+			mrnaOffsets[i + 1] = mrnaOffsets[i] + ex.size();
+
+			// First coding exon: The one intersecting cdsStart
+			if (ex.intersects(cdsStart)) firstCodingExon = ex;
+		}
+		this.firstCodingExon = firstCodingExon;
+	}
+
+	/**
+	 * Calculate CDS start and CDS end
+	 * @return An array {cdsStart, cdsEnd}
+	 */
+	static int[] calcCdsStartEnd(Transcript tr) {
+		boolean plus = tr.isStrandPlus();
+		int cdsStart, cdsEnd;
+
+		if (tr.utrs.isEmpty()) {
+			// No UTRs => Use all exons
+			cdsStart = (plus ? tr.getEnd() : tr.getStart()); // cdsStart is the position of the first base in the CDS (i.e. the first base after all 5'UTR)
+			cdsEnd = (plus ? tr.getStart() : tr.getEnd()); // cdsEnd is the position of the last base in the CDS (i.e. the first base before all 3'UTR)
+
+			for (Exon ex : tr) {
+				if (plus) {
+					cdsStart = Math.min(cdsStart, ex.getStart());
+					cdsEnd = Math.max(cdsEnd, ex.getEnd());
+				} else {
+					cdsStart = Math.max(cdsStart, ex.getEnd());
+					cdsEnd = Math.min(cdsEnd, ex.getStart());
+				}
+			}
+		} else {
+			// We have to take into account UTRs
+			cdsStart = (plus ? tr.getStart() : tr.getEnd()); // cdsStart is the position of the first base in the CDS (i.e. the first base after all 5'UTR)
+			cdsEnd = (plus ? tr.getEnd() : tr.getStart()); // cdsEnd is the position of the last base in the CDS (i.e. the first base before all 3'UTR)
+			int cdsStartNotExon = cdsStart;
+
+			for (Utr utr : tr.utrs) {
+				if (utr instanceof Utr5prime) {
+					if (plus) cdsStart = Math.max(cdsStart, utr.getEnd() + 1);
+					else cdsStart = Math.min(cdsStart, utr.getStart() - 1);
+				} else if (utr instanceof Utr3prime) {
+					if (plus) cdsEnd = Math.min(cdsEnd, utr.getStart() - 1);
+					else cdsEnd = Math.max(cdsEnd, utr.getEnd() + 1);
+				}
+			}
+
+			// Make sure cdsStart and cdsEnd lie within an exon
+			if (plus) {
+				cdsStart = tr.firstExonPositionAfter(cdsStart);
+				cdsEnd = tr.lastExonPositionBefore(cdsEnd);
+			} else {
+				cdsStart = tr.lastExonPositionBefore(cdsStart);
+				cdsEnd = tr.firstExonPositionAfter(cdsEnd);
+			}
+
+			// We were not able to find cdsStart & cdsEnd within exon limits.
+			// Probably there is something wrong with the database and the transcript does
+			// not have a single coding base (e.g. all of it is UTR).
+			if (cdsStart < 0 || cdsEnd < 0) cdsStart = cdsEnd = cdsStartNotExon;
+		}
+
+		return new int[] { cdsStart, cdsEnd };
+	}
+
+	/**
+	 * Calculate base number in a CDS where 'pos' maps
+	 * Note: Same as Transcript.baseNumberCds(), but 'pos' is assumed to be within the transcript and not in a UTR
+	 */
+	public int baseNumberCds(int pos, boolean usePrevBaseIntron) {
+		int i = findExon(pos);
+		if (i >= exons.length) return cdsOffsets[exons.length] - 1; // After last exon
+
+		if (!intersects(i, pos)) return cdsOffsets[i] - (usePrevBaseIntron ? 1 : 0); // Before exon 'i' (i.e. in an intron)
+
+		// Base number relative to the beginning of the coding part of this exon (i.e. excluding 5'UTRs)
+		int cdsBaseInExon;
+		if (strandPlus) cdsBaseInExon = pos - Math.max(exonStarts[i], cdsStart);
+		else cdsBaseInExon = Math.min(exonEnds[i], cdsStart) - pos;
+
+		return cdsOffsets[i] + Math.max(0, cdsBaseInExon);
+	}
+
+	/**
+	 * Calculate distance from transcript start to a position (in pre-mRNA coordinates, i.e. exons only)
+	 * @return Base number or -1 if 'pos' is not in an exon
+	 */
+	public int baseNumberPreMRna(int pos) {
+		for (int i = findExon(pos); i < exons.length; i++) {
+			if (intersects(i, pos)) return mrnaOffsets[i] + (strandPlus ? pos - exonStarts[i] : exonEnds[i] - pos);
+
+			// No other exon can intersect 'pos'
+			if (strandPlus ? exonStarts[i] > pos : exonEnds[i] < pos) break;
+		}
+		return -1;
+	}
+
+	/**
+	 * Convert a 'cDNA' base number to a genomic coordinate
+	 * Note: Same as Transcript.baseNumberPreMRna2Pos()
+	 */
+	public int baseNumberPreMRna2Pos(int baseNum) {
+		// Find first exon such that 'mrnaOffsets[i + 1] >= baseNum'
+		int lo = 0, hi = exons.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (mrnaOffsets[mid + 1] >= baseNum) hi = mid;
+			else lo = mid + 1;
+		}
+
+		if (lo >= exons.length) return -1;
+		return exonStarts[lo] + baseNum - mrnaOffsets[lo];
+	}
+
+	/**
+	 * Find the index of the first exon (in strand order) that is not
+	 * completely before 'pos'. I.e. either 'pos' is in the exon or it is
+	 * before the exon (in an intron or 5' of the transcript)
+	 *
+	 * @return Exon index or 'exons.length' if 'pos' is after all exons
+	 */
+	int findExon(int pos) {
+		int key = strandPlus ? pos : -pos;
+		int lo = 0, hi = exons.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (exonLimits[mid] >= key) hi = mid;
+			else lo = mid + 1;
+		}
+		return lo;
+	}
+
+	public int getCdsEnd() {
+		return cdsEnd;
+	}
+
+	public int getCdsStart() {
+		return cdsStart;
+	}
+
+	public Exon getFirstCodingExon() {
+		return firstCodingExon;
+	}
+
+	boolean intersects(int i, int pos) {
+		return (exonStarts[i] <= pos) && (pos <= exonEnds[i]);
+	}
+
+	public int numExons() {
+		return exons.length;
+	}
+}
@@ -2,12 +2,13 @@ package ca.mcgill.mcb.pcingola.interval.tree;
 
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.MarkerConsumer;
 import ca.mcgill.mcb.pcingola.interval.Markers;
 
 /**
@@ -16,16 +17,28 @@ import ca.mcgill.mcb.pcingola.interval.Markers;
  * @author pcingola
  */
 @SuppressWarnings("serial")
-public class IntervalForest implements Serializable, Iterable<IntervalTree> {
+public class IntervalForest implements Serializable, Iterable<Itree> {
 
-	HashMap<String, IntervalTree> forest;
+	boolean treeArray = false; // Use array based interval trees (IntervalTreeArray) instead of IntervalTree
+	ConcurrentHashMap<String, Itree> forest; // Note: Trees can be replaced while other threads are querying (see putTree)
 
 	public IntervalForest() {
-		forest = new HashMap<String, IntervalTree>();
+		forest = new ConcurrentHashMap<String, Itree>();
+	}
+
+	public IntervalForest(boolean treeArray) {
+		this.treeArray = treeArray;
+		forest = new ConcurrentHashMap<String, Itree>();
 	}
 
 	public IntervalForest(Markers intervals) {
-		forest = new HashMap<String, IntervalTree>();
+		forest = new ConcurrentHashMap<String, Itree>();
+		add(intervals);
+	}
+
+	public IntervalForest(Markers intervals, boolean treeArray) {
+		this.treeArray = treeArray;
+		forest = new ConcurrentHashMap<String, Itree>();
 		add(intervals);
 	}
 
@@ -61,7 +74,7 @@ public class IntervalForest implements Serializable, Iterable<IntervalTree> {
 	 * Build all trees
 	 */
 	public void build() {
-		for (IntervalTree tree : forest.values())
+		for (Itree tree : forest.values())
 			tree.build();
 	}
 
@@ -70,13 +83,13 @@ public class IntervalForest implements Serializable, Iterable<IntervalTree> {
 	 * @param chromo
 	 * @return
 	 */
-	public IntervalTree getTree(String chromo) {
+	public Itree getTree(String chromo) {
 		chromo = Chromosome.simpleName(chromo);
 
 		// Retrieve (or create) interval tree
-		IntervalTree intervalTree = forest.get(chromo);
+		Itree intervalTree = forest.get(chromo);
 		if (intervalTree == null) {
-			intervalTree = new IntervalTree();
+			intervalTree = newTree();
 			forest.put(chromo, intervalTree);
 		}
 
@@ -90,7 +103,7 @@ public class IntervalForest implements Serializable, Iterable<IntervalTree> {
 	 */
 	public boolean hasTree(String chromoOri) {
 		String chromo = Chromosome.simpleName(chromoOri);
-		IntervalTree intervalTree = forest.get(chromo);
+		Itree intervalTree = forest.get(chromo);
 		return intervalTree != null;
 	}
 
@@ -126,11 +139,33 @@ public class IntervalForest implements Serializable, Iterable<IntervalTree> {
 		return result;
 	}
 
+	public boolean isTreeArray() {
+		return treeArray;
+	}
+
 	@Override
-	public Iterator<IntervalTree> iterator() {
+	public Iterator<Itree> iterator() {
 		return forest.values().iterator();
 	}
 
+	/**
+	 * Create a new (empty) interval tree
+	 */
+	public Itree newTree() {
+		if (treeArray) return new IntervalTreeArray();
+		return new IntervalTree();
+	}
+
+	/**
+	 * Add (or replace) the interval tree for chromosome 'chromo'
+	 * Note: The tree should be built before adding it, since other threads might be querying the forest
+	 * @param chromo
+	 * @param tree
+	 */
+	public void putTree(String chromo, Itree tree) {
+		forest.put(Chromosome.simpleName(chromo), tree);
+	}
+
 	/**
 	 * Query all intervals that intersect with 'interval'
 	 * @param marker
@@ -140,6 +175,20 @@ public class IntervalForest implements Serializable, Iterable<IntervalTree> {
 		return getTree(marker.getChromosomeName()).query(marker);
 	}
 
+	/**
+	 * Query all intervals that intersect with 'marker'
+	 * Results are sent to 'results' (no intermediate collections are created)
+	 * 
+	 * Note: Unlike 'query(marker)', no tree is created if the chromosome is not found
+	 * 
+	 * @param marker
+	 * @param results
+	 */
+	public void query(Marker marker, MarkerConsumer results) {
+		Itree tree = forest.get(Chromosome.simpleName(marker.getChromosomeName()));
+		if (tree != null) tree.query(marker, results);
+	}
+
 	/**
 	 * Query all intervals that intersect with any interval in 'intervals'
 	 * 
@@ -185,7 +234,7 @@ public class IntervalForest implements Serializable, Iterable<IntervalTree> {
 
 	public int size() {
 		int size = 0;
-		for (IntervalTree it : forest.values())
+		for (Itree it : forest.values())
 			size += it.size();
 		return size;
 	}
@@ -208,12 +257,21 @@ public class IntervalForest implements Serializable, Iterable<IntervalTree> {
 		return getTree(chromo).stab(point);
 	}
 
+	/**
+	 * Obtain all intervals that intersect with 'point'
+	 * Results are sent to 'results' (no intermediate collections are created)
+	 */
+	public void stab(String chromo, int point, MarkerConsumer results) {
+		Itree tree = forest.get(Chromosome.simpleName(chromo));
+		if (tree != null) tree.stab(point, results);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 
 		for (String chromo : forest.keySet()) {
-			IntervalTree tree = getTree(chromo);
+			Itree tree = getTree(chromo);
 			sb.append("chr" + chromo + ":\n" + tree + "\n");
 		}
 
@@ -12,6 +12,7 @@ import java.util.TreeSet;
 
 import ca.mcgill.mcb.pcingola.interval.Interval;
 import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.MarkerConsumer;
 import ca.mcgill.mcb.pcingola.interval.Markers;
 
 /**
@@ -126,17 +127,25 @@ public class IntervalNode implements Serializable, Iterable<Marker> {
 	 */
 	public Markers query(Interval target) {
 		Markers result = new Markers();
+		query(target, result);
+		return result;
+	}
 
+	/**
+	 * Perform an interval intersection query on the node
+	 * @param target: the interval to intersect
+	 * @param results: all intervals containing 'target' are sent here
+	 */
+	public void query(Interval target, MarkerConsumer results) {
 		for (Entry<Marker, List<Marker>> entry : intervals.entrySet()) {
 			if (entry.getKey().intersects(target)) {
 				for (Marker interval : entry.getValue())
-					result.add(interval);
+					results.accept(interval);
 			} else if (entry.getKey().getStart() > target.getEnd()) break;
 		}
 
-		if (target.getStart() < center && leftNode != null) result.add(leftNode.query(target));
-		if (target.getEnd() > center && rightNode != null) result.add(rightNode.query(target));
-		return result;
+		if (target.getStart() < center && leftNode != null) leftNode.query(target, results);
+		if (target.getEnd() > center && rightNode != null) rightNode.query(target, results);
 	}
 
 	public void setCenter(Integer center) {
@@ -158,17 +167,25 @@ public class IntervalNode implements Serializable, Iterable<Marker> {
 	 */
 	public Markers stab(Integer point) {
 		Markers result = new Markers();
+		stab(point, result);
+		return result;
+	}
 
+	/**
+	 * Perform a stabbing query on the node
+	 * @param point the time to query at
+	 * @param results: all intervals containing time are sent here
+	 */
+	public void stab(int point, MarkerConsumer results) {
 		for (Entry<Marker, List<Marker>> entry : intervals.entrySet()) {
 			if (entry.getKey().intersects(point)) { //
 				for (Marker interval : entry.getValue())
-					result.add(interval);
+					results.accept(interval);
 			} else if (entry.getKey().getStart() > point) break;
 		}
 
-		if (point < center && leftNode != null) result.add(leftNode.stab(point));
-		else if (point > center && rightNode != null) result.add(rightNode.stab(point));
-		return result;
+		if (point < center && leftNode != null) leftNode.stab(point, results);
+		else if (point > center && rightNode != null) rightNode.stab(point, results);
 	}
 
 	@Override
@@ -0,0 +1,928 @@
+package ca.mcgill.mcb.pcingola.interval.tree;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Custom;
+import ca.mcgill.mcb.pcingola.interval.Exon;
+import ca.mcgill.mcb.pcingola.interval.Gene;
+import ca.mcgill.mcb.pcingola.interval.Genome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.MarkerConsumer;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+import ca.mcgill.mcb.pcingola.interval.Motif;
+import ca.mcgill.mcb.pcingola.interval.NextProt;
+import ca.mcgill.mcb.pcingola.interval.Regulation;
+import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.motif.Jaspar;
+import ca.mcgill.mcb.pcingola.motif.Pwm;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
+import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+
+/**
+ * A compact track of intervals (e.g. regulation features, custom intervals, motifs or NextProt annotations)
+ *
+ * Intervals are stored in columns (one primitive array per field), so there is
+ * no Marker object per interval. Markers are only created for the intervals
+ * hit by a query (see query()). Markers are only kept if requested (see setCacheMarkers),
+ * so each interval is always the same marker object (e.g. markers used as keys when counting reads).
+ *
+ * 		- Each chromosome's columns are sorted by start position and used as an
+ * 		  implicit interval tree (same as IntervalTreeArray)
+ *
+ * 		- Strings (IDs, names, cell types) are dictionary encoded (string table)
+ *
+ * 		- Tracks saved to a file are memory mapped, chromosomes are loaded the
+ * 		  first time they are queried (see open())
+ *
+ * 		- Motifs and NextProt annotations are pre-linked: motifs store their PWM ID
+ * 		  and NextProt annotations are split by exon when the track is built. Markers
+ * 		  are connected to their PWM (see setJaspar) or to their transcript and
+ * 		  exon (transcript ID lookup, one chromosome at a time) when they are hit
+ *
+ * Columns 'name' and 'cellType' depend on the track type:
+ *
+ * 		REGULATION	: Regulation name, cell type
+ * 		CUSTOM		: Label, not used (score column is the interval's score)
+ * 		MOTIF		: PWM name, PWM ID
+ * 		NEXT_PROT	: Transcript ID, exon ID (empty if the annotation does not intersect any exon).
+ * 					  Score column is 1 for highly conserved amino acid sequences (0 otherwise)
+ *
+ * File format (all numbers are big endian):
+ *
+ * 		Header:
+ * 			int MAGIC, int VERSION, int name (string index), int type (string index), int numChromosomes, int numStrings, int flags, int stringTablePos
+ *
+ * 		Chromosome index (one entry per chromosome):
+ * 			int name (string index), int position, int numIntervals, int maxEnd
+ *
+ * 		Chromosome (numIntervals = n, sorted by start and end):
+ * 			int[n] start
+ * 			int[n] end
+ * 			int[n] id (string index)
+ * 			int[n] name (string index)
+ * 			int[n] cellType (string index)
+ * 			byte[n] strand
+ * 			double[n] score (only if FLAG_SCORES is set)
+ *
+ * 		String table:
+ * 			int[numStrings + 1] offset of each string
+ * 			byte[] strings (UTF-8)
+ *
+ * @author pcingola
+ */
+public class IntervalTrack implements Iterable<Marker> {
+
+	/**
+	 * Intervals in one chromosome
+	 */
+	static class ChromosomeTrack {
+		String name;
+		Chromosome chromosome; // Chromosome from the markers added (if any)
+		volatile Chromosome parent; // Parent for markers created by queries
+		volatile HashMap<String, Transcript> transcripts; // Transcripts in this chromosome, indexed by ID (NextProt tracks)
+		volatile AtomicReferenceArray<Marker> markers; // Markers created by queries, indexed by interval number (only if 'cacheMarkers' is set)
+		int size, maxEnd;
+		int position; // Position in file (mapped tracks)
+		volatile boolean loaded;
+		int starts[], ends[], maxEnds[], ids[], names[], cellTypes[];
+		byte strands[];
+		double scores[];
+		int rootLevel;
+
+		// Columns used while adding intervals
+		TIntArrayList startCol, endCol, idCol, nameCol, cellTypeCol;
+		TByteArrayList strandCol;
+		TDoubleArrayList scoreCol;
+
+		ChromosomeTrack(String name) {
+			this.name = name;
+			maxEnd = -1;
+		}
+
+		void add(int start, int end, int strand, int id, int name, int cellType, double score) {
+			if (startCol == null) {
+				startCol = new TIntArrayList();
+				endCol = new TIntArrayList();
+				idCol = new TIntArrayList();
+				nameCol = new TIntArrayList();
+				cellTypeCol = new TIntArrayList();
+				strandCol = new TByteArrayList();
+				scoreCol = new TDoubleArrayList();
+			}
+
+			startCol.add(start);
+			endCol.add(end);
+			idCol.add(id);
+			nameCol.add(name);
+			cellTypeCol.add(cellType);
+			strandCol.add((byte) strand);
+			scoreCol.add(score);
+			maxEnd = Math.max(maxEnd, end);
+			loaded = false;
+		}
+
+		/**
+		 * Sort columns by start (then by end) and calculate the implicit interval tree
+		 */
+		void build(boolean hasScores) {
+			if (startCol == null) return;
+
+			final int startArr[] = startCol.toArray();
+			final int endArr[] = endCol.toArray();
+			size = startArr.length;
+
+			Integer order[] = new Integer[size];
+			for (int i = 0; i < size; i++)
+				order[i] = i;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i1, Integer i2) {
+					if (startArr[i1] != startArr[i2]) return startArr[i1] < startArr[i2] ? -1 : 1;
+					if (endArr[i1] != endArr[i2]) return endArr[i1] < endArr[i2] ? -1 : 1;
+					return i1 - i2;
+				}
+			});
+
+			starts = new int[size];
+			ends = new int[size];
+			ids = new int[size];
+			names = new int[size];
+			cellTypes = new int[size];
+			strands = new byte[size];
+			scores = hasScores ? new double[size] : null;
+			for (int i = 0; i < size; i++) {
+				int j = order[i];
+				starts[i] = startArr[j];
+				ends[i] = endArr[j];
+				ids[i] = idCol.get(j);
+				names[i] = nameCol.get(j);
+				cellTypes[i] = cellTypeCol.get(j);
+				strands[i] = strandCol.get(j);
+				if (hasScores) scores[i] = scoreCol.get(j);
+			}
+
+			startCol = endCol = idCol = nameCol = cellTypeCol = null;
+			strandCol = null;
+			scoreCol = null;
+			index();
+		}
+
+		/**
+		 * Calculate implicit interval tree (max end of each sub-tree)
+		 */
+		void index() {
+			maxEnds = new int[size];
+			rootLevel = IntervalTreeArray.indexMaxEnds(ends, maxEnds, size);
+			loaded = true;
+		}
+	}
+
+	public static final int MAGIC = 0x534e5054; // "SNPT"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 8 * 4;
+	public static final int CHROMOSOME_INDEX_ENTRY_SIZE = 4 * 4;
+	public static final String UTF8 = "UTF-8";
+	public static final String FILE_EXTENSION = ".track";
+	public static final int SMALL_SUBTREE_LEVEL = IntervalTreeArray.SMALL_SUBTREE_LEVEL;
+
+	// Header flags
+	public static final int FLAG_SCORES = 1; // Score column is stored
+
+	String name;
+	EffectType type;
+	Genome genome; // Used to find parent chromosomes
+	SnpEffectPredictor lazyPredictor; // Predictor loading genes on demand (null if all genes are in genome)
+	boolean hasScores;
+	HashMap<String, ChromosomeTrack> chromosomes; // Indexed by simple chromosome name
+	ArrayList<ChromosomeTrack> chromosomeList;
+
+	// String table
+	HashMap<String, Integer> strIdx; // Used when adding intervals
+	ArrayList<String> strs; // Used when adding intervals
+	String strCache[]; // Decoded strings (mapped tracks)
+
+	// Linked markers
+	Jaspar jaspar; // PWMs for motifs
+	volatile boolean cacheMarkers; // Keep markers created by queries (one marker object per interval)
+
+	// Mapped file
+	String fileName;
+	MappedByteBuffer buffer;
+	int numStrings, strOffsetPos, strPos;
+
+	/**
+	 * Is this file a compact interval track?
+	 */
+	public static boolean isTrack(String fileName) {
+		if (!Gpr.canRead(fileName)) return false;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(fileName));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			try {
+				if (in != null) in.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	/**
+	 * Open a track file (chromosomes are loaded the first time they are queried)
+	 */
+	public static IntervalTrack load(String fileName) {
+		IntervalTrack track = new IntervalTrack();
+		track.open(fileName);
+		return track;
+	}
+
+	IntervalTrack() {
+		chromosomes = new HashMap<String, ChromosomeTrack>();
+		chromosomeList = new ArrayList<ChromosomeTrack>();
+	}
+
+	/**
+	 * Create an empty track
+	 * @param name : Track name (e.g. regulation cell type or custom interval file name)
+	 * @param type : Markers created by queries are either EffectType.REGULATION, EffectType.CUSTOM, EffectType.MOTIF or EffectType.NEXT_PROT
+	 */
+	public IntervalTrack(String name, EffectType type) {
+		this();
+		switch (type) {
+		case REGULATION:
+		case CUSTOM:
+		case MOTIF:
+		case NEXT_PROT:
+			break;
+
+		default:
+			throw new RuntimeException("Unsupported interval track type '" + type + "'");
+		}
+		this.name = name;
+		this.type = type;
+		strIdx = new HashMap<String, Integer>();
+		strs = new ArrayList<String>();
+	}
+
+	/**
+	 * Create a marker for interval 'idx' and send it to 'results' (unless it cannot be linked)
+	 */
+	void accept(ChromosomeTrack ct, int idx, MarkerConsumer results) {
+		Marker m = marker(ct, idx);
+		if (m != null) results.accept(m);
+	}
+
+	/**
+	 * Add a marker (only Regulation, Custom, Motif and NextProt markers are supported)
+	 * Notes:
+	 * 		- Custom markers having additional annotations are not supported, since annotations are not stored
+	 * 		- NextProt markers are linked to their parent exon (if any), see add(NextProt, Transcript)
+	 */
+	public void add(Marker marker) {
+		if (strs == null) throw new RuntimeException("Cannot add markers to track '" + name + "': Track loaded from file '" + fileName + "'");
+
+		String id = (marker.getId() != null ? marker.getId() : "");
+		if ((marker instanceof Regulation) && (type == EffectType.REGULATION)) {
+			Regulation reg = (Regulation) marker;
+			add(marker, id, reg.getName(), reg.getCellType(), Double.NaN);
+		} else if ((marker instanceof Custom) && (type == EffectType.CUSTOM)) {
+			Custom custom = (Custom) marker;
+			if (custom.hasAnnotations()) throw new RuntimeException("Cannot add custom marker with annotations to track '" + name + "': " + marker);
+			add(marker, id, custom.getLabel(), "", custom.getScore());
+		} else if ((marker instanceof Motif) && (type == EffectType.MOTIF)) {
+			Motif motif = (Motif) marker;
+			add(marker, id, motif.getPwmName(), motif.getPwmId(), Double.NaN);
+		} else if ((marker instanceof NextProt) && (type == EffectType.NEXT_PROT)) {
+			NextProt np = (NextProt) marker;
+			String exonId = (np.getParent() instanceof Exon ? ((Exon) np.getParent()).getId() : "");
+			add(marker, id, np.getTranscriptId(), exonId, np.isHighlyConservedAaSequence() ? 1.0 : 0.0);
+		} else throw new RuntimeException("Cannot add marker type '" + marker.getClass().getSimpleName() + "' to " + type + " track '" + name + "'");
+	}
+
+	void add(Marker marker, String id, String name, String cellType, double score) {
+		String chrName = Chromosome.simpleName(marker.getChromosomeName());
+		ChromosomeTrack ct = chromosomes.get(chrName);
+		if ((ct != null) && (ct.starts != null)) throw new RuntimeException("Cannot add markers to track '" + this.name + "': Track already built");
+		if (ct == null) {
+			ct = new ChromosomeTrack(chrName);
+			ct.chromosome = marker.getChromosome();
+			chromosomes.put(chrName, ct);
+			chromosomeList.add(ct);
+		}
+
+		ct.add(marker.getStart(), marker.getEnd(), marker.getStrand(), addStr(id), addStr(name), addStr(cellType), score);
+		if (!Double.isNaN(score)) hasScores = true;
+	}
+
+	/**
+	 * Add a NextProt marker, linked to every exon in 'tr' it intersects.
+	 * If the marker does not intersect any exon, it is linked to the transcript
+	 *
+	 * @return Number of intervals added
+	 */
+	public int add(NextProt np, Transcript tr) {
+		int count = 0;
+		String id = (np.getId() != null ? np.getId() : "");
+		double score = np.isHighlyConservedAaSequence() ? 1.0 : 0.0;
+		for (Exon ex : tr)
+			if (ex.intersects(np)) { // The nextProt marker might cover more than one exon
+				add(np, id, tr.getId(), ex.getId(), score);
+				count++;
+			}
+
+		// Not assigned to an exon? Link to transcript
+		if (count == 0) {
+			add(np, id, tr.getId(), "", score);
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Add a string to the string table (if it's not already there)
+	 * @return String index
+	 */
+	int addStr(String str) {
+		if (str == null) str = "";
+		Integer idx = strIdx.get(str);
+		if (idx == null) {
+			idx = strs.size();
+			strs.add(str);
+			strIdx.put(str, idx);
+		}
+		return idx;
+	}
+
+	/**
+	 * Build all chromosomes (sort intervals and index them)
+	 *
+	 * WARNING: This method is not thread safe. It must be called after adding all intervals and before querying
+	 */
+	public void build() {
+		for (ChromosomeTrack ct : chromosomeList)
+			if (!ct.loaded) ct.build(hasScores);
+	}
+
+	/**
+	 * Release mapped file
+	 */
+	public void close() {
+		buffer = null;
+		strCache = null;
+		for (ChromosomeTrack ct : chromosomeList) {
+			ct.loaded = false;
+			ct.markers = null;
+		}
+	}
+
+	/**
+	 * Get a chromosome's intervals (load them if needed)
+	 * @return A chromosome track or null if there are no intervals in this chromosome
+	 */
+	ChromosomeTrack getChromosomeTrack(String chr) {
+		ChromosomeTrack ct = chromosomes.get(chr);
+		if (ct == null) ct = chromosomes.get(Chromosome.simpleName(chr));
+		if ((ct == null) || ct.loaded) return ct;
+
+		if (buffer == null) {
+			if (strs != null) throw new RuntimeException("Interval track '" + name + "' is not built");
+			throw new RuntimeException("Interval track '" + name + "' is closed");
+		}
+
+		load(ct);
+		return ct;
+	}
+
+	/**
+	 * Transcripts in a chromosome, indexed by ID (created the first time they are needed)
+	 * Note: Only transcripts in genome's genes are found (e.g. transcripts filtered out by the user are not)
+	 */
+	HashMap<String, Transcript> getChromosomeTranscripts(ChromosomeTrack ct) {
+		HashMap<String, Transcript> transcripts = ct.transcripts;
+		if (transcripts != null) return transcripts;
+
+		// Genes loaded on demand are not in genome's genes: Link to the chromosome's genes
+		if (lazyPredictor != null) transcripts = lazyPredictor.linkTranscripts(this, ct.name);
+		else if (genome != null) transcripts = linkTranscripts(ct, genome.getGenes());
+
+		return transcripts != null ? transcripts : new HashMap<String, Transcript>();
+	}
+
+	/**
+	 * Chromosome names (simple names)
+	 */
+	public List<String> getChromosomeNames() {
+		ArrayList<String> names = new ArrayList<String>();
+		for (ChromosomeTrack ct : chromosomeList)
+			names.add(ct.name);
+		return names;
+	}
+
+	/**
+	 * Maximum end coordinate in a chromosome (-1 if there are no intervals in this chromosome)
+	 */
+	public int getMaxEnd(String chr) {
+		ChromosomeTrack ct = chromosomes.get(Chromosome.simpleName(chr));
+		return ct != null ? ct.maxEnd : -1;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get a string from the string table
+	 */
+	String getStr(int idx) {
+		if (strs != null) return strs.get(idx);
+
+		String str = strCache[idx];
+		if (str != null) return str;
+
+		// Decode string
+		int start = buffer.getInt(strOffsetPos + 4 * idx);
+		int end = buffer.getInt(strOffsetPos + 4 * (idx + 1));
+		byte bytes[] = new byte[end - start];
+		ByteBuffer buf = buffer.duplicate(); // Do not change 'buffer' position
+		buf.position(strPos + start);
+		buf.get(bytes);
+
+		try {
+			str = new String(bytes, UTF8);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+
+		strCache[idx] = str; // Note: Concurrent threads may decode the same string, which is harmless
+		return str;
+	}
+
+	public EffectType getType() {
+		return type;
+	}
+
+	@Override
+	public Iterator<Marker> iterator() {
+		Markers markers = new Markers();
+		for (ChromosomeTrack ct : chromosomeList) {
+			getChromosomeTrack(ct.name);
+			for (int i = 0; i < ct.size; i++) {
+				Marker m = marker(ct, i);
+				if (m != null) markers.add(m);
+			}
+		}
+		return markers.iterator();
+	}
+
+	/**
+	 * Index transcripts in a chromosome (used to link markers, e.g. NextProt annotations)
+	 * Note: Genes in other chromosomes are ignored
+	 */
+	HashMap<String, Transcript> linkTranscripts(ChromosomeTrack ct, Iterable<Gene> genes) {
+		HashMap<String, Transcript> transcripts = new HashMap<String, Transcript>();
+		for (Gene gene : genes)
+			if (ct.name.equals(Chromosome.simpleName(gene.getChromosomeName()))) {
+				for (Transcript tr : gene)
+					transcripts.put(tr.getId(), tr);
+			}
+
+		ct.transcripts = transcripts;
+		ct.markers = null; // Markers are linked to the old transcripts
+		return transcripts;
+	}
+
+	/**
+	 * Link markers in a chromosome to these genes' transcripts (e.g. when genes are loaded on demand)
+	 * @return Transcripts indexed by ID (null if markers in this track are not linked to transcripts)
+	 */
+	public HashMap<String, Transcript> linkTranscripts(String chr, Iterable<Gene> genes) {
+		ChromosomeTrack ct = chromosomes.get(Chromosome.simpleName(chr));
+		if ((ct == null) || (type != EffectType.NEXT_PROT)) return null;
+		return linkTranscripts(ct, genes);
+	}
+
+	/**
+	 * Load a chromosome's columns from the mapped file
+	 */
+	synchronized void load(ChromosomeTrack ct) {
+		if (ct.loaded) return;
+
+		int n = ct.size;
+		ByteBuffer buf = buffer.duplicate(); // Do not change 'buffer' position
+		buf.position(ct.position);
+
+		ct.starts = readInts(buf, n);
+		ct.ends = readInts(buf, n);
+		ct.ids = readInts(buf, n);
+		ct.names = readInts(buf, n);
+		ct.cellTypes = readInts(buf, n);
+		ct.strands = new byte[n];
+		buf.get(ct.strands);
+		if (hasScores) {
+			ct.scores = new double[n];
+			buf.asDoubleBuffer().get(ct.scores);
+		}
+
+		ct.index();
+	}
+
+	/**
+	 * Marker for interval number 'idx' (the same object is returned every time, if 'cacheMarkers' is set)
+	 * @return A marker or null if the marker cannot be linked (e.g. NextProt annotation whose transcript is not available)
+	 */
+	Marker marker(ChromosomeTrack ct, int idx) {
+		if (!cacheMarkers) return newMarker(ct, idx);
+
+		AtomicReferenceArray<Marker> markers = ct.markers;
+		if (markers == null) {
+			synchronized (ct) {
+				if (ct.markers == null) ct.markers = new AtomicReferenceArray<Marker>(ct.size);
+				markers = ct.markers;
+			}
+		}
+
+		Marker m = markers.get(idx);
+		if (m != null) return m;
+
+		m = newMarker(ct, idx);
+		if (m == null) return null;
+		if (markers.compareAndSet(idx, null, m)) return m;
+		return markers.get(idx); // Another thread created this marker first
+	}
+
+	/**
+	 * Create a new marker for interval number 'idx'
+	 * @return A marker or null if the marker cannot be linked (e.g. NextProt annotation whose transcript is not available)
+	 */
+	Marker newMarker(ChromosomeTrack ct, int idx) {
+		String id = getStr(ct.ids[idx]);
+
+		switch (type) {
+		case REGULATION:
+			return new Regulation(parent(ct), ct.starts[idx], ct.ends[idx], ct.strands[idx], id, getStr(ct.names[idx]), getStr(ct.cellTypes[idx]));
+
+		case CUSTOM:
+			Custom custom = new Custom(parent(ct), ct.starts[idx], ct.ends[idx], ct.strands[idx], id, getStr(ct.names[idx]));
+			if (ct.scores != null) custom.setScore(ct.scores[idx]);
+			return custom;
+
+		case MOTIF:
+			String pwmId = getStr(ct.cellTypes[idx]);
+			Motif motif = new Motif(parent(ct), ct.starts[idx], ct.ends[idx], ct.strands[idx], id, getStr(ct.names[idx]), pwmId);
+			if (jaspar != null) {
+				Pwm pwm = jaspar.getPwm(pwmId);
+				if (pwm == null) return null; // Motifs are only used if their PWM is available
+				motif.setPwm(pwm);
+			}
+			return motif;
+
+		case NEXT_PROT:
+			// Find transcript
+			// WARNING: The transcripts might be filtered out by the user (e.g. '-cannon' command line option or user defined sets).
+			//          We only create nextProt markers associated to found transcripts. All others are discarded (the user doesn't want that info).
+			Transcript tr = getChromosomeTranscripts(ct).get(getStr(ct.names[idx]));
+			if (tr == null) return null;
+
+			NextProt np = new NextProt(tr, ct.starts[idx], ct.ends[idx], id);
+			np.setHighlyConservedAaSequence((ct.scores != null) && (ct.scores[idx] == 1.0));
+
+			// Link to exon (or transcript)
+			np.setParent(tr);
+			String exonId = getStr(ct.cellTypes[idx]);
+			if (!exonId.isEmpty()) {
+				for (Exon ex : tr)
+					if (exonId.equals(ex.getId())) {
+						np.setParent(ex);
+						break;
+					}
+			}
+			return np;
+
+		default:
+			throw new RuntimeException("Unsupported interval track type '" + type + "'");
+		}
+	}
+
+	/**
+	 * Map file into memory and read header and chromosome index.
+	 * No intervals are loaded (see getChromosomeTrack)
+	 */
+	void open(String fileName) {
+		this.fileName = fileName;
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(fileName, "r");
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) throw new RuntimeException("File '" + fileName + "' is too large to be mapped into memory");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		} finally {
+			try {
+				if (raf != null) raf.close(); // Note: Mapping is still valid after closing the channel
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+
+		//---
+		// Header
+		//---
+		if (buffer.getInt(0) != MAGIC) throw new RuntimeException("File '" + fileName + "' is not an interval track file");
+		int version = buffer.getInt(4);
+		if (version != VERSION) throw new RuntimeException("File '" + fileName + "' has version " + version + ", expected version " + VERSION);
+		int nameIdx = buffer.getInt(8);
+		int typeIdx = buffer.getInt(12);
+		int numChromosomes = buffer.getInt(16);
+		numStrings = buffer.getInt(20);
+		hasScores = (buffer.getInt(24) & FLAG_SCORES) != 0;
+		strOffsetPos = buffer.getInt(28);
+		strPos = strOffsetPos + 4 * (numStrings + 1);
+		strCache = new String[numStrings];
+
+		name = getStr(nameIdx);
+		type = EffectType.valueOf(getStr(typeIdx));
+
+		//---
+		// Chromosome index
+		//---
+		for (int i = 0; i < numChromosomes; i++) {
+			int entryPos = HEADER_SIZE + CHROMOSOME_INDEX_ENTRY_SIZE * i;
+			ChromosomeTrack ct = new ChromosomeTrack(getStr(buffer.getInt(entryPos)));
+			ct.position = buffer.getInt(entryPos + 4);
+			ct.size = buffer.getInt(entryPos + 8);
+			ct.maxEnd = buffer.getInt(entryPos + 12);
+			chromosomes.put(ct.name, ct);
+			chromosomeList.add(ct);
+		}
+	}
+
+	/**
+	 * Parent chromosome for markers created by queries.
+	 * Use genome's chromosome if available, otherwise use the chromosome from the
+	 * markers added or create a new one (which is not added to the genome)
+	 */
+	Chromosome parent(ChromosomeTrack ct) {
+		Chromosome parent = ct.parent;
+		if (parent != null) return parent;
+
+		if (genome != null) parent = genome.getChromosome(ct.name);
+		if (parent == null) parent = ct.chromosome;
+		if (parent == null) parent = new Chromosome(genome, 0, ct.maxEnd, 1, ct.name);
+		ct.parent = parent;
+		return parent;
+	}
+
+	/**
+	 * Query intervals intersecting 'marker'.
+	 * Markers are only created for intervals hit (sorted by start position)
+	 */
+	public void query(Marker marker, MarkerConsumer results) {
+		ChromosomeTrack ct = getChromosomeTrack(marker.getChromosomeName());
+		if ((ct == null) || (ct.size <= 0)) return;
+		query(ct, ct.rootLevel, (1L << ct.rootLevel) - 1, marker.getStart(), marker.getEnd(), results);
+	}
+
+	/**
+	 * Query the sub-tree rooted at node 'x' (which is at level 'level'), see IntervalTreeArray.query
+	 */
+	void query(ChromosomeTrack ct, int level, long x, int start, int end, MarkerConsumer results) {
+		int n = ct.size;
+		int starts[] = ct.starts, ends[] = ct.ends;
+
+		if (level <= SMALL_SUBTREE_LEVEL) {
+			// Small sub-tree: Scan every node
+			long i0 = (x >> level) << level;
+			long i1 = Math.min(i0 + (1L << (level + 1)) - 1, n);
+			for (int i = (int) i0; (i < i1) && (starts[i] <= end); i++)
+				if (start <= ends[i]) accept(ct, i, results);
+			return;
+		}
+
+		// Left child (note: it may be out of range)
+		long left = x - (1L << (level - 1));
+		if ((left >= n) || (ct.maxEnds[(int) left] >= start)) query(ct, level - 1, left, start, end, results);
+
+		// This node and right child
+		if ((x < n) && (starts[(int) x] <= end)) {
+			if (start <= ends[(int) x]) accept(ct, (int) x, results);
+			query(ct, level - 1, x + (1L << (level - 1)), start, end, results);
+		}
+	}
+
+	int[] readInts(ByteBuffer buf, int n) {
+		int ints[] = new int[n];
+		buf.asIntBuffer().get(ints);
+		buf.position(buf.position() + 4 * n);
+		return ints;
+	}
+
+	/**
+	 * Reset links to transcripts and cached markers in a chromosome (e.g. because the chromosome's genes were loaded or evicted)
+	 */
+	public void resetLinks(String chr) {
+		ChromosomeTrack ct = chromosomes.get(Chromosome.simpleName(chr));
+		if (ct != null) {
+			ct.transcripts = null;
+			ct.markers = null;
+		}
+	}
+
+	/**
+	 * Save track to a file
+	 */
+	public void save(String fileName) {
+		build();
+
+		// Make sure all chromosomes are loaded
+		for (ChromosomeTrack ct : chromosomeList)
+			getChromosomeTrack(ct.name);
+
+		// String table: Track name and type must be included
+		ArrayList<String> strings = new ArrayList<String>();
+		HashMap<String, Integer> stringIdx = (strIdx != null ? new HashMap<String, Integer>(strIdx) : new HashMap<String, Integer>());
+		int numStrs = (strs != null ? strs.size() : numStrings);
+		for (int i = 0; i < numStrs; i++) {
+			String str = getStr(i);
+			strings.add(str);
+			if (strIdx == null && !stringIdx.containsKey(str)) stringIdx.put(str, i);
+		}
+		int nameIdx = strIndex(strings, stringIdx, name);
+		int typeIdx = strIndex(strings, stringIdx, type.toString());
+
+		// Chromosome names must be in the string table
+		int chrNameIdx[] = new int[chromosomeList.size()];
+		for (int i = 0; i < chromosomeList.size(); i++)
+			chrNameIdx[i] = strIndex(strings, stringIdx, chromosomeList.get(i).name);
+
+		// Calculate positions
+		long pos = HEADER_SIZE + CHROMOSOME_INDEX_ENTRY_SIZE * chromosomeList.size();
+		long chrPos[] = new long[chromosomeList.size()];
+		for (int i = 0; i < chromosomeList.size(); i++) {
+			chrPos[i] = pos;
+			pos += ((long) chromosomeList.get(i).size) * (5 * 4 + 1 + (hasScores ? 8 : 0));
+		}
+		if (pos > Integer.MAX_VALUE) throw new RuntimeException("Interval track too large");
+
+		// Write file
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+
+			// Header
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nameIdx);
+			out.writeInt(typeIdx);
+			out.writeInt(chromosomeList.size());
+			out.writeInt(strings.size());
+			out.writeInt(hasScores ? FLAG_SCORES : 0);
+			out.writeInt((int) pos);
+
+			// Chromosome index
+			for (int i = 0; i < chromosomeList.size(); i++) {
+				ChromosomeTrack ct = chromosomeList.get(i);
+				out.writeInt(chrNameIdx[i]);
+				out.writeInt((int) chrPos[i]);
+				out.writeInt(ct.size);
+				out.writeInt(ct.maxEnd);
+			}
+
+			// Chromosomes
+			for (ChromosomeTrack ct : chromosomeList) {
+				write(out, ct.starts);
+				write(out, ct.ends);
+				write(out, ct.ids);
+				write(out, ct.names);
+				write(out, ct.cellTypes);
+				out.write(ct.strands);
+				if (hasScores) {
+					for (int i = 0; i < ct.size; i++)
+						out.writeDouble(ct.scores != null ? ct.scores[i] : Double.NaN);
+				}
+			}
+
+			// String table
+			ArrayList<byte[]> strBytes = new ArrayList<byte[]>(strings.size());
+			long offset = 0;
+			out.writeInt(0);
+			for (String str : strings) {
+				byte bytes[] = str.getBytes(UTF8);
+				strBytes.add(bytes);
+				offset += bytes.length;
+				if (offset > Integer.MAX_VALUE) throw new RuntimeException("String table too large");
+				out.writeInt((int) offset);
+			}
+
+			for (byte bytes[] : strBytes)
+				out.write(bytes);
+
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Keep markers created by queries, so that each interval is always the same marker object
+	 * (e.g. markers used as keys when counting reads). Markers are not kept by default, since
+	 * most intervals are only hit once (e.g. annotating a VCF file)
+	 */
+	public void setCacheMarkers(boolean cacheMarkers) {
+		if (this.cacheMarkers == cacheMarkers) return;
+		this.cacheMarkers = cacheMarkers;
+		for (ChromosomeTrack ct : chromosomeList)
+			ct.markers = null;
+	}
+
+	/**
+	 * Genome used to find parent chromosomes for markers created by queries
+	 */
+	public void setGenome(Genome genome) {
+		this.genome = genome;
+		for (ChromosomeTrack ct : chromosomeList) {
+			ct.parent = null;
+			ct.transcripts = null;
+			ct.markers = null;
+		}
+	}
+
+	/**
+	 * Predictor loading genes on demand (transcripts are linked using the predictor's per-chromosome genes)
+	 */
+	public void setLazyPredictor(SnpEffectPredictor lazyPredictor) {
+		this.lazyPredictor = lazyPredictor;
+		for (ChromosomeTrack ct : chromosomeList) {
+			ct.transcripts = null;
+			ct.markers = null;
+		}
+	}
+
+	/**
+	 * PWMs used to link motifs (motifs whose PWM is not found are discarded)
+	 */
+	public void setJaspar(Jaspar jaspar) {
+		this.jaspar = jaspar;
+		for (ChromosomeTrack ct : chromosomeList)
+			ct.markers = null;
+	}
+
+	/**
+	 * Index of a string in a string table (add the string if it's not there)
+	 */
+	int strIndex(ArrayList<String> strings, HashMap<String, Integer> stringIdx, String str) {
+		Integer idx = stringIdx.get(str);
+		if (idx != null) return idx;
+		idx = strings.size();
+		strings.add(str);
+		stringIdx.put(str, idx);
+		return idx;
+	}
+
+	/**
+	 * Number of intervals
+	 */
+	public int size() {
+		int size = 0;
+		for (ChromosomeTrack ct : chromosomeList)
+			size += (ct.startCol != null ? ct.startCol.size() : ct.size);
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return type + " track '" + name + "': " + size() + " intervals, " + chromosomeList.size() + " chromosomes";
+	}
+
+	void write(DataOutputStream out, int col[]) throws IOException {
+		for (int i = 0; i < col.length; i++)
+			out.writeInt(col[i]);
+	}
+}
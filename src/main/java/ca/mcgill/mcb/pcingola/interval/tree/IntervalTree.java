@@ -1,10 +1,10 @@
 package ca.mcgill.mcb.pcingola.interval.tree;
 
-import java.io.Serializable;
 import java.util.Iterator;
 
 import ca.mcgill.mcb.pcingola.interval.Interval;
 import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.MarkerConsumer;
 import ca.mcgill.mcb.pcingola.interval.Markers;
 
 /**
@@ -14,7 +14,7 @@ import ca.mcgill.mcb.pcingola.interval.Markers;
  * 
  * Adapted from Kevin Dolan's implementation
  */
-public class IntervalTree implements Serializable, Iterable<Marker> {
+public class IntervalTree implements Itree {
 
 	private static final long serialVersionUID = 1808077263026999072L;
 
@@ -50,6 +50,7 @@ public class IntervalTree implements Serializable, Iterable<Marker> {
 	 * Will not rebuild the tree until the next query or call to build
 	 * @param interval the interval object to add
 	 */
+	@Override
 	public void add(Marker interval) {
 		intervals.add(interval);
 		inSync = false;
@@ -62,6 +63,7 @@ public class IntervalTree implements Serializable, Iterable<Marker> {
 	 * WARNING: This method is not thread safe 
 	 * 
 	 */
+	@Override
 	public void build() {
 		if (!inSync) {
 			head = new IntervalNode(intervals);
@@ -81,6 +83,7 @@ public class IntervalTree implements Serializable, Iterable<Marker> {
 	 * Determine whether this interval tree is currently a reflection of all intervals in the interval list
 	 * @return true if no changes have been made since the last build
 	 */
+	@Override
 	public boolean inSync() {
 		return inSync;
 	}
@@ -110,14 +113,28 @@ public class IntervalTree implements Serializable, Iterable<Marker> {
 	 * 
 	 * @return All intervals that intersect 'interval'
 	 */
+	@Override
 	public Markers query(Interval interval) {
 		build();
 		return head.query(interval);
 	}
 
+	/**
+	 * Perform an interval query, sending the intervals that intersect with 'interval' to 'results'
+	 * Will rebuild the tree if out of sync
+	 * 
+	 * WARNING: This method is not thread safe if the interval tree is not fully built
+	 */
+	@Override
+	public void query(Interval interval, MarkerConsumer results) {
+		build();
+		head.query(interval, results);
+	}
+
 	/**
 	 * @return the number of entries in the interval list, equal to .size() if inSync()
 	 */
+	@Override
 	public int size() {
 		return intervals.size();
 	}
@@ -131,11 +148,24 @@ public class IntervalTree implements Serializable, Iterable<Marker> {
 	 * @param point the time to stab
 	 * @return	   all intervals that contain time
 	 */
+	@Override
 	public Markers stab(int point) {
 		build();
 		return head.stab(point);
 	}
 
+	/**
+	 * Perform a stabbing query, sending the interval objects to 'results'
+	 * Will rebuild the tree if out of sync
+	 * 
+	 * WARNING: This method is not thread safe if the interval tree is not fully built
+	 */
+	@Override
+	public void stab(int point, MarkerConsumer results) {
+		build();
+		head.stab(point, results);
+	}
+
 	@Override
 	public String toString() {
 		return nodeString(head, 0);
@@ -0,0 +1,235 @@
+package ca.mcgill.mcb.pcingola.interval.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import ca.mcgill.mcb.pcingola.interval.Interval;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.MarkerConsumer;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+
+/**
+ * Interval tree stored in flat arrays (implicit augmented interval tree).
+ *
+ * Intervals are sorted by start position and stored in primitive
+ * arrays ('starts', 'ends') plus a parallel array of markers. The
+ * array itself is used as an implicit binary tree: a node at
+ * level 'k' has the 'k' least significant bits of its index set
+ * to one (leaves are even indexes). Each node also keeps the maximum
+ * end coordinate of its sub-tree ('maxEnds'), which is enough to
+ * prune the search.
+ *
+ * Queries do not create any objects (results are sent to a
+ * MarkerConsumer).
+ *
+ * Reference: Heng Li's 'cgranges' (implicit interval tree)
+ *
+ * @author pcingola
+ */
+public class IntervalTreeArray implements Itree {
+
+	private static final long serialVersionUID = -4253489366263474187L;
+
+	public static final int SMALL_SUBTREE_LEVEL = 3; // Sub-trees at this level (or lower) are scanned linearly
+
+	ArrayList<Marker> intervals; // Intervals added (not necessarily sorted)
+	Marker markers[]; // Intervals sorted by start
+	int starts[], ends[], maxEnds[]; // Start, end and max(end) of sub-tree rooted at each node
+	int rootLevel; // Level of the root node
+	boolean inSync;
+
+	public IntervalTreeArray() {
+		intervals = new ArrayList<Marker>();
+		inSync = false;
+	}
+
+	public IntervalTreeArray(Markers markers) {
+		this();
+		for (Marker m : markers)
+			add(m);
+		build();
+	}
+
+	@Override
+	public void add(Marker interval) {
+		intervals.add(interval);
+		inSync = false;
+	}
+
+	/**
+	 * Build the tree: sort intervals and calculate 'maxEnds' in a bottom-up fashion
+	 * 
+	 * WARNING: This method is not thread safe 
+	 */
+	@Override
+	public void build() {
+		if (inSync) return;
+
+		// Sort by start (then by end)
+		ArrayList<Marker> sorted = new ArrayList<Marker>(intervals);
+		Collections.sort(sorted, new Comparator<Marker>() {
+			@Override
+			public int compare(Marker m1, Marker m2) {
+				if (m1.getStart() != m2.getStart()) return m1.getStart() < m2.getStart() ? -1 : 1;
+				if (m1.getEnd() != m2.getEnd()) return m1.getEnd() < m2.getEnd() ? -1 : 1;
+				return 0;
+			}
+		});
+
+		// Create arrays
+		int n = sorted.size();
+		Marker markers[] = new Marker[n];
+		int starts[] = new int[n];
+		int ends[] = new int[n];
+		int maxEnds[] = new int[n];
+		for (int i = 0; i < n; i++) {
+			Marker m = sorted.get(i);
+			if (!m.isValid()) System.err.println("WARNING: Interval " + m + " is not valid");
+			markers[i] = m;
+			starts[i] = m.getStart();
+			ends[i] = m.getEnd();
+		}
+
+		// Calculate max end for each sub-tree
+		rootLevel = indexMaxEnds(ends, maxEnds, n);
+
+		// Update arrays
+		this.markers = markers;
+		this.starts = starts;
+		this.ends = ends;
+		this.maxEnds = maxEnds;
+		inSync = true;
+	}
+
+	/**
+	 * Calculate 'maxEnds' for every node in the implicit tree
+	 * @return Level of the root node
+	 */
+	static int indexMaxEnds(int ends[], int maxEnds[], int n) {
+		if (n <= 0) return -1;
+
+		// Leaves (level 0)
+		int lastIdx = 0; // Right-most node in the tree
+		int last = 0; // Max end at node 'lastIdx'
+		for (int i = 0; i < n; i += 2) {
+			lastIdx = i;
+			last = maxEnds[i] = ends[i];
+		}
+
+		// Internal nodes, bottom-up
+		int k;
+		for (k = 1; (1L << k) <= n; k++) {
+			int x = 1 << (k - 1);
+			int i0 = (x << 1) - 1;
+			long step = ((long) x) << 2;
+
+			for (long i = i0; i < n; i += step) {
+				int idx = (int) i;
+				int endLeft = maxEnds[idx - x]; // Max end of left child
+				int endRight = (i + x < n) ? maxEnds[idx + x] : last; // Max end of right child
+				int e = ends[idx];
+				if (endLeft > e) e = endLeft;
+				if (endRight > e) e = endRight;
+				maxEnds[idx] = e;
+			}
+
+			// Move 'lastIdx' to its parent
+			lastIdx = ((lastIdx >> k) & 1) != 0 ? lastIdx - x : lastIdx + x;
+			if ((lastIdx < n) && (maxEnds[lastIdx] > last)) last = maxEnds[lastIdx];
+		}
+
+		return k - 1;
+	}
+
+	@Override
+	public boolean inSync() {
+		return inSync;
+	}
+
+	@Override
+	public Iterator<Marker> iterator() {
+		if (!inSync) build();
+		return Arrays.asList(markers).iterator();
+	}
+
+	/**
+	 * Query intervals intersecting [start, end]
+	 * Results are sent to 'results' (sorted by start position)
+	 * 
+	 * WARNING: This method is not thread safe if the interval tree is not fully built
+	 */
+	public void query(int start, int end, MarkerConsumer results) {
+		if (!inSync) build();
+		if (markers.length <= 0) return;
+		query(rootLevel, (1L << rootLevel) - 1, start, end, results);
+	}
+
+	/**
+	 * Query the sub-tree rooted at node 'x' (which is at level 'level')
+	 * Note: Recursion depth is bounded by the tree height, so there 
+	 * is no need to create an explicit stack
+	 */
+	void query(int level, long x, int start, int end, MarkerConsumer results) {
+		int n = markers.length;
+
+		if (level <= SMALL_SUBTREE_LEVEL) {
+			// Small sub-tree: Scan every node
+			long i0 = (x >> level) << level;
+			long i1 = Math.min(i0 + (1L << (level + 1)) - 1, n);
+			for (int i = (int) i0; (i < i1) && (starts[i] <= end); i++)
+				if (start <= ends[i]) results.accept(markers[i]);
+			return;
+		}
+
+		// Left child (note: it may be out of range)
+		long left = x - (1L << (level - 1));
+		if ((left >= n) || (maxEnds[(int) left] >= start)) query(level - 1, left, start, end, results);
+
+		// This node and right child
+		if ((x < n) && (starts[(int) x] <= end)) {
+			if (start <= ends[(int) x]) results.accept(markers[(int) x]);
+			query(level - 1, x + (1L << (level - 1)), start, end, results);
+		}
+	}
+
+	@Override
+	public Markers query(Interval interval) {
+		Markers results = new Markers();
+		query(interval.getStart(), interval.getEnd(), results);
+		return results;
+	}
+
+	@Override
+	public void query(Interval interval, MarkerConsumer results) {
+		query(interval.getStart(), interval.getEnd(), results);
+	}
+
+	@Override
+	public int size() {
+		return intervals.size();
+	}
+
+	@Override
+	public Markers stab(int point) {
+		Markers results = new Markers();
+		query(point, point, results);
+		return results;
+	}
+
+	@Override
+	public void stab(int point, MarkerConsumer results) {
+		query(point, point, results);
+	}
+
+	@Override
+	public String toString() {
+		if (!inSync) build();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < markers.length; i++)
+			sb.append(i + ": [" + starts[i] + ", " + ends[i] + "] max: " + maxEnds[i] + "\t" + markers[i] + "\n");
+		return sb.toString();
+	}
+}
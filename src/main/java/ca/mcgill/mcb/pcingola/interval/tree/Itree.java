@@ -0,0 +1,58 @@
+package ca.mcgill.mcb.pcingola.interval.tree;
+
+import java.io.Serializable;
+
+import ca.mcgill.mcb.pcingola.interval.Interval;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.MarkerConsumer;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+
+/**
+ * Interval tree interface
+ *
+ * @author pcingola
+ */
+public interface Itree extends Serializable, Iterable<Marker> {
+
+	/**
+	 * Add an interval object to the interval tree's list
+	 */
+	public void add(Marker interval);
+
+	/**
+	 * Build the interval tree to reflect the list of intervals.
+	 * Will not run if this is currently in sync
+	 */
+	public void build();
+
+	/**
+	 * Determine whether this interval tree is currently a reflection of all intervals in the interval list
+	 */
+	public boolean inSync();
+
+	/**
+	 * Perform an interval query, returning the intervals that intersect with 'interval'
+	 */
+	public Markers query(Interval interval);
+
+	/**
+	 * Perform an interval query, sending the intervals that intersect with 'interval' to 'results'
+	 */
+	public void query(Interval interval, MarkerConsumer results);
+
+	/**
+	 * Number of entries in the interval list
+	 */
+	public int size();
+
+	/**
+	 * Perform a stabbing query, returning the interval objects that contain 'point'
+	 */
+	public Markers stab(int point);
+
+	/**
+	 * Perform a stabbing query, sending the interval objects that contain 'point' to 'results'
+	 */
+	public void stab(int point, MarkerConsumer results);
+
+}
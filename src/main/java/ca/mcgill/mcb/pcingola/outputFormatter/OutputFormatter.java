@@ -1,14 +1,17 @@
 package ca.mcgill.mcb.pcingola.outputFormatter;
 
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 
 import ca.mcgill.mcb.pcingola.filter.ChangeEffectFilter;
 import ca.mcgill.mcb.pcingola.interval.Marker;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect;
 import ca.mcgill.mcb.pcingola.snpEffect.Config;
+import ca.mcgill.mcb.pcingola.util.BgzfOutputStream;
 
 /**
  * Formats output
@@ -27,6 +30,7 @@ public abstract class OutputFormatter {
 	boolean useGeneId; // Use Gene ID instead of gene name
 	boolean useSequenceOntology; // Use Sequence Ontology terms
 	boolean useOicr; // Use OICR tag
+	boolean bgzip; // Compress output (BGZF format)
 	int sectionNum = 0;
 	int outOffset = 1;
 	String commandLineStr;
@@ -34,6 +38,7 @@ public abstract class OutputFormatter {
 	String chrStr;
 	String outputFile = null;
 	BufferedWriter out;
+	BgzfOutputStream bgzfOut;
 	Marker section;
 	ChangeEffectFilter changeEffectResutFilter = null; // Filter prediction results
 	ArrayList<ChangeEffect> changeEffects;
@@ -64,6 +69,7 @@ public abstract class OutputFormatter {
 			newOutputFormatter.useGeneId = useGeneId;
 			newOutputFormatter.useSequenceOntology = useSequenceOntology;
 			newOutputFormatter.useOicr = useOicr;
+			newOutputFormatter.bgzip = bgzip;
 			newOutputFormatter.sectionNum = sectionNum;
 			newOutputFormatter.outOffset = outOffset;
 			newOutputFormatter.commandLineStr = commandLineStr;
@@ -86,7 +92,12 @@ public abstract class OutputFormatter {
 	public void close() {
 		if (out != null) {
 			try {
-				out.close();
+				if (outputFile != null) out.close();
+				else {
+					// Do not close STDOUT, just finish the compressed stream
+					out.flush();
+					bgzfOut.finish();
+				}
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
@@ -133,7 +144,12 @@ public abstract class OutputFormatter {
 	public void print(String outStr) {
 		try {
 			// Open output file?
-			if ((outputFile != null) && (out == null)) out = new BufferedWriter(new FileWriter(outputFile));
+			if (out == null) {
+				if (bgzip) {
+					bgzfOut = new BgzfOutputStream(outputFile != null ? new FileOutputStream(outputFile) : System.out);
+					out = new BufferedWriter(new OutputStreamWriter(bgzfOut), BgzfOutputStream.BLOCK_SIZE);
+				} else if (outputFile != null) out = new BufferedWriter(new FileWriter(outputFile));
+			}
 
 			// Write something?
 			if ((outStr != null) && (!outStr.isEmpty())) {
@@ -148,6 +164,10 @@ public abstract class OutputFormatter {
 		}
 	}
 
+	public void setBgzip(boolean bgzip) {
+		this.bgzip = bgzip;
+	}
+
 	public void setChangeEffectResutFilter(ChangeEffectFilter changeEffectResutFilter) {
 		this.changeEffectResutFilter = changeEffectResutFilter;
 	}
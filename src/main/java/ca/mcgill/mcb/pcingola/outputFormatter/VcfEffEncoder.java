@@ -0,0 +1,352 @@
+package ca.mcgill.mcb.pcingola.outputFormatter;
+
+import java.util.HashMap;
+
+import ca.mcgill.mcb.pcingola.interval.Exon;
+import ca.mcgill.mcb.pcingola.interval.Gene;
+import ca.mcgill.mcb.pcingola.interval.Intron;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Regulation;
+import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.FunctionalClass;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+import ca.mcgill.mcb.pcingola.vcf.VcfEffect.FormatVersion;
+import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
+
+/**
+ * Encodes effects into a VCF 'EFF' INFO field.
+ *
+ * All effects for a VCF entry are written into a single (reused) buffer.
+ * When the field is created, effects are sorted and duplicates are removed
+ * by comparing buffer regions, so no intermediate strings are created.
+ *
+ * Gene and transcript information (gene name, biotype, coding, transcript ID)
+ * does not change, so it is formatted only once per transcript and cached.
+ * The cache is indexed by ID (not by object), so it does not keep transcripts
+ * alive (e.g. chromosomes evicted when genes are loaded on demand).
+ *
+ * Note: This class is not thread safe (each VcfOutputFormatter has its own encoder)
+ *
+ * @author pcingola
+ */
+public class VcfEffEncoder {
+
+	public static final boolean debug = false;
+	public static final int MAX_CACHE_SIZE = 100 * 1000; // Maximum number of cached transcripts or genes (the cache is cleared when this size is reached)
+
+	FormatVersion formatVersion;
+	boolean useGeneId;
+	boolean useSequenceOntology;
+	HashMap<String, String> trCache; // Formatted gene & transcript information, indexed by transcript ID
+	HashMap<String, String> geneCache; // Formatted gene information (no transcript), indexed by gene ID
+	StringBuilder buffer; // All effects
+	int starts[], ends[]; // Start and end of each effect in 'buffer'
+	int size; // Number of effects
+	int idx[], tmp[]; // Used for sorting effects
+
+	/**
+	 * Create a string that is safe (i.e. valid) to add in an INFO field
+	 * Note: Same as 'value.replaceAll("[ ,;|=()]", "_")', without using regular expressions
+	 */
+	public static String vcfInfoSafeString(String value) {
+		if (value == null) return value;
+
+		char chars[] = null;
+		for (int i = 0; i < value.length(); i++) {
+			switch (value.charAt(i)) {
+			case ' ':
+			case ',':
+			case ';':
+			case '|':
+			case '=':
+			case '(':
+			case ')':
+				if (chars == null) chars = value.toCharArray();
+				chars[i] = '_';
+				break;
+
+			default:
+				break;
+			}
+		}
+
+		return chars != null ? new String(chars) : value;
+	}
+
+	public VcfEffEncoder(FormatVersion formatVersion, boolean useGeneId, boolean useSequenceOntology) {
+		this.formatVersion = formatVersion;
+		this.useGeneId = useGeneId;
+		this.useSequenceOntology = useSequenceOntology;
+		trCache = new HashMap<String, String>();
+		geneCache = new HashMap<String, String>();
+		buffer = new StringBuilder();
+		starts = new int[16];
+		ends = new int[16];
+		idx = new int[16];
+		tmp = new int[16];
+	}
+
+	/**
+	 * Add an effect
+	 */
+	public void add(ChangeEffect changeEffect) {
+		if (size >= starts.length) grow();
+		starts[size] = buffer.length();
+		encode(changeEffect, buffer);
+		ends[size] = buffer.length();
+		size++;
+	}
+
+	/**
+	 * Append all effects (sorted, no duplicates) separated by commas
+	 */
+	public void append(StringBuilder out) {
+		sort();
+
+		int prev = -1;
+		for (int i = 0; i < size; i++) {
+			int cur = idx[i];
+			if (prev >= 0 && compare(prev, cur) == 0) {
+				// Effect has already been added? Something is wrong, the information should be unique for each effect
+				if (debug) Gpr.debug("WARNING: Repeated effect!\t" + buffer.substring(starts[cur], ends[cur]));
+				continue;
+			}
+
+			if (prev >= 0) out.append(',');
+			out.append(buffer, starts[cur], ends[cur]);
+			prev = cur;
+		}
+	}
+
+	/**
+	 * Compare two effects (same as String.compareTo)
+	 */
+	int compare(int i, int j) {
+		int si = starts[i], ei = ends[i];
+		int sj = starts[j], ej = ends[j];
+		int len = Math.min(ei - si, ej - sj);
+		for (int k = 0; k < len; k++) {
+			char ci = buffer.charAt(si + k), cj = buffer.charAt(sj + k);
+			if (ci != cj) return ci - cj;
+		}
+		return (ei - si) - (ej - sj);
+	}
+
+	/**
+	 * Encode a single effect
+	 */
+	void encode(ChangeEffect changeEffect, StringBuilder effBuff) {
+		// Add effect
+		effBuff.append(changeEffect.effect(true, false, false, useSequenceOntology));
+		effBuff.append('(');
+
+		// Add effect impact
+		effBuff.append(changeEffect.getEffectImpact());
+		effBuff.append('|');
+
+		// Add functional class
+		FunctionalClass fc = changeEffect.getFunctionalClass();
+		if (fc != FunctionalClass.NONE) effBuff.append(fc.toString()); // Show only if it is not empty
+		effBuff.append('|');
+
+		// Codon change
+		String codonChange = changeEffect.getCodonChange();
+		if (!codonChange.isEmpty()) effBuff.append(codonChange);
+		else if (changeEffect.getDistance() >= 0) effBuff.append(changeEffect.getDistance());
+		effBuff.append('|');
+
+		// Add amino acid length
+		if (formatVersion != FormatVersion.FORMAT_SNPEFF_2) { // This field is not in format version 2
+			int aalen = changeEffect.getAaLength();
+			if (aalen >= 0) effBuff.append(aalen);
+			effBuff.append('|');
+		}
+
+		// Add gene and transcript info
+		Gene gene = changeEffect.getGene();
+		Transcript tr = changeEffect.getTranscript();
+		if (gene != null) effBuff.append(geneTrInfo(gene, tr));
+		else {
+			if (changeEffect.isRegulation()) {
+				Regulation reg = (Regulation) changeEffect.getMarker();
+				effBuff.append('|').append(reg.getCellType()).append("||");
+			} else if (changeEffect.isCustom()) {
+				Marker m = changeEffect.getMarker();
+				if (m != null) effBuff.append('|').append(VcfEntry.vcfInfoSafe(m.getId())).append("||");
+				else effBuff.append("|||");
+			} else effBuff.append("|||");
+
+			// Add transcript info
+			if (tr != null) effBuff.append(vcfInfoSafeString(tr.getId()));
+			effBuff.append('|');
+		}
+
+		// Add exon (or intron) rank info
+		Exon ex = changeEffect.getExon();
+		int rank = -1;
+		String geneSegId = "";
+		if (ex != null) {
+			rank = ex.getRank();
+			geneSegId = ex.getId();
+		} else {
+			// Do we have an intron?
+			Intron intron = changeEffect.getIntron();
+			if (intron != null) {
+				rank = intron.getRank();
+				geneSegId = intron.getId();
+			}
+		}
+		if (rank >= 0) effBuff.append(rank);
+
+		if (formatVersion == FormatVersion.FORMAT_SNPEFF_CBMI) {
+			effBuff.append('|');
+			effBuff.append(geneSegId);
+			effBuff.append('|');
+
+			//HGVS only for tx-bound exonics
+			if (tr != null) effBuff.append(changeEffect.getCodingDnaHgvs());
+
+			effBuff.append('|');
+			effBuff.append(changeEffect.getAaChangeHgvs());
+		}
+
+		effBuff.append('|');
+
+		// Add genotype (or genotype difference) for this effect
+		if (formatVersion == FormatVersion.FORMAT_SNPEFF_4) {
+			effBuff.append('|');
+			effBuff.append(changeEffect.getGenotype());
+		}
+
+		// Errors or warnings (this is the last thing in the list)
+		if (changeEffect.hasError() || changeEffect.hasWarning()) {
+			effBuff.append('|');
+
+			// Add warnings
+			boolean hasWarning = !changeEffect.getWarning().isEmpty();
+			if (hasWarning) effBuff.append(changeEffect.getWarning());
+
+			// Add errors
+			if (!changeEffect.getError().isEmpty()) {
+				if (hasWarning) effBuff.append('+');
+				effBuff.append(changeEffect.getError());
+			}
+		}
+		effBuff.append(')');
+	}
+
+	/**
+	 * Gene and transcript information: 'Gene_Name | Transcript_BioType | Gene_Coding | Transcript_ID |'
+	 * These fields never change, so they are cached
+	 */
+	String geneTrInfo(Gene gene, Transcript tr) {
+		HashMap<String, String> cache = (tr != null ? trCache : geneCache);
+		String key = (tr != null ? tr.getId() : gene.getId());
+		String info = cache.get(key);
+		if (info != null) return info;
+
+		StringBuilder sb = new StringBuilder();
+
+		// Gene name
+		sb.append(vcfInfoSafeString(useGeneId ? gene.getId() : gene.getGeneName()));
+		sb.append('|');
+
+		// Transcript biotype
+		if (tr != null) {
+			if ((tr.getBioType() != null) && !tr.getBioType().isEmpty()) sb.append(tr.getBioType());
+			else if (tr.isProteinCoding()) sb.append("protein_coding"); // No biotype? Add protein_coding of we know it is.
+		}
+		sb.append('|');
+
+		// Protein coding gene?
+		if (gene.getGenome().hasCodingInfo()) sb.append(gene.isProteinCoding() ? ChangeEffect.Coding.CODING.toString() : ChangeEffect.Coding.NON_CODING.toString());
+		sb.append('|');
+
+		// Transcript ID
+		if (tr != null) sb.append(vcfInfoSafeString(tr.getId()));
+		sb.append('|');
+
+		info = sb.toString();
+		if (cache.size() >= MAX_CACHE_SIZE) cache.clear(); // Do not let the cache grow without limit
+		cache.put(key, info);
+		return info;
+	}
+
+	void grow() {
+		int len = 2 * starts.length;
+		int newStarts[] = new int[len], newEnds[] = new int[len];
+		System.arraycopy(starts, 0, newStarts, 0, size);
+		System.arraycopy(ends, 0, newEnds, 0, size);
+		starts = newStarts;
+		ends = newEnds;
+		idx = new int[len];
+		tmp = new int[len];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Remove all effects (buffers and cache are kept)
+	 */
+	public void reset() {
+		buffer.setLength(0);
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sort effects (indexes are stored in 'idx')
+	 */
+	void sort() {
+		for (int i = 0; i < size; i++)
+			idx[i] = i;
+		sort(0, size);
+	}
+
+	/**
+	 * Merge sort idx[start, end[
+	 */
+	void sort(int start, int end) {
+		int len = end - start;
+		if (len < 2) return;
+
+		// Small arrays: Insertion sort
+		if (len <= 8) {
+			for (int i = start + 1; i < end; i++) {
+				int cur = idx[i];
+				int j = i - 1;
+				for (; (j >= start) && (compare(idx[j], cur) > 0); j--)
+					idx[j + 1] = idx[j];
+				idx[j + 1] = cur;
+			}
+			return;
+		}
+
+		int mid = (start + end) >>> 1;
+		sort(start, mid);
+		sort(mid, end);
+
+		// Merge
+		System.arraycopy(idx, start, tmp, start, len);
+		int i = start, j = mid, k = start;
+		while ((i < mid) && (j < end))
+			idx[k++] = (compare(tmp[i], tmp[j]) <= 0) ? tmp[i++] : tmp[j++];
+		while (i < mid)
+			idx[k++] = tmp[i++];
+		while (j < end)
+			idx[k++] = tmp[j++];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		append(sb);
+		return sb.toString();
+	}
+}
@@ -8,21 +8,16 @@ import java.util.List;
 
 import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
 import ca.mcgill.mcb.pcingola.interval.Custom;
-import ca.mcgill.mcb.pcingola.interval.Exon;
-import ca.mcgill.mcb.pcingola.interval.Gene;
-import ca.mcgill.mcb.pcingola.interval.Intron;
 import ca.mcgill.mcb.pcingola.interval.Marker;
-import ca.mcgill.mcb.pcingola.interval.Regulation;
 import ca.mcgill.mcb.pcingola.interval.Transcript;
 import ca.mcgill.mcb.pcingola.interval.Variant;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect;
-import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.FunctionalClass;
 import ca.mcgill.mcb.pcingola.snpEffect.LossOfFunction;
-import ca.mcgill.mcb.pcingola.util.Gpr;
 import ca.mcgill.mcb.pcingola.util.KeyValue;
 import ca.mcgill.mcb.pcingola.vcf.VcfEffect;
 import ca.mcgill.mcb.pcingola.vcf.VcfEffect.FormatVersion;
 import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
+import ca.mcgill.mcb.pcingola.vcf.VcfHeader;
 
 /**
  * Formats output as VCF
@@ -38,9 +33,11 @@ public class VcfOutputFormatter extends OutputFormatter {
 	boolean needAddInfo = false;
 	boolean needAddHeader = true;
 	boolean lossOfFunction;
+	boolean genotypeSummary; // Add genotype summary INFO fields (AC, AN, HET, HOM)
 	boolean gatk;
     FormatVersion formatVersion = VcfEffect.FormatVersion.FORMAT_SNPEFF_CBMI;
     List<VcfEntry> vcfEntries;
+	VcfEffEncoder effEncoder; // Created on demand (format options must be set before)
 
 	// Genome genome;
 
@@ -75,8 +72,16 @@ public class VcfOutputFormatter extends OutputFormatter {
 		VcfFileIterator vcfFile = vcfEntry.getVcfFileIterator();
 
 		// Add new lines
+		VcfHeader vcfHeader = vcfFile.getVcfHeader();
 		for (String newHeaderLine : getNewHeaderLines())
-			vcfFile.getVcfHeader().addLine(newHeaderLine);
+			vcfHeader.addLine(newHeaderLine);
+
+		// Genotype summary fields might already be in the input file (values are replaced, so there is no need for a new header line)
+		if (genotypeSummary) {
+			String headerLines[] = vcfHeader.getLines();
+			for (String newHeaderLine : getGenotypeSummaryHeaderLines())
+				if (!hasInfoLine(headerLines, newHeaderLine)) vcfHeader.addLine(newHeaderLine);
+		}
 
 		needAddHeader = false;
 	}
@@ -85,6 +90,9 @@ public class VcfOutputFormatter extends OutputFormatter {
 	 * Add effects to INFO field
 	 */
 	protected void addInfo(VcfEntry vcfEntry) {
+		// Genotype summary is added even if there are no effects
+		if (genotypeSummary) vcfEntry.addGenotypeSummary();
+
 		// No effects to show?
 		if (changeEffects.isEmpty()) return;
 
@@ -99,7 +107,8 @@ public class VcfOutputFormatter extends OutputFormatter {
 		//---
 		// Calculate all effects and genes
 		//---
-		HashSet<String> effs = new HashSet<String>();
+		if (effEncoder == null) effEncoder = new VcfEffEncoder(formatVersion, useGeneId, useSequenceOntology);
+		effEncoder.reset();
 		HashSet<String> oicr = (useOicr ? new HashSet<String>() : null);
 		boolean addCustomFields = false;
 		for (ChangeEffect changeEffect : changeEffects) {
@@ -108,156 +117,9 @@ public class VcfOutputFormatter extends OutputFormatter {
 
 			// If it is not filtered out by changeEffectResutFilter  => Show it
 			if ((changeEffectResutFilter == null) || (!changeEffectResutFilter.filter(changeEffect))) {
-				StringBuilder effBuff = new StringBuilder();
-
-				// Add effect
-				effBuff.append(changeEffect.effect(true, false, false, useSequenceOntology));
-				effBuff.append("(");
-
-				// Add effect impact
-				effBuff.append(changeEffect.getEffectImpact());
-				effBuff.append("|");
-
-				// Add functional class
-				FunctionalClass fc = changeEffect.getFunctionalClass();
-				effBuff.append(fc == FunctionalClass.NONE ? "" : fc.toString()); // Show only if it is not empty
-				effBuff.append("|");
-
-				// Codon change
-				String codonChange = changeEffect.getCodonChange();
-				if (!codonChange.isEmpty()) effBuff.append(codonChange);
-				else if (changeEffect.getDistance() >= 0) effBuff.append(changeEffect.getDistance());
-				effBuff.append("|");
-
-				// Add HGVS (amino acid change) 
-                //if (useHgvs) effBuff.append(changeEffect.getHgvs());
-                //else effBuff.append(changeEffect.getAaChangeHgsv());
-                //effBuff.append("|");
-
-				// Add amino acid length
-				if (formatVersion != FormatVersion.FORMAT_SNPEFF_2) { // This field is not in format version 2
-					int aalen = changeEffect.getAaLength();
-					effBuff.append(aalen >= 0 ? aalen : "");
-					effBuff.append("|");
-				}
-
-				// Add gene info
-				Gene gene = changeEffect.getGene();
+				// Add effect (duplicates are removed when the INFO field is created)
+				effEncoder.add(changeEffect);
 				Transcript tr = changeEffect.getTranscript();
-				if (gene != null) {
-					// Gene name
-					effBuff.append(vcfInfoSafeString(useGeneId ? gene.getId() : gene.getGeneName()));
-					effBuff.append("|");
-
-					// Transcript biotype
-					if (tr != null) {
-						if ((tr.getBioType() != null) && !tr.getBioType().isEmpty()) effBuff.append(tr.getBioType());
-						else effBuff.append(tr.isProteinCoding() ? "protein_coding" : ""); // No biotype? Add protein_coding of we know it is.
-					}
-					effBuff.append("|");
-
-					// Protein coding gene?
-					String coding = "";
-					if (gene.getGenome().hasCodingInfo()) coding = (gene.isProteinCoding() ? ChangeEffect.Coding.CODING.toString() : ChangeEffect.Coding.NON_CODING.toString());
-					effBuff.append(coding);
-					effBuff.append("|");
-				} else if (changeEffect.isRegulation()) {
-					Regulation reg = (Regulation) changeEffect.getMarker();
-					effBuff.append("|" + reg.getCellType() + "||");
-				} else if (changeEffect.isCustom()) {
-					Marker m = changeEffect.getMarker();
-					if (m != null) effBuff.append("|" + VcfEntry.vcfInfoSafe(m.getId()) + "||");
-					else effBuff.append("|||");
-				} else effBuff.append("|||");
-
-				// Add transcript info
-				if (tr != null) effBuff.append(vcfInfoSafeString(tr.getId()));
-				effBuff.append("|");
-
-				// Add exon (or intron) rank info
-				Exon ex = changeEffect.getExon();
-				int rank = -1;
-                String geneSegId = "";
-
-                if (ex != null) {
-                    rank = ex.getRank();
-                    geneSegId = ex.getId();
-                } else {
-                    // Do we have an intron?
-                    Intron intron = changeEffect.getIntron();
-                    if (intron != null) {
-                        rank = intron.getRank();
-                        geneSegId = intron.getId();
-                    }
-                }
-                effBuff.append(rank >= 0 ? rank : "");
-
-                if (formatVersion == FormatVersion.FORMAT_SNPEFF_CBMI) {
-                    effBuff.append("|");
-
-                    effBuff.append(geneSegId);
-
-                    effBuff.append("|");
-
-                    //HGVS only for tx-bound exonics
-                    if (tr != null) {
-                        effBuff.append(changeEffect.getCodingDnaHgvs());
-                    }
-
-                    effBuff.append("|");
-
-                    effBuff.append(changeEffect.getAaChangeHgvs());
-                }
-
-                effBuff.append("|");
-
-                // Add genotype (or genotype difference) for this effect
-				if (formatVersion == FormatVersion.FORMAT_SNPEFF_4) {
-					effBuff.append("|");
-					effBuff.append(changeEffect.getGenotype());
-				}
-
-				//---
-				// Errors or warnings (this is the last thing in the list)
-				//---
-				if (changeEffect.hasError() || changeEffect.hasWarning()) {
-					StringBuilder err = new StringBuilder();
-
-					// Add warnings
-					if (!changeEffect.getWarning().isEmpty()) err.append(changeEffect.getWarning());
-
-					// Add errors
-					if (!changeEffect.getError().isEmpty()) {
-						if (err.length() > 0) err.append("+");
-						err.append(changeEffect.getError());
-					}
-
-					effBuff.append("|");
-					effBuff.append(err);
-				}
-				effBuff.append(")");
-
-				//---
-				// Add effect
-				//---
-				if (!effs.add(effBuff.toString())) {
-					if (debug) {
-						// Effect has already been added? Something is wrong, the information should be unique for each effect
-						StringBuilder sb = new StringBuilder();
-						sb.append("--------------------------------------------------------------------------------\n");
-						sb.append("VCF Entry   :\t" + vcfEntry + "\n");
-						sb.append("REPEAT (VCF):\t" + effBuff + "\n");
-						sb.append("REPEAT (TXT):\t" + changeEffect + "\n");
-						sb.append("All    (VCF):\n");
-						for (String ce : effs)
-							sb.append("\t" + ce + "\n");
-						sb.append("All    (TXT):\n");
-						for (ChangeEffect ce : changeEffects)
-							sb.append("\t" + ce + "\n");
-						sb.append("--------------------------------------------------------------------------------\n");
-						Gpr.debug("WARNING: Repeated effect!\n" + sb);
-					}
-				}
 
 				//---
 				// Add OICR data
@@ -287,8 +149,7 @@ public class VcfOutputFormatter extends OutputFormatter {
 		//---
 
 		// Add 'EFF' info field
-		String effStr = toStringVcfInfo(effs);
-		if (!effStr.isEmpty()) vcfEntry.addInfo(VcfEffect.VCF_INFO_EFF_NAME, effStr);
+		if (!effEncoder.isEmpty()) vcfEntry.addInfo(VcfEffect.VCF_INFO_EFF_NAME, effEncoder.toString());
 
 		// Add 'OICR' info field
 		if (useOicr && (oicr.size() > 0)) {
@@ -329,6 +190,7 @@ public class VcfOutputFormatter extends OutputFormatter {
 			newOutputFormatter.needAddInfo = needAddInfo;
 			newOutputFormatter.needAddHeader = needAddHeader;
 			newOutputFormatter.lossOfFunction = lossOfFunction;
+			newOutputFormatter.genotypeSummary = genotypeSummary;
 			newOutputFormatter.gatk = gatk;
 			// newOutputFormatter.genome = genome;
 			return newOutputFormatter;
@@ -353,6 +215,18 @@ public class VcfOutputFormatter extends OutputFormatter {
 		return null;
 	}
 
+	/**
+	 * Header lines for genotype summary INFO fields (AC, AN, HET, HOM)
+	 */
+	public List<String> getGenotypeSummaryHeaderLines() {
+		ArrayList<String> newLines = new ArrayList<String>();
+		newLines.add("##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count in genotypes, for each ALT allele\">");
+		newLines.add("##INFO=<ID=AN,Number=1,Type=Integer,Description=\"Total number of alleles in called genotypes\">");
+		newLines.add("##INFO=<ID=HET,Number=1,Type=Integer,Description=\"Number of samples with heterozygous genotypes\">");
+		newLines.add("##INFO=<ID=HOM,Number=1,Type=Integer,Description=\"Number of samples with homozygous ALT genotypes\">");
+		return newLines;
+	}
+
 	/**
 	 * New lines to be added to header
 	 * @return
@@ -393,9 +267,24 @@ public class VcfOutputFormatter extends OutputFormatter {
 		;
 	}
 
+	/**
+	 * Is there an INFO header line having the same ID as 'infoLine'?
+	 */
+	boolean hasInfoLine(String headerLines[], String infoLine) {
+		String prefix = infoLine.substring(0, infoLine.indexOf(',') + 1); // E.g. "##INFO=<ID=AC,"
+		for (String line : headerLines)
+			if (line.startsWith(prefix)) return true;
+		return false;
+	}
+
 	public void setGatk(boolean gatk) {
 		this.gatk = gatk;
 		if (gatk) formatVersion = VcfEffect.FormatVersion.FORMAT_SNPEFF_2;
+		effEncoder = null;
+	}
+
+	public void setGenotypeSummary(boolean genotypeSummary) {
+		this.genotypeSummary = genotypeSummary;
 	}
 
 	public void setLossOfFunction(boolean lossOfFunction) {
@@ -457,9 +346,7 @@ public class VcfOutputFormatter extends OutputFormatter {
 	 * Create a string that is safe (i.e. valid) to add in an INFO field
 	 */
 	public String vcfInfoSafeString(String value) {
-		if (value == null) return value;
-		value = value.replaceAll("[ ,;|=()]", "_");
-		return value;
+		return VcfEffEncoder.vcfInfoSafeString(value);
 	}
 
 }
@@ -0,0 +1,254 @@
+package ca.mcgill.mcb.pcingola.parallel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A multi-threaded 'read -> calculate -> output' pipeline that preserves input order.
+ *
+ * 	- A reader thread iterates over the input and groups items into batches.
+ * 	- Batches are sent to worker threads, which invoke 'calculate()' on each item.
+ * 	- The thread invoking 'run()' (the writer) takes batches in input order, waits for
+ * 	  them to be finished and invokes 'output()' on each item. So 'output()' is always
+ * 	  invoked from the same thread and does not need to be thread safe (e.g. statistics
+ * 	  or output formatters).
+ *
+ * Queues are bounded, so memory usage is limited even if the input is huge.
+ *
+ * Batch size is adapted while running, so that processing a batch takes
+ * roughly TARGET_BATCH_TIME_NS: small batches keep all workers busy when
+ * items are expensive, large batches reduce synchronization overhead when
+ * items are cheap.
+ *
+ * @author pcingola
+ */
+public abstract class ParallelPipeline<I, O> {
+
+	/**
+	 * A batch of input items and the results calculated for them
+	 */
+	class Batch {
+		ArrayList<I> inputs;
+		ArrayList<O> outputs;
+		Throwable error;
+		boolean done = false;
+
+		Batch(int size) {
+			inputs = new ArrayList<I>(size);
+			outputs = new ArrayList<O>(size);
+		}
+
+		synchronized void finished() {
+			done = true;
+			notifyAll();
+		}
+
+		synchronized void waitFinished() throws InterruptedException {
+			while (!done)
+				wait();
+		}
+	}
+
+	public static final int MIN_BATCH_SIZE = 1;
+	public static final int MAX_BATCH_SIZE = 10 * 1024;
+	public static final int INITIAL_BATCH_SIZE = 16;
+	public static final long TARGET_BATCH_TIME_NS = 10 * 1000 * 1000; // Ten milliseconds
+	public static final int QUEUED_BATCHES_PER_WORKER = 4;
+
+	int numWorkers;
+	AtomicInteger batchSize;
+	BlockingQueue<Batch> workQueue; // Batches to be processed by workers
+	BlockingQueue<Batch> outQueue; // Batches to be output (in input order)
+	Batch endMark; // Marks the end of the input
+	volatile Throwable readError;
+	ArrayList<Thread> threads;
+
+	public ParallelPipeline(int numWorkers) {
+		this.numWorkers = Math.max(1, numWorkers);
+		batchSize = new AtomicInteger(INITIAL_BATCH_SIZE);
+		int queueSize = QUEUED_BATCHES_PER_WORKER * this.numWorkers;
+		workQueue = new ArrayBlockingQueue<Batch>(queueSize);
+		outQueue = new ArrayBlockingQueue<Batch>(queueSize);
+		endMark = new Batch(0);
+		threads = new ArrayList<Thread>();
+	}
+
+	/**
+	 * Adapt batch size according to the time it took to process a batch
+	 */
+	void adaptBatchSize(int size, long elapsedNs) {
+		int current = batchSize.get();
+		if (size < current) return; // Batch was created using an older (smaller) size, or it was the last batch
+
+		int newSize = current;
+		if (elapsedNs < TARGET_BATCH_TIME_NS / 2) newSize = Math.min(MAX_BATCH_SIZE, current * 2);
+		else if (elapsedNs > TARGET_BATCH_TIME_NS * 2) newSize = Math.max(MIN_BATCH_SIZE, current / 2);
+
+		if (newSize != current) batchSize.compareAndSet(current, newSize);
+	}
+
+	/**
+	 * Calculate a result for an input item.
+	 * Note: This method is invoked from worker threads, so it must be thread safe. Each
+	 *       worker has a number (from zero to numWorkers - 1), which can be used to keep
+	 *       per-worker data (e.g. statistics) without any locking
+	 */
+	protected abstract O calculate(I input, int workerNum);
+
+	public int getBatchSize() {
+		return batchSize.get();
+	}
+
+	public int getNumWorkers() {
+		return numWorkers;
+	}
+
+	/**
+	 * Output a result.
+	 * Note: This method is always invoked from the thread that called 'run()', in input order
+	 */
+	protected abstract void output(I input, O result);
+
+	/**
+	 * Read input items, create batches and send them to both queues
+	 */
+	void read(Iterable<I> input) {
+		try {
+			Iterator<I> it = input.iterator();
+			Batch batch = new Batch(batchSize.get());
+			while (it.hasNext()) {
+				batch.inputs.add(it.next());
+
+				if (batch.inputs.size() >= batchSize.get()) {
+					send(batch);
+					batch = new Batch(batchSize.get());
+				}
+			}
+
+			if (!batch.inputs.isEmpty()) send(batch);
+		} catch (InterruptedException e) {
+			return; // Pipeline was stopped
+		} catch (Throwable t) {
+			readError = t;
+		}
+
+		// Mark the end of the input
+		try {
+			outQueue.put(endMark);
+			for (int i = 0; i < numWorkers; i++)
+				workQueue.put(endMark);
+		} catch (InterruptedException e) {
+			return; // Pipeline was stopped
+		}
+	}
+
+	/**
+	 * Run the pipeline: Calculate results for each input item and output them (in the same order)
+	 */
+	public void run(Iterable<I> input) {
+		start(input);
+
+		boolean ok = false;
+		try {
+			// Output batches in the same order they were read
+			while (true) {
+				Batch batch = outQueue.take();
+				if (batch == endMark) break;
+
+				batch.waitFinished();
+				if (batch.error != null) throw new RuntimeException(batch.error);
+
+				for (int i = 0; i < batch.inputs.size(); i++)
+					output(batch.inputs.get(i), batch.outputs.get(i));
+			}
+
+			if (readError != null) throw new RuntimeException(readError);
+			ok = true;
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} finally {
+			stop(!ok);
+		}
+	}
+
+	/**
+	 * Send a batch to workers and writer
+	 * Note: Batches are added to the output queue first, so that the writer always knows the next batch to output
+	 */
+	void send(Batch batch) throws InterruptedException {
+		outQueue.put(batch);
+		workQueue.put(batch);
+	}
+
+	/**
+	 * Start reader and worker threads
+	 */
+	void start(final Iterable<I> input) {
+		Thread reader = new Thread("ParallelPipeline-reader") {
+			@Override
+			public void run() {
+				read(input);
+			}
+		};
+		threads.add(reader);
+
+		for (int i = 0; i < numWorkers; i++) {
+			final int workerNum = i;
+			Thread worker = new Thread("ParallelPipeline-worker-" + i) {
+				@Override
+				public void run() {
+					work(workerNum);
+				}
+			};
+			threads.add(worker);
+		}
+
+		for (Thread t : threads) {
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Wait for all threads to finish (interrupt them if the pipeline failed)
+	 */
+	void stop(boolean interrupt) {
+		for (Thread t : threads) {
+			if (interrupt) t.interrupt();
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		threads.clear();
+	}
+
+	/**
+	 * Worker: Take batches from the queue and calculate results
+	 */
+	void work(int workerNum) {
+		try {
+			while (true) {
+				Batch batch = workQueue.take();
+				if (batch == endMark) return;
+
+				long start = System.nanoTime();
+				try {
+					for (I in : batch.inputs)
+						batch.outputs.add(calculate(in, workerNum));
+				} catch (Throwable t) {
+					batch.error = t;
+				}
+				adaptBatchSize(batch.inputs.size(), System.nanoTime() - start);
+
+				batch.finished();
+			}
+		} catch (InterruptedException e) {
+			return; // Pipeline was stopped
+		}
+	}
+}
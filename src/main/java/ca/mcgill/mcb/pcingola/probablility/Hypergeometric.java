@@ -46,9 +46,9 @@ public class Hypergeometric {
 	 * Cache results for Sum[ log(i) ]
 	 * WARNING: This cache will grow forever
 	 */
-	double sumLog[] = { 0.0 };
+	volatile double sumLog[] = { 0.0 };
 
-	public static Hypergeometric get() {
+	public static synchronized Hypergeometric get() {
 		if (hypergeometric == null) hypergeometric = new Hypergeometric();
 		return hypergeometric;
 	}
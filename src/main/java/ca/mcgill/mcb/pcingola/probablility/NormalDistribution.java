@@ -16,6 +16,10 @@ public class NormalDistribution {
 	static final double SIXTEN = 1.6; /* Magic Cutoff */
 	public static final double MAX_NORM_DOUBLE = 700;
 
+	// Coefficients used to evaluate the CDF's tails (|z| > sqrt(32))
+	static final double P[] = { 0.21589853405795699, 0.1274011611602473639, 0.022235277870649807, 0.001421619193227893466, 2.9112874951168792e-5, 0.02307344176494017303 };
+	static final double Q[] = { 1.28426009614491121, 0.468238212480865118, 0.0659881378689285515, 0.00378239633202758244, 7.29751555083966205e-5 };
+
 	public static Apfloat pdf(double x, double mu, double sigma) {
 		double z = ((x - mu) * (x - mu)) / (2.0 * sigma * sigma);
 		if (z > MAX_NORM_DOUBLE) return pdfApfloat(x, mu, sigma);
@@ -51,8 +55,8 @@ public class NormalDistribution {
 	public static Apfloat cdf(double x, double mu, double sigma) {
 		final double c[] = { 0.39894151208813466764, 8.8831497943883759412, 93.506656132177855979, 597.27027639480026226, 2494.5375852903726711, 6848.1904505362823326, 11602.651437647350124, 9842.7148383839780218, 1.0765576773720192317e-8 };
 		final double d[] = { 22.266688044328115691, 235.38790178262499861, 1519.377599407554805, 6485.558298266760755, 18615.571640885098091, 34900.952721145977266, 38912.003286093271411, 19685.429676859990727 };
-		final double p[] = { 0.21589853405795699, 0.1274011611602473639, 0.022235277870649807, 0.001421619193227893466, 2.9112874951168792e-5, 0.02307344176494017303 };
-		final double q[] = { 1.28426009614491121, 0.468238212480865118, 0.0659881378689285515, 0.00378239633202758244, 7.29751555083966205e-5 };
+		final double p[] = P;
+		final double q[] = Q;
 		final double a[] = { 2.2352520354606839287, 161.02823106855587881, 1067.6894854603709582, 18154.981253343561249, 0.065682337918207449113 };
 		final double b[] = { 47.20258190468824187, 976.09855173777669322, 10260.932208618978205, 45507.789335026729956 };
 
@@ -146,6 +150,40 @@ public class NormalDistribution {
 		return new Apfloat(result);
 	}
 
+	/**
+	 * Logarithm of the CDF, using only double precision arithmetic.
+	 * Tails are calculated in log-space, so extreme values do not underflow to zero.
+	 */
+	public static double logCdf(double x, double mu, double sigma) {
+		double z = (x - mu) / sigma;
+		if (Double.isNaN(z)) return z;
+		if (z < -Constants.M_SQRT_32) return logCdfTail(z);
+		if (z > Constants.M_SQRT_32) return Math.log1p(-Math.exp(logCdfTail(-z)));
+		return Math.log(cdf(z, 0.0, 1.0).doubleValue());
+	}
+
+	/**
+	 * Logarithm of the CDF for z < -sqrt(32) (same approximation as 'cdf', evaluated in log-space)
+	 */
+	static double logCdfTail(double z) {
+		if (Double.isInfinite(z)) return Double.NEGATIVE_INFINITY;
+
+		double y = -z;
+		double xsq = 1.0 / (z * z);
+		double xnum = P[5] * xsq;
+		double xden = xsq;
+		for (int i = 1; i <= 4; ++i) {
+			xnum = (xnum + P[i - 1]) * xsq;
+			xden = (xden + Q[i - 1]) * xsq;
+		}
+		double result = xsq * (xnum + P[4]) / (xden + Q[4]);
+		result = (Constants.M_1_SQRT_2PI - result) / y;
+
+		double zsq = Math.floor(z * SIXTEN) / SIXTEN;
+		double del = (z - zsq) * (z + zsq);
+		return -zsq * zsq * 0.5 - del * 0.5 + Math.log(result);
+	}
+
 	/**
 	 * CDF using apfloat
 	 * @param x
@@ -0,0 +1,18 @@
+package ca.mcgill.mcb.pcingola.probablility;
+
+import org.apfloat.Apfloat;
+
+/**
+ * Rank sum cumulative distribution function (ranks are selected without replacement)
+ *
+ * @author pcingola
+ */
+public interface RankSumCdf {
+
+	/**
+	 * Probability of getting a rank sum less or equal to 'r' when adding the ranks
+	 * of 'nt' selected items. Items are ranked '1..n' (from 1 to 'n')
+	 */
+	public Apfloat cdf(int n, int nt, long r);
+
+}
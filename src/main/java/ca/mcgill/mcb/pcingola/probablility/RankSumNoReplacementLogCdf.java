@@ -0,0 +1,174 @@
+package ca.mcgill.mcb.pcingola.probablility;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatMath;
+
+/**
+ * Rank sum cumulative distribution function (ranks are selected without replacement)
+ * calculated using double precision arithmetic.
+ *
+ * Exact distributions are calculated only when they are needed, one row
+ * (all rank sums for a given 'n' and 'nt') at a time, and memoized. Large
+ * rows are approximated by a Normal distribution. Results are kept in
+ * log-space, so small p-values do not underflow to zero.
+ *
+ * The exact distribution uses the Mann-Whitney 'U' statistic (U = rankSum - nt * (nt + 1) / 2).
+ * Let 'k' be the number of selected items and 'm' the number of items not selected. Item
+ * 'n = k + m' (the one having the largest rank) is selected with probability k/n, so:
+ *
+ * 		P(U = u | k, m) = k/n * P(U = u - m | k-1, m) + m/n * P(U = u | k, m-1)
+ *
+ * @author pcingola
+ */
+public class RankSumNoReplacementLogCdf implements RankSumCdf {
+
+	/** Use exact calculations if 'k * m' is less or equal than this number (calculation time is roughly (k * m)^2 / 4) */
+	public static final int DEFAULT_MAX_EXACT = 10000;
+
+	private static RankSumNoReplacementLogCdf rankSumNoReplacementLogCdf = null;
+
+	int maxExact = DEFAULT_MAX_EXACT;
+	ConcurrentHashMap<Long, double[]> logCdfByKm; // Memoized rows: log(P(U <= u)) indexed by 'k' and 'm'
+
+	public static synchronized RankSumNoReplacementLogCdf get() {
+		if (rankSumNoReplacementLogCdf == null) rankSumNoReplacementLogCdf = new RankSumNoReplacementLogCdf();
+		return rankSumNoReplacementLogCdf;
+	}
+
+	public RankSumNoReplacementLogCdf() {
+		logCdfByKm = new ConcurrentHashMap<Long, double[]>();
+	}
+
+	public RankSumNoReplacementLogCdf(int maxExact) {
+		this();
+		this.maxExact = maxExact;
+	}
+
+	/**
+	 * Calculate exact distribution: log(P(U <= u)) for u in [0, k * m]
+	 * Note: We assume k <= m
+	 */
+	double[] calcLogCdfRow(int k, int m) {
+		int maxU = k * m;
+
+		// pdf[j][u] = P(U = u | j, mm). Start with 'mm = 0' (U is always zero)
+		double pdf[][] = new double[k + 1][maxU + 1];
+		for (int j = 0; j <= k; j++)
+			pdf[j][0] = 1.0;
+
+		for (int mm = 1; mm <= m; mm++) {
+			// Note: 'pdf[j - 1]' is already updated for 'mm', whereas 'pdf[j]' still has values for 'mm - 1'
+			for (int j = 1; j <= k; j++) {
+				double pSel = ((double) j) / (j + mm);
+				double pNotSel = ((double) mm) / (j + mm);
+				double prev[] = pdf[j - 1];
+				double cur[] = pdf[j];
+
+				int uMax = j * mm;
+				for (int u = uMax; u >= mm; u--)
+					cur[u] = pSel * prev[u - mm] + pNotSel * cur[u];
+				for (int u = mm - 1; u >= 0; u--)
+					cur[u] = pNotSel * cur[u];
+			}
+		}
+
+		// Cumulative (log-space)
+		double p[] = pdf[k];
+		double logCdf[] = new double[maxU + 1];
+		double sum = 0.0;
+		for (int u = 0; u <= maxU; u++) {
+			sum += p[u];
+			logCdf[u] = Math.log(Math.min(sum, 1.0));
+		}
+
+		return logCdf;
+	}
+
+	/**
+	 * Probability of getting a rank sum less or equal to 'r' when adding the ranks
+	 * of 'nt' selected items. Items are ranked '1..n' (from 1 to 'n')
+	 */
+	@Override
+	public Apfloat cdf(int n, int nt, long r) {
+		double logCdf = logCdf(n, nt, r);
+		if (logCdf == Double.NEGATIVE_INFINITY) return Apfloat.ZERO;
+
+		// Very small numbers cannot be represented as double
+		if (logCdf < Math.log(Double.MIN_NORMAL)) return ApfloatMath.exp(new Apfloat(logCdf));
+		return new Apfloat(Math.exp(logCdf));
+	}
+
+	/**
+	 * Same as 'cdf', as a double (may underflow to zero)
+	 */
+	public double cdfDouble(int n, int nt, long r) {
+		return Math.exp(logCdf(n, nt, r));
+	}
+
+	/**
+	 * Is the exact distribution used for these parameters?
+	 */
+	public boolean isExact(int n, int nt) {
+		long k = Math.min(nt, n - nt);
+		long m = n - k;
+		return k * m <= maxExact;
+	}
+
+	/**
+	 * Logarithm of the probability of getting a rank sum less or equal to 'r'
+	 * when adding the ranks of 'nt' selected items. Items are ranked '1..n'
+	 */
+	public double logCdf(int n, int nt, long r) {
+		// Check variable's limits
+		if ((n <= 0) || (nt <= 0) || (nt > n)) return Double.NEGATIVE_INFINITY;
+		long minR = minRankSum(nt);
+		long maxR = minR + ((long) nt) * (n - nt);
+		if (r < minR) return Double.NEGATIVE_INFINITY;
+		if (r >= maxR) return 0.0;
+
+		if (!isExact(n, nt)) return logCdfNormal(n, nt, r);
+		return logCdfRow(n, nt)[(int) (r - minR)];
+	}
+
+	/**
+	 * Normal approximation (using continuity correction)
+	 */
+	double logCdfNormal(int n, int nt, long r) {
+		double dn = n, dnt = nt;
+		double mean = dnt * (dn + 1.0) / 2.0;
+		double sigma = Math.sqrt(dnt * (dn - dnt) * (dn + 1.0) / 12.0);
+		return NormalDistribution.logCdf(r + 0.5, mean, sigma);
+	}
+
+	/**
+	 * Exact distribution for 'n' and 'nt': log(P(U <= u)) for u in [0, k * m]
+	 */
+	double[] logCdfRow(int n, int nt) {
+		// The distribution of 'U' is the same if we swap 'k' and 'm'
+		int k = Math.min(nt, n - nt);
+		int m = n - k;
+		Long key = (((long) k) << 32) | m;
+
+		double logCdf[] = logCdfByKm.get(key);
+		if (logCdf == null) {
+			logCdf = calcLogCdfRow(k, m);
+			logCdfByKm.put(key, logCdf);
+		}
+		return logCdf;
+	}
+
+	/**
+	 * Minimum possible rank sum
+	 */
+	long minRankSum(int nt) {
+		return ((long) nt) * (nt + 1) / 2;
+	}
+
+	public void setMaxExact(int maxExact) {
+		this.maxExact = maxExact;
+		logCdfByKm.clear();
+	}
+
+}
@@ -22,7 +22,7 @@ import ca.mcgill.mcb.pcingola.util.Gpr;
  *
  */
 
-public class RankSumNoReplacementPdf {
+public class RankSumNoReplacementPdf implements RankSumCdf {
 
 	/**
 	 * Algorithm type
@@ -180,7 +180,8 @@ public class RankSumNoReplacementPdf {
 	 * @param r : rank sum value
 	 * @return
 	 */
-	public Apfloat cdf(int n, int nt, long r) {
+	@Override
+	public synchronized Apfloat cdf(int n, int nt, long r) {
 		Apfloat cdf;
 		long minR = minRankSum(n, nt);
 		long maxR = maxRankSum(n, nt);
@@ -405,7 +406,7 @@ public class RankSumNoReplacementPdf {
 	 * @param r : rank sum value
 	 * @return
 	 */
-	public Apfloat pdf(int n, int nt, long r) {
+	public synchronized Apfloat pdf(int n, int nt, long r) {
 		long minR = minRankSum(n, nt);
 		long maxR = maxRankSum(n, nt);
 
@@ -26,21 +26,12 @@ public class RankSumPdf {
 	/** Cache statistics */
 	static int cacheHit, cacheMiss;
 
-	/** A cache to speedup calculations  cache[n][nt][r] */
+	/** A cache to speedup calculations  cache[n][nt][r]. Created on first use */
 	static Apfloat[][][] cachePdf, cacheCdf;
 
 	/** A small number */
 	public static double SMALL = 1E-20;
 
-	//-------------------------------------------------------------------------
-	// Static init 
-	//-------------------------------------------------------------------------
-
-	static {
-		cacheInit();
-		cacheHit = cacheMiss = 0;
-	}
-
 	//-------------------------------------------------------------------------
 	// Static methods
 	//-------------------------------------------------------------------------
@@ -60,10 +51,11 @@ public class RankSumPdf {
 	}
 
 	/** 
-	 * Initialize cache
+	 * Initialize cache (only once)
 	 */
-	private static void cacheInit() {
-		System.out.println("RankSumPdf: Initializing cache");
+	private static synchronized void cacheInit() {
+		if (cachePdf != null) return;
+		cacheHit = cacheMiss = 0;
 
 		cachePdf = new Apfloat[CACHE_MAX_N + 1][CACHE_MAX_NT + 1][];
 		cacheCdf = new Apfloat[CACHE_MAX_N + 1][CACHE_MAX_NT + 1][];
@@ -84,9 +76,7 @@ public class RankSumPdf {
 			}
 
 		// Initialize: Calculate pdf/cdf values
-		System.out.print("Initializing rankSum Pdf/Cdf caches:");
 		for( int n = 1; n <= CACHE_MAX_N; n++ ) {
-			System.out.print('.');
 			for( int nt = 1; nt < n; nt++ ) {
 
 				int maxRankSum = n * nt;
@@ -99,7 +89,6 @@ public class RankSumPdf {
 				}
 			}
 		}
-		System.out.println("done");
 	}
 
 	/** 
@@ -152,6 +141,7 @@ public class RankSumPdf {
 		if( !canBeCached(n, nt) ) return cdfNormal(n, nt, r);
 
 		// Is it in the cache?
+		cacheInit();
 		Apfloat cdf = cacheGetCdf(n, nt, r);
 		if( cdf.compareTo(Apcomplex.ZERO) >= 0 ) {
 			cacheHit++;
@@ -252,6 +242,7 @@ public class RankSumPdf {
 		if( !canBeCached(n, nt) ) return pdfNormal(n, nt, r);
 
 		// Is it in the cache?
+		cacheInit();
 		Apfloat pdf = cacheGetPdf(n, nt, r);
 		if( pdf.compareTo(Apcomplex.ZERO) >= 0 ) {
 			cacheHit++;
@@ -4,6 +4,8 @@ import gnu.trove.map.hash.TIntIntHashMap;
 
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Re-sample statistic
@@ -11,19 +13,56 @@ import java.util.Random;
  * Statistic is a sum of a set of integer numbers (e.g. ranks). 
  * The statistic is sampled and PDF/CDF can be calculated from empirical random re-sampling.
  * 
+ * Iterations are split into fixed size chunks. Each chunk uses its own random 
+ * number generator, derived from 'seed' and the chunk number, so chunks can be 
+ * evaluated in parallel (fork-join) and results for a given seed do not depend 
+ * on the number of threads.
+ * 
  * @author pablocingolani
  */
 public class ReSampleInt {
 
+	/**
+	 * Re-sample a range of chunks, splitting the range in two halves (fork-join)
+	 */
+	class ReSampleTask extends RecursiveTask<TIntIntHashMap> {
+
+		private static final long serialVersionUID = 1L;
+
+		int iterations, chunkStart, chunkEnd;
+
+		public ReSampleTask(int iterations, int chunkStart, int chunkEnd) {
+			this.iterations = iterations;
+			this.chunkStart = chunkStart;
+			this.chunkEnd = chunkEnd;
+		}
+
+		@Override
+		protected TIntIntHashMap compute() {
+			if (chunkEnd - chunkStart <= 1) return resampleChunk(chunkStart, iterations);
+
+			int mid = (chunkStart + chunkEnd) >>> 1;
+			ReSampleTask left = new ReSampleTask(iterations, chunkStart, mid);
+			ReSampleTask right = new ReSampleTask(iterations, mid, chunkEnd);
+			left.fork();
+			return merge(right.compute(), left.join());
+		}
+	}
+
 	static int SHOW_EVERY = 10000;
 	static int SHOW_EVERY_LINE = 100 * 10000;
+	public static final int CHUNK_SIZE = 1024; // Iterations per chunk (each chunk has its own random stream)
+	static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
 
 	boolean verbose = false;
 	int sampleSize;
+	int numThreads = 1;
 	int scores[]; // All possible scores
 	TIntIntHashMap pdf; // Probability density function (in a hash)
-	Random rand = new Random();
+	long seed = new Random().nextLong();
+	Random rand = new Random(seed);
 	int total = Integer.MIN_VALUE;
+	long iterationsDone; // Only used to show progress
 
 	public ReSampleInt(int scores[], int sampleSize) {
 		this.sampleSize = sampleSize;
@@ -51,12 +90,32 @@ public class ReSampleInt {
 	 */
 	protected void clearStats() {
 		pdf = new TIntIntHashMap();
+		total = Integer.MIN_VALUE;
+		iterationsDone = 0;
+	}
+
+	/**
+	 * Random number generator for a chunk: A 'SplitMix64' hash of 
+	 * the seed and the chunk number (independent streams per chunk)
+	 */
+	Random chunkRandom(int chunk) {
+		long z = seed + (chunk + 1) * GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return new Random(z ^ (z >>> 31));
 	}
 
 	/**
 	 * Random sample and evaluate
 	 */
 	protected int evaluate() {
+		return evaluate(rand);
+	}
+
+	/**
+	 * Random sample and evaluate, using random generator 'rand'
+	 */
+	protected int evaluate(Random rand) {
 		int sum = 0;
 		for( int i = 0; i < sampleSize; i++ )
 			sum += scores[rand.nextInt(scores.length)];
@@ -94,6 +153,24 @@ public class ReSampleInt {
 		return Integer.MAX_VALUE;
 	}
 
+	/**
+	 * Add counts from 'pdf2' into 'pdf1'
+	 * @return pdf1
+	 */
+	TIntIntHashMap merge(TIntIntHashMap pdf1, TIntIntHashMap pdf2) {
+		// Iterate over the smallest one
+		if( pdf1.size() < pdf2.size() ) {
+			TIntIntHashMap tmp = pdf1;
+			pdf1 = pdf2;
+			pdf2 = tmp;
+		}
+
+		for( int k : pdf2.keys() )
+			pdf1.adjustOrPutValue(k, pdf2.get(k), pdf2.get(k));
+
+		return pdf1;
+	}
+
 	/**
 	 * Re-sample 'iterations' times
 	 * 
@@ -101,24 +178,76 @@ public class ReSampleInt {
 	 */
 	public void resample(int iterations) {
 		clearStats();
-		for( int i = 1; i <= iterations; i++ ) {
-			int score = evaluate();
-			int count = pdf.get(score) + 1;
-			pdf.put(score, count);
-
-			if( verbose ) {
-				if( i % SHOW_EVERY == 0 ) {
-					if( i % SHOW_EVERY_LINE == 0 ) System.err.println('.');
-					else System.err.print('.');
-				}
+		int numChunks = (iterations + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		if( numThreads <= 1 ) {
+			for( int chunk = 0; chunk < numChunks; chunk++ )
+				pdf = merge(pdf, resampleChunk(chunk, iterations));
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				if( numChunks > 0 ) pdf = pool.invoke(new ReSampleTask(iterations, 0, numChunks));
+			} finally {
+				pool.shutdown();
 			}
 		}
+
+		if( verbose ) System.err.println("");
+	}
+
+	/**
+	 * Re-sample one chunk of iterations
+	 * 
+	 * @param chunk : Chunk number
+	 * @param iterations : Total number of iterations
+	 * @return Counts by score
+	 */
+	TIntIntHashMap resampleChunk(int chunk, int iterations) {
+		Random rand = chunkRandom(chunk);
+		int len = Math.min(CHUNK_SIZE, iterations - chunk * CHUNK_SIZE);
+
+		// Evaluate
+		int sampleScores[] = new int[len];
+		for( int i = 0; i < len; i++ )
+			sampleScores[i] = evaluate(rand);
+
+		// Count
+		TIntIntHashMap counts = new TIntIntHashMap();
+		for( int score : sampleScores )
+			counts.adjustOrPutValue(score, 1, 1);
+
+		if( verbose ) showProgress(len);
+		return counts;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Random seed (same seed produces the same results, regardless of the number of threads)
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		rand = new Random(seed);
 	}
 
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
 
+	/**
+	 * Show a dot every SHOW_EVERY iterations
+	 */
+	synchronized void showProgress(int iterations) {
+		long prev = iterationsDone;
+		iterationsDone += iterations;
+		for( long i = prev / SHOW_EVERY + 1; i <= iterationsDone / SHOW_EVERY; i++ ) {
+			if( (i * SHOW_EVERY) % SHOW_EVERY_LINE == 0 ) System.err.println('.');
+			else System.err.print('.');
+		}
+	}
+
 	int[] sortKeys() {
 		int keys[] = pdf.keys();
 		Arrays.sort(keys);
@@ -74,6 +74,47 @@ public class MarkerSerializer {
 			markers.add(g);
 	}
 
+	/**
+	 * Create a (new, empty) marker of a given type
+	 */
+	protected Marker createMarker(EffectType type) {
+		switch (type) {
+		case GENOME:
+			return new Genome();
+		case CHROMOSOME:
+			return new Chromosome();
+		case GENE:
+			return new Gene();
+		case TRANSCRIPT:
+			return new Transcript();
+		case CDS:
+			return new Cds();
+		case EXON:
+			return new Exon();
+		case UTR_3_PRIME:
+			return new Utr3prime();
+		case UTR_5_PRIME:
+			return new Utr5prime();
+		case RARE_AMINO_ACID:
+			return new RareAminoAcid();
+		case SPLICE_SITE_ACCEPTOR:
+			return new SpliceSiteAcceptor();
+		case SPLICE_SITE_BRANCH:
+			return new SpliceSiteBranch();
+		case SPLICE_SITE_BRANCH_U12:
+			return new SpliceSiteBranchU12();
+		case SPLICE_SITE_DONOR:
+			return new SpliceSiteDonor();
+		case NEXT_PROT:
+			return new NextProt();
+		case MOTIF:
+			return new Motif();
+
+		default:
+			throw new RuntimeException("Unimplemented for type '" + type + "'");
+		}
+	}
+
 	protected TxtSerializable getById(int id) {
 		return byId.get(id);
 	}
@@ -151,57 +192,7 @@ public class MarkerSerializer {
 			String idStr = fields[1];
 			int id = Gpr.parseIntSafe(idStr);
 
-			Marker m = null;
-			switch (type) {
-			case GENOME:
-				m = new Genome();
-				break;
-			case CHROMOSOME:
-				m = new Chromosome();
-				break;
-			case GENE:
-				m = new Gene();
-				break;
-			case TRANSCRIPT:
-				m = new Transcript();
-				break;
-			case CDS:
-				m = new Cds();
-				break;
-			case EXON:
-				m = new Exon();
-				break;
-			case UTR_3_PRIME:
-				m = new Utr3prime();
-				break;
-			case UTR_5_PRIME:
-				m = new Utr5prime();
-				break;
-			case RARE_AMINO_ACID:
-				m = new RareAminoAcid();
-				break;
-			case SPLICE_SITE_ACCEPTOR:
-				m = new SpliceSiteAcceptor();
-				break;
-			case SPLICE_SITE_BRANCH:
-				m = new SpliceSiteBranch();
-				break;
-			case SPLICE_SITE_BRANCH_U12:
-				m = new SpliceSiteBranchU12();
-				break;
-			case SPLICE_SITE_DONOR:
-				m = new SpliceSiteDonor();
-				break;
-			case NEXT_PROT:
-				m = new NextProt();
-				break;
-			case MOTIF:
-				m = new Motif();
-				break;
-
-			default:
-				throw new RuntimeException("Unimplemented for type '" + type + "'");
-			}
+			Marker m = createMarker(type);
 
 			try {
 				// Parse line
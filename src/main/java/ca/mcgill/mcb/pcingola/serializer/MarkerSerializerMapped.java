@@ -0,0 +1,709 @@
+package ca.mcgill.mcb.pcingola.serializer;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Gene;
+import ca.mcgill.mcb.pcingola.interval.Genome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.MarkerParentId;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+
+/**
+ * Serialize markers to (and from) a binary file that can be memory mapped.
+ *
+ * The information stored is exactly the same as in MarkerSerializer's text
+ * format (so each marker's serializeParse() / serializeSave() methods are
+ * used without any changes), but:
+ *
+ * 		- Markers are split into segments: One 'global' segment (genome,
+ * 		  chromosomes and markers not belonging to any chromosome) and one
+ * 		  segment per chromosome. A segment can be loaded independently
+ * 		  of the others, as long as the global segment is loaded first (see
+ * 		  open(), loadGlobal() and loadChromosome()).
+ *
+ * 		- Fields common to all markers (type, serialization ID, parent ID, start,
+ * 		  end, strand and ID) are stored in columns (one array per field).
+ *
+ * 		- Other fields are stored in an 'extras' section, either as integers,
+ * 		  lists of integers (e.g. children IDs) or references to a string table.
+ *
+ * 		- All strings are stored in a string table. Each string is only decoded
+ * 		  when it is needed and it is decoded only once (so that repeated strings,
+ * 		  such as bioTypes or gene names, share the same object).
+ *
+ * 		- Serialization IDs are used as array indexes (no hash lookups are needed
+ * 		  to resolve parents).
+ *
+ * File format (all numbers are big endian):
+ *
+ * 		Header:
+ * 			int MAGIC, int VERSION, int numSegments, int numStrings, int maxId, int flags, int stringTablePos
+ *
+ * 		Segment index (one entry per segment, global segment first):
+ * 			int name (string index), int position, int numMarkers
+ *
+ * 		Segment (numMarkers = n):
+ * 			int[n] type (string index)
+ * 			int[n] serialization ID
+ * 			int[n] parent ID
+ * 			int[n] start
+ * 			int[n] end
+ * 			byte[n] strand
+ * 			int[n] id (string index)
+ * 			int[n + 1] offset of each marker's extra fields
+ * 			byte[] extra fields (tag + data)
+ *
+ * 		String table:
+ * 			int[numStrings + 1] offset of each string
+ * 			byte[] strings (UTF-8)
+ *
+ * @author pcingola
+ */
+public class MarkerSerializerMapped extends MarkerSerializer {
+
+	/**
+	 * A set of markers (columns and extra fields) being saved
+	 */
+	static class Segment {
+		String name;
+		TIntArrayList typeCol, serIdCol, parentCol, startCol, endCol, idCol, extraOffsetCol;
+		TByteArrayList strandCol, extras;
+
+		Segment(String name) {
+			this.name = name;
+			typeCol = new TIntArrayList();
+			serIdCol = new TIntArrayList();
+			parentCol = new TIntArrayList();
+			startCol = new TIntArrayList();
+			endCol = new TIntArrayList();
+			idCol = new TIntArrayList();
+			strandCol = new TByteArrayList();
+			extraOffsetCol = new TIntArrayList();
+			extraOffsetCol.add(0);
+			extras = new TByteArrayList();
+		}
+
+		/**
+		 * Size in bytes
+		 */
+		long sizeBytes() {
+			return 4L * (7 * size() + 1) + size() + extras.size(); // Six int columns, extra offsets, strand and extras
+		}
+
+		int size() {
+			return typeCol.size();
+		}
+	}
+
+	public static final int MAGIC = 0x534e5045; // "SNPE"
+	public static final int VERSION = 2;
+	public static final int HEADER_SIZE = 7 * 4;
+	public static final int SEGMENT_INDEX_ENTRY_SIZE = 3 * 4;
+	public static final String UTF8 = "UTF-8";
+	public static final String GLOBAL_SEGMENT = ""; // Genome, chromosomes and markers not belonging to any chromosome
+
+	// Header flags
+	public static final int FLAG_CODING_INFO = 1; // At least one gene is protein coding
+
+	// Extra fields tags
+	public static final byte TAG_STRING = 0;
+	public static final byte TAG_INT = 1;
+	public static final byte TAG_INT_LIST = 2;
+
+	// Number of fields in 'columns' (see Marker.serializeSave)
+	public static final int FIELD_TYPE = 0;
+	public static final int FIELD_SER_ID = 1;
+	public static final int FIELD_PARENT = 2;
+	public static final int FIELD_START = 3;
+	public static final int FIELD_END = 4;
+	public static final int FIELD_ID = 5;
+	public static final int FIELD_STRAND = 6;
+	public static final int NUM_COLUMN_FIELDS = 7;
+
+	// Used when saving
+	HashMap<String, Segment> segmentByName;
+	ArrayList<Segment> segments;
+	HashMap<String, Integer> strIdx;
+	ArrayList<String> strs;
+	int flags;
+
+	// Used when loading
+	String fileName;
+	MappedByteBuffer buffer;
+	int numSegments, numStrings, maxId, strOffsetPos, strPos;
+	HashMap<String, Integer> segmentIdxByName; // Segment number indexed by name
+	int typePos, serIdPos, parentPos, startPos, endPos, strandPos, idPos, extraOffsetPos, extrasPos; // Current segment's sections
+	String strCache[]; // Decoded strings
+	Marker markerById[];
+	int recNum; // Current record (within segment)
+	int extraPos, extraEnd; // Current position in 'extras' section
+
+	/**
+	 * Is this file in 'mapped' binary format?
+	 */
+	public static boolean isMapped(String fileName) {
+		if (!Gpr.canRead(fileName)) return false;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(fileName));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			try {
+				if (in != null) in.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	public MarkerSerializerMapped() {
+		super();
+	}
+
+	/**
+	 * Add a string to the string table (if it's not already there)
+	 * @return String index
+	 */
+	int addStr(String str) {
+		Integer idx = strIdx.get(str);
+		if (idx == null) {
+			idx = strs.size();
+			strs.add(str);
+			strIdx.put(str, idx);
+		}
+		return idx;
+	}
+
+	/**
+	 * Add an 'extra' field
+	 */
+	void addExtra(Segment seg, String field) {
+		if (isInt(field)) {
+			seg.extras.add(TAG_INT);
+			addExtraInt(seg, Integer.parseInt(field));
+		} else if (isIntList(field)) {
+			String ids[] = field.split(",");
+			seg.extras.add(TAG_INT_LIST);
+			addExtraInt(seg, ids.length);
+			for (String id : ids)
+				addExtraInt(seg, Integer.parseInt(id));
+		} else {
+			seg.extras.add(TAG_STRING);
+			addExtraInt(seg, addStr(field));
+		}
+	}
+
+	void addExtraInt(Segment seg, int num) {
+		seg.extras.add((byte) (num >>> 24));
+		seg.extras.add((byte) (num >>> 16));
+		seg.extras.add((byte) (num >>> 8));
+		seg.extras.add((byte) num);
+	}
+
+	/**
+	 * Release mapped file
+	 */
+	public void close() {
+		buffer = null;
+		strCache = null;
+		markerById = null;
+		segmentIdxByName = null;
+	}
+
+	@Override
+	protected TxtSerializable getById(int id) {
+		return getMarkerById(id);
+	}
+
+	/**
+	 * Column value for current record
+	 */
+	int getColumnInt(int field) {
+		switch (field) {
+		case FIELD_TYPE:
+			return buffer.getInt(typePos + 4 * recNum);
+		case FIELD_SER_ID:
+			return buffer.getInt(serIdPos + 4 * recNum);
+		case FIELD_PARENT:
+			return buffer.getInt(parentPos + 4 * recNum);
+		case FIELD_START:
+			return buffer.getInt(startPos + 4 * recNum);
+		case FIELD_END:
+			return buffer.getInt(endPos + 4 * recNum);
+		case FIELD_STRAND:
+			return buffer.get(strandPos + recNum);
+		case FIELD_ID:
+			return buffer.getInt(idPos + 4 * recNum);
+		default:
+			throw new RuntimeException("Unknown column field " + field);
+		}
+	}
+
+	@Override
+	protected Marker getMarkerById(int id) {
+		if ((id < 0) || (id >= markerById.length)) return null;
+		return markerById[id];
+	}
+
+	@Override
+	public String getNextField() {
+		int field = parsedField++;
+
+		// Fields stored as string indexes
+		if ((field == FIELD_TYPE) || (field == FIELD_ID)) return getStr(getColumnInt(field));
+
+		// Fields stored as numbers
+		if (field < NUM_COLUMN_FIELDS) return Integer.toString(getColumnInt(field));
+
+		// No more fields?
+		if (extraPos >= extraEnd) return "";
+
+		// Extra field
+		byte tag = buffer.get(extraPos++);
+		switch (tag) {
+		case TAG_STRING:
+			return getStr(nextExtraInt());
+
+		case TAG_INT:
+			return Integer.toString(nextExtraInt());
+
+		case TAG_INT_LIST:
+			StringBuilder sb = new StringBuilder();
+			int len = nextExtraInt();
+			for (int i = 0; i < len; i++) {
+				if (i > 0) sb.append(',');
+				sb.append(nextExtraInt());
+			}
+			return sb.toString();
+
+		default:
+			throw new RuntimeException("Unknown tag '" + tag + "'");
+		}
+	}
+
+	@Override
+	public int getNextFieldInt() {
+		int field = parsedField;
+		if ((field < NUM_COLUMN_FIELDS) && (field != FIELD_TYPE) && (field != FIELD_ID)) {
+			parsedField++;
+			return getColumnInt(field);
+		}
+
+		// Integer extra field? Avoid converting to string
+		if ((field >= NUM_COLUMN_FIELDS) && (extraPos < extraEnd) && (buffer.get(extraPos) == TAG_INT)) {
+			parsedField++;
+			extraPos++;
+			return nextExtraInt();
+		}
+
+		return Gpr.parseIntSafe(getNextField());
+	}
+
+	@Override
+	public Markers getNextFieldMarkers() {
+		if ((parsedField < NUM_COLUMN_FIELDS) || (extraPos >= extraEnd) || (buffer.get(extraPos) == TAG_STRING)) return super.getNextFieldMarkers();
+
+		// Read marker IDs directly
+		Markers markers = new Markers();
+		parsedField++;
+		byte tag = buffer.get(extraPos++);
+		int len = (tag == TAG_INT_LIST ? nextExtraInt() : 1);
+		for (int i = 0; i < len; i++) {
+			int id = nextExtraInt();
+			Marker m = getMarkerById(id);
+			if (m != null) markers.add(m);
+			else throw new RuntimeException("Marker '" + id + "' not found. This should never happen!");
+		}
+		return markers;
+	}
+
+	/**
+	 * Get a string from the string table
+	 */
+	String getStr(int idx) {
+		String str = strCache[idx];
+		if (str != null) return str;
+
+		// Decode string
+		int start = buffer.getInt(strOffsetPos + 4 * idx);
+		int end = buffer.getInt(strOffsetPos + 4 * (idx + 1));
+		byte bytes[] = new byte[end - start];
+		ByteBuffer buf = buffer.duplicate(); // Do not change 'buffer' position
+		buf.position(strPos + start);
+		buf.get(bytes);
+
+		try {
+			str = new String(bytes, UTF8);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+
+		strCache[idx] = str;
+		return str;
+	}
+
+	/**
+	 * Does the database have a segment for this chromosome?
+	 */
+	public boolean hasChromosome(String chromo) {
+		return segmentIdxByName.containsKey(Chromosome.simpleName(chromo));
+	}
+
+	/**
+	 * Do we have protein coding genes (as calculated when the database was saved)?
+	 */
+	public boolean hasCodingInfo() {
+		return (flags & FLAG_CODING_INFO) != 0;
+	}
+
+	boolean isInt(String field) {
+		if (field.isEmpty() || (field.length() > 10)) return false;
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if ((c < '0' || c > '9') && !(i == 0 && c == '-' && field.length() > 1)) return false;
+		}
+
+		// Make sure it can be converted back to exactly the same string (e.g. no leading zeros or overflows)
+		try {
+			return Integer.toString(Integer.parseInt(field)).equals(field);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	boolean isIntList(String field) {
+		if (field.indexOf(',') < 0) return false;
+		for (String f : field.split(",", -1))
+			if (!isInt(f)) return false;
+		return true;
+	}
+
+	/**
+	 * Load all data from file
+	 */
+	@Override
+	public Markers load(String fileName) {
+		open(fileName);
+		for (int seg = 0; seg < numSegments; seg++)
+			loadSegment(seg);
+
+		Markers markers = new Markers();
+		for (Marker m : markerById)
+			if (m != null) markers.add(m);
+
+		close();
+		return markers;
+	}
+
+	/**
+	 * Load all markers in a chromosome's segment.
+	 * Note: The global segment must be loaded first (see loadGlobal)
+	 * @return Markers loaded (an empty list if there is no segment for this chromosome)
+	 */
+	public Markers loadChromosome(String chromo) {
+		Integer seg = segmentIdxByName.get(Chromosome.simpleName(chromo));
+		if ((seg == null) || (seg == 0)) return new Markers();
+		return loadSegment(seg);
+	}
+
+	/**
+	 * Load global segment (genome, chromosomes and all markers not belonging to a chromosome)
+	 */
+	public Markers loadGlobal() {
+		return loadSegment(0);
+	}
+
+	/**
+	 * Load all markers in a segment
+	 */
+	Markers loadSegment(int seg) {
+		int numMarkers = setSegment(seg);
+
+		//---
+		// Create markers
+		//---
+		Markers markers = new Markers();
+		for (recNum = 0; recNum < numMarkers; recNum++) {
+			EffectType type = EffectType.valueOf(getStr(getColumnInt(FIELD_TYPE)));
+			int id = getColumnInt(FIELD_SER_ID);
+			Marker m = createMarker(type);
+
+			// Parse
+			parsedField = 0;
+			extraPos = extrasPos + buffer.getInt(extraOffsetPos + 4 * recNum);
+			extraEnd = extrasPos + buffer.getInt(extraOffsetPos + 4 * (recNum + 1));
+			try {
+				m.serializeParse(this);
+			} catch (Throwable t) {
+				t.printStackTrace();
+				throw new RuntimeException("Error parsing record " + recNum + ", segment " + seg + " from file '" + fileName + "'\n\tField [" + parsedField + "]", t);
+			}
+
+			markerById[id] = m;
+			markers.add(m);
+		}
+
+		//---
+		// Assign parents
+		//---
+		for (Marker m : markers) {
+			MarkerParentId mpid = (MarkerParentId) m.getParent();
+			m.setParent(getMarkerById(mpid.getParentId()));
+		}
+
+		return markers;
+	}
+
+	int nextExtraInt() {
+		int num = buffer.getInt(extraPos);
+		extraPos += 4;
+		return num;
+	}
+
+	/**
+	 * Map file into memory and read header and segment index.
+	 * No markers are loaded (see loadGlobal and loadChromosome)
+	 */
+	public void open(String fileName) {
+		this.fileName = fileName;
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(fileName, "r");
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) throw new RuntimeException("File '" + fileName + "' is too large to be mapped into memory");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		} finally {
+			try {
+				if (raf != null) raf.close(); // Note: Mapping is still valid after closing the channel
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+
+		//---
+		// Header
+		//---
+		if (buffer.getInt(0) != MAGIC) throw new RuntimeException("File '" + fileName + "' is not a memory mapped snpEff database");
+		int version = buffer.getInt(4);
+		if (version != VERSION) throw new RuntimeException("File '" + fileName + "' has version " + version + ", expected version " + VERSION);
+		numSegments = buffer.getInt(8);
+		numStrings = buffer.getInt(12);
+		maxId = buffer.getInt(16);
+		flags = buffer.getInt(20);
+		strOffsetPos = buffer.getInt(24);
+		strPos = strOffsetPos + 4 * (numStrings + 1);
+
+		strCache = new String[numStrings];
+		markerById = new Marker[maxId + 1];
+
+		//---
+		// Segment index
+		//---
+		segmentIdxByName = new HashMap<String, Integer>();
+		for (int seg = 0; seg < numSegments; seg++)
+			segmentIdxByName.put(getStr(buffer.getInt(HEADER_SIZE + SEGMENT_INDEX_ENTRY_SIZE * seg)), seg);
+	}
+
+	/**
+	 * Save a marker
+	 */
+	@Override
+	public int save(Marker m) {
+		if (m == null) return -1;
+		if (byMarker.containsKey(m)) return byMarker.get(m); // Already done
+
+		// Store already saved IDs
+		int id = getNextId();
+		byMarker.put(m, id);
+
+		// Split line into columns and extra fields
+		String fields[] = m.serializeSave(this).split("\t", -1);
+		Segment seg = segment(m);
+		seg.typeCol.add(addStr(fields[FIELD_TYPE]));
+		seg.serIdCol.add(Gpr.parseIntSafe(fields[FIELD_SER_ID]));
+		seg.parentCol.add(Gpr.parseIntSafe(fields[FIELD_PARENT]));
+		seg.startCol.add(Gpr.parseIntSafe(fields[FIELD_START]));
+		seg.endCol.add(Gpr.parseIntSafe(fields[FIELD_END]));
+		seg.idCol.add(addStr(fields[FIELD_ID]));
+		seg.strandCol.add((byte) Gpr.parseIntSafe(fields[FIELD_STRAND]));
+
+		for (int i = NUM_COLUMN_FIELDS; i < fields.length; i++)
+			addExtra(seg, fields[i]);
+		seg.extraOffsetCol.add(seg.extras.size());
+
+		if ((m instanceof Gene) && ((Gene) m).isProteinCoding()) flags |= FLAG_CODING_INFO;
+
+		lineNum++;
+		return id;
+	}
+
+	/**
+	 * Save data to file
+	 */
+	@Override
+	public void save(String fileName, Markers markers) {
+		// Initialize
+		lineNum = 0;
+		currId = 0;
+		flags = 0;
+		segmentByName = new HashMap<String, Segment>();
+		segments = new ArrayList<Segment>();
+		strIdx = new HashMap<String, Integer>();
+		strs = new ArrayList<String>();
+		segment(GLOBAL_SEGMENT); // Global segment is always the first one
+
+		for (Marker m : markers)
+			save(m);
+
+		// Segment names must be in the string table
+		for (Segment seg : segments)
+			addStr(seg.name);
+
+		// Calculate segment positions
+		long pos = HEADER_SIZE + SEGMENT_INDEX_ENTRY_SIZE * segments.size();
+		long segPos[] = new long[segments.size()];
+		for (int i = 0; i < segments.size(); i++) {
+			segPos[i] = pos;
+			pos += segments.get(i).sizeBytes();
+		}
+		if (pos > Integer.MAX_VALUE) throw new RuntimeException("Database too large");
+
+		// Write file
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+
+			// Header
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(segments.size());
+			out.writeInt(strs.size());
+			out.writeInt(currId);
+			out.writeInt(flags);
+			out.writeInt((int) pos);
+
+			// Segment index
+			for (int i = 0; i < segments.size(); i++) {
+				Segment seg = segments.get(i);
+				out.writeInt(strIdx.get(seg.name));
+				out.writeInt((int) segPos[i]);
+				out.writeInt(seg.size());
+			}
+
+			// Segments
+			for (Segment seg : segments) {
+				write(out, seg.typeCol);
+				write(out, seg.serIdCol);
+				write(out, seg.parentCol);
+				write(out, seg.startCol);
+				write(out, seg.endCol);
+				out.write(seg.strandCol.toArray());
+				write(out, seg.idCol);
+				write(out, seg.extraOffsetCol);
+				out.write(seg.extras.toArray());
+			}
+
+			// String table
+			ArrayList<byte[]> strBytes = new ArrayList<byte[]>(strs.size());
+			long offset = 0;
+			out.writeInt(0);
+			for (String str : strs) {
+				byte bytes[] = str.getBytes(UTF8);
+				strBytes.add(bytes);
+				offset += bytes.length;
+				if (offset > Integer.MAX_VALUE) throw new RuntimeException("String table too large");
+				out.writeInt((int) offset);
+			}
+
+			for (byte bytes[] : strBytes)
+				out.write(bytes);
+
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Segment where a marker is stored
+	 */
+	Segment segment(Marker m) {
+		if ((m instanceof Genome) || (m instanceof Chromosome)) return segment(GLOBAL_SEGMENT);
+		return segment(Chromosome.simpleName(m.getChromosomeName()));
+	}
+
+	/**
+	 * Get (or create) a segment
+	 */
+	Segment segment(String name) {
+		Segment seg = segmentByName.get(name);
+		if (seg == null) {
+			seg = new Segment(name);
+			segmentByName.put(name, seg);
+			segments.add(seg);
+		}
+		return seg;
+	}
+
+	/**
+	 * Set current segment's sections
+	 * @return Number of markers in segment
+	 */
+	int setSegment(int seg) {
+		int entryPos = HEADER_SIZE + SEGMENT_INDEX_ENTRY_SIZE * seg;
+		int segPos = buffer.getInt(entryPos + 4);
+		int numMarkers = buffer.getInt(entryPos + 8);
+
+		typePos = segPos;
+		serIdPos = typePos + 4 * numMarkers;
+		parentPos = serIdPos + 4 * numMarkers;
+		startPos = parentPos + 4 * numMarkers;
+		endPos = startPos + 4 * numMarkers;
+		strandPos = endPos + 4 * numMarkers;
+		idPos = strandPos + numMarkers;
+		extraOffsetPos = idPos + 4 * numMarkers;
+		extrasPos = extraOffsetPos + 4 * (numMarkers + 1);
+
+		return numMarkers;
+	}
+
+	/**
+	 * Remove references to all markers in a chromosome's segment (so they can be garbage collected)
+	 */
+	public void unloadChromosome(String chromo) {
+		Integer seg = segmentIdxByName.get(Chromosome.simpleName(chromo));
+		if ((seg == null) || (seg == 0)) return;
+
+		int numMarkers = setSegment(seg);
+		for (recNum = 0; recNum < numMarkers; recNum++)
+			markerById[getColumnInt(FIELD_SER_ID)] = null;
+	}
+
+	void write(DataOutputStream out, TIntArrayList col) throws IOException {
+		for (int i = 0; i < col.size(); i++)
+			out.writeInt(col.get(i));
+	}
+
+}
@@ -0,0 +1,64 @@
+package ca.mcgill.mcb.pcingola.snpEffect;
+
+import java.io.Serializable;
+
+/**
+ * Options used when calculating effects (immutable).
+ *
+ * Each SnpEffectPredictor has its own options, so several predictors (e.g. different
+ * genome versions) can be used at the same time, without relying on 'Config.get()'.
+ * To change an option, a new object is created (see Config.getAnnotationOptions()).
+ *
+ * @author pcingola
+ */
+public class AnnotationOptions implements Serializable {
+
+	private static final long serialVersionUID = 3326453197016585743L;
+
+	public static final AnnotationOptions DEFAULT = new AnnotationOptions(false, false, false, false);
+
+	final boolean treatAllAsProteinCoding; // Calculate effects in all transcripts, even if they are not protein coding
+	final boolean onlyRegulation; // Only use regulation features
+	final boolean errorOnMissingChromo; // Error if chromosome is missing
+	final boolean errorChromoHit; // Error if chromosome is not hit in a query
+
+	/**
+	 * Options from current config (used only when a predictor is created without explicit options)
+	 */
+	public static AnnotationOptions get() {
+		Config config = Config.get();
+		return config != null ? config.getAnnotationOptions() : DEFAULT;
+	}
+
+	public AnnotationOptions(boolean treatAllAsProteinCoding, boolean onlyRegulation, boolean errorOnMissingChromo, boolean errorChromoHit) {
+		this.treatAllAsProteinCoding = treatAllAsProteinCoding;
+		this.onlyRegulation = onlyRegulation;
+		this.errorOnMissingChromo = errorOnMissingChromo;
+		this.errorChromoHit = errorChromoHit;
+	}
+
+	public boolean isErrorChromoHit() {
+		return errorChromoHit;
+	}
+
+	public boolean isErrorOnMissingChromo() {
+		return errorOnMissingChromo;
+	}
+
+	public boolean isOnlyRegulation() {
+		return onlyRegulation;
+	}
+
+	public boolean isTreatAllAsProteinCoding() {
+		return treatAllAsProteinCoding;
+	}
+
+	@Override
+	public String toString() {
+		return "treatAllAsProteinCoding: " + treatAllAsProteinCoding //
+				+ ", onlyRegulation: " + onlyRegulation //
+				+ ", errorOnMissingChromo: " + errorOnMissingChromo //
+				+ ", errorChromoHit: " + errorChromoHit //
+		;
+	}
+}
@@ -192,6 +192,15 @@ public class Config implements Serializable, Iterable<String> {
 		return null;
 	}
 
+	/**
+	 * Options used when calculating effects (a snapshot of current values)
+	 * Note: A predictor takes its options when it is created or loaded, changing
+	 * values afterwards requires calling SnpEffectPredictor.setAnnotationOptions()
+	 */
+	public AnnotationOptions getAnnotationOptions() {
+		return new AnnotationOptions(treatAllAsProteinCoding, onlyRegulation, errorOnMissingChromo, errorChromoHit);
+	}
+
 	/**
 	 * Genes file path (no extension)
 	 * @return
@@ -204,6 +213,13 @@ public class Config implements Serializable, Iterable<String> {
 		return getDirDataVersion() + "/motif";
 	}
 
+	/**
+	 * NextProt database (compact track)
+	 */
+	public String getBaseFileNameNextProt() {
+		return getDirDataVersion() + "/nextProt";
+	}
+
 	/**
 	 * Regulation file (GFF format)
 	 * @return
@@ -296,6 +312,13 @@ public class Config implements Serializable, Iterable<String> {
 		return getDirData() + "/" + genome.getVersion() + "/snpEffectPredictor.bin";
 	}
 
+	/**
+	 * Database in binary (memory mappable) format
+	 */
+	public String getFileSnpEffectPredictorMapped() {
+		return getDirData() + "/" + genome.getVersion() + "/snpEffectPredictor.mbin";
+	}
+
 	public Genome getGenome() {
 		return genome;
 	}
@@ -406,7 +429,15 @@ public class Config implements Serializable, Iterable<String> {
 	 * WARNING: 'genome' object get replaced upon loading a snpEffectPredictor (this is a dangerous side effect)
 	 */
 	public SnpEffectPredictor loadSnpEffectPredictor() {
-		snpEffectPredictor = SnpEffectPredictor.load(this);
+		return loadSnpEffectPredictor(false);
+	}
+
+	/**
+	 * Load snpEffectPredictor
+	 * @param lazy : Only load genome and chromosomes, genes are loaded on demand (one chromosome at a time)
+	 */
+	public SnpEffectPredictor loadSnpEffectPredictor(boolean lazy) {
+		snpEffectPredictor = lazy ? SnpEffectPredictor.loadLazy(this) : SnpEffectPredictor.load(this);
 		genome = snpEffectPredictor.genome; // WARNING: 'genome' object get replaced upon loading a snpEffectPredictor (this might have dangerous side effects)
 		return snpEffectPredictor;
 	}
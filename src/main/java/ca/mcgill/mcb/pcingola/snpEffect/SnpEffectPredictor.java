@@ -1,25 +1,36 @@
 package ca.mcgill.mcb.pcingola.snpEffect;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.sf.samtools.util.RuntimeEOFException;
 import ca.mcgill.mcb.pcingola.interval.Cds;
 import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Exon;
 import ca.mcgill.mcb.pcingola.interval.Gene;
+import ca.mcgill.mcb.pcingola.interval.Genes;
 import ca.mcgill.mcb.pcingola.interval.Genome;
 import ca.mcgill.mcb.pcingola.interval.Intergenic;
 import ca.mcgill.mcb.pcingola.interval.Intron;
 import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.MarkerConsumer;
 import ca.mcgill.mcb.pcingola.interval.Markers;
 import ca.mcgill.mcb.pcingola.interval.Variant;
 import ca.mcgill.mcb.pcingola.interval.SpliceSite;
 import ca.mcgill.mcb.pcingola.interval.Transcript;
 import ca.mcgill.mcb.pcingola.interval.Utr;
 import ca.mcgill.mcb.pcingola.interval.tree.IntervalForest;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
+import ca.mcgill.mcb.pcingola.interval.tree.Itree;
 import ca.mcgill.mcb.pcingola.serializer.MarkerSerializer;
+import ca.mcgill.mcb.pcingola.serializer.MarkerSerializerMapped;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.ErrorWarningType;
 import ca.mcgill.mcb.pcingola.util.Gpr;
@@ -33,6 +44,57 @@ import ca.mcgill.mcb.pcingola.util.Gpr;
  *
  */
 public class SnpEffectPredictor implements Serializable {
+
+	/**
+	 * Add all hits and their sub-markers (genes are queried for transcripts, exons, etc.)
+	 */
+	static class QueryDeepConsumer implements MarkerConsumer {
+		Marker marker;
+		MarkerConsumer results;
+		boolean hitChromo = false;
+
+		public QueryDeepConsumer(Marker marker, MarkerConsumer results) {
+			this.marker = marker;
+			this.results = results;
+		}
+
+		@Override
+		public void accept(Marker m) {
+			results.accept(m);
+
+			if (m instanceof Chromosome) {
+				hitChromo = true; // OK (we have to hit a chromosome, otherwise it's an error
+			} else if (m instanceof Gene) {
+				// Analyze Genes
+				m.query(marker, results);
+			}
+		}
+	}
+
+	/**
+	 * Calculate the effect of a variant on every marker hit
+	 */
+	static class SeqChangeEffectConsumer implements MarkerConsumer {
+		Variant seqChange, seqChangeRef;
+		ChangeEffects changeEffects;
+		boolean hitChromo = false, hitSomething = false;
+
+		public SeqChangeEffectConsumer(Variant seqChange, Variant seqChangeRef, ChangeEffects changeEffects) {
+			this.seqChange = seqChange;
+			this.seqChangeRef = seqChangeRef;
+			this.changeEffects = changeEffects;
+		}
+
+		@Override
+		public void accept(Marker marker) {
+			if (marker instanceof Chromosome) hitChromo = true; // Do we hit any chromosome?
+			else { // Analyze all markers 
+				marker.seqChangeEffect(seqChange, changeEffects, seqChangeRef);
+				hitSomething = true;
+			}
+		}
+	}
+
 	private static final long serialVersionUID = 4519418862303325081L;
 
 	public static final int DEFAULT_UP_DOWN_LENGTH = 5000;
@@ -40,6 +102,7 @@ public class SnpEffectPredictor implements Serializable {
 	public static final double HUGE_DELETION_RATIO_THRESHOLD = 0.01; // Percentage of bases
 
 	boolean useChromosomes = true;
+	boolean treeArray = false; // Use array based interval trees
 	int upDownStreamLength = DEFAULT_UP_DOWN_LENGTH;
 	int spliceSiteSize = SpliceSite.CORE_SPLICE_SITE_SIZE;
 	int spliceRegionExonSize = SpliceSite.SPLICE_REGION_EXON_SIZE;
@@ -47,21 +110,36 @@ public class SnpEffectPredictor implements Serializable {
 	int spliceRegionIntronMax = SpliceSite.SPLICE_REGION_INTRON_MAX;
 
 	Genome genome;
+	transient volatile AnnotationOptions annotationOptions; // Options used when calculating effects (immutable, replaced as a whole)
 	Markers markers; // All other markers are stored here (e.g. custom markers, intergenic, etc.)
 	IntervalForest intervalForest;
+	transient ArrayList<IntervalTrack> intervalTracks = new ArrayList<IntervalTrack>(); // Compact interval tracks (e.g. regulation), queried alongside the interval forest
+
+	// Lazy loading (see loadLazy)
+	transient MarkerSerializerMapped lazyLoader; // Loads chromosomes on demand
+	int maxChromosomesLoaded = 0; // Maximum number of chromosomes kept in memory (zero means 'no limit')
+	ConcurrentHashMap<String, Itree> chromosomesLoaded = new ConcurrentHashMap<String, Itree>(); // Interval trees for chromosomes already loaded
+	LinkedHashMap<String, Genes> chromosomesGenes = new LinkedHashMap<String, Genes>(); // Genes loaded for each chromosome (in loading order). Note: They are not added to genome's genes
+	HashMap<String, Itree> chromosomesBaseTrees = new HashMap<String, Itree>(); // Interval trees before loading chromosome (used for evicting chromosomes)
 
 	/**
 	 * Load predictor from a binary file
 	 */
 	public static SnpEffectPredictor load(Config config) {
 		String snpEffPredFile = config.getFileSnpEffectPredictor();
-
-		// Sanity check
-		if (!Gpr.canRead(snpEffPredFile)) throw new RuntimeException("\tERROR: Cannot read file '" + snpEffPredFile + "'.\n\tYou can try to download the database by running the following command:\n\t\tjava -jar snpEff.jar download " + config.getGenome().getVersion() + "\n");
-
-		// Load markers from file
-		MarkerSerializer ms = new MarkerSerializer();
-		Markers markers = ms.load(snpEffPredFile);
+		String snpEffPredFileMapped = config.getFileSnpEffectPredictorMapped();
+
+		// Load markers from file. Use binary (memory mapped) database if available
+		Markers markers;
+		if (MarkerSerializerMapped.isMapped(snpEffPredFileMapped)) {
+			markers = new MarkerSerializerMapped().load(snpEffPredFileMapped);
+		} else {
+			// Sanity check
+			if (!Gpr.canRead(snpEffPredFile)) throw new RuntimeException("\tERROR: Cannot read file '" + snpEffPredFile + "'.\n\tYou can try to download the database by running the following command:\n\t\tjava -jar snpEff.jar download " + config.getGenome().getVersion() + "\n");
+
+			MarkerSerializer ms = MarkerSerializerMapped.isMapped(snpEffPredFile) ? new MarkerSerializerMapped() : new MarkerSerializer();
+			markers = ms.load(snpEffPredFile);
+		}
 
 		// Find genome
 		Genome genome = null;
@@ -70,7 +148,7 @@ public class SnpEffectPredictor implements Serializable {
 		if (genome == null) throw new RuntimeException("Genome not found. This should never happen!");
 
 		// Create predictor
-		SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(genome);
+		SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(genome, config.getAnnotationOptions());
 
 		// Add genes
 		for (Marker m : markers)
@@ -81,22 +159,89 @@ public class SnpEffectPredictor implements Serializable {
 
 		// Add 'other' markers
 		for (Marker m : markers)
-			if (!(m instanceof Genome) //
-					&& !(m instanceof Chromosome) //
-					&& !(m instanceof Gene) //
-					&& !(m instanceof Transcript) //
-					&& !(m instanceof Exon) //
-					&& !(m instanceof Cds) //
-					&& !(m instanceof Utr) //
-					&& !(m instanceof SpliceSite) //
-			) snpEffectPredictor.add(m);
+			if (isOtherMarker(m)) snpEffectPredictor.add(m);
+
+		return snpEffectPredictor;
+	}
+
+	/**
+	 * Load predictor from a binary (memory mapped) file, but only load genome and chromosomes.
+	 * Genes (and all other markers in a chromosome) are loaded the first time the chromosome is queried.
+	 * 
+	 * Note: If there is no memory mapped database, the whole database is loaded (see load(config))
+	 */
+	public static SnpEffectPredictor loadLazy(Config config) {
+		String snpEffPredFile = config.getFileSnpEffectPredictorMapped();
+		if (!MarkerSerializerMapped.isMapped(snpEffPredFile)) {
+			snpEffPredFile = config.getFileSnpEffectPredictor();
+			if (!MarkerSerializerMapped.isMapped(snpEffPredFile)) return load(config);
+		}
+
+		return loadLazy(snpEffPredFile, config.getAnnotationOptions());
+	}
+
+	/**
+	 * Load predictor from a binary (memory mapped) file, using default annotation options (see loadLazy(config))
+	 */
+	public static SnpEffectPredictor loadLazy(String snpEffPredFile) {
+		return loadLazy(snpEffPredFile, AnnotationOptions.DEFAULT);
+	}
+
+	/**
+	 * Load predictor from a binary (memory mapped) file, but only load genome and chromosomes (see loadLazy(config))
+	 */
+	public static SnpEffectPredictor loadLazy(String snpEffPredFile, AnnotationOptions annotationOptions) {
+		// Load genome, chromosomes and markers not belonging to any chromosome
+		MarkerSerializerMapped lazyLoader = new MarkerSerializerMapped();
+		lazyLoader.open(snpEffPredFile);
+		Markers markers = lazyLoader.loadGlobal();
+
+		// Find genome
+		Genome genome = null;
+		for (Marker m : markers)
+			if (m instanceof Genome) genome = (Genome) m;
+		if (genome == null) throw new RuntimeException("Genome not found. This should never happen!");
+		genome.setCodingInfo(lazyLoader.hasCodingInfo()); // Genes are not loaded yet
+
+		// Create predictor
+		SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(genome, annotationOptions);
+		snpEffectPredictor.lazyLoader = lazyLoader;
+
+		// Add 'other' markers
+		for (Marker m : markers)
+			if (isOtherMarker(m)) snpEffectPredictor.add(m);
 
 		return snpEffectPredictor;
 	}
 
+	/**
+	 * Is this marker added to the predictor as an independent marker?
+	 * I.e. it is not a genome, chromosome, gene or a sub-interval of a gene
+	 */
+	static boolean isOtherMarker(Marker m) {
+		return !(m instanceof Genome) //
+				&& !(m instanceof Chromosome) //
+				&& !(m instanceof Gene) //
+				&& !(m instanceof Transcript) //
+				&& !(m instanceof Exon) //
+				&& !(m instanceof Cds) //
+				&& !(m instanceof Utr) //
+				&& !(m instanceof SpliceSite) //
+		;
+	}
+
+	/**
+	 * Create a predictor using options from current config (see AnnotationOptions.get())
+	 * Note: Options are taken once, changes in the config are not propagated to this predictor
+	 */
 	public SnpEffectPredictor(Genome genome) {
+		this(genome, AnnotationOptions.get());
+	}
+
+	public SnpEffectPredictor(Genome genome, AnnotationOptions annotationOptions) {
 		this.genome = genome;
 		markers = new Markers();
+		setAnnotationOptions(annotationOptions);
 	}
 
 	/**
@@ -119,6 +264,26 @@ public class SnpEffectPredictor implements Serializable {
 		markers.add(marker);
 	}
 
+	/**
+	 * Add a compact interval track (e.g. regulation features or custom intervals).
+	 * Tracks are not part of the interval forest, they are queried separately (see query)
+	 * Note: A track having the same name and type as an existing one replaces it
+	 */
+	public void add(IntervalTrack track) {
+		track.build();
+		track.setGenome(genome);
+		track.setLazyPredictor(isLazy() ? this : null);
+
+		for (int i = 0; i < intervalTracks.size(); i++) {
+			IntervalTrack it = intervalTracks.get(i);
+			if (it.getName().equals(track.getName()) && (it.getType() == track.getType())) {
+				intervalTracks.set(i, track);
+				return;
+			}
+		}
+		intervalTracks.add(track);
+	}
+
 	/**
 	 * Add a set of markers
 	 * @param markersToAdd
@@ -132,7 +297,14 @@ public class SnpEffectPredictor implements Serializable {
 	 * Create interval trees (forest)
 	 */
 	public void buildForest() {
-		intervalForest = new IntervalForest();
+		if (lazyLoader != null) evictChromosomes(0); // Chromosomes are loaded (and their trees built) on demand
+		intervalForest = new IntervalForest(treeArray);
+
+		// Genes might have changed (e.g. filtered transcripts): Reset tracks' links to transcripts
+		for (IntervalTrack track : intervalTracks) {
+			track.setGenome(genome);
+			track.setLazyPredictor(isLazy() ? this : null);
+		}
 
 		// Add all chromosomes to forest
 		if (useChromosomes) {
@@ -154,6 +326,18 @@ public class SnpEffectPredictor implements Serializable {
 
 		// Build interval forest
 		intervalForest.build();
+
+		// Precompute transcript coordinates, so they are not created while annotating
+		buildCoordinates(genome.getGenes());
+	}
+
+	/**
+	 * Precompute coordinates for all transcripts
+	 */
+	void buildCoordinates(Iterable<Gene> genes) {
+		for (Gene gene : genes)
+			for (Transcript tr : gene)
+				tr.buildCoordinates();
 	}
 
 	/**
@@ -161,30 +345,72 @@ public class SnpEffectPredictor implements Serializable {
 	 * @return
 	 */
 	public Markers createGenomicRegions() {
+		return createGenomicRegions(genome.getGenes());
+	}
+
+	/**
+	 * Create up-down stream, splice sites, intergenic, etc for a set of genes
+	 * @return
+	 */
+	Markers createGenomicRegions(Genes genes) {
 		Markers markers = new Markers();
 
 		// Add up-down stream intervals
-		for (Marker upDownStream : genome.getGenes().createUpDownStream(upDownStreamLength))
+		for (Marker upDownStream : genes.createUpDownStream(upDownStreamLength))
 			markers.add(upDownStream);
 
 		// Add splice site intervals
-		for (Marker spliceSite : genome.getGenes().createSpliceSites(spliceSiteSize, spliceRegionExonSize, spliceRegionIntronMin, spliceRegionIntronMax))
+		for (Marker spliceSite : genes.createSpliceSites(spliceSiteSize, spliceRegionExonSize, spliceRegionIntronMin, spliceRegionIntronMax))
 			markers.add(spliceSite);
 
 		// Intergenic markers
-		for (Intergenic intergenic : genome.getGenes().createIntergenic())
+		for (Intergenic intergenic : genes.createIntergenic())
 			markers.add(intergenic);
 
 		return markers;
 	}
 
+	/**
+	 * Evict chromosomes (least recently loaded first) until there are at most 'maxLoaded'
+	 */
+	synchronized void evictChromosomes(int maxLoaded) {
+		while (chromosomesGenes.size() > maxLoaded) {
+			String chromo = chromosomesGenes.keySet().iterator().next();
+			chromosomesGenes.remove(chromo);
+
+			// Restore interval tree (other threads might still be using the old tree, so we do not change it)
+			intervalForest.putTree(chromo, chromosomesBaseTrees.remove(chromo));
+			chromosomesLoaded.remove(chromo);
+			lazyLoader.unloadChromosome(chromo);
+			for (IntervalTrack track : intervalTracks)
+				track.resetLinks(chromo);
+		}
+	}
+
+	/**
+	 * Options used when calculating effects
+	 */
+	public AnnotationOptions getAnnotationOptions() {
+		return annotationOptions;
+	}
+
 	/**
 	 * Obtain a gene interval
 	 * @param geneIntervalId
 	 * @return
 	 */
 	public Gene getGene(String geneIntervalId) {
-		return genome.getGenes().get(geneIntervalId);
+		Gene gene = genome.getGenes().get(geneIntervalId);
+		if ((gene != null) || (lazyLoader == null)) return gene;
+
+		// Genes loaded on demand are only kept in their chromosome's collection (see loadChromosome)
+		synchronized (this) {
+			for (Genes genes : chromosomesGenes.values()) {
+				gene = genes.get(geneIntervalId);
+				if (gene != null) return gene;
+			}
+		}
+		return null;
 	}
 
 	public Genome getGenome() {
@@ -195,6 +421,30 @@ public class SnpEffectPredictor implements Serializable {
 		return intervalForest;
 	}
 
+	/**
+	 * Get the interval tree for a chromosome, loading the chromosome if needed (lazy loading)
+	 * @return Interval tree or null if not found
+	 */
+	Itree getTreeLazy(String chromo) {
+		Itree tree = chromosomesLoaded.get(Chromosome.simpleName(chromo));
+		if (tree != null) return tree;
+		return loadChromosome(chromo);
+	}
+
+	public ArrayList<IntervalTrack> getIntervalTracks() {
+		return intervalTracks;
+	}
+
+	/**
+	 * Number of genes loaded on demand (lazy loading), see loadChromosome
+	 */
+	public synchronized int getNumberOfGenesLoaded() {
+		int count = 0;
+		for (Genes genes : chromosomesGenes.values())
+			count += genes.size();
+		return count;
+	}
+
 	public Markers getMarkers() {
 		return markers;
 	}
@@ -239,6 +489,85 @@ public class SnpEffectPredictor implements Serializable {
 		return false;
 	}
 
+	/**
+	 * Are chromosomes loaded on demand?
+	 */
+	public boolean isLazy() {
+		return lazyLoader != null;
+	}
+
+	/**
+	 * Link a track's markers to the transcripts in a chromosome (the chromosome is loaded if needed)
+	 * Note: Only used when lazy loading. Holding the lock, the chromosome's genes cannot be evicted while linking
+	 * @return Transcripts indexed by ID (null if markers in this track are not linked to transcripts)
+	 */
+	public synchronized HashMap<String, Transcript> linkTranscripts(IntervalTrack track, String chromo) {
+		chromo = Chromosome.simpleName(chromo);
+		if (!chromosomesGenes.containsKey(chromo)) loadChromosome(chromo);
+
+		Genes genes = chromosomesGenes.get(chromo);
+		return track.linkTranscripts(chromo, genes != null ? genes : new Genes(genome));
+	}
+
+	/**
+	 * Load all genes (and other markers) in a chromosome, and create its interval tree
+	 * Notes:
+	 * 		- Only used when lazy loading
+	 * 		- Genes are not added to genome's genes (other threads might be iterating them), they
+	 * 		  are kept in 'chromosomesGenes' until the chromosome is evicted
+	 * 
+	 * @return Interval tree for this chromosome (null if not available)
+	 */
+	public synchronized Itree loadChromosome(String chromo) {
+		chromo = Chromosome.simpleName(chromo);
+		Itree tree = chromosomesLoaded.get(chromo);
+		if (tree != null) return tree; // Already loaded
+
+		Itree baseTree = intervalForest.hasTree(chromo) ? intervalForest.getTree(chromo) : null;
+		if (!lazyLoader.hasChromosome(chromo)) {
+			// Nothing to load: Use tree as it is
+			for (IntervalTrack track : intervalTracks)
+				track.linkTranscripts(chromo, new Genes(genome)); // No genes in this chromosome
+			if (baseTree != null) chromosomesLoaded.put(chromo, baseTree);
+			return baseTree;
+		}
+
+		// Load markers
+		Genes genes = new Genes(genome);
+		Markers chrMarkers = new Markers();
+		for (Marker m : lazyLoader.loadChromosome(chromo)) {
+			if (m instanceof Gene) genes.add((Gene) m);
+			else if (isOtherMarker(m)) chrMarkers.add(m);
+		}
+
+		// Create a new tree: markers already in the forest (e.g. chromosome, custom intervals), genes, up/downstream, splice sites, intergenic, etc.
+		tree = intervalForest.newTree();
+		if (baseTree != null) {
+			for (Marker m : baseTree)
+				tree.add(m);
+		}
+		for (Gene gene : genes)
+			tree.add(gene);
+		for (Marker m : chrMarkers)
+			tree.add(m);
+		for (Marker m : createGenomicRegions(genes))
+			tree.add(m);
+		tree.build();
+		buildCoordinates(genes);
+		for (IntervalTrack track : intervalTracks)
+			track.linkTranscripts(chromo, genes); // Link tracks (e.g. NextProt) to the transcripts just loaded
+
+		// Add tree to forest
+		if (baseTree != null) chromosomesBaseTrees.put(chromo, baseTree);
+		else chromosomesBaseTrees.put(chromo, intervalForest.newTree());
+		intervalForest.putTree(chromo, tree);
+		chromosomesLoaded.put(chromo, tree);
+		chromosomesGenes.put(chromo, genes);
+
+		if (maxChromosomesLoaded > 0) evictChromosomes(maxChromosomesLoaded);
+		return tree;
+	}
+
 	/**
 	 * Dump to sdtout
 	 */
@@ -258,9 +587,29 @@ public class SnpEffectPredictor implements Serializable {
 	 * Return a collection of intervals that intersect 'marker'
 	 */
 	public Markers query(Marker marker) {
+		if ((lazyLoader != null) || !intervalTracks.isEmpty()) {
+			Markers results = new Markers();
+			query(marker, results);
+			return results;
+		}
+
 		return intervalForest.query(marker);
 	}
 
+	/**
+	 * Query intervals that intersect 'marker', results are sent to 'results'
+	 */
+	public void query(Marker marker, MarkerConsumer results) {
+		if (lazyLoader != null) {
+			Itree tree = getTreeLazy(marker.getChromosomeName());
+			if (tree != null) tree.query(marker, results);
+		} else intervalForest.query(marker, results);
+
+		// Compact interval tracks
+		for (IntervalTrack track : intervalTracks)
+			track.query(marker, results);
+	}
+
 	/**
 	 * Find closest gene to this marker
 	 * 
@@ -337,28 +686,32 @@ public class SnpEffectPredictor implements Serializable {
 	 * @return
 	 */
 	public Markers queryDeep(Marker marker) {
-		if (Config.get().isErrorOnMissingChromo() && isChromosomeMissing(marker)) throw new RuntimeEOFException("Chromosome missing for marker: " + marker);
-
-		boolean hitChromo = false;
 		Markers hits = new Markers();
-		Markers intersects = query(marker);
+		queryDeep(marker, hits);
+		return hits;
+	}
 
-		if (intersects.size() > 0) {
-			for (Marker m : intersects) {
-				hits.add(m);
+	/**
+	 * Query intervals that intersect 'marker' (genes, transcripts, exons, etc.)
+	 * Results are sent to 'results', e.g. a reusable Markers buffer
+	 */
+	public void queryDeep(Marker marker, MarkerConsumer results) {
+		if (annotationOptions.isErrorOnMissingChromo() && isChromosomeMissing(marker)) throw new RuntimeEOFException("Chromosome missing for marker: " + marker);
 
-				if (m instanceof Chromosome) {
-					hitChromo = true; // OK (we have to hit a chromosome, otherwise it's an error
-				} else if (m instanceof Gene) {
-					// Analyze Genes
-					Gene gene = (Gene) m;
-					hits.addAll(gene.query(marker));
-				}
-			}
-		}
+		QueryDeepConsumer queryDeepConsumer = new QueryDeepConsumer(marker, results);
+		query(marker, queryDeepConsumer);
 
-		if (!hitChromo && Config.get().isErrorChromoHit()) throw new RuntimeException("ERROR: Out of chromosome range. " + marker);
-		return hits;
+		if (!queryDeepConsumer.hitChromo && annotationOptions.isErrorChromoHit()) throw new RuntimeException("ERROR: Out of chromosome range. " + marker);
+	}
+
+	/**
+	 * Transient fields are not initialized by default serialization: Interval tracks
+	 * are not serialized (they are loaded from their own files) and options are set to defaults
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		intervalTracks = new ArrayList<IntervalTrack>();
+		setAnnotationOptions(AnnotationOptions.DEFAULT);
 	}
 
 	/**
@@ -379,7 +732,7 @@ public class SnpEffectPredictor implements Serializable {
 	 * @return
 	 */
 	public Set<String> regions(Marker marker, boolean showGeneDetails, boolean compareTemplate, String id) {
-		if (Config.get().isErrorOnMissingChromo() && isChromosomeMissing(marker)) throw new RuntimeEOFException("Chromosome missing for marker: " + marker);
+		if (annotationOptions.isErrorOnMissingChromo() && isChromosomeMissing(marker)) throw new RuntimeEOFException("Chromosome missing for marker: " + marker);
 
 		boolean hitChromo = false;
 		HashSet<String> hits = new HashSet<String>();
@@ -492,6 +845,15 @@ public class SnpEffectPredictor implements Serializable {
 		markerSerializer.save(databaseFile, this);
 	}
 
+	/**
+	 * Save predictor to a binary (memory mappable) file (specified by the configuration)
+	 */
+	public void saveMapped(Config config) {
+		String databaseFile = config.getFileSnpEffectPredictorMapped();
+		MarkerSerializerMapped markerSerializer = new MarkerSerializerMapped();
+		markerSerializer.save(databaseFile, this);
+	}
+
 	/**
 	 * Predict the effect of a seqChange
 	 * @param seqChange
@@ -511,7 +873,7 @@ public class SnpEffectPredictor implements Serializable {
 		//---
 		// Chromosome missing?
 		//---
-		if (Config.get().isErrorOnMissingChromo() && isChromosomeMissing(seqChange)) {
+		if (annotationOptions.isErrorOnMissingChromo() && isChromosomeMissing(seqChange)) {
 			changeEffects.addErrorWarning(ErrorWarningType.ERROR_CHROMOSOME_NOT_FOUND);
 			return changeEffects;
 		}
@@ -536,32 +898,37 @@ public class SnpEffectPredictor implements Serializable {
 
 		//---
 		// Query interval tree: Which intervals does seqChange intersect?
+		// Effects are calculated for each marker as the tree is traversed
 		//---
-		Markers intersects = query(seqChange);
-
-		// Show all results
-		boolean hitChromo = false, hitSomething = false;
-		if (intersects.size() > 0) {
-			for (Marker marker : intersects) {
-				if (marker instanceof Chromosome) hitChromo = true; // Do we hit any chromosome?
-				else { // Analyze all markers 
-					marker.seqChangeEffect(seqChange, changeEffects, seqChangeRef);
-					hitSomething = true;
-				}
-			}
-		}
+		SeqChangeEffectConsumer seqChangeEffectConsumer = new SeqChangeEffectConsumer(seqChange, seqChangeRef, changeEffects);
+		query(seqChange, seqChangeEffectConsumer);
 
 		// Any errors or intergenic (i.e. did not hit any gene)
-		if (!hitChromo) {
-			if (Config.get().isErrorChromoHit()) changeEffects.addErrorWarning(ErrorWarningType.ERROR_OUT_OF_CHROMOSOME_RANGE);
-		} else if (!hitSomething) {
-			if (Config.get().isOnlyRegulation()) changeEffects.setEffectType(EffectType.NONE);
+		if (!seqChangeEffectConsumer.hitChromo) {
+			if (annotationOptions.isErrorChromoHit()) changeEffects.addErrorWarning(ErrorWarningType.ERROR_OUT_OF_CHROMOSOME_RANGE);
+		} else if (!seqChangeEffectConsumer.hitSomething) {
+			if (annotationOptions.isOnlyRegulation()) changeEffects.setEffectType(EffectType.NONE);
 			else changeEffects.setEffectType(EffectType.INTERGENIC);
 		}
 
 		return changeEffects;
 	}
 
+	/**
+	 * Set annotation options (also used by genome's markers, e.g. transcripts)
+	 */
+	public void setAnnotationOptions(AnnotationOptions annotationOptions) {
+		this.annotationOptions = annotationOptions;
+		if (genome != null) genome.setAnnotationOptions(annotationOptions);
+	}
+
+	/**
+	 * Maximum number of chromosomes kept in memory when lazy loading (zero means 'no limit')
+	 */
+	public void setMaxChromosomesLoaded(int maxChromosomesLoaded) {
+		this.maxChromosomesLoaded = maxChromosomesLoaded;
+	}
+
 	public void setSpliceRegionExonSize(int spliceRegionExonSize) {
 		this.spliceRegionExonSize = spliceRegionExonSize;
 	}
@@ -578,6 +945,10 @@ public class SnpEffectPredictor implements Serializable {
 		this.spliceSiteSize = spliceSiteSize;
 	}
 
+	public void setTreeArray(boolean treeArray) {
+		this.treeArray = treeArray;
+	}
+
 	public void setUpDownStreamLength(int upDownStreamLength) {
 		this.upDownStreamLength = upDownStreamLength;
 	}
@@ -7,7 +7,6 @@ import java.util.HashSet;
 import ca.mcgill.mcb.pcingola.Pcingola;
 import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Custom;
-import ca.mcgill.mcb.pcingola.interval.Exon;
 import ca.mcgill.mcb.pcingola.interval.Gene;
 import ca.mcgill.mcb.pcingola.interval.Genome;
 import ca.mcgill.mcb.pcingola.interval.Marker;
@@ -17,11 +16,12 @@ import ca.mcgill.mcb.pcingola.interval.NextProt;
 import ca.mcgill.mcb.pcingola.interval.Regulation;
 import ca.mcgill.mcb.pcingola.interval.SpliceSite;
 import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
 import ca.mcgill.mcb.pcingola.logStatsServer.LogStats;
 import ca.mcgill.mcb.pcingola.logStatsServer.VersionCheck;
 import ca.mcgill.mcb.pcingola.motif.Jaspar;
-import ca.mcgill.mcb.pcingola.motif.Pwm;
 import ca.mcgill.mcb.pcingola.serializer.MarkerSerializer;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.snpEffect.Config;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
 import ca.mcgill.mcb.pcingola.spliceSites.SnpEffCmdSpliceAnalysis;
@@ -85,6 +85,7 @@ public class SnpEff implements CommandLine {
 	protected boolean debug; // Debug mode
 	protected boolean download = true; // Download genome, if not available
 	protected boolean help; // Show command help and exit
+	protected boolean lazy = false; // Load chromosomes on demand (requires a memory mapped database)
 	protected boolean log; // Log to server (statistics)
 	protected boolean motif = false; // Annotate using motifs
 	protected boolean multiThreaded = false; // Use multiple threads
@@ -92,8 +93,10 @@ public class SnpEff implements CommandLine {
 	protected boolean noGenome = false; // Do not load genome database
 	protected boolean onlyRegulation = false; // Only build regulation tracks
 	protected boolean quiet; // Be quiet
+	protected boolean treeArray = false; // Use array based interval trees
 	protected boolean verbose; // Be verbose
 	protected Boolean treatAllAsProteinCoding = null; // Only use coding genes. Default is 'null' which means 'auto'
+	protected int maxChromosomesLoaded = 0; // Maximum number of chromosomes in memory when loading on demand (zero means 'no limit')
 	protected int numWorkers = Gpr.NUM_CORES; // Max number of threads (if multi-threaded version is available)
 	protected int spliceSiteSize = SpliceSite.CORE_SPLICE_SITE_SIZE; // Splice site size default: 2 bases (canonical splice site)
 	protected int upDownStreamLength = SnpEffectPredictor.DEFAULT_UP_DOWN_LENGTH; // Upstream & downstream interval length
@@ -244,9 +247,14 @@ public class SnpEff implements CommandLine {
 	protected int loadCustomIntFile(String intFile) {
 		Markers markers = loadMarkers(intFile);
 
-		// Add all markers to predictor
-		for (Marker m : markers)
-			config.getSnpEffectPredictor().add(m);
+		// Add markers to predictor: Custom intervals are stored as a compact track
+		// Note: Annotations are not stored in compact tracks, so markers having annotations are added as they are
+		IntervalTrack track = new IntervalTrack(intFile, EffectType.CUSTOM);
+		for (Marker m : markers) {
+			if (((Custom) m).hasAnnotations()) config.getSnpEffectPredictor().add(m);
+			else track.add(m);
+		}
+		config.getSnpEffectPredictor().add(track);
 
 		// Number added
 		return markers.size();
@@ -273,7 +281,7 @@ public class SnpEff implements CommandLine {
 			if (verbose) Timer.showStdErr("Reading database for genome version '" + genomeVer + "' from file '" + config.getFileSnpEffectPredictor() + "' (this might take a while)");
 
 			// Try to download database if it doesn't exists?
-			if (download && !Gpr.canRead(config.getFileSnpEffectPredictor())) {
+			if (download && !Gpr.canRead(config.getFileSnpEffectPredictor()) && !Gpr.canRead(config.getFileSnpEffectPredictorMapped())) {
 				if (verbose) Timer.showStdErr("Database not installed\n\tAttempting to download and install database '" + genomeVer + "'");
 
 				// Run download command
@@ -284,7 +292,19 @@ public class SnpEff implements CommandLine {
 				else if (verbose) Timer.showStdErr("Database installed.");
 			}
 
-			config.loadSnpEffectPredictor(); // Read snpEffect predictor
+			// Lazy loading is not compatible with options that need all genes in memory
+			// Note: NextProt compact tracks are linked to transcripts one chromosome at a time
+			boolean nextProtNeedsGenes = nextProt && !IntervalTrack.isTrack(config.getBaseFileNameNextProt() + IntervalTrack.FILE_EXTENSION);
+			if (lazy && (canonical || (onlyTranscriptsFile != null) || nextProtNeedsGenes)) {
+				if (verbose) Timer.showStdErr("Warning: Options '-canon', '-onlyTr' and '-nextProt' require loading all genes. Ignoring option '-lazy'.");
+				lazy = false;
+			}
+
+			config.loadSnpEffectPredictor(lazy); // Read snpEffect predictor
+			if (lazy) {
+				if (config.getSnpEffectPredictor().isLazy()) config.getSnpEffectPredictor().setMaxChromosomesLoaded(maxChromosomesLoaded);
+				else if (verbose) Timer.showStdErr("Warning: Memory mapped database not found. Ignoring option '-lazy'.");
+			}
 			if (verbose) Timer.showStdErr("done");
 		}
 
@@ -298,6 +318,9 @@ public class SnpEff implements CommandLine {
 			config.setTreatAllAsProteinCoding(tapc);
 		}
 
+		// Options are not changed after this point: Set them in the predictor
+		config.getSnpEffectPredictor().setAnnotationOptions(config.getAnnotationOptions());
+
 		// Read custom interval files
 		for (String intFile : customIntervalFiles) {
 			if (verbose) Timer.showStdErr("Reading interval file '" + intFile + "'");
@@ -315,6 +338,9 @@ public class SnpEff implements CommandLine {
 		// Set splice site size
 		config.getSnpEffectPredictor().setSpliceSiteSize(spliceSiteSize);
 
+		// Interval tree implementation
+		config.getSnpEffectPredictor().setTreeArray(treeArray);
+
 		// Filter canonical transcripts
 		if (canonical) {
 			if (verbose) Timer.showStdErr("Filtering out non-canonical transcripts.");
@@ -396,6 +422,8 @@ public class SnpEff implements CommandLine {
 
 	/**
 	 * Read regulation motif files
+	 * Compact track file ('motif.track') is used if available, otherwise motifs
+	 * ('motif.bin') are converted to a compact track
 	 */
 	void loadMotif() {
 		if (verbose) Timer.showStdErr("Loading Motifs and PWMs");
@@ -406,8 +434,10 @@ public class SnpEff implements CommandLine {
 		String pwmsFileName = config.getDirDataVersion() + "/pwms.bin";
 		if (!Gpr.exists(pwmsFileName)) fatalError("Warning: Cannot open PWMs file " + pwmsFileName);
 
+		String motifTrackFileName = config.getBaseFileNameMotif() + IntervalTrack.FILE_EXTENSION;
 		String motifBinFileName = config.getBaseFileNameMotif() + ".bin";
-		if (!Gpr.exists(motifBinFileName)) fatalError("Warning: Cannot open Motifs file " + motifBinFileName);
+		boolean hasTrack = IntervalTrack.isTrack(motifTrackFileName);
+		if (!hasTrack && !Gpr.exists(motifBinFileName)) fatalError("Warning: Cannot open Motifs file " + motifBinFileName);
 
 		//---
 		// Load all PWMs
@@ -419,104 +449,94 @@ public class SnpEff implements CommandLine {
 		//---
 		// Read motifs
 		//---
-		if (verbose) Timer.showStdErr("\tLoading Motifs from file '" + motifBinFileName + "'");
-
-		MarkerSerializer markerSerializer = new MarkerSerializer();
-		Markers motifsDb = markerSerializer.load(motifBinFileName);
+		IntervalTrack track;
+		if (hasTrack) {
+			if (verbose) Timer.showStdErr("\tLoading Motifs from file '" + motifTrackFileName + "'");
+			track = IntervalTrack.load(motifTrackFileName);
+		} else {
+			if (verbose) Timer.showStdErr("\tLoading Motifs from file '" + motifBinFileName + "'");
+
+			MarkerSerializer markerSerializer = new MarkerSerializer();
+			Markers motifsDb = markerSerializer.load(motifBinFileName);
+
+			// Add (only) motif markers. The original motifs has to be serialized with Chromosomes, Genomes and other markers (otherwise it could have not been saved)
+			track = new IntervalTrack("motif", EffectType.MOTIF);
+			for (Marker m : motifsDb)
+				if (m instanceof Motif) {
+					Motif motif = (Motif) m;
+					if (jaspar.getPwm(motif.getPwmId()) != null) track.add(motif);
+					else Timer.showStdErr("Cannot find PWM for motif '" + motif.getId() + "'");
+				}
+		}
 
-		// Add (only) motif markers. The original motifs has to be serialized with Chromosomes, Genomes and other markers (otherwise it could have not been saved)
-		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-		int countAddded = 0;
-		for (Marker m : motifsDb)
-			if (m instanceof Motif) {
-				Motif motif = (Motif) m;
-
-				// Connect motifs to their respective PWMs
-				Pwm pwm = jaspar.getPwm(motif.getPwmId());
-				if (pwm != null) {
-					// Set PWM and add to snpEffPredictor
-					motif.setPwm(pwm);
-					snpEffectPredictor.add(motif);
-					countAddded++;
-				} else Timer.showStdErr("Cannot find PWM for motif '" + motif.getId() + "'");
-			}
+		// Motifs are connected to their respective PWMs when a variant hits them (motifs without PWM are discarded)
+		// Note: Motifs without PWM are not added to the track when it is built (see SnpEffCmdBuild), so chromosomes do not need to be loaded here
+		track.setJaspar(jaspar);
+		config.getSnpEffectPredictor().add(track);
 
-		if (verbose) Timer.showStdErr("\tMotif database: " + countAddded + " markers loaded.");
+		if (verbose) Timer.showStdErr("\tMotif database: " + track.size() + " markers loaded.");
 	}
 
 	/**
-	 * Read regulation track and update SnpEffectPredictor
-	 * @param regTrack
+	 * Read NextProt database and update SnpEffectPredictor
+	 * Compact track file ('nextProt.track') is used if available, otherwise NextProt
+	 * markers ('nextProt.bin') are linked to transcripts and converted to a compact track
 	 */
 	void loadNextProt() {
 		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
 
-		//---
-		// Read nextProt binary file
-		//---
-		String nextProtBinFile = config.getDirDataVersion() + "/nextProt.bin";
-		if (verbose) Timer.showStdErr("Reading NextProt database from file '" + nextProtBinFile + "'");
-
-		MarkerSerializer markerSerializer = new MarkerSerializer();
-		Markers nextProtDb = markerSerializer.load(nextProtBinFile);
-
-		// Create a collection of (only) NextProt markers. The original nextProtDb has Chromosomes, Genomes and other markers (otherwise it could have not been saved)
-		ArrayList<NextProt> nextProts = new ArrayList<NextProt>(nextProtDb.size());
-		for (Marker m : nextProtDb)
-			if (m instanceof NextProt) nextProts.add((NextProt) m);
-
-		if (verbose) Timer.showStdErr("NextProt database: " + nextProts.size() + " markers loaded.");
-
-		//---
-		// Connect nextProt annotations to transcripts and exons
-		//---
-		if (verbose) Timer.showStdErr("Adding transcript info to NextProt markers.");
-
-		// Create a list of all transcripts
-		HashMap<String, Transcript> trs = new HashMap<String, Transcript>();
-		for (Gene g : snpEffectPredictor.getGenome().getGenes())
-			for (Transcript tr : g)
-				trs.put(tr.getId(), tr);
-
-		// Find the corresponding transcript for each nextProt marker
-		// WARNING: The transcripts might be filtered out by the user (e.g. '-cannon' command line option or user defined sets).
-		//          We only keep nextProt markers associated to found transcripts. All others are discarded (the user doesn't want that info).
-		ArrayList<NextProt> nextProtsToAdd = new ArrayList<NextProt>();
-		for (NextProt np : nextProts) {
-			Transcript tr = trs.get(np.getTranscriptId());
-
-			// Found transcript, now try to find an exon
-			if (tr != null) {
-				boolean assignedToExon = false;
-				for (Exon ex : tr) {
-					if (ex.intersects(np)) {
-						NextProt npEx = (NextProt) np.clone(); // The nextProt marker might cover more than one Exon
-						npEx.setParent(ex);
-						nextProtsToAdd.add(npEx);
-						assignedToExon = true;
-					}
-				}
-
-				// Not assigned to an exon? Add transcript info
-				if (!assignedToExon) {
-					np.setParent(tr); // Set this transcript as parent
-					nextProtsToAdd.add(np);
+		String nextProtTrackFile = config.getBaseFileNameNextProt() + IntervalTrack.FILE_EXTENSION;
+		IntervalTrack track;
+		if (IntervalTrack.isTrack(nextProtTrackFile)) {
+			// Annotations are already split by exon. They are connected to transcripts and exons when a variant hits them
+			if (verbose) Timer.showStdErr("Reading NextProt database from file '" + nextProtTrackFile + "'");
+			track = IntervalTrack.load(nextProtTrackFile);
+		} else {
+			//---
+			// Read nextProt binary file
+			//---
+			String nextProtBinFile = config.getDirDataVersion() + "/nextProt.bin";
+			if (verbose) Timer.showStdErr("Reading NextProt database from file '" + nextProtBinFile + "'");
+
+			MarkerSerializer markerSerializer = new MarkerSerializer();
+			Markers nextProtDb = markerSerializer.load(nextProtBinFile);
+
+			//---
+			// Connect nextProt annotations to transcripts and exons
+			//---
+			if (verbose) Timer.showStdErr("Adding transcript info to NextProt markers.");
+
+			// Create a list of all transcripts
+			HashMap<String, Transcript> trs = new HashMap<String, Transcript>();
+			for (Gene g : snpEffectPredictor.getGenome().getGenes())
+				for (Transcript tr : g)
+					trs.put(tr.getId(), tr);
+
+			// Find the corresponding transcript for each nextProt marker. The original nextProtDb has Chromosomes, Genomes and other markers (otherwise it could have not been saved)
+			// WARNING: The transcripts might be filtered out by the user (e.g. '-cannon' command line option or user defined sets).
+			//          We only keep nextProt markers associated to found transcripts. All others are discarded (the user doesn't want that info).
+			track = new IntervalTrack("nextProt", EffectType.NEXT_PROT);
+			for (Marker m : nextProtDb)
+				if (m instanceof NextProt) {
+					NextProt np = (NextProt) m;
+					Transcript tr = trs.get(np.getTranscriptId());
+					if (tr != null) track.add(np, tr);
 				}
-			}
 		}
 
 		//---
-		// Add all nextProt marker to predictor
+		// Add track to predictor (nextProt markers are only created when a variant hits them)
 		//---
-		for (NextProt np : nextProtsToAdd)
-			snpEffectPredictor.add(np);
+		snpEffectPredictor.add(track);
 
 		// Note: We might end up with more markers than we loaded (just because they map to multiple exons (although it would be highly unusual)
-		if (verbose) Timer.showStdErr("NextProt database: " + nextProtsToAdd.size() + " markers added.");
+		if (verbose) Timer.showStdErr("NextProt database: " + track.size() + " markers added.");
 	}
 
 	/**
 	 * Read regulation track and update SnpEffectPredictor
+	 * Compact track files ('regulation_<track>.track') are used if available, otherwise
+	 * regulation markers ('regulation_<track>.bin') are converted to a compact track
 	 * @param regTrack
 	 */
 	@SuppressWarnings("unchecked")
@@ -525,31 +545,29 @@ public class SnpEff implements CommandLine {
 		// Read file
 		//---
 		if (verbose) Timer.showStdErr("Reading regulation track '" + regTrack + "'");
-		String regFile = config.getDirDataVersion() + "/regulation_" + regTrack + ".bin";
-		ArrayList<Regulation> regulation = (ArrayList<Regulation>) Gpr.readFileSerializedGz(regFile);
+		String regTrackFile = config.getDirDataVersion() + "/regulation_" + regTrack + IntervalTrack.FILE_EXTENSION;
+		IntervalTrack track;
+		if (IntervalTrack.isTrack(regTrackFile)) track = IntervalTrack.load(regTrackFile);
+		else {
+			// No compact track file: Convert regulation markers
+			String regFile = config.getDirDataVersion() + "/regulation_" + regTrack + ".bin";
+			ArrayList<Regulation> regulation = (ArrayList<Regulation>) Gpr.readFileSerializedGz(regFile);
+			track = new IntervalTrack(regTrack, EffectType.REGULATION);
+			for (Regulation r : regulation)
+				track.add(r);
+		}
 
 		//---
 		// Are all chromosomes available?
 		//---
 		Genome genome = config.getGenome();
-		HashMap<String, Integer> chrs = new HashMap<String, Integer>();
-		for (Regulation r : regulation) {
-			String chr = r.getChromosomeName();
-			int max = chrs.containsKey(chr) ? chrs.get(chr) : 0;
-			max = Math.max(max, r.getEnd());
-			chrs.put(chr, max);
-		}
-
-		// Add all chromos
-		for (String chr : chrs.keySet())
-			if (genome.getChromosome(chr) == null) genome.add(new Chromosome(genome, 0, chrs.get(chr), 1, chr));
+		for (String chr : track.getChromosomeNames())
+			if (genome.getChromosome(chr) == null) genome.add(new Chromosome(genome, 0, track.getMaxEnd(chr), 1, chr));
 
 		//---
-		// Add all markers to predictor
+		// Add track to predictor (regulation markers are only created when a variant hits them)
 		//---
-		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-		for (Regulation r : regulation)
-			snpEffectPredictor.add(r);
+		config.getSnpEffectPredictor().add(track);
 	}
 
 	/**
@@ -637,6 +655,11 @@ public class SnpEff implements CommandLine {
 					if ((i + 1) < args.length) regulationTracks.add(args[++i]); // Add this track to the list
 				} else if (arg.equalsIgnoreCase("-nextProt")) nextProt = true; // Use NextProt database
 				else if (arg.equalsIgnoreCase("-motif")) motif = true; // Use motif database
+				else if (arg.equalsIgnoreCase("-treeArray")) treeArray = true; // Use array based interval trees
+				else if (arg.equalsIgnoreCase("-lazy")) lazy = true; // Load chromosomes on demand
+				else if (arg.equalsIgnoreCase("-lazyMaxChr")) {
+					if ((i + 1) < args.length) maxChromosomesLoaded = Gpr.parseIntSafe(args[++i]);
+				}
 				else {
 					// Unrecognized option? may be it's command specific. Let command parse it
 					argsList.add(arg);
@@ -780,6 +803,9 @@ public class SnpEff implements CommandLine {
 		snpEffCmd.nextProt = nextProt;
 		snpEffCmd.onlyRegulation = onlyRegulation;
 		snpEffCmd.treatAllAsProteinCoding = treatAllAsProteinCoding;
+		snpEffCmd.treeArray = treeArray;
+		snpEffCmd.lazy = lazy;
+		snpEffCmd.maxChromosomesLoaded = maxChromosomesLoaded;
 		snpEffCmd.numWorkers = numWorkers;
 		snpEffCmd.spliceSiteSize = spliceSiteSize;
 		snpEffCmd.upDownStreamLength = upDownStreamLength;
@@ -842,18 +868,21 @@ public class SnpEff implements CommandLine {
 		System.err.println("\t-nodownload                  : Do not download a SnpEff database, if not available locally.");
 		System.err.println("\t-h , -help                   : Show this help and exit");
 		System.err.println("\t-noLog                       : Do not report usage statistics to server");
-		System.err.println("\t-t                           : Use multiple threads (implies '-noStats'). Default 'off'");
+		System.err.println("\t-t                           : Use multiple threads. Default 'off'");
 		System.err.println("\t-q ,  -quiet                 : Quiet mode (do not show any messages or errors)");
 		System.err.println("\t-v , -verbose                : Verbose mode");
 		System.err.println("\nDatabase options:");
 		System.err.println("\t-canon                       : Only use canonical transcripts.");
 		System.err.println("\t-interval                    : Use a custom intervals in TXT/BED/BigBed/VCF/GFF file (you may use this option many times)");
+		System.err.println("\t-lazy                        : Load genes on demand, one chromosome at a time (requires a database built using 'build -mapped').");
+		System.err.println("\t-lazyMaxChr <int>            : Maximum number of chromosomes kept in memory when using '-lazy'. Default: no limit");
 		System.err.println("\t-motif                       : Annotate using motifs (requires Motif database).");
 		System.err.println("\t-nextProt                    : Annotate using NextProt (requires NextProt database).");
 		System.err.println("\t-reg <name>                  : Regulation track to use (this option can be used add several times).");
 		System.err.println("\t-onlyReg                     : Only use regulation tracks.");
 		System.err.println("\t-onlyTr <file.txt>           : Only use the transcripts in this file. Format: One transcript ID per line.");
 		System.err.println("\t-ss , -spliceSiteSize <int>  : Set size for splice sites (donor and acceptor) in bases. Default: " + spliceSiteSize);
+		System.err.println("\t-treeArray                   : Use array based interval trees (faster queries, less memory).");
 		System.err.println("\t-ud , -upDownStreamLen <int> : Set upstream downstream interval length (in bases)");
 	}
 
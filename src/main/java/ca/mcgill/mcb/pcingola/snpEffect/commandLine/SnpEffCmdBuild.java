@@ -10,10 +10,13 @@ import ca.mcgill.mcb.pcingola.fileIterator.MotifFileIterator;
 import ca.mcgill.mcb.pcingola.fileIterator.RegulationFileIterator;
 import ca.mcgill.mcb.pcingola.fileIterator.RegulationGffFileIterator;
 import ca.mcgill.mcb.pcingola.interval.ExonSpliceCharacterizer;
+import ca.mcgill.mcb.pcingola.interval.Marker;
 import ca.mcgill.mcb.pcingola.interval.Markers;
 import ca.mcgill.mcb.pcingola.interval.Motif;
 import ca.mcgill.mcb.pcingola.interval.RareAminoAcid;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
 import ca.mcgill.mcb.pcingola.motif.Jaspar;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
 import ca.mcgill.mcb.pcingola.snpEffect.factory.SnpEffPredictorFactory;
 import ca.mcgill.mcb.pcingola.snpEffect.factory.SnpEffPredictorFactoryEmbl;
@@ -36,6 +39,7 @@ public class SnpEffCmdBuild extends SnpEff {
 
 	GeneDatabaseFormat geneDatabaseFormat; // Database format (only used if 'buildDb' is active)
 	boolean onlyRegulation = false; // Only build regulation tracks
+	boolean mapped = false; // Also save database in binary (memory mappable) format
 	String cellType = null;
 
 	public SnpEffCmdBuild() {
@@ -124,6 +128,7 @@ public class SnpEffCmdBuild extends SnpEff {
 				else if (args[i].equalsIgnoreCase("-embl")) geneDatabaseFormat = GeneDatabaseFormat.EMBL;
 				else if (args[i].equalsIgnoreCase("-txt")) geneDatabaseFormat = GeneDatabaseFormat.BIOMART;
 				else if (args[i].equalsIgnoreCase("-onlyReg")) onlyRegulation = true;
+				else if (args[i].equalsIgnoreCase("-mapped")) mapped = true;
 				else if (args[i].equalsIgnoreCase("-cellType")) {
 					if ((i + 1) < args.length) cellType = args[++i];
 					else usage("Missing 'cellType' argument");
@@ -217,6 +222,7 @@ public class SnpEffCmdBuild extends SnpEff {
 		if (verbose) Timer.showStdErr("[Optional] Reading motifs: GFF");
 		String motifFileName = config.getBaseFileNameMotif() + ".gff";
 		String motifBinFileName = config.getBaseFileNameMotif() + ".bin";
+		String motifTrackFileName = config.getBaseFileNameMotif() + IntervalTrack.FILE_EXTENSION;
 		String pwmsFileName = config.getDirDataVersion() + "/pwms.bin";
 
 		if (!Gpr.exists(pwmsFileName)) {
@@ -240,6 +246,14 @@ public class SnpEffCmdBuild extends SnpEff {
 
 			if (verbose) Timer.showStdErr("\tSaving motifs to: " + motifBinFileName);
 			motifs.save(motifBinFileName);
+
+			// Compact track (sorted by chromosome position), used when annotating. Motifs without PWM are not added (they would be discarded when annotating)
+			if (verbose) Timer.showStdErr("\tSaving motifs to: " + motifTrackFileName);
+			IntervalTrack track = new IntervalTrack("motif", EffectType.MOTIF);
+			for (Marker m : motifs)
+				if (((Motif) m).getPwm() != null) track.add(m);
+			track.save(motifTrackFileName);
+			if (verbose) Timer.showStdErr("\tMotifs with PWM: " + track.size());
 		} catch (Throwable t) {
 			// If file does not exists, no problem
 			if (verbose) Timer.showStdErr("Warning: Cannot read optional motif file '" + motifFileName + "', nothing done.");
@@ -271,6 +285,10 @@ public class SnpEffCmdBuild extends SnpEff {
 			// Save database
 			if (verbose) Timer.showStdErr("Saving database");
 			snpEffectPredictor.save(config);
+			if (mapped) {
+				if (verbose) Timer.showStdErr("Saving database (binary format)");
+				snpEffectPredictor.saveMapped(config);
+			}
 
 			// Check database
 			checkDb();
@@ -305,6 +323,7 @@ public class SnpEffCmdBuild extends SnpEff {
 		System.err.println("\t-refseq                 : Use RefSeq table from UCSC. It implies '-0'.");
 		System.err.println("\t-txt                    : Use TXT format (obsolete).");
 		System.err.println("\t-onlyReg                : Only build regulation tracks.");
+		System.err.println("\t-mapped                 : Also save database in binary (memory mappable) format.");
 		System.err.println("\t-cellType <type>        : Only build regulation tracks for cellType <type>.");
 		System.err.println("\nGeneric options:");
 		System.err.println("\t-0                      : File positions are zero-based (same as '-inOffset 0 -outOffset 0')");
@@ -25,7 +25,9 @@ import ca.mcgill.mcb.pcingola.interval.Marker;
 import ca.mcgill.mcb.pcingola.interval.Markers;
 import ca.mcgill.mcb.pcingola.interval.NextProt;
 import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
 import ca.mcgill.mcb.pcingola.serializer.MarkerSerializer;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
 import ca.mcgill.mcb.pcingola.stats.CountByType;
 import ca.mcgill.mcb.pcingola.util.Gpr;
@@ -672,6 +674,8 @@ public class SnpEffCmdBuildNextProt extends SnpEff {
 
 	/**
 	 * Save nextprot markers
+	 * Markers are saved as a compact track ('nextProt.track', split by exon and sorted by chromosome
+	 * position) used when annotating, as well as serialized markers ('nextProt.bin')
 	 */
 	void save() {
 		String nextProtBinFile = config.getDirDataVersion() + "/nextProt.bin";
@@ -693,6 +697,18 @@ public class SnpEffCmdBuildNextProt extends SnpEff {
 		// Save
 		MarkerSerializer markerSerializer = new MarkerSerializer();
 		markerSerializer.save(nextProtBinFile, markersToSave);
+
+		// Save compact track: Link markers to exons once, so they don't need to be linked every time the database is loaded
+		String nextProtTrackFile = config.getBaseFileNameNextProt() + IntervalTrack.FILE_EXTENSION;
+		if (verbose) Timer.showStdErr("Saving database to file '" + nextProtTrackFile + "'");
+
+		IntervalTrack track = new IntervalTrack("nextProt", EffectType.NEXT_PROT);
+		for (Marker m : markers) {
+			NextProt np = (NextProt) m;
+			Transcript tr = trById.get(np.getTranscriptId());
+			if (tr != null) track.add(np, tr);
+		}
+		track.save(nextProtTrackFile);
 	}
 
 	/**
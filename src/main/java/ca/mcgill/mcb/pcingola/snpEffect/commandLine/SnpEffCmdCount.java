@@ -135,6 +135,7 @@ public class SnpEffCmdCount extends SnpEff {
 		countReadsOnMarkers = new CountReadsOnMarkers(snpEffectPredictor);
 
 		countReadsOnMarkers.setVerbose(verbose);
+		if (multiThreaded) countReadsOnMarkers.setNumWorkers(numWorkers);
 		for (String file : fileNames)
 			countReadsOnMarkers.addFile(file);
 		countReadsOnMarkers.count();
@@ -12,28 +12,26 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import akka.actor.Actor;
-import akka.actor.Props;
-import akka.actor.UntypedActorFactory;
-import ca.mcgill.mcb.pcingola.akka.vcf.VcfWorkQueue;
 import ca.mcgill.mcb.pcingola.fileIterator.BedFileIterator;
 import ca.mcgill.mcb.pcingola.fileIterator.VariantFileIterator;
 import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
+import ca.mcgill.mcb.pcingola.fileIterator.VcfRegionIterator;
 import ca.mcgill.mcb.pcingola.filter.ChangeEffectFilter;
 import ca.mcgill.mcb.pcingola.interval.Marker;
 import ca.mcgill.mcb.pcingola.interval.Markers;
 import ca.mcgill.mcb.pcingola.interval.Variant;
 import ca.mcgill.mcb.pcingola.interval.tree.IntervalForest;
+import ca.mcgill.mcb.pcingola.interval.tree.Itree;
 import ca.mcgill.mcb.pcingola.outputFormatter.BedAnnotationOutputFormatter;
 import ca.mcgill.mcb.pcingola.outputFormatter.BedOutputFormatter;
 import ca.mcgill.mcb.pcingola.outputFormatter.OutputFormatter;
 import ca.mcgill.mcb.pcingola.outputFormatter.VcfOutputFormatter;
+import ca.mcgill.mcb.pcingola.parallel.ParallelPipeline;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectImpact;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffects;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
-import ca.mcgill.mcb.pcingola.snpEffect.commandLine.eff.MasterEff;
 import ca.mcgill.mcb.pcingola.stats.ChangeEffectResutStats;
 import ca.mcgill.mcb.pcingola.stats.CountByType;
 import ca.mcgill.mcb.pcingola.stats.VariantStats;
@@ -43,7 +41,7 @@ import ca.mcgill.mcb.pcingola.util.Timer;
 import ca.mcgill.mcb.pcingola.util.Tuple;
 import ca.mcgill.mcb.pcingola.vcf.PedigreeEnrty;
 import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
-import ca.mcgill.mcb.pcingola.vcf.VcfGenotype;
+import ca.mcgill.mcb.pcingola.vcf.VcfGenotypeStore;
 import freemarker.template.Configuration;
 import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.Template;
@@ -56,6 +54,45 @@ import freemarker.template.TemplateException;
  */
 public class SnpEffCmdEff extends SnpEff {
 
+	/**
+	 * Effects calculated for one input entry (a VCF entry or a variant).
+	 * Effects can be calculated in parallel, but results are always output in input order
+	 */
+	static class EffResult {
+		List<Variant> variants = new ArrayList<Variant>();
+		List<ChangeEffects> changeEffects = new ArrayList<ChangeEffects>();
+		List<Variant> cancerVariants = new ArrayList<Variant>(); // Cancer comparisons (Somatic vs Germline)
+		List<ChangeEffects> cancerChangeEffects = new ArrayList<ChangeEffects>();
+		boolean filteredOut = false; // Entry did not match filter intervals
+		Throwable error; // Error while calculating effects
+	}
+
+	/**
+	 * Summary statistics.
+	 * In multi-threaded mode each worker samples its own statistics, which are merged at the end
+	 */
+	class EffStats {
+		VariantStats seqChangeStats;
+		ChangeEffectResutStats changeEffectResutStats;
+		VcfStats vcfStats;
+
+		EffStats() {
+			seqChangeStats = new VariantStats(config.getGenome());
+			changeEffectResutStats = new ChangeEffectResutStats(config.getGenome());
+			changeEffectResutStats.setUseSequenceOntology(useSequenceOntology);
+			vcfStats = new VcfStats();
+		}
+
+		/**
+		 * Merge these statistics into the command's statistics
+		 */
+		void mergeInto(SnpEffCmdEff snpEffCmdEff) {
+			snpEffCmdEff.seqChangeStats.merge(seqChangeStats);
+			snpEffCmdEff.changeEffectResutStats.merge(changeEffectResutStats);
+			snpEffCmdEff.vcfStats.merge(vcfStats);
+		}
+	}
+
 	public static final String SUMMARY_TEMPLATE = "snpEff_summary.ftl"; // Summary template file name
 	public static final String SUMMARY_CSV_TEMPLATE = "snpEff_csv_summary.ftl"; // Summary template file name
 	public static final String SUMMARY_GENES_TEMPLATE = "snpEff_genes.ftl"; // Genes template file name
@@ -75,10 +112,16 @@ public class SnpEffCmdEff extends SnpEff {
 	boolean useOicr = false; // Use OICR tag
 	boolean chromoPlots = true; // Create mutations by chromosome plots?
 	boolean lossOfFunction = false; // Create loss of function LOF tag?
+	boolean genotypeSummary = false; // Add genotype summary (AC, AN, HET, HOM) INFO fields?
 	boolean useGeneId = false; // Use gene ID instead of gene name (VCF output)
 	boolean createCsvSummary = false; // Use a CSV as output summary
+	boolean bgzip = false; // Compress output (BGZF format)
 	int totalErrs = 0;
 	long countInputLines = 0, countVariants = 0, countEffects = 0; // , countVariantsFilteredOut = 0;
+	int countVcfEntries = 0;
+	boolean anyCancerSample = false; // Does the pedigree have any 'derived' sample?
+	List<PedigreeEnrty> pedigree; // Cancer samples pedigree
+	CountByType errByType, warnByType; // Errors and warnings in VCF entries
 	String chrStr = "";
 	String inputFile = ""; // Input file
 	ArrayList<String> inputFiles;
@@ -116,15 +159,16 @@ public class SnpEffCmdEff extends SnpEff {
 		HashSet<Tuple<Integer, Integer>> comparisons = new HashSet<Tuple<Integer, Integer>>();
 
 		// Find out which comparisons have to be analyzed
+		VcfGenotypeStore genotypes = vcfEntry.getGenotypeStore();
 		for (PedigreeEnrty pe : pedigree) {
 			if (pe.isDerived()) {
-				VcfGenotype genOri = vcfEntry.getVcfGenotype(pe.getOriginalNum());
-				VcfGenotype genDer = vcfEntry.getVcfGenotype(pe.getDerivedNum());
+				int numOri = pe.getOriginalNum();
+				int numDer = pe.getDerivedNum();
 
-				int gd[] = genDer.getGenotype(); // Derived genotype
-				int go[] = genOri.getGenotype(); // Original genotype
+				int gd[] = genotypes.getGenotype(numDer); // Derived genotype
+				int go[] = genotypes.getGenotype(numOri); // Original genotype
 
-				if (genOri.isPhased() && genDer.isPhased()) {
+				if (genotypes.isPhased(numOri) && genotypes.isPhased(numDer)) {
 					// Phased, we only have two possible comparisons
 					// TODO: Check if this is correct for phased genotypes!
 					for (int i = 0; i < 2; i++) {
@@ -161,6 +205,90 @@ public class SnpEffCmdEff extends SnpEff {
 		return comparisons;
 	}
 
+	/**
+	 * Calculate effects for a variant (non-VCF inputs)
+	 * Note: This method can be invoked from several threads at the same time (see ParallelPipeline)
+	 */
+	EffResult calculate(Variant seqChange) {
+		EffResult result = new EffResult();
+
+		try {
+			// Skip if there are filter intervals and they are not matched
+			if ((filterIntervals != null) && (filterIntervals.stab(seqChange).size() <= 0)) {
+				result.filteredOut = true;
+				return result;
+			}
+
+			// Calculate effects
+			result.variants.add(seqChange);
+			result.changeEffects.add(config.getSnpEffectPredictor().seqChangeEffect(seqChange));
+		} catch (Throwable t) {
+			result.error = t;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Calculate effects for all variants in a VCF entry (and cancer comparisons, if needed)
+	 * Note: This method can be invoked from several threads at the same time (see ParallelPipeline)
+	 */
+	EffResult calculate(VcfEntry vcfEntry) {
+		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
+		EffResult result = new EffResult();
+
+		try {
+			// Skip if there are filter intervals and they are not matched
+			if ((filterIntervals != null) && (filterIntervals.query(vcfEntry).isEmpty())) {
+				result.filteredOut = true;
+				return result;
+			}
+
+			//---
+			// Analyze all changes in this VCF entry
+			// Note, this is the standard analysis.
+			// Next section deals with cancer: Somatic vs Germline comparisons
+			//---
+			boolean impact = false; // Does this entry have an impact (other than MODIFIER)?
+			List<Variant> seqChanges = vcfEntry.variants();
+			for (Variant seqChange : seqChanges) {
+				ChangeEffects changeEffects = snpEffectPredictor.seqChangeEffect(seqChange);
+				result.variants.add(seqChange);
+				result.changeEffects.add(changeEffects);
+
+				for (ChangeEffect changeEffect : changeEffects)
+					impact |= (changeEffect.getEffectImpact() != EffectImpact.MODIFIER);
+			}
+
+			//---
+			// Do we analyze cancer samples?
+			// Here we deal with Somatic vs Germline comparisons
+			//---
+			if (anyCancerSample && impact && vcfEntry.isMultipleAlts()) {
+				// Calculate all required comparisons
+				Set<Tuple<Integer, Integer>> comparisons = compareCancerGenotypes(vcfEntry, pedigree);
+
+				// Analyze each comparison
+				for (Tuple<Integer, Integer> comp : comparisons) {
+					// We have to compare comp.first vs comp.second
+					int altGtNum = comp.first; // comp.first is 'derived' (our new ALT)
+					int refGtNum = comp.second; // comp.second is 'original' (our new REF)
+
+					Variant seqChangeRef = seqChanges.get(refGtNum - 1); // After applying this seqChange, we get the new 'reference'
+					Variant seqChangeAlt = seqChanges.get(altGtNum - 1); // This our new 'seqChange'
+
+					// Calculate effects
+					result.cancerVariants.add(seqChangeAlt);
+					result.cancerChangeEffects.add(snpEffectPredictor.seqChangeEffect(seqChangeAlt, seqChangeRef));
+				}
+			}
+		} catch (Throwable t) {
+			result.error = t;
+		}
+
+		return result;
+	}
+
 	public ChangeEffectResutStats getChangeEffectResutStats() {
 		return changeEffectResutStats;
 	}
@@ -169,15 +297,24 @@ public class SnpEffCmdEff extends SnpEff {
 		return seqChangeStats;
 	}
 
+	/**
+	 * All filter intervals (as a list of markers)
+	 */
+	Markers filterIntervalMarkers() {
+		Markers markers = new Markers();
+		for (Itree tree : filterIntervals)
+			for (Marker m : tree)
+				markers.add(m);
+		return markers;
+	}
+
 	/**
 	 * Iterate on all inputs and calculate effects.
 	 * Note: This is used for all input formats except VCF, which has a different iteration modality
 	 *
 	 * @param outputFormatter
 	 */
-	void iterateSeqChange(String inputFile, OutputFormatter outputFormatter) {
-		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-
+	void iterateSeqChange(String inputFile, final OutputFormatter outputFormatter) {
 		// Create an input file iterator
 		VariantFileIterator seqChangeFileIterator;
 		if (inputFormat == InputFormat.BED) seqChangeFileIterator = new BedFileIterator(inputFile, config.getGenome());
@@ -186,39 +323,30 @@ public class SnpEffCmdEff extends SnpEff {
 		//---
 		// Iterate over input file
 		//---
-		for (Variant seqChange : seqChangeFileIterator) {
-			try {
-				countInputLines++;
-
-				countVariants += seqChange.getChangeOptionCount();
-				if (verbose && (countVariants % SHOW_EVERY == 0)) Timer.showStdErr("\t" + countVariants + " variants");
-
-				// Does it pass the filter? => Analyze
-
-				// Skip if there are filter intervals and they are not matched
-				if ((filterIntervals != null) && (filterIntervals.stab(seqChange).size() <= 0)) continue;
-
-				// Perform basic statistics about this seqChange
-				if (createSummary) seqChangeStats.sample(seqChange);
-
-				// Calculate effects
-				ChangeEffects changeEffects = snpEffectPredictor.seqChangeEffect(seqChange);
-
-				// Create new 'section'
-				outputFormatter.startSection(seqChange);
-
-				// Show results
-				for (ChangeEffect changeEffect : changeEffects) {
-					changeEffectResutStats.sample(changeEffect); // Perform basic statistics about this result
-					outputFormatter.add(changeEffect);
-					countEffects++;
+		if (multiThreaded) {
+			if (verbose) Timer.showStdErr("Running multi-threaded mode (numThreads=" + numWorkers + ").");
+			final EffStats workerStats[] = newWorkerStats();
+			ParallelPipeline<Variant, EffResult> pipeline = new ParallelPipeline<Variant, EffResult>(numWorkers) {
+
+				@Override
+				protected EffResult calculate(Variant seqChange, int workerNum) {
+					EffResult result = SnpEffCmdEff.this.calculate(seqChange);
+					if (createSummary) sample(seqChange, result, workerStats[workerNum].seqChangeStats, workerStats[workerNum].changeEffectResutStats);
+					return result;
 				}
 
-				// Finish up this section
-				outputFormatter.printSection(seqChange);
-			} catch (Throwable t) {
-				totalErrs++;
-				error(t, "Error while processing variant (line " + seqChangeFileIterator.getLineNum() + ") :\n\t" + seqChange + "\n" + t);
+				@Override
+				protected void output(Variant seqChange, EffResult result) {
+					SnpEffCmdEff.this.output(seqChange, result, outputFormatter);
+				}
+			};
+			pipeline.run(seqChangeFileIterator);
+			mergeWorkerStats(workerStats);
+		} else {
+			for (Variant seqChange : seqChangeFileIterator) {
+				EffResult result = calculate(seqChange);
+				if (createSummary) sample(seqChange, result, seqChangeStats, changeEffectResutStats);
+				output(seqChange, result, outputFormatter);
 			}
 		}
 
@@ -230,183 +358,192 @@ public class SnpEffCmdEff extends SnpEff {
 	 * Iterate on all inputs (VCF) and calculate effects.
 	 * Note: This is used only on input format VCF, which has a different iteration modality
 	 *
-	 * TODO: Effect analysis should be in a separate class, so we can easily reuse it for single or mutli-threaded modes.
-	 *       SnpEffCmdEff should only parse command line, and then invoke the other class (now everything is here, it's a mess)
+	 * In multi-threaded mode, effects and statistics are calculated by several worker
+	 * threads, whereas output is always performed by this thread (in input order)
 	 *
 	 * @param outputFormatter
 	 */
-	void iterateVcf(String inputFile, OutputFormatter outputFormatter) {
-		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-
-		// Open VCF file
+	void iterateVcf(String inputFile, final OutputFormatter outputFormatter) {
+		// Open VCF file and read header
 		VcfFileIterator vcfFile = new VcfFileIterator(inputFile, config.getGenome());
-		boolean anyCancerSample = false;
-		List<PedigreeEnrty> pedigree = null;
-		CountByType errByType = new CountByType(), warnByType = new CountByType();
-
-		int countVcfEntries = 0;
-		for (VcfEntry vcfEntry : vcfFile) {
-			boolean printed = false;
-			boolean filteredOut = false;
-
-			try {
-				countInputLines++;
-				countVcfEntries++;
-
-				// Find if there is a pedigree and if it has any 'derived' entry
-				if (vcfFile.isHeadeSection()) {
-					if (cancer) {
-						pedigree = readPedigree(vcfFile);
-
-						// Any 'derived' entry in this pedigree?
-						if (pedigree != null) {
-							for (PedigreeEnrty pe : pedigree)
-								anyCancerSample |= pe.isDerived();
-						}
-					}
-				}
+		vcfFile.readHeader();
+
+		// Find if there is a pedigree and if it has any 'derived' entry
+		anyCancerSample = false;
+		pedigree = null;
+		if (cancer) {
+			pedigree = readPedigree(vcfFile);
+			if (pedigree != null) {
+				for (PedigreeEnrty pe : pedigree)
+					anyCancerSample |= pe.isDerived();
+			}
+		}
 
-				// Sample vcf entry
-				if (createSummary) vcfStats.sample(vcfEntry);
+		errByType = new CountByType();
+		warnByType = new CountByType();
+		countVcfEntries = 0;
 
-				// Skip if there are filter intervals and they are not matched
-				if ((filterIntervals != null) && (filterIntervals.query(vcfEntry).isEmpty())) {
-					filteredOut = true;
-					continue;
-				}
+		// Indexed file and filter intervals? Only read entries in those intervals (instead of scanning the whole file)
+		Iterable<VcfEntry> vcfEntries = vcfFile;
+		if ((filterIntervals != null) && vcfFile.isTabix()) {
+			VcfRegionIterator vcfRegions = new VcfRegionIterator(vcfFile, filterIntervalMarkers());
+			if (verbose) Timer.showStdErr("Input file is indexed (tabix). Reading only entries intersecting " + vcfRegions.size() + " filter intervals.");
+			vcfEntries = vcfRegions;
+		}
 
-				// Create new 'section'
-				outputFormatter.startSection(vcfEntry);
+		if (multiThreaded) {
+			if (verbose) Timer.showStdErr("Running multi-threaded mode (numThreads=" + numWorkers + ").");
+			final EffStats workerStats[] = newWorkerStats();
+			ParallelPipeline<VcfEntry, EffResult> pipeline = new ParallelPipeline<VcfEntry, EffResult>(numWorkers) {
+
+				@Override
+				protected EffResult calculate(VcfEntry vcfEntry, int workerNum) {
+					EffResult result = SnpEffCmdEff.this.calculate(vcfEntry);
+					EffStats stats = workerStats[workerNum];
+					if (createSummary) sample(vcfEntry, result, stats.vcfStats, stats.seqChangeStats, stats.changeEffectResutStats);
+					return result;
+				}
 
-				//---
-				// Analyze all changes in this VCF entry
-				// Note, this is the standard analysis.
-				// Next section deals with cancer: Somatic vs Germline comparisons
-				//---
-				boolean impact = false; // Does this entry have an impact (other than MODIFIER)?
-				List<Variant> seqChanges = vcfEntry.variants();
-				for (Variant seqChange : seqChanges) {
-					countVariants += seqChange.getChangeOptionCount();
-					if (verbose && (countVariants % SHOW_EVERY == 0)) Timer.showStdErr("\t" + countVariants + " variants");
+				@Override
+				protected void output(VcfEntry vcfEntry, EffResult result) {
+					SnpEffCmdEff.this.output(vcfEntry, result, outputFormatter);
+				}
+			};
+			pipeline.run(vcfEntries);
+			mergeWorkerStats(workerStats);
+		} else {
+			for (VcfEntry vcfEntry : vcfEntries) {
+				EffResult result = calculate(vcfEntry);
+				if (createSummary) sample(vcfEntry, result, vcfStats, seqChangeStats, changeEffectResutStats);
+				output(vcfEntry, result, outputFormatter);
+			}
+		}
 
-					// Perform basic statistics about this seqChange
-					if (createSummary) seqChangeStats.sample(seqChange);
+		// Empty file? Show at least the header
+		if (countVcfEntries == 0) outputFormatter.print(vcfFile.getVcfHeader().toString());
 
-					// Calculate effects
-					ChangeEffects changeEffects = snpEffectPredictor.seqChangeEffect(seqChange);
+		// Close file iterator (not really needed, but just in case)
+		vcfFile.close();
 
-					// Create new 'section'
-					outputFormatter.startSection(seqChange);
+		// Show errors and warnings
+		if (!errByType.isEmpty()) System.err.println("\nERRORS: Some errors were detected\nError type\tNumber of errors\n" + errByType + "\n");
+		if (!warnByType.isEmpty()) System.err.println("\nWARNINGS: Some warning were detected\nWarning type\tNumber of warnings\n" + warnByType + "\n");
+	}
 
-					// Show results
-					for (ChangeEffect changeEffect : changeEffects) {
-						if (createSummary) changeEffectResutStats.sample(changeEffect); // Perform basic statistics about this result
+	/**
+	 * Merge statistics from all workers
+	 */
+	void mergeWorkerStats(EffStats workerStats[]) {
+		if (!createSummary) return;
+		for (EffStats stats : workerStats)
+			stats.mergeInto(this);
+	}
 
-						// Any errors or warnings?
-						if (changeEffect.hasError()) errByType.inc(changeEffect.getError());
-						if (changeEffect.hasWarning()) warnByType.inc(changeEffect.getWarning());
+	/**
+	 * Create one set of statistics for each worker
+	 */
+	EffStats[] newWorkerStats() {
+		EffStats workerStats[] = new EffStats[Math.max(1, numWorkers)]; // Same number of workers as ParallelPipeline
+		for (int i = 0; i < workerStats.length; i++)
+			workerStats[i] = new EffStats();
+		return workerStats;
+	}
 
-						// Does this entry have an impact (other than MODIFIER)?
-						impact |= (changeEffect.getEffectImpact() != EffectImpact.MODIFIER);
+	/**
+	 * Output effects for a variant (non-VCF inputs) and update counters
+	 */
+	void output(Variant seqChange, EffResult result, OutputFormatter outputFormatter) {
+		try {
+			countInputLines++;
 
-						outputFormatter.add(changeEffect);
-						countEffects++;
-					}
+			countVariants += seqChange.getChangeOptionCount();
+			if (verbose && (countVariants % SHOW_EVERY == 0)) Timer.showStdErr("\t" + countVariants + " variants");
 
-					// Finish up this section
-					outputFormatter.printSection(seqChange);
-				}
+			if (result.error != null) throw result.error;
+			if (result.filteredOut) return;
 
-				//---
-				// Do we analyze cancer samples?
-				// Here we deal with Somatic vs Germline comparisons
-				//---
-				if (anyCancerSample && impact && vcfEntry.isMultipleAlts()) {
-					// Calculate all required comparisons
-					Set<Tuple<Integer, Integer>> comparisons = compareCancerGenotypes(vcfEntry, pedigree);
+			// Create new 'section'
+			outputFormatter.startSection(seqChange);
 
-					// Analyze each comparison
-					for (Tuple<Integer, Integer> comp : comparisons) {
-						// We have to compare comp.first vs comp.second
-						int altGtNum = comp.first; // comp.first is 'derived' (our new ALT)
-						int refGtNum = comp.second; // comp.second is 'original' (our new REF)
+			// Show results
+			for (ChangeEffect changeEffect : result.changeEffects.get(0)) {
+				outputFormatter.add(changeEffect);
+				countEffects++;
+			}
 
-						Variant seqChangeRef = seqChanges.get(refGtNum - 1); // After applying this seqChange, we get the new 'reference'
-						Variant seqChangeAlt = seqChanges.get(altGtNum - 1); // This our new 'seqChange'
+			// Finish up this section
+			outputFormatter.printSection(seqChange);
+		} catch (Throwable t) {
+			totalErrs++;
+			error(t, "Error while processing variant:\n\t" + seqChange + "\n" + t);
+		}
+	}
 
-						// Calculate effects
-						ChangeEffects changeEffects = snpEffectPredictor.seqChangeEffect(seqChangeAlt, seqChangeRef);
+	/**
+	 * Output effects for a VCF entry and update counters
+	 */
+	void output(VcfEntry vcfEntry, EffResult result, OutputFormatter outputFormatter) {
+		boolean printed = false;
 
-						// Create new 'section'
-						outputFormatter.startSection(seqChangeAlt);
+		try {
+			countInputLines++;
+			countVcfEntries++;
 
-						// Show results (note, we don't add these to the statistics)
-						for (ChangeEffect changeEffect : changeEffects)
-							outputFormatter.add(changeEffect);
+			if (result.filteredOut) return;
 
-						// Finish up this section
-						outputFormatter.printSection(seqChangeAlt);
-					}
-				}
+			// Create new 'section'
+			outputFormatter.startSection(vcfEntry);
 
-				// Finish up this section
-				outputFormatter.printSection(vcfEntry);
-
-				printed = true;
-			} catch (Throwable t) {
-				totalErrs++;
-				error(t, "Error while processing VCF entry (line " + vcfFile.getLineNum() + ") :\n\t" + vcfEntry + "\n" + t);
-			} finally {
-				if (!printed && !filteredOut) outputFormatter.printSection(vcfEntry);
-			}
-		}
+			// Show results for each variant (note that some variants may be missing if there was an error)
+			for (int i = 0; i < result.variants.size(); i++) {
+				Variant seqChange = result.variants.get(i);
+				countVariants += seqChange.getChangeOptionCount();
+				if (verbose && (countVariants % SHOW_EVERY == 0)) Timer.showStdErr("\t" + countVariants + " variants");
 
-		// Empty file? Show at least the header
-		if (countVcfEntries == 0) outputFormatter.print(vcfFile.getVcfHeader().toString());
+				// Create new 'section'
+				outputFormatter.startSection(seqChange);
 
-		// Close file iterator (not really needed, but just in case)
-		vcfFile.close();
+				// Show results
+				for (ChangeEffect changeEffect : result.changeEffects.get(i)) {
+					// Any errors or warnings?
+					if (changeEffect.hasError()) errByType.inc(changeEffect.getError());
+					if (changeEffect.hasWarning()) warnByType.inc(changeEffect.getWarning());
 
-		// Show errors and warnings
-		if (!errByType.isEmpty()) System.err.println("\nERRORS: Some errors were detected\nError type\tNumber of errors\n" + errByType + "\n");
-		if (!warnByType.isEmpty()) System.err.println("\nWARNINGS: Some warning were detected\nWarning type\tNumber of warnings\n" + warnByType + "\n");
-	}
+					outputFormatter.add(changeEffect);
+					countEffects++;
+				}
 
-	/**
-	 * Multi-threaded iteration on VCF inputs and calculates effects.
-	 * Note: This is used only on input format VCF, which has a different iteration modality
-	 *
-	 * @param outputFormatter
-	 */
-	void iterateVcfMulti(String inputFile, final OutputFormatter outputFormatter) {
-		if (verbose) Timer.showStdErr("Running multi-threaded mode (numThreads=" + numWorkers + ").");
+				// Finish up this section
+				outputFormatter.printSection(seqChange);
+			}
 
-		outputFormatter.setShowHeader(false); // Master process takes care of the header (instead of outputFormatter). Otherwise you get the header printed one time per worker.
+			// Cancer comparisons
+			for (int i = 0; i < result.cancerVariants.size(); i++) {
+				Variant seqChangeAlt = result.cancerVariants.get(i);
 
-		// We need final variables for the inner class
-		final SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-		final VcfOutputFormatter vcfOutForm = (VcfOutputFormatter) outputFormatter;
-		final SnpEffCmdEff snpEffCmdEff = this;
+				// Create new 'section'
+				outputFormatter.startSection(seqChangeAlt);
 
-		new VcfFileIterator(inputFile, config.getGenome());
+				// Show results (note, we don't add these to the statistics)
+				for (ChangeEffect changeEffect : result.cancerChangeEffects.get(i))
+					outputFormatter.add(changeEffect);
 
-		// Master factory
-		Props props = new Props(new UntypedActorFactory() {
+				// Finish up this section
+				outputFormatter.printSection(seqChangeAlt);
+			}
 
-			private static final long serialVersionUID = 1L;
+			if (result.error != null) throw result.error;
 
-			@Override
-			public Actor create() {
-				MasterEff master = new MasterEff(numWorkers, snpEffCmdEff, snpEffectPredictor, outputFormatter, filterIntervals);
-				master.setAddHeader(vcfOutForm.getNewHeaderLines().toArray(new String[0]));
-				return master;
-			}
-		});
+			// Finish up this section
+			outputFormatter.printSection(vcfEntry);
 
-		// Create and run queue
-		int batchSize = 10;
-		VcfWorkQueue vcfWorkQueue = new VcfWorkQueue(inputFile, batchSize, -1, props);
-		vcfWorkQueue.run(true);
+			printed = true;
+		} catch (Throwable t) {
+			totalErrs++;
+			error(t, "Error while processing VCF entry (line " + vcfEntry.getLineNum() + ") :\n\t" + vcfEntry + "\n" + t);
+		} finally {
+			if (!printed && !result.filteredOut) outputFormatter.printSection(vcfEntry);
+		}
 	}
 
 	/**
@@ -445,6 +582,7 @@ public class SnpEffCmdEff extends SnpEff {
 		default:
 			throw new RuntimeException("Unimplemented option for output file type " + outputFormat);
 		}
+		if (bgzip) outputFile += ".gz";
 
 		// Create summary file names
 		summaryFile = Gpr.dirName(inputFile) + "/" + base + (createCsvSummary ? "_summary.csv" : "_summary.html");
@@ -470,6 +608,7 @@ public class SnpEffCmdEff extends SnpEff {
 			//---
 			if (isOpt(arg)) {
 				if (arg.equalsIgnoreCase("-fileList")) isFileList = true;
+				else if (arg.equalsIgnoreCase("-bgzip")) bgzip = true; // Compress output
 				//---
 				// Output options
 				//---
@@ -508,6 +647,7 @@ public class SnpEffCmdEff extends SnpEff {
 					if ((i + 1) < args.length) cancerSamples = args[++i]; // Read cancer samples from TXT files
 					else usage("Missing -cancerSamples argument");
 				} else if (arg.equalsIgnoreCase("-lof")) lossOfFunction = true; // Add LOF tag
+				else if (arg.equalsIgnoreCase("-gtSummary")) genotypeSummary = true; // Add AC, AN, HET, HOM tags
 				else if (arg.equalsIgnoreCase("-hgvs")) useHgvs = true; // Use HGVS notation
 				else if (arg.equalsIgnoreCase("-geneId")) useGeneId = true; // Use gene ID instead of gene name
 				else if (arg.equalsIgnoreCase("-sequenceOntology")) useSequenceOntology = true; // Use SO temrs
@@ -590,12 +730,7 @@ public class SnpEffCmdEff extends SnpEff {
 		if (isOutVcf && (inputFormat != InputFormat.VCF)) usage("Output in VCF format is only supported when the input is also in VCF format");
 		if (!isOutVcf && lossOfFunction) usage("Loss of function annotation is only supported when when output is in VCF format");
 		if (!isOutVcf && cancer) usage("Canccer annotation is only supported when when output is in VCF format");
-
-		// Sanity check for multi-threaded version
-		if (multiThreaded) createSummary = false; // This is implied ( '-t' => '-noStats' )
-		if (multiThreaded && cancer) usage("Cancer analysis is currently not supported in multi-threaded mode.");
-		if (multiThreaded && !isOutVcf) usage("Multi-threaded option is only supported when when output is in VCF format");
-		if (multiThreaded && createSummary) usage("Multi-threaded option should be used with 'noStats'.");
+		if (!isOutVcf && genotypeSummary) usage("Genotype summary is only supported when when output is in VCF format");
 	}
 
 	/**
@@ -765,6 +900,7 @@ public class SnpEffCmdEff extends SnpEff {
 		case VCF:
 			VcfOutputFormatter vof = new VcfOutputFormatter(vcfEntriesDebug);
 			vof.setLossOfFunction(lossOfFunction);
+			vof.setGenotypeSummary(genotypeSummary);
 			vof.setConfig(config);
 			outputFormatter = vof;
 			break;
@@ -792,14 +928,14 @@ public class SnpEffCmdEff extends SnpEff {
 		outputFormatter.setUseHgvs(useHgvs);
 		outputFormatter.setUseGeneId(useGeneId);
 		outputFormatter.setOutputFile(outputFile);
+		outputFormatter.setBgzip(bgzip);
 
 		//---
 		// Iterate over all changes
 		//---
 		switch (inputFormat) {
 		case VCF:
-			if (multiThreaded) iterateVcfMulti(inputFile, outputFormatter);
-			else iterateVcf(inputFile, outputFormatter);
+			iterateVcf(inputFile, outputFormatter);
 			break;
 		default:
 			iterateSeqChange(inputFile, outputFormatter);
@@ -823,6 +959,32 @@ public class SnpEffCmdEff extends SnpEff {
 		if (totalErrs > 0) System.err.println(totalErrs + " errors.");
 	}
 
+	/**
+	 * Sample a variant (non-VCF inputs) and its effects to update statistics
+	 */
+	void sample(Variant seqChange, EffResult result, VariantStats seqChangeStats, ChangeEffectResutStats changeEffectResutStats) {
+		if (result.filteredOut || (result.error != null)) return;
+
+		seqChangeStats.sample(seqChange);
+		for (ChangeEffect changeEffect : result.changeEffects.get(0))
+			changeEffectResutStats.sample(changeEffect);
+	}
+
+	/**
+	 * Sample a VCF entry, its variants and their effects to update statistics
+	 * Note: Cancer comparisons are not added to the statistics
+	 */
+	void sample(VcfEntry vcfEntry, EffResult result, VcfStats vcfStats, VariantStats seqChangeStats, ChangeEffectResutStats changeEffectResutStats) {
+		vcfStats.sample(vcfEntry);
+		if (result.filteredOut) return;
+
+		for (int i = 0; i < result.variants.size(); i++) {
+			seqChangeStats.sample(result.variants.get(i));
+			for (ChangeEffect changeEffect : result.changeEffects.get(i))
+				changeEffectResutStats.sample(changeEffect);
+		}
+	}
+
 	/**
 	 * Creates a summary output file (using freeMarker and a template)
 	 */
@@ -901,6 +1063,7 @@ public class SnpEffCmdEff extends SnpEff {
 		System.err.println("\tvariants_file                   : Default is STDIN");
 		System.err.println("\n");
 		System.err.println("\nOptions:");
+		System.err.println("\t-bgzip                          : Compress output using BGZF format (it can be indexed using 'tabix'). Default: " + bgzip);
 		System.err.println("\t-chr <string>                   : Prepend 'string' to chromosome name (e.g. 'chr1' instead of '1'). Only on TXT output.");
 		System.err.println("\t-classic                        : Use old style annotaions instead of Sequence Ontology and Hgvs.");
 		System.err.println("\t-download                       : Download reference genome if not available. Default: " + download);
@@ -911,7 +1074,7 @@ public class SnpEffCmdEff extends SnpEff {
 		System.err.println("\t-noStats                        : Do not create stats (summary) file");
 		System.err.println("\t-csvStats                       : Create CSV summary file instead of HTML");
 		System.err.println("\nResults filter options:");
-		System.err.println("\t-fi , -filterInterval  <file>   : Only analyze changes that intersect with the intervals specified in this file (you may use this option many times)");
+		System.err.println("\t-fi , -filterInterval  <file>   : Only analyze changes that intersect with the intervals specified in this file (you may use this option many times). If the input VCF is indexed (tabix), only entries in these intervals are read.");
 		System.err.println("\t-no-downstream                  : Do not show DOWNSTREAM changes");
 		System.err.println("\t-no-intergenic                  : Do not show INTERGENIC changes");
 		System.err.println("\t-no-intron                      : Do not show INTRON changes");
@@ -922,6 +1085,7 @@ public class SnpEffCmdEff extends SnpEff {
 		System.err.println("\t-cancer                         : Perform 'cancer' comparisons (Somatic vs Germline). Default: " + cancer);
 		System.err.println("\t-cancerSamples <file>           : Two column TXT file defining 'oringinal \\t derived' samples.");
 		System.err.println("\t-geneId                         : Use gene ID instead of gene name (VCF output). Default: " + useGeneId);
+		System.err.println("\t-gtSummary                      : Add genotype summary tags: allele counts (AC), number of called alleles (AN), heterozygous (HET) and homozygous ALT (HOM) samples. Default: " + genotypeSummary);
 		System.err.println("\t-hgvs                           : Use HGVS annotations for amino acid sub-field. Default: " + useHgvs);
 		System.err.println("\t-lof                            : Add loss of function (LOF) and Nonsense mediated decay (NMD) tags.");
 		System.err.println("\t-oicr                           : Add OICR tag in VCF file. Default: " + useOicr);
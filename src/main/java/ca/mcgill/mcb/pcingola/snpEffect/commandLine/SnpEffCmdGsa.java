@@ -36,6 +36,7 @@ import ca.mcgill.mcb.pcingola.interval.Marker;
 import ca.mcgill.mcb.pcingola.interval.Markers;
 import ca.mcgill.mcb.pcingola.interval.Variant;
 import ca.mcgill.mcb.pcingola.interval.VariantWithScore;
+import ca.mcgill.mcb.pcingola.probablility.RankSumNoReplacementPdf;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
 import ca.mcgill.mcb.pcingola.util.Gpr;
 import ca.mcgill.mcb.pcingola.util.Timer;
@@ -59,6 +60,7 @@ public class SnpEffCmdGsa extends SnpEff {
 	boolean usePvalues = true;
 	boolean removeUnusedSets = false; // TODO: Add a command line option?
 	boolean orderDescending = false; // If 'true', high scores are better (sort descending and get the first values)
+	boolean rankSumApfloat = false; // Use arbitrary precision (Apfloat) rank sum distribution instead of double precision tables
 	int upDownStreamLength = SnpEffectPredictor.DEFAULT_UP_DOWN_LENGTH;
 	int minGeneSetSize = 0;
 	int maxGeneSetSize = Integer.MAX_VALUE;
@@ -325,11 +327,15 @@ public class SnpEffCmdGsa extends SnpEff {
 			break;
 
 		case RANKSUM_GREEDY:
-			algorithm = new RankSumPValueGreedyAlgorithm(geneSetsRanked, numberofGeneSetsToSelect);
+			RankSumPValueGreedyAlgorithm rankSumGreedy = new RankSumPValueGreedyAlgorithm(geneSetsRanked, numberofGeneSetsToSelect);
+			if (rankSumApfloat) rankSumGreedy.setRankSumCdf(RankSumNoReplacementPdf.get());
+			algorithm = rankSumGreedy;
 			break;
 
 		case RANKSUM:
-			algorithm = new RankSumPValueAlgorithm(geneSetsRanked, numberofGeneSetsToSelect);
+			RankSumPValueAlgorithm rankSum = new RankSumPValueAlgorithm(geneSetsRanked, numberofGeneSetsToSelect);
+			if (rankSumApfloat) rankSum.setRankSumCdf(RankSumNoReplacementPdf.get());
+			algorithm = rankSum;
 			break;
 
 		case FISHER_GREEDY:
@@ -363,6 +369,7 @@ public class SnpEffCmdGsa extends SnpEff {
 		if (enrichmentAlgorithmType.isGreedy()) {
 			if (debug) Gpr.debug("Setting initGeneSetSize:" + initGeneSetSize);
 			((EnrichmentAlgorithmGreedyVariableSize) algorithm).setInitialSize(initGeneSetSize);
+			if (multiThreaded) ((EnrichmentAlgorithmGreedyVariableSize) algorithm).setNumWorkers(numWorkers);
 		}
 
 		// Run algorithm
@@ -556,6 +563,7 @@ public class SnpEffCmdGsa extends SnpEff {
 				else if (arg.equals("-geneId")) useGeneId = true;
 				else if (arg.equals("-score")) usePvalues = false;
 				else if (arg.equals("-desc")) orderDescending = true; // Sort descending: High scores are better
+				else if (arg.equals("-rankSumApfloat")) rankSumApfloat = true;
 				else usage("Unknown option '" + arg + "'");
 
 			} else if (genomeVer.isEmpty()) genomeVer = arg;
@@ -913,6 +921,7 @@ public class SnpEffCmdGsa extends SnpEff {
 		System.err.println("\t-geneScore                    : Method to summarize gene scores {MIN, MAX, AVG, AVG_MIN_10, AVG_MAX_10, FISHER_CHI_SQUARE, Z_SCORES, SIMES}. Default: " + scoreSummary);
 		System.err.println("\t-geneScoreFile <file>         : Read gene score from file instead of calculating them. Format: 'geneId \\t score'");
 		System.err.println("\t-mapClosestGene               : Map to closest gene. Default: " + useClosestGene);
+		System.err.println("\t-rankSumApfloat               : Use arbitrary precision rank sum distribution (slower) instead of double precision tables. Default: " + rankSumApfloat);
 		System.err.println("\t-maxPvalue <num>              : Maximum un-adjusted p-value to show result. Default: None");
 		System.err.println("\t-maxPvalueAdj <num>           : Maximum adjusted p-value to show result. Default: " + maxPvalueAdjusted);
 		System.err.println("\t-saveGeneScoreFile <file>     : Save gene scores to file.");
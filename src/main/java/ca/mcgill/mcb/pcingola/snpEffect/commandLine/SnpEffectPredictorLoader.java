@@ -7,7 +7,6 @@ import java.util.HashSet;
 
 import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Custom;
-import ca.mcgill.mcb.pcingola.interval.Exon;
 import ca.mcgill.mcb.pcingola.interval.Gene;
 import ca.mcgill.mcb.pcingola.interval.Genome;
 import ca.mcgill.mcb.pcingola.interval.Marker;
@@ -18,9 +17,10 @@ import ca.mcgill.mcb.pcingola.interval.Regulation;
 import ca.mcgill.mcb.pcingola.interval.SpliceSite;
 import ca.mcgill.mcb.pcingola.interval.Transcript;
 import ca.mcgill.mcb.pcingola.interval.VariantWithScore;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
 import ca.mcgill.mcb.pcingola.motif.Jaspar;
-import ca.mcgill.mcb.pcingola.motif.Pwm;
 import ca.mcgill.mcb.pcingola.serializer.MarkerSerializer;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
 import ca.mcgill.mcb.pcingola.snpEffect.Config;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
 import ca.mcgill.mcb.pcingola.util.Gpr;
@@ -182,6 +182,9 @@ public class SnpEffectPredictorLoader {
 			config.setTreatAllAsProteinCoding(tapc);
 		}
 
+		// Options are not changed after this point: Set them in the predictor
+		config.getSnpEffectPredictor().setAnnotationOptions(config.getAnnotationOptions());
+
 		// Read custom interval files
 		for (String intFile : customIntervalFiles) {
 			if (verbose) Timer.showStdErr("Reading interval file '" + intFile + "'");
@@ -305,9 +308,11 @@ public class SnpEffectPredictorLoader {
 	protected int readCustomIntFile(String intFile) {
 		Markers markers = readMarkers(intFile);
 
-		// Add all markers to predictor
+		// Add all markers to predictor (as a compact track)
+		IntervalTrack track = new IntervalTrack(intFile, EffectType.CUSTOM);
 		for (Marker m : markers)
-			config.getSnpEffectPredictor().add(m);
+			track.add(m);
+		config.getSnpEffectPredictor().add(track);
 
 		// Number added
 		return markers.size();
@@ -411,6 +416,8 @@ public class SnpEffectPredictorLoader {
 
 	/**
 	 * Read regulation motif files
+	 * Compact track file ('motif.track') is used if available, otherwise motifs
+	 * ('motif.bin') are converted to a compact track
 	 */
 	void readMotif() {
 		if (verbose) Timer.showStdErr("Loading Motifs and PWMs");
@@ -421,8 +428,10 @@ public class SnpEffectPredictorLoader {
 		String pwmsFileName = config.getDirDataVersion() + "/pwms.bin";
 		if (!Gpr.exists(pwmsFileName)) fatalError("Warning: Cannot open PWMs file " + pwmsFileName);
 
+		String motifTrackFileName = config.getBaseFileNameMotif() + IntervalTrack.FILE_EXTENSION;
 		String motifBinFileName = config.getBaseFileNameMotif() + ".bin";
-		if (!Gpr.exists(motifBinFileName)) fatalError("Warning: Cannot open Motifs file " + motifBinFileName);
+		boolean hasTrack = IntervalTrack.isTrack(motifTrackFileName);
+		if (!hasTrack && !Gpr.exists(motifBinFileName)) fatalError("Warning: Cannot open Motifs file " + motifBinFileName);
 
 		//---
 		// Load all PWMs
@@ -433,105 +442,95 @@ public class SnpEffectPredictorLoader {
 
 		//---
 		// Read motifs
-		//---		
-		if (verbose) Timer.showStdErr("\tLoading Motifs from file '" + motifBinFileName + "'");
-
-		MarkerSerializer markerSerializer = new MarkerSerializer();
-		Markers motifsDb = markerSerializer.load(motifBinFileName);
+		//---
+		IntervalTrack track;
+		if (hasTrack) {
+			if (verbose) Timer.showStdErr("\tLoading Motifs from file '" + motifTrackFileName + "'");
+			track = IntervalTrack.load(motifTrackFileName);
+		} else {
+			if (verbose) Timer.showStdErr("\tLoading Motifs from file '" + motifBinFileName + "'");
+
+			MarkerSerializer markerSerializer = new MarkerSerializer();
+			Markers motifsDb = markerSerializer.load(motifBinFileName);
+
+			// Add (only) motif markers. The original motifs has to be serialized with Chromosomes, Genomes and other markers (otherwise it could have not been saved)
+			track = new IntervalTrack("motif", EffectType.MOTIF);
+			for (Marker m : motifsDb)
+				if (m instanceof Motif) {
+					Motif motif = (Motif) m;
+					if (jaspar.getPwm(motif.getPwmId()) != null) track.add(motif);
+					else Timer.showStdErr("Cannot find PWM for motif '" + motif.getId() + "'");
+				}
+		}
 
-		// Add (only) motif markers. The original motifs has to be serialized with Chromosomes, Genomes and other markers (otherwise it could have not been saved)
-		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-		int countAddded = 0;
-		for (Marker m : motifsDb)
-			if (m instanceof Motif) {
-				Motif motif = (Motif) m;
-
-				// Connect motifs to their respective PWMs
-				Pwm pwm = jaspar.getPwm(motif.getPwmId());
-				if (pwm != null) {
-					// Set PWM and add to snpEffPredictor
-					motif.setPwm(pwm);
-					snpEffectPredictor.add(motif);
-					countAddded++;
-				} else Timer.showStdErr("Cannot find PWM for motif '" + motif.getId() + "'");
-			}
+		// Motifs are connected to their respective PWMs when a variant hits them (motifs without PWM are discarded)
+		// Note: Motifs without PWM are not added to the track when it is built (see SnpEffCmdBuild), so chromosomes do not need to be loaded here
+		track.setJaspar(jaspar);
+		config.getSnpEffectPredictor().add(track);
 
-		if (verbose) Timer.showStdErr("\tMotif database: " + countAddded + " markers loaded.");
+		if (verbose) Timer.showStdErr("\tMotif database: " + track.size() + " markers loaded.");
 	}
 
 	/**
-	 * Read regulation track and update SnpEffectPredictor
-	 * @param regTrack
+	 * Read NextProt database and update SnpEffectPredictor
+	 * Compact track file ('nextProt.track') is used if available, otherwise NextProt
+	 * markers ('nextProt.bin') are linked to transcripts and converted to a compact track
 	 */
 	void readNextProt() {
 		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
 
-		//---
-		// Read nextProt binary file
-		//---
-		String nextProtBinFile = config.getDirDataVersion() + "/nextProt.bin";
-		if (verbose) Timer.showStdErr("Reading NextProt database from file '" + nextProtBinFile + "'");
-
-		MarkerSerializer markerSerializer = new MarkerSerializer();
-		Markers nextProtDb = markerSerializer.load(nextProtBinFile);
-
-		// Create a collection of (only) NextProt markers. The original nextProtDb has Chromosomes, Genomes and other markers (otherwise it could have not been saved)
-		ArrayList<NextProt> nextProts = new ArrayList<NextProt>(nextProtDb.size());
-		for (Marker m : nextProtDb)
-			if (m instanceof NextProt) nextProts.add((NextProt) m);
-
-		if (verbose) Timer.showStdErr("NextProt database: " + nextProts.size() + " markers loaded.");
+		String nextProtTrackFile = config.getBaseFileNameNextProt() + IntervalTrack.FILE_EXTENSION;
+		IntervalTrack track;
+		if (IntervalTrack.isTrack(nextProtTrackFile)) {
+			// Annotations are already split by exon. They are connected to transcripts and exons when a variant hits them
+			if (verbose) Timer.showStdErr("Reading NextProt database from file '" + nextProtTrackFile + "'");
+			track = IntervalTrack.load(nextProtTrackFile);
+		} else {
+			//---
+			// Read nextProt binary file
+			//---
+			String nextProtBinFile = config.getDirDataVersion() + "/nextProt.bin";
+			if (verbose) Timer.showStdErr("Reading NextProt database from file '" + nextProtBinFile + "'");
 
-		//---
-		// Connect nextProt annotations to transcripts and exons 
-		//---
-		if (verbose) Timer.showStdErr("Adding transcript info to NextProt markers.");
-
-		// Create a list of all transcripts
-		HashMap<String, Transcript> trs = new HashMap<String, Transcript>();
-		for (Gene g : snpEffectPredictor.getGenome().getGenes())
-			for (Transcript tr : g)
-				trs.put(tr.getId(), tr);
-
-		// Find the corresponding transcript for each nextProt marker 
-		// WARNING: The transcripts might be filtered out by the user (e.g. '-cannon' command line option or user defined sets). 
-		//          We only keep nextProt markers associated to found transcripts. All others are discarded (the user doesn't want that info).
-		ArrayList<NextProt> nextProtsToAdd = new ArrayList<NextProt>();
-		for (NextProt np : nextProts) {
-			Transcript tr = trs.get(np.getTranscriptId());
-
-			// Found transcript, now try to find an exon
-			if (tr != null) {
-				boolean assignedToExon = false;
-				for (Exon ex : tr) {
-					if (ex.intersects(np)) {
-						NextProt npEx = (NextProt) np.clone(); // The nextProt marker might cover more than one Exon 
-						npEx.setParent(ex);
-						nextProtsToAdd.add(npEx);
-						assignedToExon = true;
-					}
-				}
+			MarkerSerializer markerSerializer = new MarkerSerializer();
+			Markers nextProtDb = markerSerializer.load(nextProtBinFile);
 
-				// Not assigned to an exon? Add transcript info
-				if (!assignedToExon) {
-					np.setParent(tr); // Set this transcript as parent
-					nextProtsToAdd.add(np);
+			//---
+			// Connect nextProt annotations to transcripts and exons
+			//---
+			if (verbose) Timer.showStdErr("Adding transcript info to NextProt markers.");
+
+			// Create a list of all transcripts
+			HashMap<String, Transcript> trs = new HashMap<String, Transcript>();
+			for (Gene g : snpEffectPredictor.getGenome().getGenes())
+				for (Transcript tr : g)
+					trs.put(tr.getId(), tr);
+
+			// Find the corresponding transcript for each nextProt marker. The original nextProtDb has Chromosomes, Genomes and other markers (otherwise it could have not been saved)
+			// WARNING: The transcripts might be filtered out by the user (e.g. '-cannon' command line option or user defined sets).
+			//          We only keep nextProt markers associated to found transcripts. All others are discarded (the user doesn't want that info).
+			track = new IntervalTrack("nextProt", EffectType.NEXT_PROT);
+			for (Marker m : nextProtDb)
+				if (m instanceof NextProt) {
+					NextProt np = (NextProt) m;
+					Transcript tr = trs.get(np.getTranscriptId());
+					if (tr != null) track.add(np, tr);
 				}
-			}
 		}
 
 		//---
-		// Add all nextProt marker to predictor
+		// Add track to predictor (nextProt markers are only created when a variant hits them)
 		//---
-		for (NextProt np : nextProtsToAdd)
-			snpEffectPredictor.add(np);
+		snpEffectPredictor.add(track);
 
 		// Note: We might end up with more markers than we loaded (just because they map to multiple exons (although it would be highly unusual)
-		if (verbose) Timer.showStdErr("NextProt database: " + nextProtsToAdd.size() + " markers added.");
+		if (verbose) Timer.showStdErr("NextProt database: " + track.size() + " markers added.");
 	}
 
 	/**
 	 * Read regulation track and update SnpEffectPredictor
+	 * Compact track files ('regulation_<track>.track') are used if available, otherwise
+	 * regulation markers ('regulation_<track>.bin') are converted to a compact track
 	 * @param regTrack
 	 */
 	@SuppressWarnings("unchecked")
@@ -540,31 +539,29 @@ public class SnpEffectPredictorLoader {
 		// Read file
 		//---
 		if (verbose) Timer.showStdErr("Reading regulation track '" + regTrack + "'");
-		String regFile = config.getDirDataVersion() + "/regulation_" + regTrack + ".bin";
-		ArrayList<Regulation> regulation = (ArrayList<Regulation>) Gpr.readFileSerializedGz(regFile);
+		String regTrackFile = config.getDirDataVersion() + "/regulation_" + regTrack + IntervalTrack.FILE_EXTENSION;
+		IntervalTrack track;
+		if (IntervalTrack.isTrack(regTrackFile)) track = IntervalTrack.load(regTrackFile);
+		else {
+			// No compact track file: Convert regulation markers
+			String regFile = config.getDirDataVersion() + "/regulation_" + regTrack + ".bin";
+			ArrayList<Regulation> regulation = (ArrayList<Regulation>) Gpr.readFileSerializedGz(regFile);
+			track = new IntervalTrack(regTrack, EffectType.REGULATION);
+			for (Regulation r : regulation)
+				track.add(r);
+		}
 
 		//---
 		// Are all chromosomes available?
 		//---
 		Genome genome = config.getGenome();
-		HashMap<String, Integer> chrs = new HashMap<String, Integer>();
-		for (Regulation r : regulation) {
-			String chr = r.getChromosomeName();
-			int max = chrs.containsKey(chr) ? chrs.get(chr) : 0;
-			max = Math.max(max, r.getEnd());
-			chrs.put(chr, max);
-		}
-
-		// Add all chromos
-		for (String chr : chrs.keySet())
-			if (genome.getChromosome(chr) == null) genome.add(new Chromosome(genome, 0, chrs.get(chr), 1, chr));
+		for (String chr : track.getChromosomeNames())
+			if (genome.getChromosome(chr) == null) genome.add(new Chromosome(genome, 0, track.getMaxEnd(chr), 1, chr));
 
 		//---
-		// Add all markers to predictor
+		// Add track to predictor (regulation markers are only created when a variant hits them)
 		//---
-		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-		for (Regulation r : regulation)
-			snpEffectPredictor.add(r);
+		config.getSnpEffectPredictor().add(track);
 	}
 
 	public void setDebug(boolean debug) {
@@ -6,7 +6,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
-import ca.mcgill.mcb.pcingola.fileIterator.FastaFileIterator;
+import ca.mcgill.mcb.pcingola.binseq.ReferenceSequence;
+import ca.mcgill.mcb.pcingola.fileIterator.FastaReferenceFileIterator;
 import ca.mcgill.mcb.pcingola.interval.Cds;
 import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Exon;
@@ -50,6 +51,8 @@ public abstract class SnpEffPredictorFactory {
 	HashMap<String, Marker> markersById;
 	HashMap<String, Gene> genesById;
 	HashMap<String, Transcript> transcriptsById;
+	HashMap<String, ArrayList<Gene>> genesByChromo; // Genes by chromosome (upper case) name, sorted by start. Only used when adding exon sequences
+	int genesByChromoCount; // Number of genes when 'genesByChromo' was created
 	Random random = new Random(20140410); // Note: we want consistent results in our test cases, so we always initialize the random generator in the same way
 
 	public SnpEffPredictorFactory(Config config, int inOffset) {
@@ -130,32 +133,30 @@ public abstract class SnpEffPredictorFactory {
 	/**
 	 * Add sequences to exon intervals
 	 */
-	protected void addExonSequences(String chr, String chrSeq) {
+	protected void addExonSequences(String chr, ReferenceSequence chrSeq) {
 		int seqsAdded = 0, seqsIgnored = 0;
 		if (verbose) System.out.print("\t\tAdding genomic sequences to exons: ");
 
 		// Find and add sequences for all exons in this chromosome
-		for (Gene gene : genome.getGenes()) {
-			if (gene.getChromosomeName().equalsIgnoreCase(chr)) { // Same chromosome? => go on
-				for (Transcript tr : gene) {
-					for (Exon exon : tr) {
-						int ssStart = exon.getStart();
-						int ssEnd = exon.getEnd() + 1; // String.substring does not include the last character in the interval (so we have to add 1)
-
-						if ((ssStart < 0) || (ssEnd > chrSeq.length())) {
-							warning("Ignoring exon outside chromosome range (chromo length: " + chrSeq.length() + "). Exon: " + exon);
-							seqsIgnored++;
-						} else {
-							try {
-								String seq = chrSeq.substring(ssStart, ssEnd).toUpperCase();
-								// Reverse strand? => reverse complement of the sequence
-								if (exon.isStrandMinus()) seq = GprSeq.reverseWc(seq);
-								exon.setSequence(seq);
-								seqsAdded++;
-							} catch (Throwable t) {
-								t.printStackTrace();
-								throw new RuntimeException("Error trying to add sequence to exon:\n\tChromosome sequence length: " + chrSeq.length() + "\n\tExon: " + exon);
-							}
+		for (Gene gene : genesByChromo(chr)) {
+			for (Transcript tr : gene) {
+				for (Exon exon : tr) {
+					int ssStart = exon.getStart();
+					int ssEnd = exon.getEnd() + 1; // Last base is not included in the interval (so we have to add 1)
+
+					if ((ssStart < 0) || (ssEnd > chrSeq.length())) {
+						warning("Ignoring exon outside chromosome range (chromo length: " + chrSeq.length() + "). Exon: " + exon);
+						seqsIgnored++;
+					} else {
+						try {
+							String seq = chrSeq.getBases(ssStart, ssEnd - ssStart);
+							// Reverse strand? => reverse complement of the sequence
+							if (exon.isStrandMinus()) seq = GprSeq.reverseWc(seq);
+							exon.setSequence(seq);
+							seqsAdded++;
+						} catch (Throwable t) {
+							t.printStackTrace();
+							throw new RuntimeException("Error trying to add sequence to exon:\n\tChromosome sequence length: " + chrSeq.length() + "\n\tExon: " + exon);
 						}
 					}
 				}
@@ -167,6 +168,16 @@ public abstract class SnpEffPredictorFactory {
 		totalSeqsIgnored += seqsIgnored;
 	}
 
+	/**
+	 * Add sequences to exon intervals
+	 */
+	protected void addExonSequences(String chr, String chrSeq) {
+		ReferenceSequence refSeq = new ReferenceSequence(chr);
+		refSeq.append(chrSeq);
+		refSeq.pack();
+		addExonSequences(chr, refSeq);
+	}
+
 	/**
 	 * Add a marker to the collection
 	 * @param marker
@@ -240,6 +251,34 @@ public abstract class SnpEffPredictorFactory {
 		collapseZeroLenIntrons();
 	}
 
+	/**
+	 * Genes in chromosome 'chr' (sorted by start position)
+	 * The index is created once and re-created if genes are added
+	 */
+	List<Gene> genesByChromo(String chr) {
+		if ((genesByChromo == null) || (genesByChromoCount != genome.getGenes().size())) {
+			genesByChromo = new HashMap<String, ArrayList<Gene>>();
+			for (Gene gene : genome.getGenes()) {
+				String key = gene.getChromosomeName().toUpperCase();
+				ArrayList<Gene> genes = genesByChromo.get(key);
+				if (genes == null) {
+					genes = new ArrayList<Gene>();
+					genesByChromo.put(key, genes);
+				}
+				genes.add(gene);
+			}
+
+			for (ArrayList<Gene> genes : genesByChromo.values())
+				Collections.sort(genes, new IntervalComparatorByStart());
+
+			genesByChromoCount = genome.getGenes().size();
+		}
+
+		List<Gene> genes = genesByChromo.get(chr.toUpperCase());
+		if (genes == null) return new ArrayList<Gene>();
+		return genes;
+	}
+
 	/**
 	 * Get (or create) a chromosome and set it's length
 	 * @param chromoName
@@ -583,10 +622,10 @@ public abstract class SnpEffPredictorFactory {
 
 			if (Gpr.canRead(file)) {
 				if (verbose) System.out.println("\tReading FASTA file: '" + file + "'");
-				// Read fasta sequence
-				FastaFileIterator ffi = new FastaFileIterator(file);
-				for (String seq : ffi) {
-					String chromo = ffi.getName();
+				// Read fasta sequence (packed, one sequence at a time)
+				FastaReferenceFileIterator ffi = new FastaReferenceFileIterator(file);
+				for (ReferenceSequence seq : ffi) {
+					String chromo = seq.getName();
 					if (verbose) System.out.println("\t\tReading sequence '" + chromo + "', length: " + seq.length());
 					Chromosome chromoInt = getOrCreateChromosome(chromo);
 					chromoInt.setLength(seq.length()); // Set chromosome length
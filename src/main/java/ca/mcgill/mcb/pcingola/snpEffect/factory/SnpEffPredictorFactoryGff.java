@@ -3,6 +3,7 @@ package ca.mcgill.mcb.pcingola.snpEffect.factory;
 import java.io.BufferedReader;
 import java.util.HashMap;
 
+import ca.mcgill.mcb.pcingola.binseq.ReferenceSequence;
 import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Exon;
 import ca.mcgill.mcb.pcingola.interval.Gene;
@@ -197,16 +198,16 @@ public abstract class SnpEffPredictorFactoryGff extends SnpEffPredictorFactory {
 				}
 			}
 
-			// Read fasta sequence
+			// Read fasta sequence (packed, see ReferenceSequence)
 			String chromoName = null;
-			StringBuffer chromoSb = new StringBuffer();
+			ReferenceSequence chromoSeq = null;
 			for (; reader.ready(); lineNum++) {
 				line = reader.readLine();
 				if (line.startsWith(">")) { // New fasta sequence
 					// Set chromosome sequences and length (create it if it doesn't exist)
 					if (chromoName != null) {
-						chromoLen(chromoName, chromoSb.length());
-						addExonSequences(chromoName, chromoSb.toString()); // Add all sequences
+						chromoLen(chromoName, chromoSeq.length());
+						addExonSequences(chromoName, chromoSeq); // Add all sequences
 					}
 
 					// Get sequence name
@@ -214,17 +215,17 @@ public abstract class SnpEffPredictorFactoryGff extends SnpEffPredictorFactory {
 					if (idxSpace > 0) line = line.substring(0, idxSpace);
 					chromoName = Chromosome.simpleName(line.substring(1).trim()); // New chromosome name
 
-					// Initialize buffer
-					chromoSb = new StringBuffer();
+					// Initialize sequence
+					chromoSeq = new ReferenceSequence(chromoName);
 					if (verbose) System.out.println("\t\tReading sequence '" + chromoName + "'");
-				} else chromoSb.append(line.trim());
+				} else if (chromoSeq != null) chromoSeq.append(line.trim());
 			}
 
 			// Last chromosome
 			// Set chromosome sequneces and length (create it if it doesn't exist)
 			if (chromoName != null) {
-				chromoLen(chromoName, chromoSb.length());
-				addExonSequences(chromoName, chromoSb.toString()); // Add all sequences
+				chromoLen(chromoName, chromoSeq.length());
+				addExonSequences(chromoName, chromoSeq); // Add all sequences
 			} else warning("Ignoring sequences for '" + chromoName + "'. Cannot find chromosome"); // Chromosome not found
 
 			reader.close();
@@ -4,6 +4,7 @@ import junit.framework.Assert;
 import junit.framework.TestCase;
 import ca.mcgill.mcb.pcingola.fileIterator.NeedlemanWunsch;
 import ca.mcgill.mcb.pcingola.fileIterator.VcfRefAltAlign;
+import ca.mcgill.mcb.pcingola.interval.Variant.VariantType;
 
 /**
  * test cases for Sequence alignment
@@ -50,4 +51,40 @@ public class TestCasesAlign extends TestCase {
 		}
 	}
 
+	/**
+	 * Long (repetitive) sequences: Must be fast and must not run out of memory
+	 */
+	public void test_03() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000 * 1000; i++)
+			sb.append('A');
+		String longA = sb.toString();
+
+		// Long deletion
+		VcfRefAltAlign align = new VcfRefAltAlign("T", "T" + longA);
+		align.align();
+		Assert.assertEquals(VariantType.DEL, align.getChangeType());
+		Assert.assertEquals("-" + longA, align.getAlignment());
+		Assert.assertEquals(1, align.getOffset());
+
+		// Long insertion
+		align = new VcfRefAltAlign("T" + longA + "C", "TC");
+		align.align();
+		Assert.assertEquals(VariantType.INS, align.getChangeType());
+		Assert.assertEquals("+" + longA, align.getAlignment());
+		Assert.assertEquals(1, align.getOffset());
+
+		// Mixed: Shorter allele is almost (but not) contained in the longer one
+		align = new VcfRefAltAlign(longA.substring(1000) + "T", "C" + longA);
+		align.align();
+		Assert.assertEquals(VariantType.MIXED, align.getChangeType());
+		Assert.assertEquals(0, align.getOffset());
+
+		// Shorter allele contained (but not as prefix)
+		align = new VcfRefAltAlign("CT", "GCTA");
+		align.align();
+		Assert.assertEquals(VariantType.DEL, align.getChangeType());
+		Assert.assertEquals(2, align.getOffset());
+	}
+
 }
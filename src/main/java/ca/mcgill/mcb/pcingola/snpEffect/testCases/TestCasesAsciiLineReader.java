@@ -0,0 +1,100 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.fileIterator.AsciiLineReader;
+import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
+
+/**
+ * Byte oriented line reader test case
+ *
+ * @author pcingola
+ */
+public class TestCasesAsciiLineReader extends TestCase {
+
+	boolean verbose = false;
+
+	/**
+	 * Read all lines
+	 */
+	List<String> lines(BufferedReader reader) throws IOException {
+		ArrayList<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null)
+			lines.add(line);
+		reader.close();
+		return lines;
+	}
+
+	/**
+	 * Compare lines read from a file using AsciiLineReader and BufferedReader
+	 */
+	void compare(String fileName, int bufferSize) throws IOException {
+		List<String> linesExp = lines(Gpr.reader(fileName));
+		AsciiLineReader alr = new AsciiLineReader(fileName, bufferSize);
+		if (verbose) System.out.println(alr + "\tbuffer size: " + bufferSize + "\tlines: " + linesExp.size());
+		Assert.assertEquals(linesExp, lines(alr));
+	}
+
+	/**
+	 * Compare lines read from a string using AsciiLineReader and BufferedReader
+	 */
+	void compareStr(String str, int bufferSize) throws IOException {
+		byte bytes[] = str.getBytes();
+		List<String> linesExp = lines(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes))));
+		Assert.assertEquals(linesExp, lines(new AsciiLineReader(new ByteArrayInputStream(bytes), bufferSize)));
+	}
+
+	/**
+	 * Uncompressed (memory mapped) and compressed files, using buffers
+	 * small enough to have lines spanning several buffers
+	 */
+	public void test_01_files() throws IOException {
+		String fileNames[] = { "tests/testLukas.vcf", "tests/test.cancer.vcf", "tests/1kg_head.vcf.gz" };
+		int bufferSizes[] = { 7, 100, 4096, AsciiLineReader.DEFAULT_BUFFER_SIZE };
+
+		for (String fileName : fileNames)
+			for (int bufferSize : bufferSizes)
+				compare(fileName, bufferSize);
+
+		Assert.assertTrue(new AsciiLineReader("tests/testLukas.vcf").isMapped());
+		Assert.assertFalse(new AsciiLineReader("tests/1kg_head.vcf.gz").isMapped());
+	}
+
+	/**
+	 * Corner cases: Empty lines, missing last new line, '\r\n' and non-ASCII characters
+	 */
+	public void test_02_corner_cases() throws IOException {
+		String strs[] = { "", "\n", "\n\n", "a", "a\n", "a\nb", "a\r\nb\r\n", "\r\n", "abc\n\ndef\n", "caf\u00e9\tna\u00efve\n\u00fcber" };
+
+		for (String str : strs)
+			for (int bufferSize = 1; bufferSize < 12; bufferSize++)
+				compareStr(str, bufferSize);
+	}
+
+	/**
+	 * VCF entries read using AsciiLineReader must be the same as the ones read using BufferedReader
+	 */
+	public void test_03_vcf() throws IOException {
+		String fileName = "tests/test.cancer.vcf";
+		VcfFileIterator vcf = new VcfFileIterator(fileName);
+		VcfFileIterator vcfExp = new VcfFileIterator(new BufferedReader(Gpr.reader(fileName)));
+
+		for (VcfEntry ve : vcf) {
+			VcfEntry veExp = vcfExp.next();
+			if (verbose) System.out.println(ve);
+			Assert.assertEquals(veExp.toString(), ve.toString());
+			Assert.assertEquals(veExp.getLineNum(), ve.getLineNum());
+		}
+		Assert.assertFalse(vcfExp.hasNext());
+	}
+}
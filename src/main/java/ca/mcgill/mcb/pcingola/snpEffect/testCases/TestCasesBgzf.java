@@ -0,0 +1,130 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
+import ca.mcgill.mcb.pcingola.util.BgzfInputStream;
+import ca.mcgill.mcb.pcingola.util.BgzfOutputStream;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+import ca.mcgill.mcb.pcingola.util.GprSeq;
+import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
+
+/**
+ * BGZF (block gzip) compression test cases
+ *
+ * @author pcingola
+ */
+public class TestCasesBgzf extends TestCase {
+
+	boolean verbose = false;
+
+	/**
+	 * Compress using BgzfOutputStream
+	 */
+	byte[] compress(byte data[], int numThreads, int chunkSize) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		BgzfOutputStream out = new BgzfOutputStream(baos, numThreads);
+		for (int i = 0; i < data.length; i += chunkSize)
+			out.write(data, i, Math.min(chunkSize, data.length - i));
+		out.close();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Read all bytes from a stream
+	 */
+	byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte buf[] = new byte[1000];
+		int len;
+		while ((len = in.read(buf)) >= 0)
+			baos.write(buf, 0, len);
+		in.close();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Compress and decompress (using both BgzfInputStream and GZIPInputStream)
+	 */
+	void roundTrip(byte data[], int numThreads, int chunkSize) throws IOException {
+		byte cdata[] = compress(data, numThreads, chunkSize);
+		if (verbose) Gpr.debug("Size: " + data.length + "\tCompressed: " + cdata.length + "\tThreads: " + numThreads);
+
+		// Last block must be an EOF marker
+		byte eof[] = Arrays.copyOfRange(cdata, cdata.length - BgzfOutputStream.EOF_MARKER.length, cdata.length);
+		Assert.assertTrue(Arrays.equals(BgzfOutputStream.EOF_MARKER, eof));
+
+		Assert.assertTrue(Arrays.equals(data, readAll(new BgzfInputStream(new ByteArrayInputStream(cdata), numThreads))));
+		Assert.assertTrue(Arrays.equals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(cdata)))));
+	}
+
+	/**
+	 * Compress / decompress text and random (not compressible) data
+	 */
+	public void test_01_round_trip() throws IOException {
+		Random rand = new Random(20140301);
+
+		for (int numThreads = 1; numThreads <= 4; numThreads++) {
+			// Text: Several blocks
+			byte text[] = GprSeq.randSequence(rand, 1000 * 1000).getBytes();
+			roundTrip(text, numThreads, 1);
+			roundTrip(text, numThreads, 12345);
+
+			// Random bytes do not compress
+			byte bytes[] = new byte[3 * BgzfOutputStream.BLOCK_SIZE + 17];
+			rand.nextBytes(bytes);
+			roundTrip(bytes, numThreads, 100000);
+
+			// Empty
+			roundTrip(new byte[0], numThreads, 1);
+		}
+	}
+
+	/**
+	 * Decompress a file created by 'bgzip'
+	 */
+	public void test_02_bgzip_file() throws IOException {
+		String fileName = "tests/test_tabix.vcf.gz";
+		Assert.assertTrue(BgzfInputStream.isBgzf(fileName));
+		Assert.assertFalse(BgzfInputStream.isBgzf("tests/1kg_head.vcf.gz"));
+
+		byte dataExp[] = readAll(new GZIPInputStream(new FileInputStream(fileName)));
+		byte data[] = readAll(new BgzfInputStream(new FileInputStream(fileName)));
+		Assert.assertTrue(Arrays.equals(dataExp, data));
+	}
+
+	/**
+	 * Read a VCF file compressed using BgzfOutputStream
+	 */
+	public void test_03_vcf() throws IOException {
+		String fileName = "tests/test.cancer.vcf";
+		File bgzFile = File.createTempFile("test_bgzf", ".vcf.gz");
+		bgzFile.deleteOnExit();
+
+		byte data[] = readAll(new FileInputStream(fileName));
+		FileOutputStream fos = new FileOutputStream(bgzFile);
+		fos.write(compress(data, 2, data.length));
+		fos.close();
+		Assert.assertTrue(BgzfInputStream.isBgzf(bgzFile.getPath()));
+
+		VcfFileIterator vcf = new VcfFileIterator(bgzFile.getPath());
+		VcfFileIterator vcfExp = new VcfFileIterator(fileName);
+		for (VcfEntry ve : vcf) {
+			VcfEntry veExp = vcfExp.next();
+			if (verbose) System.out.println(ve);
+			Assert.assertEquals(veExp.toString(), ve.toString());
+		}
+		Assert.assertFalse(vcfExp.hasNext());
+	}
+}
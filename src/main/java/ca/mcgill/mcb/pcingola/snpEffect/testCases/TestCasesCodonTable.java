@@ -1,9 +1,14 @@
 package ca.mcgill.mcb.pcingola.snpEffect.testCases;
 
+import java.util.HashMap;
+import java.util.Random;
+
 import junit.framework.Assert;
 import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.binseq.DnaSequence;
 import ca.mcgill.mcb.pcingola.codons.CodonTable;
 import ca.mcgill.mcb.pcingola.codons.CodonTables;
+import ca.mcgill.mcb.pcingola.snpEffect.Config;
 
 /**
  * Codon tables
@@ -44,4 +49,72 @@ public class TestCasesCodonTable extends TestCase {
 		 */
 		Assert.assertEquals(3, codonTable.degenerate("ATT", 2));
 	}
+
+	/**
+	 * Translate random sequences and compare to a (string based) reference translation
+	 */
+	public void test_02_translate() {
+		// Reference: Parse table into a hash
+		HashMap<String, String> codon2aa = new HashMap<String, String>();
+		for (String entry : CodonTables.STANDARD_TABLE.split(",")) {
+			String t[] = entry.trim().split("/");
+			codon2aa.put(t[0], t[1].replace("+", ""));
+		}
+
+		CodonTable codonTable = new CodonTable("test", CodonTables.STANDARD_TABLE);
+		Random rand = new Random(20140401);
+		String bases = "ACGTacgtN";
+
+		for (int i = 0; i < 1000; i++) {
+			// Random sequence (might include 'N' and lower case bases)
+			int len = rand.nextInt(100);
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < len; j++)
+				sb.append(bases.charAt(rand.nextInt(bases.length())));
+			String seq = sb.toString();
+
+			// Reference translation
+			StringBuilder aaExp = new StringBuilder();
+			boolean isStop = false, isStart = false;
+			for (int j = 0; j < len; j += 3) {
+				String codon = seq.substring(j, Math.min(len, j + 3)).toUpperCase();
+				String aa = codon2aa.get(codon);
+				aaExp.append(aa != null ? aa : "?");
+				isStop |= "*".equals(aa);
+				isStart |= codon.equals("ATG");
+			}
+
+			if (debug) System.out.println(seq + "\t" + aaExp);
+			Assert.assertEquals(aaExp.toString(), codonTable.aa(seq));
+			Assert.assertEquals(aaExp.toString(), codonTable.aa(seq.toCharArray(), 0, len));
+			Assert.assertEquals(isStop, codonTable.isStop(seq));
+			Assert.assertEquals(isStart, codonTable.isStart(seq));
+
+			// Translate from DnaSequence (only 'ACGT' bases)
+			String seqAcgt = seq.replace('N', 'A').replace('n', 'a');
+			Assert.assertEquals(codonTable.aa(seqAcgt), codonTable.aa(new DnaSequence(seqAcgt), 0, len));
+		}
+	}
+
+	/**
+	 * Table's string representation should be parsed back to the same table
+	 */
+	public void test_03_toString() {
+		new Config("testCase", Config.DEFAULT_CONFIG_FILE); // Load all codon tables
+
+		for (CodonTable codonTable : CodonTables.getInstance()) {
+			String tableStr = codonTable.toString();
+			tableStr = tableStr.substring(tableStr.indexOf(':') + 1);
+			CodonTable codonTableNew = new CodonTable(codonTable.getName(), tableStr);
+			if (debug) System.out.println(codonTable);
+			Assert.assertEquals(codonTable.toString(), codonTableNew.toString());
+
+			for (int codon = 0; codon < CodonTable.NUM_CODONS; codon++) {
+				Assert.assertEquals(codonTable.aa(codon), codonTableNew.aa(codon));
+				Assert.assertEquals(codonTable.isStop(codon), codonTableNew.isStop(codon));
+				for (int pos = 0; pos < 3; pos++)
+					Assert.assertEquals(codonTable.degenerate(CodonTable.codonStr(codon), pos), codonTableNew.degenerate(CodonTable.codonStr(codon), pos));
+			}
+		}
+	}
 }
@@ -0,0 +1,296 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileHeader.SortOrder;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMFileWriter;
+import net.sf.samtools.SAMFileWriterFactory;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+import ca.mcgill.mcb.pcingola.coverage.CountReadsOnMarkers;
+import ca.mcgill.mcb.pcingola.coverage.CoverageChr;
+import ca.mcgill.mcb.pcingola.coverage.MarkerSweep;
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+import ca.mcgill.mcb.pcingola.snpEffect.Config;
+import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
+import ca.mcgill.mcb.pcingola.snpEffect.factory.SnpEffPredictorFactoryRand;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+
+/**
+ * Test coverage and read counting
+ *
+ * @author pcingola
+ */
+public class TestCasesCoverage extends TestCase {
+
+	Random rand;
+	Config config;
+	SnpEffectPredictor snpEffectPredictor;
+
+	public TestCasesCoverage() {
+		super();
+		rand = new Random(20141018);
+	}
+
+	/**
+	 * Compare markers found by 'MarkerSweep' to 'queryDeep'
+	 */
+	void checkSweep(MarkerSweep markerSweep, Marker read) {
+		HashSet<Marker> expected = new HashSet<Marker>();
+		for (Marker m : snpEffectPredictor.queryDeep(read))
+			expected.add(m);
+
+		ArrayList<Marker> hits = new ArrayList<Marker>(markerSweep.query(read));
+		HashSet<Marker> hitSet = new HashSet<Marker>(hits);
+		Assert.assertEquals("Duplicated markers for read " + read, hitSet.size(), hits.size());
+		Assert.assertEquals("Markers differ for read " + read, expected, hitSet);
+	}
+
+	/**
+	 * Compare against a naive (base by base) coverage
+	 */
+	void checkCoverage(CoverageChr cov, int naive[]) {
+		for (int i = 0; i < naive.length; i++)
+			Assert.assertEquals("Position " + i, naive[i], cov.get(i));
+		Assert.assertTrue(Arrays.equals(naive, cov.getCoverage()));
+
+		for (int i = 0; i < 100; i++) {
+			int start = rand.nextInt(naive.length);
+			int end = start + rand.nextInt(naive.length - start);
+			long sum = 0;
+			for (int j = start; j <= end; j++)
+				sum += naive[j];
+			Assert.assertEquals(sum, cov.coverage(start, end));
+		}
+	}
+
+	/**
+	 * Create a sorted and indexed BAM file having random reads in 'chr'.
+	 * The header has an additional chromosome (with no reads)
+	 */
+	String createBam(Chromosome chr, int num, int maxLen) throws IOException {
+		SAMSequenceDictionary dict = new SAMSequenceDictionary();
+		dict.addSequence(new SAMSequenceRecord(chr.getId(), chr.size()));
+		dict.addSequence(new SAMSequenceRecord("chrNoReads", 1000));
+
+		SAMFileHeader header = new SAMFileHeader();
+		header.setSortOrder(SortOrder.coordinate);
+		header.setSequenceDictionary(dict);
+
+		File bamFile = File.createTempFile("test_count_", ".bam");
+		bamFile.deleteOnExit();
+		new File(bamFile.getPath().replaceAll("\\.bam$", ".bai")).deleteOnExit();
+
+		SAMFileWriter bam = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bamFile);
+		int readNum = 0;
+		for (Marker read : randomReads(chr, num, maxLen)) {
+			int len = read.size();
+			byte bases[] = new byte[len];
+			byte quals[] = new byte[len];
+			Arrays.fill(bases, (byte) 'A');
+			Arrays.fill(quals, (byte) 30);
+
+			SAMRecord samRecord = new SAMRecord(header);
+			samRecord.setReadName("read_" + (readNum++));
+			samRecord.setReferenceName(chr.getId());
+			samRecord.setAlignmentStart(read.getStart() + 1); // SAM coordinates are one-based
+			samRecord.setCigarString(len + "M");
+			samRecord.setReadBases(bases);
+			samRecord.setBaseQualities(quals);
+			samRecord.setMappingQuality(60);
+			bam.addAlignment(samRecord);
+		}
+		bam.close();
+
+		return bamFile.getCanonicalPath();
+	}
+
+	void initSnpEffPredictor() {
+		config = new Config("testCase", Config.DEFAULT_CONFIG_FILE);
+
+		int maxGeneLen = 1000;
+		int maxTranscripts = 3;
+		int maxExons = 5;
+		SnpEffPredictorFactoryRand sepf = new SnpEffPredictorFactoryRand(config, rand, maxGeneLen, maxTranscripts, maxExons);
+
+		snpEffectPredictor = sepf.create();
+		config.setSnpEffectPredictor(snpEffectPredictor);
+		snpEffectPredictor.buildForest();
+	}
+
+	/**
+	 * Random reads, sorted by position
+	 */
+	ArrayList<Marker> randomReads(Chromosome chr, int num, int maxLen) {
+		Markers reads = new Markers();
+		int len = chr.size();
+		for (int i = 0; i < num; i++) {
+			int start = rand.nextInt(len);
+			int end = Math.min(len - 1, start + rand.nextInt(maxLen));
+			reads.add(new Marker(chr, start, end, 1, ""));
+		}
+		return new ArrayList<Marker>(reads.sort());
+	}
+
+	/**
+	 * Compare coverage to a naive implementation
+	 */
+	public void test_01() {
+		int len = 3 * CoverageChr.BLOCK_SIZE + 123;
+		int naive[] = new int[len];
+		CoverageChr cov = new CoverageChr(len);
+
+		for (int iter = 0; iter < 3; iter++) {
+			for (int i = 0; i < 1000; i++) {
+				// Long regions cross block boundaries
+				int start = rand.nextInt(len);
+				int end = start + rand.nextInt(i % 10 == 0 ? 2 * CoverageChr.BLOCK_SIZE : 100);
+				cov.inc(start, end);
+
+				for (int j = start; j <= end && j < len; j++)
+					naive[j]++;
+			}
+
+			// Increment after calculating coverage
+			checkCoverage(cov, naive);
+		}
+	}
+
+	/**
+	 * Blocks without any read have zero coverage (or the coverage of regions spanning the whole block)
+	 */
+	public void test_02() {
+		int len = 5 * CoverageChr.BLOCK_SIZE;
+		CoverageChr cov = new CoverageChr(len);
+		cov.inc(10, 4 * CoverageChr.BLOCK_SIZE);
+		cov.inc(CoverageChr.BLOCK_SIZE - 1, CoverageChr.BLOCK_SIZE);
+
+		Assert.assertEquals(0, cov.get(9));
+		Assert.assertEquals(1, cov.get(10));
+		Assert.assertEquals(2, cov.get(CoverageChr.BLOCK_SIZE - 1));
+		Assert.assertEquals(2, cov.get(CoverageChr.BLOCK_SIZE));
+		Assert.assertEquals(1, cov.get(2 * CoverageChr.BLOCK_SIZE + 17));
+		Assert.assertEquals(0, cov.get(4 * CoverageChr.BLOCK_SIZE + 1));
+		Assert.assertEquals(CoverageChr.BLOCK_SIZE, cov.coverage(2 * CoverageChr.BLOCK_SIZE, 3 * CoverageChr.BLOCK_SIZE - 1));
+
+		// Short values are saturated
+		for (int i = 0; i < Short.MAX_VALUE + 10; i++)
+			cov.inc(20, 30);
+		Assert.assertEquals(Short.MAX_VALUE + 11, cov.get(25));
+		Assert.assertEquals(Short.MAX_VALUE, cov.getCount()[25]);
+		Assert.assertEquals(2, cov.getCount()[CoverageChr.BLOCK_SIZE]);
+	}
+
+	/**
+	 * Sorted reads: Markers found by sweeping must be the same as 'queryDeep'
+	 */
+	public void test_03() {
+		for (int i = 0; i < 10; i++) {
+			initSnpEffPredictor();
+			Chromosome chr = snpEffectPredictor.getGenome().getChromosome("chr1");
+
+			MarkerSweep markerSweep = new MarkerSweep(snpEffectPredictor);
+			for (Marker read : randomReads(chr, 1000, 300))
+				checkSweep(markerSweep, read);
+
+			Assert.assertTrue(markerSweep.isSorted());
+		}
+	}
+
+	/**
+	 * Unsorted reads: Falls back to 'queryDeep'
+	 */
+	public void test_04() {
+		initSnpEffPredictor();
+		Chromosome chr = snpEffectPredictor.getGenome().getChromosome("chr1");
+
+		MarkerSweep markerSweep = new MarkerSweep(snpEffectPredictor);
+		ArrayList<Marker> reads = randomReads(chr, 1000, 300);
+		for (int i = 0; i < reads.size(); i++)
+			checkSweep(markerSweep, reads.get(i % 2 == 0 ? i : reads.size() - i));
+
+		Assert.assertFalse(markerSweep.isSorted());
+	}
+
+	/**
+	 * Counting in parallel (and merging the results) must be the same as counting in one thread
+	 */
+	public void test_05() throws IOException {
+		initSnpEffPredictor();
+		Chromosome chr = snpEffectPredictor.getGenome().getChromosome("chr1");
+
+		// Create BED files with random reads
+		ArrayList<String> bedFiles = new ArrayList<String>();
+		for (int i = 0; i < 3; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (Marker read : randomReads(chr, 1000, 300))
+				sb.append(chr.getId() + "\t" + read.getStart() + "\t" + (read.getEnd() + 1) + "\n");
+
+			File bedFile = File.createTempFile("test_count_" + i + "_", ".bed");
+			bedFile.deleteOnExit();
+			Gpr.toFile(bedFile.getCanonicalPath(), sb);
+			bedFiles.add(bedFile.getCanonicalPath());
+		}
+
+		// Count
+		CountReadsOnMarkers countSingle = new CountReadsOnMarkers(snpEffectPredictor);
+		CountReadsOnMarkers countParallel = new CountReadsOnMarkers(snpEffectPredictor);
+		countParallel.setNumWorkers(3);
+		for (String bedFile : bedFiles) {
+			countSingle.addFile(bedFile);
+			countParallel.addFile(bedFile);
+		}
+		countSingle.count();
+		countParallel.count();
+
+		Assert.assertTrue(countSingle.getReadLengthAvg() > 0);
+		Assert.assertEquals(countSingle.toString(), countParallel.toString());
+		Assert.assertEquals(countSingle.probabilityTable(null), countParallel.probabilityTable(null));
+	}
+
+	/**
+	 * Counting indexed BAM files in parallel (one task per chromosome) must be the same as counting in one thread
+	 */
+	public void test_06() throws IOException {
+		initSnpEffPredictor();
+		Chromosome chr = snpEffectPredictor.getGenome().getChromosome("chr1");
+
+		// Create BAM files with random reads
+		ArrayList<String> bamFiles = new ArrayList<String>();
+		for (int i = 0; i < 3; i++) {
+			String bamFile = createBam(chr, 1000, 300);
+			SAMFileReader sam = new SAMFileReader(new File(bamFile));
+			Assert.assertTrue("Missing index for BAM file " + bamFile, sam.hasIndex());
+			sam.close();
+			bamFiles.add(bamFile);
+		}
+
+		// Count
+		CountReadsOnMarkers countSingle = new CountReadsOnMarkers(snpEffectPredictor);
+		CountReadsOnMarkers countParallel = new CountReadsOnMarkers(snpEffectPredictor);
+		countParallel.setNumWorkers(3);
+		for (String bamFile : bamFiles) {
+			countSingle.addFile(bamFile);
+			countParallel.addFile(bamFile);
+		}
+		countSingle.count();
+		countParallel.count();
+
+		Assert.assertTrue(countSingle.getReadLengthAvg() > 0);
+		Assert.assertEquals(countSingle.toString(), countParallel.toString());
+		Assert.assertEquals(countSingle.probabilityTable(null), countParallel.probabilityTable(null));
+	}
+
+}
@@ -1,7 +1,29 @@
 package ca.mcgill.mcb.pcingola.snpEffect.testCases;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Assert;
 import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.binseq.ReferenceSequence;
 import ca.mcgill.mcb.pcingola.fileIterator.FastaFileIterator;
+import ca.mcgill.mcb.pcingola.fileIterator.FastaReferenceFileIterator;
+import ca.mcgill.mcb.pcingola.fileIterator.IndexedFastaFile;
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Genome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.util.BgzfInputStream;
+import ca.mcgill.mcb.pcingola.util.BgzfOutputStream;
+import ca.mcgill.mcb.pcingola.util.Gpr;
 
 /**
  * Test case for FASTA file parsing
@@ -14,6 +36,75 @@ public class TestCasesFasta extends TestCase {
 		super();
 	}
 
+	/**
+	 * Compare random intervals from an indexed FASTA file to sequences from FastaFileIterator
+	 */
+	void compareIndexed(IndexedFastaFile indexedFasta, ArrayList<String> names, ArrayList<String> seqs, Random rand) {
+		for (int i = 0; i < seqs.size(); i++) {
+			String seq = seqs.get(i);
+			Assert.assertEquals(seq.length(), indexedFasta.getLength(names.get(i)));
+			Assert.assertEquals(seq, indexedFasta.getSequence(names.get(i), 0, seq.length() - 1));
+
+			for (int j = 0; j < 1000; j++) {
+				int start = rand.nextInt(seq.length());
+				int end = start + rand.nextInt(Math.min(500, seq.length() - start));
+				Assert.assertEquals(seq.substring(start, end + 1), indexedFasta.getSequence(names.get(i), start, end));
+			}
+		}
+	}
+
+	/**
+	 * Compare packed sequences (FastaReferenceFileIterator) to sequences from FastaFileIterator
+	 */
+	void compareReferenceIterator(String fastaFileName, Random rand) {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<String> seqs = new ArrayList<String>();
+		FastaFileIterator ffi = new FastaFileIterator(fastaFileName);
+		for (String seq : ffi) {
+			names.add(ffi.getName());
+			seqs.add(seq);
+		}
+
+		int i = 0;
+		for (ReferenceSequence refSeq : new FastaReferenceFileIterator(fastaFileName)) {
+			String seq = seqs.get(i);
+			Assert.assertEquals(names.get(i), refSeq.getName());
+			Assert.assertEquals(seq.length(), refSeq.length());
+			Assert.assertEquals(seq.toUpperCase(), refSeq.getBases(0, seq.length()));
+
+			// Random intervals
+			for (int j = 0; j < 1000; j++) {
+				int start = rand.nextInt(seq.length());
+				int end = start + rand.nextInt(Math.min(200, seq.length() - start) + 1);
+				Assert.assertEquals(seq.substring(start, end).toUpperCase(), refSeq.getBases(start, end - start));
+			}
+			i++;
+		}
+		Assert.assertEquals(seqs.size(), i);
+	}
+
+	/**
+	 * Create a random FASTA file (each sequence has a different line length)
+	 */
+	String createFasta(Random rand, StringBuilder sb) throws IOException {
+		String bases = "ACGTacgtNRY";
+		for (int chr = 1; chr <= 3; chr++) {
+			sb.append(">chr" + chr + " description\n");
+			int len = 50000 + rand.nextInt(100000);
+			int lineLen = 50 + rand.nextInt(30);
+			for (int i = 0; i < len; i++) {
+				sb.append(bases.charAt(rand.nextInt(100) < 95 ? rand.nextInt(4) : rand.nextInt(bases.length())));
+				if ((i % lineLen == lineLen - 1) || (i == len - 1)) sb.append('\n');
+			}
+		}
+
+		File fastaFile = File.createTempFile("test_fasta_", ".fa");
+		fastaFile.deleteOnExit();
+		String fastaFileName = fastaFile.getCanonicalPath();
+		Gpr.toFile(fastaFileName, sb);
+		return fastaFileName;
+	}
+
 	/**
 	 * Fasta file iterator should not crash if first line is empty
 	 */
@@ -24,4 +115,158 @@ public class TestCasesFasta extends TestCase {
 			System.out.println("SeqName: " + ffi.getName() + "\tSize: " + seq.length());
 		}
 	}
+
+	/**
+	 * Packed reference sequences must be the same as FASTA sequences (upper case),
+	 * including 'N' and other IUPAC bases
+	 */
+	public void test_02() throws IOException {
+		Random rand = new Random(20141018);
+		compareReferenceIterator("tests/emptyLine.fa", rand);
+
+		// Create a FASTA file: Lower case, 'N' and IUPAC bases, different line lengths
+		String bases = "ACGTACGTACGTacgtacgtNNNNnRYKMSWU";
+		StringBuilder sb = new StringBuilder();
+		for (int chr = 1; chr <= 3; chr++) {
+			sb.append(">chr" + chr + " description\n");
+			int len = 1000 + rand.nextInt(10000);
+			int lineLen = 50 + rand.nextInt(30);
+			for (int i = 0; i < len; i++) {
+				// Runs of 'N' or lower case bases
+				int r = rand.nextInt(100);
+				int runLen = (r == 0 ? rand.nextInt(300) : 1);
+				char base = bases.charAt(r < 95 ? rand.nextInt(8) : rand.nextInt(bases.length()));
+				for (int j = 0; j < runLen; j++, i++) {
+					sb.append(base);
+					if (i % lineLen == lineLen - 1) sb.append('\n');
+				}
+			}
+			sb.append('\n');
+		}
+
+		File fastaFile = File.createTempFile("test_fasta_", ".fa");
+		fastaFile.deleteOnExit();
+		Gpr.toFile(fastaFile.getCanonicalPath(), sb);
+		compareReferenceIterator(fastaFile.getCanonicalPath(), rand);
+	}
+
+	/**
+	 * Indexed FASTA files (plain and BGZF compressed): Random access must be the same as sequential reading
+	 */
+	public void test_03() throws IOException {
+		Random rand = new Random(20141019);
+		StringBuilder sb = new StringBuilder();
+		String fastaFileName = createFasta(rand, sb);
+
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<String> seqs = new ArrayList<String>();
+		FastaFileIterator ffi = new FastaFileIterator(fastaFileName);
+		for (String seq : ffi) {
+			names.add(ffi.getName());
+			seqs.add(seq);
+		}
+
+		// Index is created and saved
+		File faiFile = new File(fastaFileName + IndexedFastaFile.FAI_EXTENSION);
+		faiFile.deleteOnExit();
+		IndexedFastaFile indexedFasta = new IndexedFastaFile(fastaFileName);
+		Assert.assertFalse(indexedFasta.isBgzf());
+		Assert.assertTrue(faiFile.exists());
+		Assert.assertEquals(indexedFasta.getEntry("1"), indexedFasta.getEntry("chr1"));
+		compareIndexed(indexedFasta, names, seqs, rand);
+
+		// Index is loaded from '.fai' file
+		IndexedFastaFile indexedFastaFai = new IndexedFastaFile(fastaFileName);
+		Assert.assertEquals(indexedFasta.toString(), indexedFastaFai.toString());
+		compareIndexed(indexedFastaFai, names, seqs, rand);
+		indexedFastaFai.close();
+
+		// Access from genome / chromosome (sequences are not loaded)
+		Genome genome = Genome.createFromFaidx("test", faiFile.getCanonicalPath());
+		genome.setIndexedFasta(indexedFasta);
+		Chromosome chr2 = genome.getChromosome("2");
+		Assert.assertNull(chr2.getDnaSequence());
+		Assert.assertEquals(seqs.get(1).substring(100, 201).toUpperCase(), chr2.getSequence(100, 200));
+		Marker marker = new Marker(chr2, 1000, 1100, 1, "");
+		Assert.assertEquals(seqs.get(1).substring(1000, 1101).toUpperCase(), genome.getSequence(marker));
+
+		// BGZF compressed FASTA (no '.gzi' index), using a small cache
+		File bgzfFile = File.createTempFile("test_fasta_", ".fa.gz");
+		bgzfFile.deleteOnExit();
+		String bgzfFileName = bgzfFile.getCanonicalPath();
+		OutputStream out = new BgzfOutputStream(new FileOutputStream(bgzfFileName));
+		out.write(sb.toString().getBytes());
+		out.close();
+		new File(bgzfFileName + IndexedFastaFile.FAI_EXTENSION).deleteOnExit();
+
+		IndexedFastaFile indexedFastaBgzf = new IndexedFastaFile(bgzfFileName);
+		indexedFastaBgzf.setCacheBlocks(2);
+		Assert.assertTrue(indexedFastaBgzf.isBgzf());
+		Assert.assertEquals(indexedFasta.toString(), indexedFastaBgzf.toString());
+		compareIndexed(indexedFastaBgzf, names, seqs, rand);
+		indexedFastaBgzf.close();
+		indexedFasta.close();
+	}
+
+	/**
+	 * BGZF compressed FASTA file having a '.gzi' index (same format as 'bgzip -i')
+	 */
+	public void test_04() throws IOException {
+		Random rand = new Random(20141020);
+		StringBuilder sb = new StringBuilder();
+		String fastaFileName = createFasta(rand, sb);
+
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<String> seqs = new ArrayList<String>();
+		FastaFileIterator ffi = new FastaFileIterator(fastaFileName);
+		for (String seq : ffi) {
+			names.add(ffi.getName());
+			seqs.add(seq);
+		}
+
+		// Compress
+		File bgzfFile = File.createTempFile("test_fasta_", ".fa.gz");
+		bgzfFile.deleteOnExit();
+		String bgzfFileName = bgzfFile.getCanonicalPath();
+		OutputStream out = new BgzfOutputStream(new FileOutputStream(bgzfFileName));
+		out.write(sb.toString().getBytes());
+		out.close();
+		new File(bgzfFileName + IndexedFastaFile.FAI_EXTENSION).deleteOnExit();
+
+		// Create '.gzi' index: Compressed and uncompressed offsets of each block, except the first one
+		ArrayList<Long> offsets = new ArrayList<Long>();
+		ArrayList<Long> starts = new ArrayList<Long>();
+		InputStream in = new BufferedInputStream(new FileInputStream(bgzfFileName));
+		long offset = 0, start = 0;
+		for (byte cblock[]; (cblock = BgzfInputStream.readBlock(in)) != null;) {
+			int size = BgzfInputStream.inflatedSize(cblock);
+			if ((offset > 0) && (size > 0)) {
+				offsets.add(offset);
+				starts.add(start);
+			}
+			offset += cblock.length;
+			start += size;
+		}
+		in.close();
+		Assert.assertTrue("Expected more than one BGZF block", offsets.size() > 1);
+
+		ByteBuffer gzi = ByteBuffer.allocate(8 * (1 + 2 * offsets.size())).order(ByteOrder.LITTLE_ENDIAN);
+		gzi.putLong(offsets.size());
+		for (int i = 0; i < offsets.size(); i++) {
+			gzi.putLong(offsets.get(i));
+			gzi.putLong(starts.get(i));
+		}
+		File gziFile = new File(bgzfFileName + IndexedFastaFile.GZI_EXTENSION);
+		gziFile.deleteOnExit();
+		OutputStream gziOut = new FileOutputStream(gziFile);
+		gziOut.write(gzi.array());
+		gziOut.close();
+
+		// Random access using the '.gzi' index
+		IndexedFastaFile indexedFastaGzi = new IndexedFastaFile(bgzfFileName);
+		indexedFastaGzi.setCacheBlocks(2);
+		Assert.assertTrue(indexedFastaGzi.isBgzf());
+		compareIndexed(indexedFastaGzi, names, seqs, rand);
+		indexedFastaGzi.close();
+	}
 }
@@ -0,0 +1,112 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.geneSets.GeneSet;
+import ca.mcgill.mcb.pcingola.geneSets.GeneSetsRanked;
+import ca.mcgill.mcb.pcingola.geneSets.Result;
+import ca.mcgill.mcb.pcingola.geneSets.algorithm.RankSumPValueGreedyAlgorithm;
+import ca.mcgill.mcb.pcingola.probablility.bootstrap.ReSampleInt;
+
+/**
+ * Gene set analysis: Re-sampling and greedy algorithms (single and multi-threaded)
+ *
+ * @author pcingola
+ */
+public class TestCasesGsa extends TestCase {
+
+	boolean verbose = false;
+	Random rand;
+
+	public TestCasesGsa() {
+		super();
+		rand = new Random(20141018);
+	}
+
+	/**
+	 * Create random gene sets. Some gene sets are enriched in low ranked genes.
+	 */
+	GeneSetsRanked randomGeneSets(int numGenes, int numGeneSets, int maxGeneSetSize) {
+		GeneSetsRanked geneSets = new GeneSetsRanked();
+
+		ArrayList<String> genes = new ArrayList<String>();
+		for (int i = 0; i < numGenes; i++)
+			genes.add("gene_" + i);
+
+		for (int i = 0; i < numGeneSets; i++) {
+			GeneSet geneSet = new GeneSet("geneSet_" + i, "", geneSets);
+			int size = 1 + rand.nextInt(maxGeneSetSize);
+			int range = (i % 10 == 0 ? numGenes / 5 : numGenes); // Enriched in low ranks
+			for (int j = 0; j < size; j++)
+				geneSet.addGene(genes.get(rand.nextInt(range)));
+			geneSets.add(geneSet);
+		}
+
+		// Ranks: Genes are ranked by number. Only a fraction of the genes are ranked
+		int rank = 1;
+		for (int i = 0; i < numGenes; i++)
+			if (geneSets.getGenes().contains("gene_" + i) && (rand.nextInt(10) < 8)) geneSets.add("gene_" + i, rank++);
+
+		return geneSets;
+	}
+
+	ReSampleInt reSample(int scores[], long seed, int numThreads, int iterations) {
+		ReSampleInt reSample = new ReSampleInt(scores, 10);
+		reSample.setSeed(seed);
+		reSample.setNumThreads(numThreads);
+		reSample.resample(iterations);
+		return reSample;
+	}
+
+	Result selectGreedy(GeneSetsRanked geneSets, int numWorkers) {
+		RankSumPValueGreedyAlgorithm algorithm = new RankSumPValueGreedyAlgorithm(geneSets, 5);
+		algorithm.setMaxPValue(1.0);
+		algorithm.setMaxPvalueAdjusted(1.0);
+		algorithm.setNumWorkers(numWorkers);
+		return algorithm.select();
+	}
+
+	/**
+	 * Re-sampling: Same seed must produce the same results, regardless of the number of threads
+	 */
+	public void test_01() {
+		int scores[] = new int[1000];
+		for (int i = 0; i < scores.length; i++)
+			scores[i] = rand.nextInt(100);
+
+		int iterations = 10 * ReSampleInt.CHUNK_SIZE + 17;
+		ReSampleInt reSample1 = reSample(scores, 42, 1, iterations);
+		for (int numThreads = 2; numThreads <= 8; numThreads *= 2) {
+			ReSampleInt reSampleN = reSample(scores, 42, numThreads, iterations);
+			Assert.assertEquals(reSample1.toString(), reSampleN.toString());
+		}
+
+		// All iterations are counted
+		Assert.assertTrue(reSample1.toString().endsWith("\tSum\t:\t" + iterations + "\n"));
+		Assert.assertEquals(1.0, reSample1.cdf(reSample1.max()), 0.0);
+
+		// A different seed produces different results
+		ReSampleInt reSampleOther = reSample(scores, 43, 4, iterations);
+		Assert.assertFalse(reSample1.toString().equals(reSampleOther.toString()));
+	}
+
+	/**
+	 * Greedy algorithm: Same results using one or many threads
+	 */
+	public void test_02() {
+		GeneSetsRanked geneSets = randomGeneSets(2000, 300, 50);
+
+		Result result1 = selectGreedy(geneSets, 1);
+		Result resultN = selectGreedy(geneSets, 4);
+		if (verbose) System.out.println("Single thread: " + result1 + "\nMulti-threaded: " + resultN);
+
+		Assert.assertFalse(result1.getGeneSets().isEmpty());
+		Assert.assertEquals(result1.getGeneSets(), resultN.getGeneSets());
+		Assert.assertEquals(result1.getPvalue(), resultN.getPvalue());
+		Assert.assertEquals(result1.getGeneSetCount(), resultN.getGeneSetCount());
+	}
+
+}
@@ -0,0 +1,435 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.coverage.CountReads;
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Custom;
+import ca.mcgill.mcb.pcingola.interval.Exon;
+import ca.mcgill.mcb.pcingola.interval.Gene;
+import ca.mcgill.mcb.pcingola.interval.Genome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+import ca.mcgill.mcb.pcingola.interval.Motif;
+import ca.mcgill.mcb.pcingola.interval.NextProt;
+import ca.mcgill.mcb.pcingola.interval.Regulation;
+import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.interval.Variant;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalForest;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
+import ca.mcgill.mcb.pcingola.motif.Jaspar;
+import ca.mcgill.mcb.pcingola.serializer.MarkerSerializerMapped;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.EffectType;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffects;
+import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+
+/**
+ * Compact interval tracks (regulation and custom intervals)
+ *
+ * @author pcingola
+ */
+public class TestCasesIntervalTrack extends TestCase {
+
+	boolean verbose = false;
+	Random rand;
+	Genome genome;
+
+	public TestCasesIntervalTrack() {
+		super();
+		rand = new Random(20141020);
+		genome = new Genome("testIntervalTrack");
+		for (int i = 1; i <= 3; i++)
+			genome.add(new Chromosome(genome, 0, 1000000, 1, "" + i));
+	}
+
+	/**
+	 * Query results as sorted strings (including all fields stored in the track)
+	 */
+	ArrayList<String> keys(Markers markers) {
+		ArrayList<String> keys = new ArrayList<String>();
+		for (Marker m : markers) {
+			String key = m.getChromosomeName() + ":" + m.getStart() + "-" + m.getEnd() + ":" + m.getStrand() + ":" + m.getId();
+			if (m instanceof Regulation) key += ":" + ((Regulation) m).getName() + ":" + ((Regulation) m).getCellType();
+			else key += ":" + ((Custom) m).getLabel() + ":" + ((Custom) m).getScore();
+			keys.add(key);
+		}
+		Collections.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * Query predictor, only keep NextProt markers
+	 */
+	ArrayList<NextProt> queryNextProt(SnpEffectPredictor snpEffectPredictor, Marker marker) {
+		ArrayList<NextProt> nps = new ArrayList<NextProt>();
+		for (Marker m : snpEffectPredictor.query(marker))
+			if (m instanceof NextProt) nps.add((NextProt) m);
+		return nps;
+	}
+
+	Custom queryCustom(SnpEffectPredictor snpEffectPredictor, Marker marker) {
+		for (Marker m : snpEffectPredictor.query(marker))
+			if (m instanceof Custom) return (Custom) m;
+		return null;
+	}
+
+	/**
+	 * Random query interval
+	 */
+	Marker randomInterval() {
+		Chromosome chr = genome.getChromosome("" + (1 + rand.nextInt(3)));
+		int start = rand.nextInt(1000000);
+		int end = Math.min(999999, start + rand.nextInt(rand.nextBoolean() ? 10 : 5000));
+		return new Marker(chr, start, end, 1, "");
+	}
+
+	/**
+	 * Random regulation markers
+	 */
+	Markers randomRegulation(int num) {
+		String names[] = { "Enhancer", "Promoter", "CTCF", "H3K4me3", "H3K27ac" };
+		String cellTypes[] = { "HeLa-S3", "K562", "GM12878" };
+
+		Markers markers = new Markers();
+		for (int i = 0; i < num; i++) {
+			Chromosome chr = genome.getChromosome("" + (1 + rand.nextInt(3)));
+			int start = rand.nextInt(990000);
+			int end = start + rand.nextInt(rand.nextInt(10) == 0 ? 10000 : 500);
+			markers.add(new Regulation(chr, start, end, 1, "reg_" + i, names[rand.nextInt(names.length)], cellTypes[rand.nextInt(cellTypes.length)]));
+		}
+		return markers;
+	}
+
+	/**
+	 * Track queries must return the same intervals as an interval forest (in memory and saved to a file)
+	 */
+	public void test_01() throws IOException {
+		Markers markers = randomRegulation(20000);
+
+		IntervalForest forest = new IntervalForest(markers);
+		forest.build();
+
+		IntervalTrack track = new IntervalTrack("HeLa-S3", EffectType.REGULATION);
+		for (Marker m : markers)
+			track.add(m);
+		track.build();
+		Assert.assertEquals(markers.size(), track.size());
+
+		// Save and load
+		File trackFile = File.createTempFile("test_track_", IntervalTrack.FILE_EXTENSION);
+		trackFile.deleteOnExit();
+		track.save(trackFile.getCanonicalPath());
+		Assert.assertTrue(IntervalTrack.isTrack(trackFile.getCanonicalPath()));
+
+		IntervalTrack trackLoaded = IntervalTrack.load(trackFile.getCanonicalPath());
+		trackLoaded.setGenome(genome);
+		Assert.assertEquals("HeLa-S3", trackLoaded.getName());
+		Assert.assertEquals(EffectType.REGULATION, trackLoaded.getType());
+		Assert.assertEquals(markers.size(), trackLoaded.size());
+
+		// Compare queries
+		int hits = 0;
+		for (int i = 0; i < 5000; i++) {
+			Marker interval = randomInterval();
+			ArrayList<String> expected = keys(forest.query(interval));
+
+			Markers results = new Markers();
+			track.query(interval, results);
+			Assert.assertEquals(expected, keys(results));
+
+			Markers resultsLoaded = new Markers();
+			trackLoaded.query(interval, resultsLoaded);
+			Assert.assertEquals(expected, keys(resultsLoaded));
+
+			// Markers from loaded tracks use genome's chromosomes
+			for (Marker m : resultsLoaded)
+				Assert.assertSame(interval.getChromosome(), m.getParent());
+
+			hits += expected.size();
+		}
+		if (verbose) System.out.println("Hits: " + hits);
+		Assert.assertTrue(hits > 0);
+
+		// Iterate over all markers
+		int count = 0;
+		for (Marker m : trackLoaded) {
+			Assert.assertTrue(m instanceof Regulation);
+			count++;
+		}
+		Assert.assertEquals(markers.size(), count);
+	}
+
+	/**
+	 * Tracks are queried when calculating variant effects
+	 */
+	public void test_02() {
+		Chromosome chr1 = genome.getChromosome("1");
+		IntervalTrack track = new IntervalTrack("custom.bed", EffectType.CUSTOM);
+		Custom custom = new Custom(chr1, 1000, 2000, 1, "interval_1", "my_intervals");
+		custom.setScore(3.5);
+		track.add(custom);
+		track.add(new Custom(chr1, 1500, 1600, 1, "interval_2", "my_intervals"));
+
+		SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(genome);
+		snpEffectPredictor.add(track);
+		snpEffectPredictor.buildForest();
+
+		// Variant hitting both intervals
+		Variant variant = new Variant(chr1, 1550, "A", "T");
+		ChangeEffects changeEffects = snpEffectPredictor.seqChangeEffect(variant);
+		ArrayList<String> ids = new ArrayList<String>();
+		for (ChangeEffect changeEffect : changeEffects) {
+			Assert.assertEquals(EffectType.CUSTOM, changeEffect.getEffectType());
+			Custom hit = (Custom) changeEffect.getMarker();
+			Assert.assertEquals("my_intervals", hit.getLabel());
+			if (hit.getId().equals("interval_1")) Assert.assertEquals(3.5, hit.getScore());
+			ids.add(hit.getId());
+		}
+		Collections.sort(ids);
+		Assert.assertEquals("[interval_1, interval_2]", ids.toString());
+		Assert.assertEquals(2, snpEffectPredictor.query(variant).size() - 1); // Chromosome is also hit
+
+		// Variant not hitting any interval
+		variant = new Variant(chr1, 5000, "A", "T");
+		changeEffects = snpEffectPredictor.seqChangeEffect(variant);
+		Assert.assertEquals(EffectType.INTERGENIC, changeEffects.get().getEffectType());
+
+		// Adding a track with the same name replaces it
+		snpEffectPredictor.add(new IntervalTrack("custom.bed", EffectType.CUSTOM));
+		Assert.assertEquals(1, snpEffectPredictor.getIntervalTracks().size());
+		Assert.assertEquals(1, snpEffectPredictor.query(new Variant(chr1, 1550, "A", "T")).size());
+	}
+
+	/**
+	 * NextProt annotations are split by exon when the track is built, and linked to transcripts when they are hit
+	 */
+	public void test_03() throws IOException {
+		Chromosome chr1 = genome.getChromosome("1");
+		Gene gene = new Gene(chr1, 1000, 4999, 1, "gene1", "gene1", "protein_coding");
+		Transcript tr = new Transcript(gene, 1000, 4999, 1, "tr1");
+		gene.add(tr);
+		Exon ex1 = new Exon(tr, 1000, 1999, 1, "exon1", 1);
+		Exon ex2 = new Exon(tr, 3000, 4999, 1, "exon2", 2);
+		tr.add(ex1);
+		tr.add(ex2);
+
+		// Annotations: One spanning both exons, one in the intron
+		NextProt npExons = new NextProt(tr, 1500, 3500, "np_exons");
+		npExons.setHighlyConservedAaSequence(true);
+		NextProt npIntron = new NextProt(tr, 2200, 2300, "np_intron");
+
+		IntervalTrack track = new IntervalTrack("nextProt", EffectType.NEXT_PROT);
+		Assert.assertEquals(2, track.add(npExons, tr));
+		Assert.assertEquals(1, track.add(npIntron, tr));
+		track.build();
+		Assert.assertEquals(3, track.size());
+
+		File trackFile = File.createTempFile("test_nextProt_", IntervalTrack.FILE_EXTENSION);
+		trackFile.deleteOnExit();
+		track.save(trackFile.getCanonicalPath());
+
+		SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(genome);
+		snpEffectPredictor.add(gene);
+		snpEffectPredictor.add(IntervalTrack.load(trackFile.getCanonicalPath()));
+		snpEffectPredictor.buildForest();
+
+		// Variant in first exon: Annotation spanning both exons (one marker per exon, same coordinates)
+		ArrayList<NextProt> nps = queryNextProt(snpEffectPredictor, new Variant(chr1, 1600, "A", "T"));
+		Assert.assertEquals(2, nps.size());
+		HashSet<Object> parents = new HashSet<Object>();
+		for (NextProt np : nps) {
+			Assert.assertEquals("np_exons", np.getId());
+			Assert.assertEquals("tr1", np.getTranscriptId());
+			Assert.assertEquals(1500, np.getStart());
+			Assert.assertEquals(3500, np.getEnd());
+			Assert.assertTrue(np.isHighlyConservedAaSequence());
+			parents.add(np.getParent());
+		}
+		Assert.assertTrue(parents.contains(ex1));
+		Assert.assertTrue(parents.contains(ex2));
+
+		// Variant in intron: Annotation spanning both exons and intron annotation (linked to transcript)
+		ArrayList<String> keys = new ArrayList<String>();
+		for (NextProt n : queryNextProt(snpEffectPredictor, new Variant(chr1, 2250, "A", "T"))) {
+			keys.add(n.getId() + ":" + n.getParent().getId() + ":" + n.isHighlyConservedAaSequence());
+			Assert.assertSame(n.getParent() instanceof Exon ? tr : gene, n.getParent().getParent());
+		}
+		Collections.sort(keys);
+		Assert.assertEquals("[np_exons:exon1:true, np_exons:exon2:true, np_intron:tr1:false]", keys.toString());
+
+		// Transcripts filtered out: NextProt annotations are discarded
+		snpEffectPredictor.retainAllTranscripts(new HashSet<String>());
+		snpEffectPredictor.buildForest();
+		Assert.assertEquals(0, queryNextProt(snpEffectPredictor, new Variant(chr1, 2250, "A", "T")).size());
+	}
+
+	/**
+	 * Motifs are linked to their PWMs when they are hit
+	 */
+	public void test_04() throws IOException {
+		Chromosome chr2 = genome.getChromosome("2");
+		IntervalTrack track = new IntervalTrack("motif", EffectType.MOTIF);
+		track.add(new Motif(chr2, 100, 109, -1, "motif_1", "SEP4", "MA0001.1"));
+		track.add(new Motif(chr2, 105, 115, 1, "motif_2", "UNKNOWN", "MA9999.9"));
+
+		File trackFile = File.createTempFile("test_motif_", IntervalTrack.FILE_EXTENSION);
+		trackFile.deleteOnExit();
+		track.save(trackFile.getCanonicalPath());
+		IntervalTrack trackLoaded = IntervalTrack.load(trackFile.getCanonicalPath());
+		trackLoaded.setGenome(genome);
+		Variant variant = new Variant(chr2, 106, "A", "T");
+
+		// No PWMs: All motifs are returned
+		Markers results = new Markers();
+		trackLoaded.query(variant, results);
+		Assert.assertEquals(2, results.size());
+
+		// Motifs without PWM are discarded
+		Jaspar jaspar = new Jaspar();
+		jaspar.load("tests/jaspar_2013.txt.gz");
+		trackLoaded.setJaspar(jaspar);
+
+		results = new Markers();
+		trackLoaded.query(variant, results);
+		Assert.assertEquals(1, results.size());
+		Motif motif = (Motif) results.iterator().next();
+		Assert.assertEquals("motif_1", motif.getId());
+		Assert.assertEquals("SEP4", motif.getPwmName());
+		Assert.assertEquals("MA0001.1", motif.getPwmId());
+		Assert.assertEquals(-1, motif.getStrand());
+		Assert.assertSame(jaspar.getPwm("MA0001.1"), motif.getPwm());
+		Assert.assertSame(chr2, motif.getParent());
+	}
+
+	/**
+	 * Counting unsorted reads over a custom track: Each interval must be counted as one marker
+	 * (i.e. queries must return the same marker object every time the interval is hit)
+	 */
+	public void test_05() throws IOException {
+		Chromosome chr1 = genome.getChromosome("1");
+		IntervalTrack track = new IntervalTrack("custom.bed", EffectType.CUSTOM);
+		int numIntervals = 20;
+		for (int i = 0; i < numIntervals; i++)
+			track.add(new Custom(chr1, 10000 * i, 10000 * i + 999, 1, "interval_" + i, "my_intervals"));
+
+		SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(genome);
+		snpEffectPredictor.add(track);
+		snpEffectPredictor.buildForest();
+
+		// Markers are not kept by default
+		Variant variant = new Variant(chr1, 500, "A", "T");
+		Assert.assertNotSame(queryCustom(snpEffectPredictor, variant), queryCustom(snpEffectPredictor, variant));
+
+		// Random (unsorted) reads
+		int expected[] = new int[numIntervals];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			int start = rand.nextInt(10000 * numIntervals);
+			int end = start + rand.nextInt(100);
+			sb.append(chr1.getId() + "\t" + start + "\t" + (end + 1) + "\n");
+
+			for (int j = 0; j < numIntervals; j++)
+				if ((start <= 10000 * j + 999) && (10000 * j <= end)) expected[j]++;
+		}
+
+		File bedFile = File.createTempFile("test_count_", ".bed");
+		bedFile.deleteOnExit();
+		Gpr.toFile(bedFile.getCanonicalPath(), sb);
+
+		// Count
+		CountReads countReads = new CountReads(bedFile.getCanonicalPath(), snpEffectPredictor).count();
+		Assert.assertEquals(0, countReads.getCountExceptions());
+
+		HashMap<String, Long> countById = new HashMap<String, Long>();
+		for (Marker m : countReads.getCountReads().keySet()) {
+			if (!(m instanceof Custom)) continue;
+			Assert.assertFalse("Interval counted as more than one marker: " + m, countById.containsKey(m.getId()));
+			countById.put(m.getId(), countReads.getCountReads().get(m));
+		}
+
+		for (int i = 0; i < numIntervals; i++) {
+			Long count = countById.get("interval_" + i);
+			Assert.assertEquals("Interval " + i, expected[i], count != null ? count.longValue() : 0);
+		}
+
+		// Counting keeps markers
+		Assert.assertSame(queryCustom(snpEffectPredictor, variant), queryCustom(snpEffectPredictor, variant));
+	}
+
+	/**
+	 * Interval tracks are not serialized with the predictor (loaded from their own files)
+	 */
+	public void test_06() throws Exception {
+		SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(genome);
+		snpEffectPredictor.add(new IntervalTrack("custom.bed", EffectType.CUSTOM));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(snpEffectPredictor);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		SnpEffectPredictor sep = (SnpEffectPredictor) in.readObject();
+		in.close();
+
+		Assert.assertNotNull(sep.getIntervalTracks());
+		Assert.assertEquals(0, sep.getIntervalTracks().size());
+		Assert.assertNotNull(sep.getAnnotationOptions());
+		sep.add(new IntervalTrack("custom.bed", EffectType.CUSTOM));
+		Assert.assertEquals(1, sep.getIntervalTracks().size());
+	}
+
+	/**
+	 * Genes loaded on demand: NextProt annotations are linked to the chromosome's
+	 * transcripts, even if the chromosome was evicted before the track is queried
+	 */
+	public void test_07() throws IOException {
+		Chromosome chr1 = genome.getChromosome("1");
+		Gene gene = new Gene(chr1, 1000, 4999, 1, "gene1", "gene1", "protein_coding");
+		Transcript tr = new Transcript(gene, 1000, 4999, 1, "tr1");
+		gene.add(tr);
+		tr.add(new Exon(tr, 1000, 4999, 1, "exon1", 1));
+
+		SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(genome);
+		snpEffectPredictor.add(gene);
+		snpEffectPredictor.add(new Gene(genome.getChromosome("2"), 1000, 4999, 1, "gene2", "gene2", "protein_coding"));
+		File binFile = File.createTempFile("test_nextProt_", ".mbin");
+		binFile.deleteOnExit();
+		new MarkerSerializerMapped().save(binFile.getCanonicalPath(), snpEffectPredictor);
+
+		IntervalTrack track = new IntervalTrack("nextProt", EffectType.NEXT_PROT);
+		track.add(new NextProt(tr, 1500, 1600, "np1"), tr);
+
+		SnpEffectPredictor sepLazy = SnpEffectPredictor.loadLazy(binFile.getCanonicalPath());
+		sepLazy.setMaxChromosomesLoaded(1);
+		sepLazy.add(track);
+		sepLazy.buildForest();
+
+		Variant variant = new Variant(sepLazy.getGenome().getChromosome("1"), 1550, "A", "T");
+		ArrayList<NextProt> nps = queryNextProt(sepLazy, variant);
+		Assert.assertEquals(1, nps.size());
+		Assert.assertEquals("tr1", nps.get(0).getTranscriptId());
+		Assert.assertEquals(0, sepLazy.getGenome().getGenes().size()); // Genes loaded on demand are not in genome's genes
+
+		// Chromosome evicted before querying the track (e.g. by another thread)
+		sepLazy.loadChromosome("2");
+		Markers results = new Markers();
+		track.query(variant, results);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals("np1", results.iterator().next().getId());
+	}
+}
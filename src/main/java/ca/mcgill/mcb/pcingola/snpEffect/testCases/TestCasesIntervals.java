@@ -459,4 +459,47 @@ public class TestCasesIntervals extends TestCase {
 		Assert.assertTrue(chrA.compareTo(chrB) < 0);
 	}
 
+	/**
+	 * Intersect and stab using array based interval trees
+	 * Compare to brute force and to 'classic' interval trees
+	 */
+	public void test_11_treeArray() {
+		initRand();
+
+		for (int numInts = 10; numInts < 10000; numInts *= 2) {
+			Markers intervals = randomIntervals(numInts, 10 * maxLen, 20, 2);
+
+			IntervalForest forest = new IntervalForest(intervals);
+			IntervalForest forestArray = new IntervalForest(intervals, true);
+			forest.build();
+			forestArray.build();
+
+			// Query
+			Markers intervals2 = randomIntervals(numInts, 10 * maxLen, 20, 2);
+			Markers buffer = new Markers(); // Re-used by all queries
+			for (Marker i : intervals2) {
+				Markers intersect = forestArray.query(i);
+
+				// Query using a consumer
+				buffer.clear();
+				forestArray.query(i, buffer);
+				Assert.assertTrue(buffer.equals(intersect));
+
+				Markers intersectBf = intersects(intervals, i);
+				Markers intersectTree = forest.query(i);
+
+				if (!intersect.equals(intersectBf) || !intersect.equals(intersectTree)) {
+					String errMsg = "Interval: " + i + "\n\tIntersects  : " + intersect + "\n\tIntersectsBf: " + intersectBf;
+					System.err.println(errMsg);
+					throw new RuntimeException(errMsg);
+				}
+
+				// Stab
+				Markers stab = forestArray.stab(i);
+				Markers stabBf = intersects(intervals, new Marker(i.getParent(), i.getStart(), i.getStart(), 1, ""));
+				Assert.assertTrue(stab.equals(stabBf));
+			}
+		}
+	}
+
 }
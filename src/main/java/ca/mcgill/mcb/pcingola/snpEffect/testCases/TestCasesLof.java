@@ -327,9 +327,9 @@ public class TestCasesLof extends TestCase {
 		String genomeVer = "testHg3766Chr1";
 		Gpr.debug("Loading database '" + genomeVer + "'");
 		config = new Config(genomeVer, Config.DEFAULT_CONFIG_FILE);
+		config.setTreatAllAsProteinCoding(true); // For historical reasons...
 		config.loadSnpEffectPredictor();
 		Gpr.debug("Building forest");
-		config.setTreatAllAsProteinCoding(true); // For historical reasons...
 		config.getSnpEffectPredictor().buildForest();
 
 		// For each gene, transcript, check that NMD works
@@ -0,0 +1,119 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.parallel.ParallelPipeline;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+
+/**
+ * Test cases for multi-threaded (ordered) pipeline
+ *
+ * @author pcingola
+ */
+public class TestCasesParallelPipeline extends TestCase {
+
+	/**
+	 * A pipeline that squares numbers (and optionally waits a few milliseconds per item)
+	 */
+	class SquarePipeline extends ParallelPipeline<Integer, Long> {
+
+		List<String> out = new ArrayList<String>();
+		int sleepEvery;
+		int failOn = -1;
+
+		public SquarePipeline(int numWorkers, int sleepEvery) {
+			super(numWorkers);
+			this.sleepEvery = sleepEvery;
+		}
+
+		@Override
+		protected Long calculate(Integer in, int workerNum) {
+			if (in == failOn) throw new RuntimeException("Fail on " + in);
+			if ((sleepEvery > 0) && (in % sleepEvery == 0)) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return ((long) in) * in;
+		}
+
+		@Override
+		protected void output(Integer in, Long result) {
+			out.add(in + "\t" + result);
+		}
+	}
+
+	boolean verbose = false;
+
+	public TestCasesParallelPipeline() {
+		super();
+	}
+
+	List<Integer> numbers(int n) {
+		Random rand = new Random(20140105);
+		List<Integer> numbers = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++)
+			numbers.add(rand.nextInt(1000 * 1000));
+		return numbers;
+	}
+
+	/**
+	 * Results are output in the same order as the input, regardless of the number of workers
+	 */
+	public void test_01_order() {
+		List<Integer> numbers = numbers(100 * 1000);
+
+		List<String> expected = new ArrayList<String>();
+		for (Integer n : numbers)
+			expected.add(n + "\t" + (((long) n) * n));
+
+		for (int numWorkers = 1; numWorkers <= 8; numWorkers *= 2) {
+			SquarePipeline sp = new SquarePipeline(numWorkers, 10 * 1000);
+			sp.run(numbers);
+			if (verbose) Gpr.debug("Workers: " + numWorkers + "\tBatch size: " + sp.getBatchSize());
+			Assert.assertEquals(expected, sp.out);
+		}
+	}
+
+	/**
+	 * Empty input
+	 */
+	public void test_02_empty() {
+		SquarePipeline sp = new SquarePipeline(4, 0);
+		sp.run(new ArrayList<Integer>());
+		Assert.assertTrue(sp.out.isEmpty());
+	}
+
+	/**
+	 * Errors in workers are propagated to the caller
+	 */
+	public void test_03_error() {
+		List<Integer> numbers = numbers(10 * 1000);
+		SquarePipeline sp = new SquarePipeline(4, 0);
+		sp.failOn = numbers.get(5000);
+
+		try {
+			sp.run(numbers);
+			fail("Exception not thrown");
+		} catch (RuntimeException e) {
+			if (verbose) Gpr.debug("Exception: " + e);
+			Assert.assertTrue(sp.out.size() < 5000);
+		}
+	}
+
+	/**
+	 * Batch size grows when items are cheap to calculate
+	 */
+	public void test_04_batchSize() {
+		SquarePipeline sp = new SquarePipeline(2, 0);
+		sp.run(numbers(1000 * 1000));
+		if (verbose) Gpr.debug("Batch size: " + sp.getBatchSize());
+		Assert.assertTrue(sp.getBatchSize() > ParallelPipeline.INITIAL_BATCH_SIZE);
+	}
+}
@@ -0,0 +1,118 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apfloat.Apfloat;
+
+import ca.mcgill.mcb.pcingola.probablility.RankSumNoReplacementLogCdf;
+
+/**
+ * Rank sum distribution (double precision, log-space)
+ *
+ * @author pcingola
+ */
+public class TestCasesRankSum extends TestCase {
+
+	boolean verbose = false;
+
+	public TestCasesRankSum() {
+		super();
+	}
+
+	/**
+	 * Count all subsets of size 'nt' from {1 .. n}, by rank sum
+	 */
+	long[] bruteForce(int n, int nt) {
+		long count[] = new long[n * (n + 1) / 2 + 1];
+		for (int bits = 0; bits < (1 << n); bits++) {
+			if (Integer.bitCount(bits) != nt) continue;
+
+			int sum = 0;
+			for (int i = 0; i < n; i++)
+				if ((bits & (1 << i)) != 0) sum += i + 1;
+			count[sum]++;
+		}
+		return count;
+	}
+
+	/**
+	 * Compare exact calculation against all possible subsets
+	 */
+	public void test_01() {
+		RankSumNoReplacementLogCdf rankSum = new RankSumNoReplacementLogCdf();
+
+		for (int n = 1; n <= 14; n++)
+			for (int nt = 1; nt <= n; nt++) {
+				long count[] = bruteForce(n, nt);
+				long total = 0;
+				for (long c : count)
+					total += c;
+
+				long cum = 0;
+				for (int r = 0; r < count.length; r++) {
+					cum += count[r];
+					double expected = ((double) cum) / total;
+					double cdf = rankSum.cdfDouble(n, nt, r);
+					if (verbose) System.out.println("n: " + n + "\tnt: " + nt + "\tr: " + r + "\tcdf: " + cdf + "\texpected: " + expected);
+					Assert.assertEquals(expected, cdf, 1e-12);
+				}
+			}
+	}
+
+	/**
+	 * Normal approximation should be close to the exact distribution (for large 'n')
+	 */
+	public void test_02() {
+		RankSumNoReplacementLogCdf exact = new RankSumNoReplacementLogCdf(Integer.MAX_VALUE);
+		RankSumNoReplacementLogCdf normal = new RankSumNoReplacementLogCdf(0);
+
+		int n = 300, nt = 40;
+		Assert.assertTrue(exact.isExact(n, nt));
+		Assert.assertFalse(normal.isExact(n, nt));
+
+		long mean = nt * (n + 1) / 2;
+		for (long r = mean - 1000; r <= mean + 1000; r += 50) {
+			double pExact = exact.cdfDouble(n, nt, r);
+			double pNormal = normal.cdfDouble(n, nt, r);
+			if (verbose) System.out.println("r: " + r + "\texact: " + pExact + "\tnormal: " + pNormal);
+			Assert.assertEquals(pExact, pNormal, 0.005);
+		}
+	}
+
+	/**
+	 * Very small p-values must not underflow to zero
+	 */
+	public void test_03() {
+		RankSumNoReplacementLogCdf rankSum = new RankSumNoReplacementLogCdf();
+
+		// Normal approximation
+		int n = 20000, nt = 500;
+		long minR = nt * (nt + 1) / 2;
+		double logCdf = rankSum.logCdf(n, nt, minR + 1000);
+		Assert.assertFalse(rankSum.isExact(n, nt));
+		Assert.assertTrue(logCdf < Math.log(Double.MIN_NORMAL));
+		Assert.assertFalse(Double.isInfinite(logCdf));
+
+		Apfloat cdf = rankSum.cdf(n, nt, minR + 1000);
+		Assert.assertTrue(cdf.compareTo(Apfloat.ZERO) > 0);
+
+		// Smaller p-values for smaller rank sums
+		Assert.assertTrue(rankSum.logCdf(n, nt, minR + 100) < logCdf);
+
+		// Exact distribution: P(rankSum = minRankSum) = 1 / binomial(n, nt)
+		n = 150;
+		nt = 60;
+		minR = nt * (nt + 1) / 2;
+		double logBinom = 0;
+		for (int i = 0; i < nt; i++)
+			logBinom += Math.log(n - i) - Math.log(i + 1);
+		Assert.assertTrue(rankSum.isExact(n, nt));
+		Assert.assertEquals(-logBinom, rankSum.logCdf(n, nt, minR), 1e-6);
+
+		// Limits
+		Assert.assertEquals(Double.NEGATIVE_INFINITY, rankSum.logCdf(n, nt, minR - 1));
+		Assert.assertEquals(0.0, rankSum.logCdf(n, nt, nt * n));
+	}
+
+}
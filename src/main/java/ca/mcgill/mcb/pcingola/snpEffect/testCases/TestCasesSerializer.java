@@ -0,0 +1,184 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Exon;
+import ca.mcgill.mcb.pcingola.interval.Gene;
+import ca.mcgill.mcb.pcingola.interval.Genome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Markers;
+import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.interval.Variant;
+import ca.mcgill.mcb.pcingola.serializer.MarkerSerializer;
+import ca.mcgill.mcb.pcingola.serializer.MarkerSerializerMapped;
+import ca.mcgill.mcb.pcingola.snpEffect.Config;
+import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
+import ca.mcgill.mcb.pcingola.snpEffect.factory.SnpEffPredictorFactoryRand;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+import ca.mcgill.mcb.pcingola.util.GprSeq;
+
+/**
+ * Test cases for database serialization (text and binary formats)
+ *
+ * @author pcingola
+ */
+public class TestCasesSerializer extends TestCase {
+
+	boolean verbose = false;
+
+	public TestCasesSerializer() {
+		super();
+	}
+
+	/**
+	 * Create a random predictor
+	 */
+	SnpEffectPredictor createPredictor(Random rand) {
+		Config config = new Config("testCase", Config.DEFAULT_CONFIG_FILE);
+		SnpEffPredictorFactoryRand sepf = new SnpEffPredictorFactoryRand(config, rand, 1000, 3, 5);
+		return sepf.create();
+	}
+
+	/**
+	 * Create a random predictor having several chromosomes and genes
+	 */
+	SnpEffectPredictor createPredictorChromosomes(Random rand, int numChromos, int numGenes) {
+		new Config("testCase", Config.DEFAULT_CONFIG_FILE);
+		Genome genome = new Genome("testCase");
+		SnpEffectPredictor sep = new SnpEffectPredictor(genome);
+
+		for (int c = 1; c <= numChromos; c++) {
+			Chromosome chr = new Chromosome(genome, 0, 100000, 1, "chr" + c);
+			genome.add(chr);
+			String chrSeq = GprSeq.randSequence(rand, chr.size());
+
+			for (int g = 0; g < numGenes; g++) {
+				int start = rand.nextInt(chr.size() - 10000);
+				int end = start + 1000 + rand.nextInt(5000);
+				int strand = rand.nextBoolean() ? 1 : -1;
+				String id = "gene_" + c + "_" + g;
+				Gene gene = new Gene(chr, start, end, strand, id, id, "protein_coding");
+
+				Transcript tr = new Transcript(gene, start, end, strand, "tr_" + c + "_" + g);
+				tr.setProteinCoding(true);
+				gene.add(tr);
+
+				int numEx = 1 + rand.nextInt(5);
+				int size = tr.size() / numEx;
+				for (int ne = 0; ne < numEx; ne++) {
+					int exStart = start + size * ne + rand.nextInt(size / 2);
+					int exEnd = exStart + rand.nextInt(size / 2);
+					Exon exon = new Exon(tr, exStart, exEnd, strand, "exon_" + c + "_" + g + "_" + ne, ne + 1);
+					String seq = chrSeq.substring(exStart, exEnd + 1);
+					exon.setSequence(exon.isStrandMinus() ? GprSeq.reverseWc(seq) : seq);
+					tr.add(exon);
+				}
+
+				tr.adjust();
+				tr.rankExons();
+				sep.add(gene);
+			}
+		}
+
+		return sep;
+	}
+
+	/**
+	 * A string representation of all markers (and their parents), sorted
+	 */
+	String markers2str(Markers markers) {
+		ArrayList<String> strs = new ArrayList<String>();
+		for (Marker m : markers) {
+			Marker parent = m.getParent();
+			strs.add(m.getClass().getSimpleName() + "\t" + m.getId() + "\t" + m.toStr() + "\t" + m.isStrandPlus() //
+					+ "\tparent:" + (parent != null ? parent.getClass().getSimpleName() + "\t" + parent.getId() + "\t" + parent.toStr() : "null"));
+		}
+		Collections.sort(strs);
+
+		StringBuilder sb = new StringBuilder();
+		for (String s : strs)
+			sb.append(s + "\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Save a database in text and binary formats, load both and compare
+	 */
+	public void test_01_mapped() {
+		Random rand = new Random(20140101);
+
+		for (int i = 0; i < 10; i++) {
+			SnpEffectPredictor sep = createPredictor(rand);
+
+			try {
+				File txtFile = File.createTempFile("snpEffectPredictor", ".bin");
+				File binFile = File.createTempFile("snpEffectPredictor", ".mbin");
+				txtFile.deleteOnExit();
+				binFile.deleteOnExit();
+
+				new MarkerSerializer().save(txtFile.getPath(), sep);
+				new MarkerSerializerMapped().save(binFile.getPath(), sep);
+
+				Assert.assertFalse(MarkerSerializerMapped.isMapped(txtFile.getPath()));
+				Assert.assertTrue(MarkerSerializerMapped.isMapped(binFile.getPath()));
+
+				String txt = markers2str(new MarkerSerializer().load(txtFile.getPath()));
+				String bin = markers2str(new MarkerSerializerMapped().load(binFile.getPath()));
+				if (verbose) Gpr.debug("Iteration " + i + "\tMarkers: " + txt.split("\n").length + "\tText file size: " + txtFile.length() + "\tBinary file size: " + binFile.length());
+
+				Assert.assertEquals(txt, bin);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Load a database lazily (one chromosome at a time) and compare
+	 * effects to the ones obtained using the whole database
+	 */
+	public void test_02_lazy() {
+		Random rand = new Random(20140102);
+		SnpEffectPredictor sep = createPredictorChromosomes(rand, 5, 20);
+
+		try {
+			File binFile = File.createTempFile("snpEffectPredictor", ".mbin");
+			binFile.deleteOnExit();
+			new MarkerSerializerMapped().save(binFile.getPath(), sep);
+			sep.buildForest();
+
+			for (int maxChromosomesLoaded = 0; maxChromosomesLoaded <= 2; maxChromosomesLoaded++) {
+				SnpEffectPredictor sepLazy = SnpEffectPredictor.loadLazy(binFile.getPath());
+				sepLazy.setMaxChromosomesLoaded(maxChromosomesLoaded);
+				sepLazy.buildForest();
+				Assert.assertTrue(sepLazy.isLazy());
+				Assert.assertEquals(0, sepLazy.getGenome().getGenes().size()); // Nothing loaded yet
+				Assert.assertTrue(sepLazy.getGenome().hasCodingInfo());
+
+				for (int i = 0; i < 2000; i++) {
+					String chrName = "chr" + (1 + rand.nextInt(5));
+					Chromosome chr = sep.getGenome().getChromosome(chrName);
+					Chromosome chrLazy = sepLazy.getGenome().getChromosome(chrName);
+					int pos = rand.nextInt(chr.size());
+					String alt = "" + GprSeq.randSequence(rand, 1);
+
+					String eff = sep.seqChangeEffect(new Variant(chr, pos, "", alt, "")).toString();
+					String effLazy = sepLazy.seqChangeEffect(new Variant(chrLazy, pos, "", alt, "")).toString();
+					if (verbose) Gpr.debug(chrName + ":" + pos + "\t" + effLazy);
+					Assert.assertEquals(eff, effLazy);
+
+					Assert.assertEquals(0, sepLazy.getGenome().getGenes().size()); // Genes loaded on demand are not shared with other threads
+					if (maxChromosomesLoaded > 0) Assert.assertTrue(sepLazy.getNumberOfGenesLoaded() <= maxChromosomesLoaded * 20);
+				}
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
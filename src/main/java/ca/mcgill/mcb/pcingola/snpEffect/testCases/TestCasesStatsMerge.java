@@ -0,0 +1,166 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Genome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Variant;
+import ca.mcgill.mcb.pcingola.stats.CountByKey;
+import ca.mcgill.mcb.pcingola.stats.CountByType;
+import ca.mcgill.mcb.pcingola.stats.CoverageByType;
+import ca.mcgill.mcb.pcingola.stats.IntStats;
+import ca.mcgill.mcb.pcingola.stats.PosStats;
+import ca.mcgill.mcb.pcingola.stats.VariantStats;
+import ca.mcgill.mcb.pcingola.stats.VcfStats;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
+
+/**
+ * Merging statistics: Sampling in several 'workers' and merging
+ * the results must be the same as sampling in a single object
+ *
+ * @author pcingola
+ */
+public class TestCasesStatsMerge extends TestCase {
+
+	public static final int NUM_WORKERS = 3;
+
+	boolean verbose = false;
+
+	public TestCasesStatsMerge() {
+		super();
+	}
+
+	String toString(VariantStats variantStats) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Count: " + variantStats.getCount() + "\n");
+		sb.append("Known ratio: " + variantStats.getKnownRatio() + "\n");
+		sb.append("Ts: " + variantStats.getTransitions() + "\tTv: " + variantStats.getTransversions() + "\n");
+		sb.append("Change type:\n" + variantStats.getCountByChangeType() + "\n");
+		sb.append("InDel length:\n" + variantStats.getIndelLen().toStringHisto() + "\n");
+		for (String chr : variantStats.getChromosomeNamesEffective())
+			sb.append(chr + "\t" + variantStats.getCountByChromosome(chr) + "\n" + variantStats.getChrPosStats(chr) + "\n");
+		return sb.toString();
+	}
+
+	String toString(VcfStats vcfStats) {
+		return "TsTv:\n" + vcfStats.getTsTvStats() //
+				+ "\nTsTv known:\n" + vcfStats.getTsTvStatsKnown() //
+				+ "\nAllele frequency:\n" + vcfStats.getAlleleFrequencyStats().getCount().toStringHisto() //
+				+ "\nAllele frequency known:\n" + vcfStats.getAlleleFrequencyStatsKnown().getCount().toStringHisto() //
+		;
+	}
+
+	public void test_01_CountByType() {
+		CountByType all = new CountByType();
+		CountByType c1 = new CountByType();
+		CountByType c2 = new CountByType();
+
+		for (int i = 0; i < 1000; i++) {
+			String type = "type_" + (i % 7);
+			all.inc(type);
+			all.addScore(type, i);
+			(i % 2 == 0 ? c1 : c2).inc(type);
+			(i % 2 == 0 ? c1 : c2).addScore(type, i);
+		}
+
+		c1.merge(c2);
+		Assert.assertEquals(all.toString(true), c1.toString(true));
+	}
+
+	public void test_02_IntStats() {
+		IntStats all = new IntStats();
+		IntStats s1 = new IntStats();
+		IntStats s2 = new IntStats();
+
+		for (int i = 0; i < 1000; i++) {
+			int num = (i * 7919) % 101;
+			all.sample(num);
+			(i % 3 == 0 ? s1 : s2).sample(num);
+		}
+
+		s1.merge(s2);
+		Assert.assertEquals(all.toString(), s1.toString());
+		Assert.assertEquals(all.toStringHisto(), s1.toStringHisto());
+	}
+
+	/**
+	 * Sample VCF entries (and variants) in several 'workers', merge and compare
+	 */
+	public void test_03_VcfStats_VariantStats() {
+		Genome genome = new Genome("test");
+		VcfStats vcfStats = new VcfStats();
+		VariantStats variantStats = new VariantStats(genome);
+
+		VcfStats vcfStatsWorker[] = new VcfStats[NUM_WORKERS];
+		VariantStats variantStatsWorker[] = new VariantStats[NUM_WORKERS];
+		for (int i = 0; i < NUM_WORKERS; i++) {
+			vcfStatsWorker[i] = new VcfStats();
+			variantStatsWorker[i] = new VariantStats(genome);
+		}
+
+		// Sample every entry in the 'single' stats and in one of the 'workers' stats
+		int count = 0;
+		VcfFileIterator vcf = new VcfFileIterator("tests/1kg_head.vcf.gz", genome);
+		for (VcfEntry vcfEntry : vcf) {
+			int worker = (count++ / 10) % NUM_WORKERS;
+			vcfStats.sample(vcfEntry);
+			vcfStatsWorker[worker].sample(vcfEntry);
+
+			for (Variant variant : vcfEntry.variants()) {
+				variantStats.sample(variant);
+				variantStatsWorker[worker].sample(variant);
+			}
+		}
+
+		// Merge
+		VcfStats vcfStatsMerged = new VcfStats();
+		VariantStats variantStatsMerged = new VariantStats(genome);
+		for (int i = 0; i < NUM_WORKERS; i++) {
+			vcfStatsMerged.merge(vcfStatsWorker[i]);
+			variantStatsMerged.merge(variantStatsWorker[i]);
+		}
+
+		if (verbose) Gpr.debug("VCF entries: " + count + "\n" + toString(vcfStatsMerged) + "\n" + toString(variantStatsMerged));
+		Assert.assertEquals(toString(vcfStats), toString(vcfStatsMerged));
+		Assert.assertEquals(toString(variantStats), toString(variantStatsMerged));
+	}
+
+	public void test_04_CountByKey_CoverageByType() {
+		CountByKey<String> all = new CountByKey<String>();
+		CountByKey<String> c1 = new CountByKey<String>();
+		CountByKey<String> c2 = new CountByKey<String>();
+		CoverageByType covAll = new CoverageByType();
+		CoverageByType cov1 = new CoverageByType();
+		CoverageByType cov2 = new CoverageByType();
+
+		Chromosome chr = new Chromosome(null, 0, 10000, 1, "1");
+		Marker ref = new Marker(chr, 1000, 1999, 1, "");
+		for (int i = 0; i < 1000; i++) {
+			String key = "key_" + (i % 7);
+			all.inc(key, i);
+			(i % 2 == 0 ? c1 : c2).inc(key, i);
+
+			Marker read = new Marker(chr, 900 + i, 950 + i, 1, "");
+			covAll.getOrCreate(key).sample(read, ref);
+			(i % 3 == 0 ? cov1 : cov2).getOrCreate(key).sample(read, ref);
+		}
+
+		c1.merge(c2);
+		cov1.merge(cov2);
+		Assert.assertEquals(all.size(), c1.size());
+		for (String key : all.keySet()) {
+			Assert.assertEquals(all.get(key), c1.get(key));
+
+			PosStats psAll = covAll.get(key);
+			PosStats ps1 = cov1.get(key);
+			Assert.assertEquals(psAll.size(), ps1.size());
+			Assert.assertEquals(psAll.getTotal(), ps1.getTotal());
+			for (int i = 0; i < psAll.size(); i++)
+				Assert.assertEquals(psAll.getCount(i), ps1.getCount(i));
+		}
+	}
+
+}
@@ -78,6 +78,101 @@ public class TestCasesTranscript extends TestCase {
 		transcript = gene.iterator().next();
 	}
 
+	/**
+	 * Base number in CDS: Linear scan over all exons (reference implementation)
+	 */
+	int baseNumberCdsLinear(Transcript tr, int pos, boolean usePrevBaseIntron) {
+		if (!tr.intersects(pos) || tr.isUtr(pos)) return -1;
+
+		int cdsStart = tr.getCdsStart();
+		int firstCdsBaseInExon = 0;
+		for (Exon ex : tr.sortedStrand()) {
+			if (ex.intersects(pos)) {
+				int cdsBaseInExon = tr.isStrandPlus() ? pos - Math.max(ex.getStart(), cdsStart) : Math.min(ex.getEnd(), cdsStart) - pos;
+				return firstCdsBaseInExon + Math.max(0, cdsBaseInExon);
+			} else if ((tr.isStrandPlus() && (pos < ex.getStart())) || (tr.isStrandMinus() && (pos > ex.getEnd()))) return firstCdsBaseInExon - (usePrevBaseIntron ? 1 : 0);
+
+			if (tr.isStrandPlus()) firstCdsBaseInExon += Math.max(0, ex.getEnd() - Math.max(ex.getStart(), cdsStart) + 1);
+			else firstCdsBaseInExon += Math.max(0, Math.min(cdsStart, ex.getEnd()) - ex.getStart() + 1);
+		}
+
+		return firstCdsBaseInExon - 1;
+	}
+
+	/**
+	 * Base number in pre-mRNA: Linear scan over all exons (reference implementation)
+	 */
+	int baseNumberPreMRnaLinear(Transcript tr, int pos) {
+		int count = 0;
+		for (Exon ex : tr.sortedStrand()) {
+			if (ex.intersects(pos)) return count + (tr.isStrandPlus() ? pos - ex.getStart() : ex.getEnd() - pos);
+			count += ex.size();
+		}
+		return -1;
+	}
+
+	/**
+	 * Pre-mRNA base number to genomic position: Linear scan over all exons (reference implementation)
+	 */
+	int baseNumberPreMRna2PosLinear(Transcript tr, int baseNum) {
+		for (Exon ex : tr.sortedStrand()) {
+			if (ex.size() >= baseNum) return ex.getStart() + baseNum;
+			baseNum -= ex.size();
+		}
+		return -1;
+	}
+
+	/**
+	 * Annotation options are taken once by the predictor (and shared with its genome):
+	 * They do not change when config values change or when a new config is created
+	 */
+	public void test_annotationOptions() {
+		initSnpEffPredictor();
+		Assert.assertFalse(snpEffectPredictor.getAnnotationOptions().isTreatAllAsProteinCoding());
+
+		// Changing config values does not change predictor's options
+		config.setTreatAllAsProteinCoding(true);
+		config.setOnlyRegulation(true);
+		Assert.assertFalse(snpEffectPredictor.getAnnotationOptions().isTreatAllAsProteinCoding());
+		Assert.assertFalse(genome.getAnnotationOptions().isOnlyRegulation());
+
+		// Options have to be set explicitly
+		snpEffectPredictor.setAnnotationOptions(config.getAnnotationOptions());
+		Assert.assertTrue(snpEffectPredictor.getAnnotationOptions().isTreatAllAsProteinCoding());
+		Assert.assertTrue(snpEffectPredictor.getAnnotationOptions().isOnlyRegulation());
+		Assert.assertSame(snpEffectPredictor.getAnnotationOptions(), genome.getAnnotationOptions());
+
+		// A new config (i.e. a new 'Config.get()') must not change this predictor's options
+		Config configNew = new Config("testCase", Config.DEFAULT_CONFIG_FILE);
+		Assert.assertFalse(configNew.isTreatAllAsProteinCoding());
+		Assert.assertTrue(snpEffectPredictor.getAnnotationOptions().isTreatAllAsProteinCoding());
+		Assert.assertTrue(genome.getAnnotationOptions().isOnlyRegulation());
+	}
+
+	/**
+	 * Compare precomputed coordinates (binary search) to a linear scan, including
+	 * positions in introns, UTRs and outside the transcript
+	 */
+	public void test_baseNumber_coordinates() {
+		int N = 200;
+
+		for (int iter = 0; iter < N; iter++) {
+			initSnpEffPredictor();
+			if (debug) System.out.println("Test coordinates iteration: " + iter + "\n" + transcript);
+
+			for (int pos = transcript.getStart() - 10; pos <= transcript.getEnd() + 10; pos++) {
+				Assert.assertEquals(baseNumberCdsLinear(transcript, pos, true), transcript.baseNumberCds(pos, true));
+				Assert.assertEquals(baseNumberCdsLinear(transcript, pos, false), transcript.baseNumberCds(pos, false));
+				Assert.assertEquals(baseNumberPreMRnaLinear(transcript, pos), transcript.baseNumberPreMRna(pos));
+			}
+
+			// Pre-mRNA base number to genomic position
+			int len = baseNumberPreMRnaLinear(transcript, transcript.isStrandPlus() ? transcript.getEnd() : transcript.getStart()) + 10;
+			for (int baseNum = 0; baseNum <= len; baseNum++)
+				Assert.assertEquals(baseNumberPreMRna2PosLinear(transcript, baseNum), transcript.baseNumberPreMRna2Pos(baseNum));
+		}
+	}
+
 	public void test_CdsPos() {
 		int N = 1000;
 
@@ -1,13 +1,18 @@
 package ca.mcgill.mcb.pcingola.snpEffect.testCases;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
+import ca.mcgill.mcb.pcingola.fileIterator.VcfRegionIterator;
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Genome;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Markers;
 import ca.mcgill.mcb.pcingola.interval.Variant;
 import ca.mcgill.mcb.pcingola.outputFormatter.VcfOutputFormatter;
 import ca.mcgill.mcb.pcingola.snpEffect.Config;
@@ -19,6 +24,7 @@ import ca.mcgill.mcb.pcingola.vcf.VcfEffect;
 import ca.mcgill.mcb.pcingola.vcf.VcfEffect.FormatVersion;
 import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
 import ca.mcgill.mcb.pcingola.vcf.VcfGenotype;
+import ca.mcgill.mcb.pcingola.vcf.VcfGenotypeStore;
 
 /**
  * VCF parsing test cases 
@@ -439,6 +445,7 @@ public class TestCasesVcf extends TestCase {
 
 	public void test_18_vcf_tabix() {
 		VcfFileIterator vcf = new VcfFileIterator("./tests/test_tabix.vcf.gz");
+		Assert.assertTrue(vcf.isTabix()); // Index is only used to seek, the whole file is read sequentially
 
 		String chrpos = "";
 		for (VcfEntry ve : vcf) {
@@ -476,4 +483,287 @@ public class TestCasesVcf extends TestCase {
 		Assert.assertTrue(timer.elapsed() < 1000); // We should be able to iterate the whole file in less than a second
 	}
 
+	/**
+	 * Lazy parsing: Entries written without parsing genotypes must be
+	 * the same as entries written after parsing all genotypes
+	 */
+	public void test_23_lazy_parse_toString() {
+		String vcfFiles[] = { "tests/1kg_head.vcf.gz", "tests/test.cancer.vcf" };
+
+		for (String vcfFile : vcfFiles) {
+			VcfFileIterator vcf = new VcfFileIterator(vcfFile);
+			for (VcfEntry ve : vcf) {
+				String lazy = ve.toString();
+				if (verbose) System.out.println(lazy);
+				ve.getVcfGenotypes();
+				Assert.assertEquals(ve.toString(), lazy);
+			}
+		}
+	}
+
+	/**
+	 * Lazy parsing: INFO fields obtained without parsing the whole INFO 
+	 * string must match the ones obtained by parsing it
+	 */
+	public void test_24_lazy_parse_info() {
+		VcfFileIterator vcf = new VcfFileIterator("tests/1kg_head.vcf.gz");
+		for (VcfEntry ve : vcf) {
+			VcfEntry veLazy = new VcfEntry(vcf, ve.getLine(), ve.getLineNum(), true);
+
+			for (String key : ve.getInfoKeys()) {
+				if (verbose) System.out.println(key + "\t" + ve.getInfo(key) + "\t" + veLazy.getInfo(key));
+				Assert.assertEquals(ve.getInfo(key), veLazy.getInfo(key));
+				Assert.assertTrue(veLazy.hasInfo(key));
+			}
+
+			Assert.assertNull(veLazy.getInfo("NO_SUCH_INFO_FIELD"));
+			Assert.assertFalse(veLazy.hasInfo("NO_SUCH_INFO_FIELD"));
+		}
+
+		// Flags, repeated keys and keys that are prefixes of other keys
+		String line = "1\t100\t.\tA\tT\t.\tPASS\tAAF=0.1;AA;DB;AA_X=3;DB=0";
+		VcfEntry ve = new VcfEntry(vcf, line, 1, true);
+		Assert.assertEquals("true", ve.getInfo("AA"));
+		Assert.assertTrue(ve.getInfoFlag("AA"));
+		Assert.assertEquals("0", ve.getInfo("DB"));
+		Assert.assertEquals("3", ve.getInfo("AA_X"));
+		Assert.assertEquals(0.1, ve.getInfoFloat("AAF"));
+		Assert.assertNull(ve.getInfo("A"));
+	}
+
+	/**
+	 * Lazy parsing: Genotypes parsed on demand must match the ones obtained by parsing all of them
+	 */
+	public void test_25_lazy_parse_genotypes() {
+		VcfFileIterator vcf = new VcfFileIterator("tests/1kg_head.vcf.gz");
+		for (VcfEntry ve : vcf) {
+			VcfEntry veLazy = new VcfEntry(vcf, ve.getLine(), ve.getLineNum(), true);
+			List<VcfGenotype> gts = ve.getVcfGenotypes();
+			Assert.assertEquals(gts.size(), veLazy.getNumberOfGenotypeFields());
+
+			// Access genotypes in reverse order
+			for (int i = gts.size() - 1; i >= 0; i--)
+				Assert.assertEquals(gts.get(i).toString(), veLazy.getVcfGenotype(i).toString());
+
+			// Partially parsed entries are written back unchanged
+			Assert.assertEquals(ve.toString(), veLazy.toString());
+		}
+	}
+
+	/**
+	 * Read only entries intersecting some regions (using tabix index) and
+	 * compare to the entries obtained by scanning the whole file
+	 */
+	public void test_26_tabix_regions() {
+		String vcfFileName = "tests/test_tabix_regions.vcf.gz";
+
+		for (int iter = 0; iter < 10; iter++) {
+			// Create random regions (they may overlap) and a region in a chromosome not present in the file
+			VcfFileIterator vcf = new VcfFileIterator(vcfFileName);
+			Genome genome = vcf.getGenome();
+			Markers regions = new Markers();
+			for (String chrName : new String[] { "1", "2", "3", "4" }) {
+				Chromosome chr = genome.getOrCreateChromosome(chrName);
+				int numRegions = 1 + rand.nextInt(50);
+				for (int i = 0; i < numRegions; i++) {
+					int start = rand.nextInt(1200000);
+					int end = start + rand.nextInt(rand.nextBoolean() ? 100 : 20000);
+					regions.add(new Marker(chr, start, end, 1, ""));
+				}
+			}
+
+			// Expected results: Scan the whole file
+			StringBuilder expected = new StringBuilder();
+			for (VcfEntry ve : new VcfFileIterator(vcfFileName)) {
+				int start = ve.getStart();
+				int end = start + ve.getRef().length() - 1;
+				for (Marker r : regions)
+					if (Chromosome.simpleName(r.getChromosomeName()).equals(ve.getChromosomeName()) && (start <= r.getEnd()) && (r.getStart() <= end)) {
+						expected.append(ve + "\n");
+						break;
+					}
+			}
+
+			// Use index
+			StringBuilder result = new StringBuilder();
+			for (VcfEntry ve : new VcfRegionIterator(vcf, regions))
+				result.append(ve + "\n");
+
+			if (verbose) System.out.println("Iteration: " + iter + "\tRegions: " + regions.size() + "\tEntries: " + result.toString().split("\n").length);
+			Assert.assertEquals(expected.toString(), result.toString());
+		}
+	}
+
+	/**
+	 * Compare compact genotypes to the values calculated by VcfGenotype objects
+	 */
+	void checkGenotypeStore(VcfEntry ve, VcfEntry veStore) {
+		List<VcfGenotype> gts = ve.getVcfGenotypes();
+		VcfGenotypeStore store = veStore.getGenotypeStore();
+		Assert.assertEquals(gts.size(), store.size());
+
+		for (int i = 0; i < gts.size(); i++) {
+			VcfGenotype gt = gts.get(i);
+			if (verbose) System.out.println(i + "\t" + gt + "\t" + gt.getGenotypeCode() + "\t" + store.getGenotypeCode(i));
+			Assert.assertEquals(gt.getGenotypeCode(), store.getGenotypeCode(i));
+			Assert.assertEquals(gt.isVariant(), store.isVariant(i));
+			Assert.assertEquals(gt.isHomozygous(), store.isHomozygous(i));
+			Assert.assertEquals(gt.isPhased(), store.isPhased(i));
+			Assert.assertEquals(gt.isMissing(), store.isMissing(i));
+			Assert.assertTrue(Arrays.equals(gt.getGenotype(), store.getGenotype(i)));
+		}
+
+		Assert.assertEquals(ve.mac(), veStore.mac());
+		Assert.assertEquals(ve.maf(), veStore.maf());
+		Assert.assertEquals(ve.isSingleton(), veStore.isSingleton());
+	}
+
+	/**
+	 * Compact genotype store: Genotypes parsed directly from the VCF line
+	 */
+	public void test_27_genotype_store() {
+		VcfFileIterator vcf = new VcfFileIterator("tests/1kg_head.vcf.gz");
+		for (VcfEntry ve : vcf) {
+			VcfEntry veStore = new VcfEntry(vcf, ve.getLine(), ve.getLineNum(), true);
+			checkGenotypeStore(ve, veStore);
+			Assert.assertNotNull(ve.getGenotypeStore()); // Created from VcfGenotype objects
+		}
+
+		// Random genotype fields, including missing, haploid, polyploid, phased, multi-allelic and malformed ones
+		String gts[] = { "0/0", "0/1", "1/0", "1/1", "0|1", "1|2", "2/2", "./.", ".", "./1", "1", "0", "0/1/1", "1/1/2", "0/", "/1", "", "::", "0/1:", ":0.5" };
+		String dss[] = { "", ":0.3", ":.", ":", ":1.7" };
+		String formats[] = { "GT", "GT:DS", "DS:GT", "DP" };
+		for (int iter = 0; iter < 1000; iter++) {
+			String format = formats[rand.nextInt(formats.length)];
+			StringBuilder line = new StringBuilder("1\t100\t.\tA\tC,G\t.\tPASS\t.\t" + format);
+			int numSamples = 1 + rand.nextInt(10);
+			for (int i = 0; i < numSamples; i++) {
+				String gt = gts[rand.nextInt(gts.length)];
+				String ds = dss[rand.nextInt(dss.length)];
+				line.append("\t" + (format.startsWith("DS") ? ds.substring(Math.min(1, ds.length())) + ":" + gt : gt + ds));
+			}
+
+			VcfEntry ve = new VcfEntry(vcf, line.toString(), 1, true);
+			VcfEntry veStore = new VcfEntry(vcf, line.toString(), 1, true);
+			if (verbose) System.out.println(line);
+			checkGenotypeStore(ve, veStore);
+
+			// Dosage
+			VcfGenotypeStore store = veStore.getGenotypeStore();
+			Assert.assertEquals(format.indexOf("DS") >= 0, store.hasDosage());
+			for (int i = 0; i < store.size(); i++) {
+				String ds = ve.getVcfGenotype(i).get("DS");
+				double expected = store.hasDosage() ? ((ds == null) || ds.isEmpty() || ds.equals(".") ? Double.NaN : (float) Gpr.parseDoubleSafe(ds)) : (store.getGenotypeCode(i) >= 0 ? store.getGenotypeCode(i) : Double.NaN);
+				Assert.assertEquals(expected, store.getDosage(i));
+			}
+		}
+	}
+
+	/**
+	 * Genotype summary (AC, AN, HET, HOM): Compare to counts calculated from VcfGenotype objects
+	 */
+	public void test_28_genotype_summary() {
+		VcfFileIterator vcf = new VcfFileIterator("tests/long.vcf.gz");
+		for (VcfEntry ve : vcf) {
+			VcfEntry veSummary = new VcfEntry(vcf, ve.getLine(), ve.getLineNum(), true);
+
+			// Count using genotype objects
+			int ac[] = new int[ve.getAlts().length + 1];
+			int an = 0, het = 0, hom = 0;
+			for (VcfGenotype gt : ve) {
+				int alleles[] = gt.getGenotype();
+				if (alleles == null) continue;
+
+				for (int a : alleles)
+					if (a >= 0) {
+						ac[a]++;
+						an++;
+					}
+
+				if (!gt.isMissing()) {
+					if (!gt.isHomozygous()) het++;
+					else if (alleles[0] > 0) hom++;
+				}
+			}
+
+			StringBuilder acStr = new StringBuilder();
+			for (int i = 1; i < ac.length; i++)
+				acStr.append((i > 1 ? "," : "") + ac[i]);
+
+			// Add INFO fields and compare
+			veSummary.addGenotypeSummary();
+			if (verbose) System.out.println(veSummary.toStringNoGt());
+			Assert.assertEquals(acStr.toString(), veSummary.getInfo(VcfEntry.VCF_INFO_AC));
+			Assert.assertEquals("" + an, veSummary.getInfo(VcfEntry.VCF_INFO_AN));
+			Assert.assertEquals("" + het, veSummary.getInfo(VcfEntry.VCF_INFO_HET));
+			Assert.assertEquals("" + hom, veSummary.getInfo(VcfEntry.VCF_INFO_HOM));
+
+			// Fields are replaced, not duplicated
+			veSummary.addGenotypeSummary();
+			int countAn = 0;
+			for (String inf : veSummary.getInfoStr().split(";"))
+				if (inf.startsWith(VcfEntry.VCF_INFO_AN + "=")) countAn++;
+			Assert.assertEquals(1, countAn);
+		}
+	}
+
+	/**
+	 * Missing genotype field ('.') on a multi-allelic entry: VcfGenotype objects
+	 * (either parsed or added) and the compact genotype store must agree
+	 */
+	public void test_29_genotype_store_missing() {
+		VcfFileIterator vcf = new VcfFileIterator("tests/1kg_head.vcf.gz");
+		String line = "1\t100\t.\tA\tC,G\t.\tPASS\t.\tGT\t.\t0/1\t.\t./.";
+
+		VcfEntry ve = new VcfEntry(vcf, line, 1, true);
+		VcfEntry veStore = new VcfEntry(vcf, line, 1, true);
+		checkGenotypeStore(ve, veStore);
+
+		VcfGenotypeStore store = veStore.getGenotypeStore();
+		VcfGenotype gtAdded = new VcfGenotype(ve, "GT", ".");
+		for (int i : new int[] { 0, 2 }) {
+			Assert.assertTrue(store.isMissing(i));
+			Assert.assertEquals(gtAdded.isHomozygous(), store.isHomozygous(i));
+			Assert.assertEquals(gtAdded.isVariant(), store.isVariant(i));
+			Assert.assertEquals(gtAdded.isMissing(), store.isMissing(i));
+			Assert.assertEquals(".", gtAdded.toString());
+		}
+
+		// Store created from VcfGenotype objects (genotypes added one by one)
+		VcfEntry veAdded = new VcfEntry(vcf, line, 1, true);
+		veAdded.getVcfGenotypes().set(0, gtAdded);
+		checkGenotypeStore(ve, veAdded);
+	}
+
+	/**
+	 * Genotype summary: INFO header lines are only added if the ID is not already in the header.
+	 * Entries without samples are not changed.
+	 */
+	public void test_30_genotype_summary_header() {
+		VcfFileIterator vcf = new VcfFileIterator("tests/long.vcf.gz");
+		VcfEntry ve = vcf.next();
+		vcf.getVcfHeader().addLine("##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">");
+
+		VcfOutputFormatter vof = new VcfOutputFormatter((List<VcfEntry>) null);
+		vof.setGenotypeSummary(true);
+		vof.startSection(ve);
+		String out = vof.endSection(ve);
+		if (verbose) System.out.println(out);
+
+		// Header already has an 'AC' line
+		for (String id : new String[] { VcfEntry.VCF_INFO_AC, VcfEntry.VCF_INFO_AN, VcfEntry.VCF_INFO_HET, VcfEntry.VCF_INFO_HOM }) {
+			int count = 0;
+			for (String line : out.split("\n"))
+				if (line.startsWith("##INFO=<ID=" + id + ",")) count++;
+			Assert.assertEquals(1, count);
+		}
+		Assert.assertNotNull(ve.getInfo(VcfEntry.VCF_INFO_HET));
+
+		// No samples (sites only VCF file): Nothing is changed
+		VcfEntry veNoSamples = new VcfFileIterator("tests/1kg_head.vcf.gz").next();
+		String infoStr = veNoSamples.getInfoStr();
+		veNoSamples.addGenotypeSummary();
+		Assert.assertEquals(infoStr, veNoSamples.getInfoStr());
+	}
+
 }
@@ -0,0 +1,225 @@
+package ca.mcgill.mcb.pcingola.snpEffect.testCases;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import ca.mcgill.mcb.pcingola.interval.Chromosome;
+import ca.mcgill.mcb.pcingola.interval.Exon;
+import ca.mcgill.mcb.pcingola.interval.Gene;
+import ca.mcgill.mcb.pcingola.interval.Intron;
+import ca.mcgill.mcb.pcingola.interval.Marker;
+import ca.mcgill.mcb.pcingola.interval.Regulation;
+import ca.mcgill.mcb.pcingola.interval.Transcript;
+import ca.mcgill.mcb.pcingola.interval.Variant;
+import ca.mcgill.mcb.pcingola.outputFormatter.VcfEffEncoder;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffect.FunctionalClass;
+import ca.mcgill.mcb.pcingola.snpEffect.ChangeEffects;
+import ca.mcgill.mcb.pcingola.snpEffect.Config;
+import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
+import ca.mcgill.mcb.pcingola.snpEffect.factory.SnpEffPredictorFactoryRand;
+import ca.mcgill.mcb.pcingola.vcf.VcfEffect.FormatVersion;
+import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
+
+/**
+ * VCF 'EFF' field encoder test cases
+ *
+ * @author pcingola
+ */
+public class TestCasesVcfEffEncoder extends TestCase {
+
+	boolean verbose = false;
+
+	/**
+	 * Encode a single effect using the original formatting code (from VcfOutputFormatter.addInfo, before VcfEffEncoder)
+	 */
+	String legacyEff(ChangeEffect changeEffect, FormatVersion formatVersion, boolean useGeneId, boolean useSequenceOntology) {
+		StringBuilder effBuff = new StringBuilder();
+
+		// Add effect
+		effBuff.append(changeEffect.effect(true, false, false, useSequenceOntology));
+		effBuff.append("(");
+
+		// Add effect impact
+		effBuff.append(changeEffect.getEffectImpact());
+		effBuff.append("|");
+
+		// Add functional class
+		FunctionalClass fc = changeEffect.getFunctionalClass();
+		effBuff.append(fc == FunctionalClass.NONE ? "" : fc.toString()); // Show only if it is not empty
+		effBuff.append("|");
+
+		// Codon change
+		String codonChange = changeEffect.getCodonChange();
+		if (!codonChange.isEmpty()) effBuff.append(codonChange);
+		else if (changeEffect.getDistance() >= 0) effBuff.append(changeEffect.getDistance());
+		effBuff.append("|");
+
+		// Add amino acid length
+		if (formatVersion != FormatVersion.FORMAT_SNPEFF_2) { // This field is not in format version 2
+			int aalen = changeEffect.getAaLength();
+			effBuff.append(aalen >= 0 ? aalen : "");
+			effBuff.append("|");
+		}
+
+		// Add gene info
+		Gene gene = changeEffect.getGene();
+		Transcript tr = changeEffect.getTranscript();
+		if (gene != null) {
+			// Gene name
+			effBuff.append(legacySafeString(useGeneId ? gene.getId() : gene.getGeneName()));
+			effBuff.append("|");
+
+			// Transcript biotype
+			if (tr != null) {
+				if ((tr.getBioType() != null) && !tr.getBioType().isEmpty()) effBuff.append(tr.getBioType());
+				else effBuff.append(tr.isProteinCoding() ? "protein_coding" : ""); // No biotype? Add protein_coding of we know it is.
+			}
+			effBuff.append("|");
+
+			// Protein coding gene?
+			String coding = "";
+			if (gene.getGenome().hasCodingInfo()) coding = (gene.isProteinCoding() ? ChangeEffect.Coding.CODING.toString() : ChangeEffect.Coding.NON_CODING.toString());
+			effBuff.append(coding);
+			effBuff.append("|");
+		} else if (changeEffect.isRegulation()) {
+			Regulation reg = (Regulation) changeEffect.getMarker();
+			effBuff.append("|" + reg.getCellType() + "||");
+		} else if (changeEffect.isCustom()) {
+			Marker m = changeEffect.getMarker();
+			if (m != null) effBuff.append("|" + VcfEntry.vcfInfoSafe(m.getId()) + "||");
+			else effBuff.append("|||");
+		} else effBuff.append("|||");
+
+		// Add transcript info
+		if (tr != null) effBuff.append(legacySafeString(tr.getId()));
+		effBuff.append("|");
+
+		// Add exon (or intron) rank info
+		Exon ex = changeEffect.getExon();
+		int rank = -1;
+		String geneSegId = "";
+		if (ex != null) {
+			rank = ex.getRank();
+			geneSegId = ex.getId();
+		} else {
+			// Do we have an intron?
+			Intron intron = changeEffect.getIntron();
+			if (intron != null) {
+				rank = intron.getRank();
+				geneSegId = intron.getId();
+			}
+		}
+		effBuff.append(rank >= 0 ? rank : "");
+
+		if (formatVersion == FormatVersion.FORMAT_SNPEFF_CBMI) {
+			effBuff.append("|");
+			effBuff.append(geneSegId);
+			effBuff.append("|");
+			if (tr != null) effBuff.append(changeEffect.getCodingDnaHgvs()); // HGVS only for tx-bound exonics
+			effBuff.append("|");
+			effBuff.append(changeEffect.getAaChangeHgvs());
+		}
+
+		effBuff.append("|");
+
+		// Add genotype (or genotype difference) for this effect
+		if (formatVersion == FormatVersion.FORMAT_SNPEFF_4) {
+			effBuff.append("|");
+			effBuff.append(changeEffect.getGenotype());
+		}
+
+		// Errors or warnings (this is the last thing in the list)
+		if (changeEffect.hasError() || changeEffect.hasWarning()) {
+			StringBuilder err = new StringBuilder();
+			if (!changeEffect.getWarning().isEmpty()) err.append(changeEffect.getWarning());
+			if (!changeEffect.getError().isEmpty()) {
+				if (err.length() > 0) err.append("+");
+				err.append(changeEffect.getError());
+			}
+
+			effBuff.append("|");
+			effBuff.append(err);
+		}
+		effBuff.append(")");
+
+		return effBuff.toString();
+	}
+
+	/**
+	 * Original (regular expression based) safe string
+	 */
+	String legacySafeString(String value) {
+		if (value == null) return value;
+		return value.replaceAll("[ ,;|=()]", "_");
+	}
+
+	/**
+	 * Safe strings: Compare to regular expression replacement
+	 */
+	public void test_01_vcfInfoSafeString() {
+		Random rand = new Random(20140402);
+		String chars = "abc ,;|=()_.";
+
+		for (int i = 0; i < 1000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int len = rand.nextInt(20);
+			for (int j = 0; j < len; j++)
+				sb.append(chars.charAt(rand.nextInt(chars.length())));
+
+			String str = sb.toString();
+			Assert.assertEquals(str.replaceAll("[ ,;|=()]", "_"), VcfEffEncoder.vcfInfoSafeString(str));
+		}
+	}
+
+	/**
+	 * Encode all effects for random variants on a genome with overlapping transcripts.
+	 * Result should be the same as formatting each effect using the original code and sorting (removing duplicates)
+	 */
+	public void test_02_sort_unique() {
+		Random rand = new Random(20140403);
+		Config config = new Config("testCase", Config.DEFAULT_CONFIG_FILE);
+		SnpEffPredictorFactoryRand sepf = new SnpEffPredictorFactoryRand(config, rand, 1000, 10, 5);
+		SnpEffectPredictor snpEffectPredictor = sepf.create();
+		config.setSnpEffectPredictor(snpEffectPredictor);
+		snpEffectPredictor.buildForest();
+
+		Chromosome chromosome = sepf.getChromo();
+		String chromoSequence = sepf.getChromoSequence();
+		String bases = "ACGT";
+
+		for (FormatVersion formatVersion : FormatVersion.values()) {
+			VcfEffEncoder encoder = new VcfEffEncoder(formatVersion, false, false);
+
+			for (int i = 0; i < 500; i++) {
+				int pos = rand.nextInt(chromoSequence.length());
+				String ref = chromoSequence.substring(pos, pos + 1);
+				String alt = "" + bases.charAt(rand.nextInt(bases.length()));
+				if (alt.equalsIgnoreCase(ref)) continue;
+
+				Variant variant = new Variant(chromosome, pos, ref, alt, "");
+				ChangeEffects effects = snpEffectPredictor.seqChangeEffect(variant);
+
+				// Add each effect twice
+				encoder.reset();
+				TreeSet<String> expected = new TreeSet<String>();
+				for (int j = 0; j < 2; j++) {
+					for (ChangeEffect changeEffect : effects) {
+						encoder.add(changeEffect);
+						expected.add(legacyEff(changeEffect, formatVersion, false, false));
+					}
+				}
+
+				StringBuilder sb = new StringBuilder();
+				for (String eff : expected)
+					sb.append((sb.length() > 0 ? "," : "") + eff);
+
+				if (verbose) System.out.println(variant + "\t" + encoder);
+				Assert.assertEquals(sb.toString(), encoder.toString());
+				Assert.assertEquals(2 * effects.size(), encoder.size());
+			}
+		}
+	}
+}
@@ -25,6 +25,9 @@ public class TestSuiteAll {
 		suite.addTestSuite(TestCasesIntStats.class);
 		suite.addTestSuite(TestCochranArmitage.class);
 		suite.addTestSuite(TestGenePvalueList.class);
+		suite.addTestSuite(TestCasesStatsMerge.class);
+		suite.addTestSuite(TestCasesRankSum.class);
+		suite.addTestSuite(TestCasesGsa.class);
 
 		// Binary sequences
 		suite.addTestSuite(TestCasesNmers.class);
@@ -40,7 +43,10 @@ public class TestSuiteAll {
 
 		// Intervals
 		suite.addTestSuite(TestCasesIntervals.class);
+		suite.addTestSuite(TestCasesIntervalTrack.class);
 		suite.addTestSuite(TestCasesMarkerUtils.class);
+		suite.addTestSuite(TestCasesSerializer.class);
+		suite.addTestSuite(TestCasesCoverage.class);
 
 		// Codon tables
 		suite.addTestSuite(TestCasesCodonTable.class);
@@ -74,14 +80,20 @@ public class TestSuiteAll {
 
 		// File formats: VCF
 		suite.addTestSuite(TestCasesVcf.class);
+		suite.addTestSuite(TestCasesVcfEffEncoder.class);
 
 		// Build database: Exon frame
 		suite.addTestSuite(TestCasesExonFrame.class);
 
 		// File 
 		suite.addTestSuite(TestCasesSeekableReader.class);
+		suite.addTestSuite(TestCasesAsciiLineReader.class);
+		suite.addTestSuite(TestCasesBgzf.class);
 		suite.addTestSuite(TestCasesFileIndexChrPos.class);
 
+		// Multi-threaded pipeline
+		suite.addTestSuite(TestCasesParallelPipeline.class);
+
 		// Protein coding sequences
 		suite.addTestSuite(TestCasesProtein.class);
 
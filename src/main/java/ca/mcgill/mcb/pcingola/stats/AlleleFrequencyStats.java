@@ -1,7 +1,7 @@
 package ca.mcgill.mcb.pcingola.stats;
 
 import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
-import ca.mcgill.mcb.pcingola.vcf.VcfGenotype;
+import ca.mcgill.mcb.pcingola.vcf.VcfGenotypeStore;
 
 /**
  * Calculatenumber of alleles (number of singletons, doubletons, etc.)
@@ -10,8 +10,6 @@ import ca.mcgill.mcb.pcingola.vcf.VcfGenotype;
  */
 public class AlleleFrequencyStats implements SamplingStats<VcfEntry> {
 
-	static int GENOTYPE_SINGLE_ALT_CHANGE[] = { 1 };
-
 	IntStats count;
 
 	public AlleleFrequencyStats() {
@@ -31,6 +29,13 @@ public class AlleleFrequencyStats implements SamplingStats<VcfEntry> {
 		return count.isValidData();
 	}
 
+	/**
+	 * Add counts from 'alleleFrequencyStats' to this object
+	 */
+	public void merge(AlleleFrequencyStats alleleFrequencyStats) {
+		count.merge(alleleFrequencyStats.count);
+	}
+
 	/**
 	 * Update counters
 	 */
@@ -41,26 +46,19 @@ public class AlleleFrequencyStats implements SamplingStats<VcfEntry> {
 		if( !vcfEntry.isSnp() || !vcfEntry.isVariant() ) return;
 
 		// Do we need to initialize?
-		int genotypes = vcfEntry.getVcfGenotypes().size();
+		VcfGenotypeStore vcfGenotypes = vcfEntry.getGenotypeStore();
+		int genotypes = vcfGenotypes.size();
 		String alts[] = vcfEntry.getAlts();
 		int countGenotypes[] = new int[alts.length + 1];
 
 		// Are there any genotype fields?
 		if( genotypes > 0 ) {
-			// For each sample (i.e. 'genotype' field)
-			for( VcfGenotype vcfGenotype : vcfEntry ) {
-				if( vcfGenotype.isVariant() ) {
-					// Get genotypes
-					int gens[] = vcfGenotype.getGenotype();
-
-					// Missing all genotype information => assume single 'ALT' change
-					if( gens == null ) gens = GENOTYPE_SINGLE_ALT_CHANGE;
+			// Use allele counts from genotype summary. Genotype '0' is the REF (i.e. no base change)
+			for( int gen = 1; gen < countGenotypes.length; gen++ )
+				countGenotypes[gen] = vcfGenotypes.getAlleleCount(gen);
 
-					// For all genotypes
-					for( int gen : gens )
-						if( gen > 0 ) countGenotypes[gen]++; // Genotype '0' is the REF (i.e. no base change). If it's negative, then it is not available.
-				}
-			}
+			// Missing all genotype information => assume single 'ALT' change
+			countGenotypes[1] += vcfGenotypes.getCountVariantNoGt();
 
 			// Process genotype counts
 			for( int c : countGenotypes )
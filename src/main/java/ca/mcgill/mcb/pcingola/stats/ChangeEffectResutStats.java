@@ -166,6 +166,30 @@ public class ChangeEffectResutStats implements SamplingStats<ChangeEffect> {
 		return countByEffect.hasData();
 	}
 
+	/**
+	 * Add statistics from 'changeEffectResutStats' to this object
+	 */
+	public void merge(ChangeEffectResutStats changeEffectResutStats) {
+		countWarnings += changeEffectResutStats.countWarnings;
+		countByEffect.merge(changeEffectResutStats.countByEffect);
+		countByCodon.merge(changeEffectResutStats.countByCodon);
+		countByAa.merge(changeEffectResutStats.countByAa);
+		countByGeneRegion.merge(changeEffectResutStats.countByGeneRegion);
+		countByImpact.merge(changeEffectResutStats.countByImpact);
+		countByFunctionalClass.merge(changeEffectResutStats.countByFunctionalClass);
+		if (changeEffectResutStats.countByBioType != null) {
+			if (countByBioType == null) countByBioType = new CountByType();
+			countByBioType.merge(changeEffectResutStats.countByBioType);
+		}
+		aaChangeCountMax = Math.max(aaChangeCountMax, changeEffectResutStats.aaChangeCountMax);
+		codonChangeCountMax = Math.max(codonChangeCountMax, changeEffectResutStats.codonChangeCountMax);
+		codonSet.addAll(changeEffectResutStats.codonSet);
+		aaSet.addAll(changeEffectResutStats.aaSet);
+		geneSet.addAll(changeEffectResutStats.geneSet);
+		geneCountByRegionTable.merge(changeEffectResutStats.geneCountByRegionTable);
+		geneCountByEffectTable.merge(changeEffectResutStats.geneCountByEffectTable);
+	}
+
 	@Override
 	public void sample(ChangeEffect changeEffect) {
 		// Any warnings?
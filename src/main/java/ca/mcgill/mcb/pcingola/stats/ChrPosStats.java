@@ -53,6 +53,17 @@ public class ChrPosStats {
 			count[i] = 0;
 	}
 
+	/**
+	 * Add all counts from 'chrPosStats' (it must refer to the same chromosome) to this object
+	 */
+	public void merge(ChrPosStats chrPosStats) {
+		if ((chrPosStats.factor != factor) || (chrPosStats.count.length != count.length)) throw new RuntimeException("Cannot merge stats from chromosome '" + chrPosStats.name + "' (length: " + chrPosStats.length + ") into chromosome '" + name + "' (length: " + length + ")");
+
+		for (int i = 0; i < count.length; i++)
+			count[i] += chrPosStats.count[i];
+		total += chrPosStats.total;
+	}
+
 	public int[] posArray() {
 		int pos[] = new int[count.length];
 		for (int i = 0; i < pos.length; i++)
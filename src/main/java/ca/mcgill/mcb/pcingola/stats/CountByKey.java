@@ -38,7 +38,7 @@ public class CountByKey<T> implements Serializable {
 	 * @param hash
 	 * @param key
 	 */
-	void inc(HashMap<T, Long> hash, T key, int toAdd) {
+	void inc(HashMap<T, Long> hash, T key, long toAdd) {
 		Long count = hash.get(key);
 		if (count == null) count = 0L;
 		count += toAdd;
@@ -69,6 +69,14 @@ public class CountByKey<T> implements Serializable {
 		return countByKey.keySet();
 	}
 
+	/**
+	 * Add all counts from 'countByKey' to this object
+	 */
+	public void merge(CountByKey<T> countByKey) {
+		for (T key : countByKey.countByKey.keySet())
+			inc(this.countByKey, key, countByKey.countByKey.get(key));
+	}
+
 	/**
 	 * Maximum count
 	 */
@@ -113,7 +113,7 @@ public class CountByType implements Serializable {
 	 * @param hash
 	 * @param type
 	 */
-	void inc(HashMap<String, Long> hash, String type, int toAdd) {
+	void inc(HashMap<String, Long> hash, String type, long toAdd) {
 		Long count = hash.get(type);
 		if (count == null) count = 0L;
 		count += toAdd;
@@ -143,6 +143,20 @@ public class CountByType implements Serializable {
 		return countByType.keySet();
 	}
 
+	/**
+	 * Add all counts and scores from 'countByType' to this object
+	 */
+	public void merge(CountByType countByType) {
+		for (String type : countByType.countByType.keySet())
+			inc(this.countByType, type, countByType.countByType.get(type));
+
+		for (String type : countByType.scoreByType.keySet()) {
+			Double currScore = scoreByType.get(type);
+			if (currScore == null) currScore = 0.0;
+			scoreByType.put(type, currScore + countByType.scoreByType.get(type));
+		}
+	}
+
 	/**
 	 * List all types (alphabetically sorted)
 	 */
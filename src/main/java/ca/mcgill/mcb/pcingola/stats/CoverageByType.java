@@ -10,4 +10,12 @@ public class CoverageByType extends AutoHashMap<String, PosStats> {
 		super(new PosStats());
 	}
 
+	/**
+	 * Add all coverage stats from 'coverageByType' to this object
+	 */
+	public void merge(CoverageByType coverageByType) {
+		for (String type : coverageByType.keySet())
+			getOrCreate(type).merge(coverageByType.get(type));
+	}
+
 }
@@ -86,6 +86,15 @@ public class GeneCountByTypeTable implements Iterable<Gene>, Serializable {
 		return genes.iterator();
 	}
 
+	/**
+	 * Add counts from 'geneCountByTypeTable' to this object
+	 */
+	public void merge(GeneCountByTypeTable geneCountByTypeTable) {
+		genes.addAll(geneCountByTypeTable.genes);
+		for (String type : geneCountByTypeTable.countersByType.keySet())
+			getCounter(type).merge(geneCountByTypeTable.countersByType.get(type));
+	}
+
 	/**
 	 * Sample this <gene, marker, type, seqChange> tuple to update statistics
 	 * @param gene
@@ -140,6 +140,23 @@ public class IntStats implements Serializable {
 		return statsProcedure.minKey <= statsProcedure.maxKey; // If this doesn't hold, it means that there was no data at all
 	}
 
+	/**
+	 * Add all samples from 'intStats' to this object
+	 */
+	public void merge(IntStats intStats) {
+		counters.ensureCapacity(intStats.counters.size());
+		intStats.counters.forEachEntry(new TIntIntProcedure() {
+
+			@Override
+			public boolean execute(int num, int count) {
+				counters.adjustOrPutValue(num, count, count);
+				return true;
+			}
+		});
+
+		needUpdate = true;
+	}
+
 	/**
 	 * Use 'num' as a sample
 	 * @param num
@@ -39,6 +39,12 @@ public class PosStats extends ChrPosStats {
 		init(maxBins);
 	}
 
+	@Override
+	public void merge(ChrPosStats chrPosStats) {
+		super.merge(chrPosStats);
+		if (chrPosStats instanceof PosStats) maxIndex = Math.max(maxIndex, ((PosStats) chrPosStats).maxIndex);
+	}
+
 	/**
 	 * Create random counts (used for debugging)
 	 * @param maxLen
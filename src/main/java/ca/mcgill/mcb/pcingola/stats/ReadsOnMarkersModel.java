@@ -7,6 +7,7 @@ import ca.mcgill.mcb.pcingola.interval.Chromosome;
 import ca.mcgill.mcb.pcingola.interval.Gene;
 import ca.mcgill.mcb.pcingola.interval.Marker;
 import ca.mcgill.mcb.pcingola.interval.Markers;
+import ca.mcgill.mcb.pcingola.interval.tree.IntervalTrack;
 import ca.mcgill.mcb.pcingola.probablility.RandMarker;
 import ca.mcgill.mcb.pcingola.snpEffect.SnpEffectPredictor;
 import ca.mcgill.mcb.pcingola.util.Gpr;
@@ -49,6 +50,9 @@ public class ReadsOnMarkersModel {
 		//---
 		Markers markers = new Markers();
 		markers.add(snpEffectPredictor.getMarkers());
+		for (IntervalTrack track : snpEffectPredictor.getIntervalTracks())
+			for (Marker m : track)
+				markers.add(m);
 		for (Gene gene : snpEffectPredictor.getGenome().getGenes()) {
 			markers.add(gene);
 			markers.add(gene.markers());
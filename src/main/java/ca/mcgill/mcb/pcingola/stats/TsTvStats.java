@@ -3,7 +3,7 @@ package ca.mcgill.mcb.pcingola.stats;
 import java.util.List;
 
 import ca.mcgill.mcb.pcingola.vcf.VcfEntry;
-import ca.mcgill.mcb.pcingola.vcf.VcfGenotype;
+import ca.mcgill.mcb.pcingola.vcf.VcfGenotypeStore;
 
 /**
  * Calculate Ts/Tv rations per sample (transitions vs transversions)
@@ -50,6 +50,24 @@ public class TsTvStats implements SamplingStats<VcfEntry> {
 		return false;
 	}
 
+	/**
+	 * Add Ts and Tv counts from 'tsTvStats' to this object
+	 */
+	public void merge(TsTvStats tsTvStats) {
+		if (sampleNames == null) sampleNames = tsTvStats.sampleNames;
+		if (!tsTvStats.hasData()) return;
+
+		if (countTs == null) {
+			countTs = new long[tsTvStats.countTs.length];
+			countTv = new long[tsTvStats.countTv.length];
+		} else if (countTs.length != tsTvStats.countTs.length) throw new RuntimeException("Cannot merge statistics having different number of samples (" + countTs.length + " vs " + tsTvStats.countTs.length + ")");
+
+		for (int i = 0; i < countTs.length; i++) {
+			countTs[i] += tsTvStats.countTs[i];
+			countTv[i] += tsTvStats.countTv[i];
+		}
+	}
+
 	/**
 	 * Update Ts and Tv counters
 	 */
@@ -62,7 +80,8 @@ public class TsTvStats implements SamplingStats<VcfEntry> {
 		if (!vcfEntry.isVariant() || !vcfEntry.isSnp()) return;
 
 		// Do we need to initialize?
-		int genotypes = vcfEntry.getVcfGenotypes().size();
+		VcfGenotypeStore vcfGenotypes = vcfEntry.getGenotypeStore();
+		int genotypes = vcfGenotypes.size();
 		if (countTs == null) {
 			int size = Math.max(genotypes, 1); // At least must be one
 			countTs = new long[size];
@@ -70,17 +89,14 @@ public class TsTvStats implements SamplingStats<VcfEntry> {
 		}
 
 		if (genotypes > 0) {
-			// Calculate for each sample
-			int sampleNum = 0;
-
 			// For each sample (i.e. 'genotype' field)
-			for (VcfGenotype vcfGenotype : vcfEntry) {
-				if (vcfGenotype.isVariant()) {
+			for (int sampleNum = 0; sampleNum < genotypes; sampleNum++) {
+				if (vcfGenotypes.isVariant(sampleNum)) {
 					// When homozygous is null, accept any. Otherwise, filter accordingly
-					if ((homozygous == null) || (vcfGenotype.isHomozygous() == homozygous)) {
+					if ((homozygous == null) || (vcfGenotypes.isHomozygous(sampleNum) == homozygous)) {
 
 						String alts[] = vcfEntry.getAlts();
-						int gens[] = vcfGenotype.getGenotype();
+						int gens[] = vcfGenotypes.getGenotype(sampleNum);
 
 						// Missing genotype information => assume single 'ALT' change
 						if (gens == null) gens = GENOTYPE_SINGLE_ALT_CHANGE;
@@ -99,8 +115,6 @@ public class TsTvStats implements SamplingStats<VcfEntry> {
 						}
 					}
 				}
-
-				sampleNum++;
 			}
 		} else {
 			// Assume only one sample: REF -> ALTs
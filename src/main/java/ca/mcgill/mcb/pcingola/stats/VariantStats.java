@@ -311,6 +311,31 @@ public class VariantStats implements SamplingStats<Variant> {
 		indelLen.sample(len);
 	}
 
+	/**
+	 * Add statistics from 'variantStats' to this object
+	 */
+	public void merge(VariantStats variantStats) {
+		countSeqChanges += variantStats.countSeqChanges;
+		countVariants += variantStats.countVariants;
+		countNonVariants += variantStats.countNonVariants;
+		countNonEmptyId += variantStats.countNonEmptyId;
+		indelLen.merge(variantStats.indelLen);
+		countByChangeType.merge(variantStats.countByChangeType);
+		baseChangesCount.merge(variantStats.baseChangesCount);
+
+		for (ChrPosStats chrPosStatsOther : variantStats.chrPosStatsbyName.values()) {
+			ChrPosStats chrPosStats = chrPosStatsbyName.get(chrPosStatsOther.name);
+
+			// No stats? => Create a new one
+			if (chrPosStats == null) {
+				chrPosStats = new ChrPosStats(chrPosStatsOther.name, chrPosStatsOther.length);
+				chrPosStatsbyName.put(chrPosStatsOther.name, chrPosStats);
+			}
+
+			chrPosStats.merge(chrPosStatsOther);
+		}
+	}
+
 	/**
 	 * Use this sample to perform statistics
 	 */
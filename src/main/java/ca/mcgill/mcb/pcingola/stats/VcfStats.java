@@ -46,6 +46,16 @@ public class VcfStats implements SamplingStats<VcfEntry> {
 		return tsTvStats.hasData() || alleleFrequencyStats.hasData();
 	}
 
+	/**
+	 * Add statistics from 'vcfStats' to this object
+	 */
+	public void merge(VcfStats vcfStats) {
+		tsTvStats.merge(vcfStats.tsTvStats);
+		tsTvStatsKnown.merge(vcfStats.tsTvStatsKnown);
+		alleleFrequencyStats.merge(vcfStats.alleleFrequencyStats);
+		alleleFrequencyStatsKnown.merge(vcfStats.alleleFrequencyStatsKnown);
+	}
+
 	@Override
 	public void sample(VcfEntry vcfEntry) {
 		// Does it have an ID? => it is a 'known' variant.
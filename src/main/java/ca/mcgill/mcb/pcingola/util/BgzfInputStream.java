@@ -0,0 +1,281 @@
+package ca.mcgill.mcb.pcingola.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a BGZF (block gzip) compressed stream, decompressing blocks in parallel.
+ *
+ * BGZF files (e.g. created by 'bgzip') are a series of gzip members of at
+ * most 64KB each, having the compressed block size in a gzip 'extra' field.
+ * This allows to read compressed blocks without inflating them, so blocks
+ * are read ahead (in the calling thread) and inflated by a small thread pool.
+ * Blocks are returned in the same order as they appear in the file.
+ *
+ * Reference: SAM/BAM format specification, section 4.1 'The BGZF compression format'
+ *
+ * @author pcingola
+ */
+public class BgzfInputStream extends InputStream {
+
+	public static final int DEFAULT_NUM_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+	public static final int BLOCKS_PER_THREAD = 4; // Number of blocks read ahead (per thread)
+
+	public static final int GZIP_ID1 = 0x1f;
+	public static final int GZIP_ID2 = 0x8b;
+	public static final int GZIP_CM_DEFLATE = 8;
+	public static final int GZIP_FLG_EXTRA = 4;
+	public static final int BGZF_SI1 = 'B';
+	public static final int BGZF_SI2 = 'C';
+	public static final int BGZF_HEADER_SIZE = 18; // Block header size (fixed part, including 'BC' extra field)
+	public static final int BGZF_FOOTER_SIZE = 8; // CRC32 + ISIZE
+	public static final int BGZF_MAX_BLOCK_SIZE = 64 * 1024;
+
+	InputStream in;
+	int numThreads;
+	ExecutorService executor;
+	LinkedList<Future<byte[]>> blocks; // Blocks being inflated (in file order)
+	boolean eof; // No more compressed blocks to read
+	byte block[]; // Current (inflated) block
+	int pos; // Position within current block
+
+	/**
+	 * Is this a BGZF file?
+	 */
+	public static boolean isBgzf(String fileName) {
+		try {
+			InputStream is = new FileInputStream(fileName);
+			try {
+				byte header[] = new byte[BGZF_HEADER_SIZE];
+				int len = readFully(is, header, 0, header.length);
+				return (len == header.length) && isBgzfHeader(header);
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Size of a compressed block once inflated
+	 */
+	public static int inflatedSize(byte cblock[]) {
+		return uint32(cblock, cblock.length - 4);
+	}
+
+	/**
+	 * Does this buffer start with a BGZF block header?
+	 */
+	static boolean isBgzfHeader(byte header[]) {
+		return ((header[0] & 0xff) == GZIP_ID1) //
+				&& ((header[1] & 0xff) == GZIP_ID2) //
+				&& ((header[2] & 0xff) == GZIP_CM_DEFLATE) //
+				&& ((header[3] & GZIP_FLG_EXTRA) != 0) //
+				&& (uint16(header, 10) >= 6) // XLEN
+				&& (header[12] == BGZF_SI1) //
+				&& (header[13] == BGZF_SI2) //
+				&& (uint16(header, 14) == 2) // SLEN
+		;
+	}
+
+	/**
+	 * Read 'len' bytes (unless end of stream is found)
+	 * @return Number of bytes read
+	 */
+	static int readFully(InputStream is, byte buf[], int offset, int len) throws IOException {
+		int total = 0;
+		while (total < len) {
+			int n = is.read(buf, offset + total, len - total);
+			if (n < 0) break;
+			total += n;
+		}
+		return total;
+	}
+
+	static int uint16(byte buf[], int offset) {
+		return (buf[offset] & 0xff) | ((buf[offset + 1] & 0xff) << 8);
+	}
+
+	static int uint32(byte buf[], int offset) {
+		return uint16(buf, offset) | (uint16(buf, offset + 2) << 16);
+	}
+
+	public BgzfInputStream(InputStream in) {
+		this(in, DEFAULT_NUM_THREADS);
+	}
+
+	public BgzfInputStream(InputStream in, int numThreads) {
+		this.in = new BufferedInputStream(in, BGZF_MAX_BLOCK_SIZE);
+		this.numThreads = Math.max(1, numThreads);
+		blocks = new LinkedList<Future<byte[]>>();
+		executor = Executors.newFixedThreadPool(this.numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "BgzfInputStream");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public int available() throws IOException {
+		if ((block != null) && (pos < block.length)) return block.length - pos;
+		return eof && blocks.isEmpty() ? 0 : 1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		blocks.clear();
+		block = null;
+		eof = true;
+		in.close();
+	}
+
+	/**
+	 * Inflate a compressed block
+	 */
+	public static byte[] inflate(byte cblock[]) throws IOException {
+		int cdataStart = BGZF_HEADER_SIZE + uint16(cblock, 10) - 6;
+		int cdataLen = cblock.length - cdataStart - BGZF_FOOTER_SIZE;
+		int crcExpected = uint32(cblock, cblock.length - 8);
+		int size = uint32(cblock, cblock.length - 4);
+
+		byte data[] = new byte[size];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(cblock, cdataStart, cdataLen);
+			int len = 0;
+			while (len < size) {
+				int n = inflater.inflate(data, len, size - len);
+				if ((n == 0) && (inflater.finished() || inflater.needsInput())) break;
+				len += n;
+			}
+			if (len != size) throw new IOException("Corrupted BGZF block: Expected " + size + " bytes, got " + len);
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted BGZF block", e);
+		} finally {
+			inflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, size);
+		if ((int) crc.getValue() != crcExpected) throw new IOException("Corrupted BGZF block: CRC mismatch");
+
+		return data;
+	}
+
+	/**
+	 * Load next (non-empty) block
+	 * @return false on end of stream
+	 */
+	boolean nextBlock() throws IOException {
+		while (true) {
+			readAhead();
+			if (blocks.isEmpty()) {
+				executor.shutdown(); // No more blocks to inflate
+				block = null;
+				return false;
+			}
+
+			try {
+				block = blocks.removeFirst().get();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) throw (IOException) cause;
+				throw new IOException(cause);
+			}
+
+			pos = 0;
+			if (block.length > 0) return true; // Skip empty blocks (e.g. EOF marker)
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if ((block == null) || (pos >= block.length)) {
+			if (!nextBlock()) return -1;
+		}
+		return block[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte buf[], int offset, int len) throws IOException {
+		if (len == 0) return 0;
+		if ((block == null) || (pos >= block.length)) {
+			if (!nextBlock()) return -1;
+		}
+
+		int n = Math.min(len, block.length - pos);
+		System.arraycopy(block, pos, buf, offset, n);
+		pos += n;
+		return n;
+	}
+
+	/**
+	 * Read compressed blocks and send them to the thread pool
+	 */
+	void readAhead() throws IOException {
+		int maxBlocks = numThreads * BLOCKS_PER_THREAD;
+		while (!eof && (blocks.size() < maxBlocks)) {
+			final byte cblock[] = readBlock();
+			if (cblock == null) {
+				eof = true;
+				break;
+			}
+
+			blocks.add(executor.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					return inflate(cblock);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Read a compressed block
+	 * @return Compressed block or null on end of stream
+	 */
+	byte[] readBlock() throws IOException {
+		return readBlock(in);
+	}
+
+	/**
+	 * Read a compressed block from an input stream (e.g. positioned at a block start)
+	 * @return Compressed block or null on end of stream
+	 */
+	public static byte[] readBlock(InputStream in) throws IOException {
+		byte header[] = new byte[BGZF_HEADER_SIZE];
+		int len = readFully(in, header, 0, header.length);
+		if (len == 0) return null;
+		if ((len < header.length) || !isBgzfHeader(header)) throw new IOException("Invalid BGZF block header");
+
+		// Find 'BSIZE' (total block size - 1)
+		int xlen = uint16(header, 10);
+		int bsize = uint16(header, 16) + 1;
+		if (bsize < BGZF_HEADER_SIZE + xlen - 6 + BGZF_FOOTER_SIZE) throw new IOException("Invalid BGZF block size " + bsize);
+
+		byte cblock[] = new byte[bsize];
+		System.arraycopy(header, 0, cblock, 0, header.length);
+		if (readFully(in, cblock, header.length, bsize - header.length) != bsize - header.length) throw new EOFException("Truncated BGZF block");
+		return cblock;
+	}
+}
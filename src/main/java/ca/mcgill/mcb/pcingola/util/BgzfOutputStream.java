@@ -0,0 +1,210 @@
+package ca.mcgill.mcb.pcingola.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a BGZF (block gzip) compressed stream, compressing blocks in parallel.
+ *
+ * Output is compatible with 'bgzip' (it can be indexed using 'tabix').
+ * Data is split into blocks, which are compressed by a small thread pool
+ * and written in order. An empty 'EOF marker' block is added by 'finish()'.
+ *
+ * Reference: SAM/BAM format specification, section 4.1 'The BGZF compression format'
+ *
+ * @author pcingola
+ */
+public class BgzfOutputStream extends OutputStream {
+
+	public static final int BLOCK_SIZE = 0xff00; // Uncompressed block size (same as 'bgzip'). Compressed blocks must fit in 64KB
+	public static final int BLOCKS_PER_THREAD = 4; // Number of blocks being compressed (per thread)
+
+	// Empty block, used to mark the end of the file
+	public static final byte EOF_MARKER[] = { 0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 };
+
+	OutputStream out;
+	int numThreads;
+	int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	ExecutorService executor;
+	LinkedList<Future<byte[]>> blocks; // Blocks being compressed (in output order)
+	byte buffer[]; // Data for the next block
+	int len;
+	boolean finished;
+
+	/**
+	 * Compress a block
+	 */
+	static byte[] deflate(byte data[], int len, int compressionLevel) {
+		byte cdata[] = new byte[BgzfInputStream.BGZF_MAX_BLOCK_SIZE];
+		int maxCdataLen = cdata.length - BgzfInputStream.BGZF_HEADER_SIZE - BgzfInputStream.BGZF_FOOTER_SIZE;
+
+		Deflater deflater = new Deflater(compressionLevel, true);
+		int cdataLen;
+		try {
+			deflater.setInput(data, 0, len);
+			deflater.finish();
+			cdataLen = deflater.deflate(cdata, BgzfInputStream.BGZF_HEADER_SIZE, maxCdataLen);
+			if (!deflater.finished()) {
+				// Data does not compress: Store it (no compression)
+				deflater.reset();
+				deflater.setLevel(Deflater.NO_COMPRESSION);
+				deflater.setInput(data, 0, len);
+				deflater.finish();
+				cdataLen = deflater.deflate(cdata, BgzfInputStream.BGZF_HEADER_SIZE, maxCdataLen);
+				if (!deflater.finished()) throw new RuntimeException("Cannot fit BGZF block in " + BgzfInputStream.BGZF_MAX_BLOCK_SIZE + " bytes");
+			}
+		} finally {
+			deflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, len);
+
+		// Header
+		int bsize = BgzfInputStream.BGZF_HEADER_SIZE + cdataLen + BgzfInputStream.BGZF_FOOTER_SIZE;
+		byte cblock[] = new byte[bsize];
+		System.arraycopy(EOF_MARKER, 0, cblock, 0, 16); // Same header as EOF marker, except for BSIZE
+		putUint16(cblock, 16, bsize - 1);
+
+		// Compressed data and footer
+		System.arraycopy(cdata, BgzfInputStream.BGZF_HEADER_SIZE, cblock, BgzfInputStream.BGZF_HEADER_SIZE, cdataLen);
+		putUint32(cblock, bsize - 8, (int) crc.getValue());
+		putUint32(cblock, bsize - 4, len);
+		return cblock;
+	}
+
+	static void putUint16(byte buf[], int offset, int value) {
+		buf[offset] = (byte) (value & 0xff);
+		buf[offset + 1] = (byte) ((value >>> 8) & 0xff);
+	}
+
+	static void putUint32(byte buf[], int offset, int value) {
+		putUint16(buf, offset, value & 0xffff);
+		putUint16(buf, offset + 2, value >>> 16);
+	}
+
+	public BgzfOutputStream(OutputStream out) {
+		this(out, BgzfInputStream.DEFAULT_NUM_THREADS);
+	}
+
+	public BgzfOutputStream(OutputStream out, int numThreads) {
+		this.out = out;
+		this.numThreads = Math.max(1, numThreads);
+		buffer = new byte[BLOCK_SIZE];
+		blocks = new LinkedList<Future<byte[]>>();
+		executor = Executors.newFixedThreadPool(this.numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "BgzfOutputStream");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Finish writing and close the underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+
+	/**
+	 * Send current buffer to be compressed
+	 */
+	void compressBlock() throws IOException {
+		if (len <= 0) return;
+
+		final byte data[] = buffer;
+		final int dataLen = len;
+		final int level = compressionLevel;
+		blocks.add(executor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return deflate(data, dataLen, level);
+			}
+		}));
+
+		buffer = new byte[BLOCK_SIZE];
+		len = 0;
+
+		// Too many blocks pending? Write the oldest one
+		while (blocks.size() > numThreads * BLOCKS_PER_THREAD)
+			writeBlock();
+	}
+
+	/**
+	 * Finish writing (compress all pending data and add an EOF marker block), without
+	 * closing the underlying stream (e.g. when writing to STDOUT)
+	 */
+	public void finish() throws IOException {
+		if (finished) return;
+		flush();
+		out.write(EOF_MARKER);
+		out.flush();
+		executor.shutdown();
+		finished = true;
+	}
+
+	/**
+	 * Compress and write all pending data.
+	 * Note: This creates a (possibly small) block
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (finished) return;
+		compressBlock();
+		while (!blocks.isEmpty())
+			writeBlock();
+		out.flush();
+	}
+
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	@Override
+	public void write(byte buf[], int offset, int length) throws IOException {
+		if (finished) throw new IOException("Stream already finished");
+
+		while (length > 0) {
+			int n = Math.min(length, BLOCK_SIZE - len);
+			System.arraycopy(buf, offset, buffer, len, n);
+			len += n;
+			offset += n;
+			length -= n;
+			if (len >= BLOCK_SIZE) compressBlock();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (finished) throw new IOException("Stream already finished");
+		buffer[len++] = (byte) b;
+		if (len >= BLOCK_SIZE) compressBlock();
+	}
+
+	/**
+	 * Wait for the oldest block to be compressed and write it
+	 */
+	void writeBlock() throws IOException {
+		try {
+			out.write(blocks.removeFirst().get());
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+}
@@ -37,6 +37,13 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 	public static final String VCF_INFO_PRIVATE = "Private";
 
+	public static final String VCF_INFO_AC = "AC";
+	public static final String VCF_INFO_AN = "AN";
+	public static final String VCF_INFO_HET = "HET";
+	public static final String VCF_INFO_HOM = "HOM";
+
+	public static final int MAX_PARSED_FIELDS = 10; // Only the first fields are split, genotypes are parsed on demand
+
 	private static final long serialVersionUID = 4226374412681243433L;
 
 	protected String line; // Line from VCF file
@@ -52,8 +59,11 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	protected String format;
 	protected ArrayList<VcfGenotype> vcfGenotypes = null;
 	protected VariantType changeType;
-	protected String genotypeFields[]; // Raw fields from VCF file
-	protected String genotypeFieldsStr; // Raw fields from VCF file (one string, tab separated)
+	protected String genotypeFieldsSrc; // Raw genotype fields are in this string (usually the VCF line), starting at 'genotypeFieldsStart'
+	protected int genotypeFieldsStart;
+	protected int genotypeOffsets[]; // Start of each genotype field in 'genotypeFieldsSrc' (lazy)
+	protected VcfGenotype genotypesParsed[]; // Genotypes parsed on demand (only used if 'vcfGenotypes' has not been created)
+	protected transient VcfGenotypeStore genotypeStore; // Compact genotypes (lazy, see getGenotypeStore())
 
 	/**
 	 * Check that this value can be added to an INFO field
@@ -82,7 +92,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		this.quality = quality;
 		this.filterPass = filterPass;
 		this.infoStr = infoStr;
-		parseInfo();
+		info = null; // INFO fields are parsed on demand
 		this.format = format;
 	}
 
@@ -111,6 +121,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 		// Add to format
 		format += (format.endsWith(":") ? "" : ":") + formatName;
+		genotypeStore = null;
 	}
 
 	/**
@@ -121,6 +132,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		if (vcfGenotypes == null) vcfGenotypes = new ArrayList<VcfGenotype>();
 		if (format == null) format = "";
 		vcfGenotypes.add(new VcfGenotype(this, format, vcfGenotypeStr));
+		genotypeStore = null;
 	}
 
 	/**
@@ -161,10 +173,29 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		if (!isValidInfoValue(value)) throw new RuntimeException("No white-space, semi-colons, or equals-signs are permitted in INFO field. Name:\"" + name + "\" Value:\"" + value + "\"");
 
 		String addInfoStr = name + (value != null ? "=" + value : "");
-		if (info != null) info.put(name, value); // Add to info hash (if available)
+		if (info != null) info.put(name, value != null ? value : "true"); // Add to info hash (if available)
 		addInfo(addInfoStr, false);
 	}
 
+	/**
+	 * Add genotype summary INFO fields: Allele counts (AC), number of called alleles (AN),
+	 * number of heterozygous (HET) and homozygous ALT (HOM) samples.
+	 * Existing fields having the same names are replaced.
+	 * Nothing is done if there are no samples.
+	 */
+	public void addGenotypeSummary() {
+		if (getNumberOfSamples() == 0) return;
+		VcfGenotypeStore genotypes = getGenotypeStore();
+
+		for (String key : new String[] { VCF_INFO_AC, VCF_INFO_AN, VCF_INFO_HET, VCF_INFO_HOM })
+			if (hasInfo(key)) rmInfo(key);
+
+		addInfo(VCF_INFO_AC, genotypes.getAlleleCountsStr());
+		addInfo(VCF_INFO_AN, Integer.toString(genotypes.getAlleleNumber()));
+		addInfo(VCF_INFO_HET, Integer.toString(genotypes.getCountHet()));
+		addInfo(VCF_INFO_HOM, Integer.toString(genotypes.getCountHomAlt()));
+	}
+
 	/**
 	 * Categorization by allele frequency
 	 * @return
@@ -186,26 +217,12 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 */
 	public Boolean calcHetero() {
 		// No genotyping information? => Use number of ALT field
-		if (genotypeFieldsStr == null) return isMultiallelic();
-
-		Boolean isHetero = null;
-
-		// No genotype fields => Parse fields (we only parse them if there is only one GT field)
-		if (genotypeFields == null) {
-
-			// Are there more than two tabs? (i.e. more than one format field + one genotype field)  
-			int countFields, fromIndex;
-			for (countFields = 0, fromIndex = 0; (fromIndex >= 0) && (countFields < 1); countFields++, fromIndex++)
-				fromIndex = genotypeFieldsStr.indexOf('\t', fromIndex);
+		if (genotypeFieldsSrc == null) return isMultiallelic();
 
-			// OK only one genotype field => Parse it in order to extract homo info.
-			if (countFields == 1) parseGenotypes();
-		}
-
-		// OK only one genotype field => calculate if it is heterozygous
-		if ((genotypeFields != null) && (genotypeFields.length == 1)) isHetero = getVcfGenotype(0).isHeterozygous();
+		// Only one genotype field => Parse it in order to calculate if it is heterozygous
+		if (getNumberOfGenotypeFields() == 1) return getGenotypeStore().isHeterozygous(0);
 
-		return isHetero;
+		return null;
 	}
 
 	/**
@@ -221,18 +238,16 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		StringBuilder nas = new StringBuilder();
 
 		// Add all genotype codes
-		int idx = 0;
-		for (VcfGenotype gen : getVcfGenotypes()) {
-			int score = gen.getGenotypeCode();
+		VcfGenotypeStore genotypes = getGenotypeStore();
+		for (int idx = 0; idx < genotypes.size(); idx++) {
+			int score = genotypes.getGenotypeCode(idx);
 
 			if (score == 0) {
 				; //Nothing to do
-			} else if (score < 0) nas.append((nas.length() > 0 ? "," : "") + idx);
-			else if (score == 1) hets.append((hets.length() > 0 ? "," : "") + idx);
-			else if (score == 2) homs.append((homs.length() > 0 ? "," : "") + idx);
+			} else if (score < 0) nas.append(nas.length() > 0 ? "," : "").append(idx);
+			else if (score == 1) hets.append(hets.length() > 0 ? "," : "").append(idx);
+			else if (score == 2) homs.append(homs.length() > 0 ? "," : "").append(idx);
 			else return false; // Cannot compress
-
-			idx++;
 		}
 
 		// Update INFO fields
@@ -285,19 +300,25 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		// 20     3 .         TC     AT      .   PASS  DP=100
 		if (reference.length() == alt.length()) {
 			// SNPs
-			if (reference.length() == 1) new Variant(chromo, start, reference, alt, id);
+			if (reference.length() == 1) return new Variant(chromo, start, reference, alt, id);
 
 			// MNPs
 			// Sometimes the first bases are the same and we can trim them
 			int startDiff = Integer.MAX_VALUE;
 			for (int i = 0; i < reference.length(); i++)
-				if (reference.charAt(i) != alt.charAt(i)) startDiff = Math.min(startDiff, i);
+				if (reference.charAt(i) != alt.charAt(i)) {
+					startDiff = i;
+					break;
+				}
 
 			// MNPs
 			// Sometimes the last bases are the same and we can trim them
 			int endDiff = 0;
 			for (int i = reference.length() - 1; i >= 0; i--)
-				if (reference.charAt(i) != alt.charAt(i)) endDiff = Math.max(endDiff, i);
+				if (reference.charAt(i) != alt.charAt(i)) {
+					endDiff = i;
+					break;
+				}
 
 			String newRef = reference.substring(startDiff, endDiff + 1);
 			String newAlt = alt.substring(startDiff, endDiff + 1);
@@ -305,7 +326,8 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		}
 
 		//---
-		// Simple Insertions, Deletions or Mixed Variants (substitutions) 
+		// Simple Insertions, Deletions or Mixed Variants (substitutions)
+		// Note: This is linear time (no alignment matrix is calculated)
 		//---
 		VcfRefAltAlign align = new VcfRefAltAlign(alt, reference);
 		align.align();
@@ -341,6 +363,40 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		}
 	}
 
+	/**
+	 * Find the value of an INFO field without parsing all INFO fields.
+	 * Same semantics as 'parseInfo()': Flags have value "true" and if
+	 * a key appears more than once, the last value is reported
+	 *
+	 * @return INFO field's value or null if not found
+	 */
+	String findInfo(String key) {
+		if (infoStr == null) return null;
+
+		String value = null;
+		int len = infoStr.length(), keyLen = key.length();
+		for (int start = 0; start < len;) {
+			int end = infoStr.indexOf(';', start);
+			if (end < 0) end = len;
+
+			// Does this entry match the key?
+			int keyEnd = start + keyLen;
+			if ((keyEnd <= end) && infoStr.startsWith(key, start) && ((keyEnd == end) || (infoStr.charAt(keyEnd) == '='))) {
+				int valueStart = keyEnd + 1;
+				if (valueStart >= end) value = "true"; // A property that is present, but has no value (e.g. "INDEL")
+				else {
+					int valueEnd = infoStr.indexOf('=', valueStart);
+					if ((valueEnd < 0) || (valueEnd > end)) valueEnd = end;
+					value = infoStr.substring(valueStart, valueEnd);
+				}
+			}
+
+			start = end + 1;
+		}
+
+		return value;
+	}
+
 	public String[] getAlts() {
 		return alts;
 	}
@@ -379,6 +435,76 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		return format;
 	}
 
+	/**
+	 * Genotype field 'index' (missing values are converted to empty strings)
+	 */
+	String getGenotypeField(int index) {
+		String gen = getGenotypeFieldRaw(index);
+		return gen.equals(VcfFileIterator.MISSING) ? "" : gen;
+	}
+
+	/**
+	 * Raw genotype field 'index' (as it is in the VCF line)
+	 */
+	String getGenotypeFieldRaw(int index) {
+		int offsets[] = getGenotypeOffsets();
+		return genotypeFieldsSrc.substring(offsets[index], offsets[index + 1] - 1);
+	}
+
+	/**
+	 * Find the start of each genotype field in 'genotypeFieldsSrc'.
+	 * The last element marks the end of the last field (plus one).
+	 *
+	 * Note: Trailing empty fields are ignored (same as String.split)
+	 */
+	int[] getGenotypeOffsets() {
+		if (genotypeOffsets != null) return genotypeOffsets;
+
+		String src = genotypeFieldsSrc;
+		int len = src.length();
+		if (genotypeFieldsStart >= len) return genotypeOffsets = new int[] { genotypeFieldsStart, len + 1 }; // Empty string: One empty field
+
+		// Ignore trailing tabs
+		while ((len > genotypeFieldsStart) && (src.charAt(len - 1) == '\t'))
+			len--;
+		if (len <= genotypeFieldsStart) return genotypeOffsets = new int[] { genotypeFieldsStart }; // Only tabs: No fields at all
+
+		// Count fields
+		int numFields = 1;
+		for (int i = src.indexOf('\t', genotypeFieldsStart); (i >= 0) && (i < len); i = src.indexOf('\t', i + 1))
+			numFields++;
+
+		// Create offsets
+		int offsets[] = new int[numFields + 1];
+		offsets[0] = genotypeFieldsStart;
+		for (int i = src.indexOf('\t', genotypeFieldsStart), j = 1; (i >= 0) && (i < len); i = src.indexOf('\t', i + 1))
+			offsets[j++] = i + 1;
+		offsets[numFields] = len + 1;
+
+		return genotypeOffsets = offsets;
+	}
+
+	/**
+	 * Compact representation of all genotypes in this entry.
+	 * Genotypes are parsed directly from the VCF line (no VcfGenotype objects are
+	 * created), unless they have already been parsed (see getVcfGenotypes())
+	 */
+	public VcfGenotypeStore getGenotypeStore() {
+		if (genotypeStore == null) {
+			if ((vcfGenotypes == null) && (genotypeFieldsSrc != null)) genotypeStore = new VcfGenotypeStore(this);
+			else genotypeStore = new VcfGenotypeStore(this, getVcfGenotypes());
+		}
+		return genotypeStore;
+	}
+
+	/**
+	 * Genotype fields (raw string, tab separated)
+	 */
+	public String getGenotypeStr() {
+		if (genotypeFieldsSrc == null) return null;
+		return genotypeFieldsSrc.substring(genotypeFieldsStart);
+	}
+
 	/**
 	 * Return genotypes parsed as an array of codes
 	 * @return
@@ -390,9 +516,9 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		if (!isCompressedGenotypes()) {
 			byte gt[] = new byte[numSamples];
 
-			int idx = 0;
-			for (VcfGenotype vgt : getVcfGenotypes())
-				gt[idx++] = (byte) vgt.getGenotypeCode();
+			VcfGenotypeStore genotypes = getGenotypeStore();
+			for (int idx = 0; idx < genotypes.size(); idx++)
+				gt[idx] = (byte) genotypes.getGenotypeCode(idx);
 
 			return gt;
 		}
@@ -421,8 +547,8 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * @return
 	 */
 	public String getInfo(String key) {
-		if (info == null) parseInfo();
-		return info.get(key);
+		if (info != null) return info.get(key);
+		return findInfo(key); // Do not parse all INFO fields, just look for this one
 	}
 
 	/**
@@ -432,10 +558,8 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * @return
 	 */
 	public String getInfo(String key, String allele) {
-		if (info == null) parseInfo();
-
 		// Get INFO value
-		String infoStr = info.get(key);
+		String infoStr = getInfo(key);
 		if (infoStr == null) return null;
 
 		// INFO fields having number type 'R' (all alleles) should have one value for reference as well.
@@ -457,8 +581,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * @return
 	 */
 	public boolean getInfoFlag(String key) {
-		if (info == null) parseInfo();
-		return info.containsKey(key);
+		return getInfo(key) != null;
 	}
 
 	/**
@@ -468,8 +591,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * @return
 	 */
 	public double getInfoFloat(String key) {
-		if (info == null) parseInfo();
-		String f = info.get(key);
+		String f = getInfo(key);
 		if (f == null) return Double.NaN;
 		return Gpr.parseDoubleSafe(f);
 	}
@@ -481,8 +603,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * @return
 	 */
 	public long getInfoInt(String key) {
-		if (info == null) parseInfo();
-		String i = info.get(key);
+		String i = getInfo(key);
 		if (i == null) return 0;
 		return Gpr.parseLongSafe(i);
 	}
@@ -517,6 +638,15 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		return lineNum;
 	}
 
+	/**
+	 * Number of genotype fields in this entry (counted without parsing genotypes)
+	 */
+	public int getNumberOfGenotypeFields() {
+		if (vcfGenotypes != null) return vcfGenotypes.size();
+		if (genotypeFieldsSrc == null) return 0;
+		return getGenotypeOffsets().length - 1;
+	}
+
 	/**
 	 * number of samples in this VCF file
 	 * @return
@@ -540,8 +670,16 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		return vcfFileIterator;
 	}
 
+	/**
+	 * Get genotype number 'index'.
+	 * Note: If genotypes have not been parsed yet, only this genotype is parsed
+	 */
 	public VcfGenotype getVcfGenotype(int index) {
-		return getVcfGenotypes().get(index);
+		if ((vcfGenotypes != null) || (genotypeFieldsSrc == null)) return getVcfGenotypes().get(index);
+
+		if (genotypesParsed == null) genotypesParsed = new VcfGenotype[getNumberOfGenotypeFields()];
+		if (genotypesParsed[index] == null) genotypesParsed[index] = new VcfGenotype(this, format, getGenotypeField(index));
+		return genotypesParsed[index];
 	}
 
 	public List<VcfGenotype> getVcfGenotypes() {
@@ -574,12 +712,11 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	}
 
 	public boolean hasGenotypes() {
-		return ((vcfGenotypes != null) && (vcfGenotypes.size() > 0)) || (genotypeFieldsStr != null);
+		return ((vcfGenotypes != null) && (vcfGenotypes.size() > 0)) || (genotypeFieldsSrc != null);
 	}
 
 	public boolean hasInfo(String infoFieldName) {
-		if (info == null) parseInfo();
-		return info.containsKey(infoFieldName);
+		return getInfo(infoFieldName) != null;
 	}
 
 	/**
@@ -660,12 +797,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * @return
 	 */
 	public boolean isSingleton() {
-		int count = 0;
-		for (VcfGenotype gen : this) {
-			if (gen.isVariant()) count++;
-			if (count > 1) return false;
-		}
-		return count == 1;
+		return getGenotypeStore().getCountVariant() == 1;
 	}
 
 	public boolean isSnp() {
@@ -702,18 +834,14 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		else if (hasField("AC")) ac = getInfoInt("AC");
 		else {
 			// No annotations, we have to calculate
-			ac = 0;
-			for (VcfGenotype gen : this) {
-				int genCode = gen.getGenotypeCode();
-				if (genCode > 0) ac += genCode;
-			}
+			ac = getGenotypeStore().getCodeSum();
 		}
 
 		// How many samples (alleles) do we have?
 		int numSamples = 0;
 		List<String> sampleNames = vcfFileIterator.getVcfHeader().getSampleNames();
 		if (sampleNames != null) numSamples = sampleNames.size();
-		else numSamples = getVcfGenotypes().size();
+		else numSamples = getGenotypeStore().size();
 
 		// Always use the Minor Allele Count
 		if ((numSamples > 1) && (ac > numSamples)) ac = 2 * numSamples - ac;
@@ -734,12 +862,9 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		else if (hasField("MAF")) maf = getInfoFloat("MAF");
 		else {
 			// No annotations, we have to calculate
-			int ac = 0, count = 0;
-			for (VcfGenotype gen : this) {
-				count += 2;
-				int genCode = gen.getGenotypeCode();
-				if (genCode > 0) ac += genCode;
-			}
+			VcfGenotypeStore genotypes = getGenotypeStore();
+			long ac = genotypes.getCodeSum();
+			int count = 2 * genotypes.size();
 			maf = ((double) ac) / count;
 		}
 
@@ -751,26 +876,41 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 	/**
 	 * Parse a 'line' from a 'vcfFileIterator'
+	 *
+	 * Only the first fields are split. Genotype fields are not copied, we only
+	 * keep the position where they start in 'line': they are parsed on demand
+	 * and written back verbatim by 'toString()' if they were not parsed.
 	 */
 	public void parse() {
-		// Parse line
-		String fields[] = line.split("\t", 10); // Only pare the fist 9 fields (i.e. do not parse genotypes)
+		// Find fields boundaries (only the first 9 fields are split, i.e. do not split genotypes)
+		int fieldStart[] = new int[MAX_PARSED_FIELDS];
+		int fieldEnd[] = new int[MAX_PARSED_FIELDS];
+		int numFields = 0;
+		for (int pos = 0; numFields < MAX_PARSED_FIELDS;) {
+			int tab = (numFields < MAX_PARSED_FIELDS - 1 ? line.indexOf('\t', pos) : -1); // Last field includes all the remaining line
+			fieldStart[numFields] = pos;
+			fieldEnd[numFields] = (tab >= 0 ? tab : line.length());
+			numFields++;
+
+			if (tab < 0) break;
+			pos = tab + 1;
+		}
 
 		// Is line OK?
-		if (fields.length >= 4) {
+		if (numFields >= 4) {
 			// Chromosome and position. VCF files are one-base, so inOffset should be 1.
-			chromosomeName = fields[0].trim();
+			chromosomeName = line.substring(fieldStart[0], fieldEnd[0]).trim();
 			Chromosome chromo = vcfFileIterator.getChromosome(chromosomeName);
 			parent = chromo;
 			vcfFileIterator.sanityCheckChromo(chromosomeName, chromo); // Sanity check
 
-			start = vcfFileIterator.parsePosition(vcfFileIterator.readField(fields, 1));
+			start = vcfFileIterator.parsePosition(readField(fieldStart, fieldEnd, numFields, 1));
 
 			// ID (e.g. might indicate dbSnp)
-			id = vcfFileIterator.readField(fields, 2);
+			id = readField(fieldStart, fieldEnd, numFields, 2);
 
 			// REF and ALT
-			ref = vcfFileIterator.readField(fields, 3).toUpperCase(); // Reference and change
+			ref = readField(fieldStart, fieldEnd, numFields, 3).toUpperCase(); // Reference and change
 
 			// Start & End coordinates are anchored to the reference genome, thus based on REF field (ALT is not taken into account)
 			end = start;
@@ -778,26 +918,26 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 			// Strand is always positive (defined in VCF spec.)
 			strand = 1;
-			String altsStr = vcfFileIterator.readField(fields, 4).toUpperCase();
+			String altsStr = readField(fieldStart, fieldEnd, numFields, 4).toUpperCase();
 			parseAlts(altsStr);
 
 			// Quality
-			String qStr = vcfFileIterator.readField(fields, 5);
+			String qStr = readField(fieldStart, fieldEnd, numFields, 5);
 			if (!qStr.isEmpty()) quality = Gpr.parseDoubleSafe(qStr);
 			else quality = null;
 
-			filterPass = vcfFileIterator.readField(fields, 6); // Filter parameters
+			filterPass = readField(fieldStart, fieldEnd, numFields, 6); // Filter parameters
 
-			// INFO fields
-			infoStr = vcfFileIterator.readField(fields, 7);
+			// INFO fields (parsed on demand)
+			infoStr = readField(fieldStart, fieldEnd, numFields, 7);
 			info = null;
 
 			// Genotype format
 			format = null;
-			if (fields.length > 8) format = vcfFileIterator.readField(fields, 8); // This field is optional, So it can be null or EMPTY ('.')
+			if (numFields > 8) format = readField(fieldStart, fieldEnd, numFields, 8); // This field is optional, So it can be null or EMPTY ('.')
 
-			// Add genotype fields (lazy parse) 
-			if (fields.length > 9) genotypeFieldsStr = fields[9];
+			// Genotype fields (lazy parse, no copy)
+			if (numFields > 9) setGenotypeFields(line, fieldStart[9]);
 		} else throw new RuntimeException("Impropper VCF entry: Not enough fields (missing tab separators?).\n" + line);
 	}
 
@@ -915,23 +1055,27 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		if (isCompressedGenotypes()) {
 			uncompressGenotypes();
 		} else {
-			vcfGenotypes = new ArrayList<VcfGenotype>();
-
 			// No genotype string? => Nothing to do
-			if (genotypeFieldsStr == null) return;
-
-			// Split genotypes and parse them
-			genotypeFields = genotypeFieldsStr.split("\t");
-			for (int i = 0; i < genotypeFields.length; i++) {
-				String gen = genotypeFields[i];
-				if (gen.equals(VcfFileIterator.MISSING)) gen = "";
-				addGenotype(gen);
+			if (genotypeFieldsSrc == null) {
+				vcfGenotypes = new ArrayList<VcfGenotype>();
+				return;
+			}
+
+			// Parse genotypes (re-use the ones already parsed on demand)
+			// Note: Number of fields must be calculated before 'vcfGenotypes' is created (see getNumberOfGenotypeFields())
+			int numGenotypes = getNumberOfGenotypeFields();
+			if (format == null) format = "";
+			vcfGenotypes = new ArrayList<VcfGenotype>(numGenotypes);
+			for (int i = 0; i < numGenotypes; i++) {
+				if ((genotypesParsed != null) && (genotypesParsed[i] != null)) vcfGenotypes.add(genotypesParsed[i]);
+				else vcfGenotypes.add(new VcfGenotype(this, format, getGenotypeField(i)));
 			}
+			genotypesParsed = null;
 		}
 	}
 
 	/**
-	 * Parse INFO fields
+	 * Parse all INFO fields
 	 */
 	void parseInfo() {
 		// Parse info entries
@@ -1001,6 +1145,17 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 	}
 
+	/**
+	 * Read a field from 'line' (missing values are converted to empty strings)
+	 */
+	String readField(int fieldStart[], int fieldEnd[], int numFields, int fieldNum) {
+		if (fieldNum >= numFields) return "";
+
+		int start = fieldStart[fieldNum], end = fieldEnd[fieldNum];
+		if ((end - start == 1) && (line.charAt(start) == '.')) return ""; // Missing value
+		return line.substring(start, end);
+	}
+
 	/**
 	 * Parse INFO fields
 	 */
@@ -1028,6 +1183,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 		if (deleted) {
 			infoStr = infoSb.toString();
+			info = null; // Invalidate cache
 		}
 		return deleted;
 	}
@@ -1072,10 +1228,23 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 	public void setFormat(String format) {
 		this.format = format;
+		genotypeStore = null;
+	}
+
+	/**
+	 * Set raw genotype fields: they start at position 'start' in 'src'
+	 */
+	void setGenotypeFields(String src, int start) {
+		genotypeFieldsSrc = src;
+		genotypeFieldsStart = start;
+		genotypeOffsets = null;
+		genotypesParsed = null;
+		genotypeStore = null;
 	}
 
 	public void setGenotypeStr(String genotypeFieldsStr) {
-		this.genotypeFieldsStr = genotypeFieldsStr;
+		if (genotypeFieldsStr != null) setGenotypeFields(genotypeFieldsStr, 0);
+		else setGenotypeFields(null, 0);
 	}
 
 	public void setLineNum(int lineNum) {
@@ -1097,8 +1266,11 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 			if ((vcfGenotypes != null) && !vcfGenotypes.isEmpty()) {
 				for (VcfGenotype vg : vcfGenotypes)
 					sb.append(vg + "\t");
-			} else if (genotypeFieldsStr != null) { // If vcfGenotypes have not been parsed, use raw fields
-				sb.append(genotypeFieldsStr);
+			} else if (genotypesParsed != null) { // Only some genotypes were parsed (they might have changed)
+				for (int i = 0; i < genotypesParsed.length; i++)
+					sb.append((genotypesParsed[i] != null ? genotypesParsed[i].toString() : getGenotypeFieldRaw(i)) + "\t");
+			} else if (genotypeFieldsSrc != null) { // If vcfGenotypes have not been parsed, use raw fields (no copy)
+				sb.append(genotypeFieldsSrc, genotypeFieldsStart, genotypeFieldsSrc.length());
 				deleteLastTab = false;
 			}
 		}
@@ -2,6 +2,7 @@ package ca.mcgill.mcb.pcingola.vcf;
 
 import java.util.HashMap;
 
+import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
 import ca.mcgill.mcb.pcingola.util.Gpr;
 
 /**
@@ -25,7 +26,7 @@ public class VcfGenotype {
 
 	public VcfGenotype(VcfEntry vcfEntry, String format, String values) {
 		this.vcfEntry = vcfEntry;
-		this.values = values;
+		this.values = (values.equals(VcfFileIterator.MISSING) ? "" : values); // A missing genotype field is the same as an empty one (see VcfEntry.getGenotypeField())
 	}
 
 	/**
@@ -0,0 +1,488 @@
+package ca.mcgill.mcb.pcingola.vcf;
+
+import java.util.HashMap;
+import java.util.List;
+
+import ca.mcgill.mcb.pcingola.collections.OpenBitSet;
+import ca.mcgill.mcb.pcingola.fileIterator.VcfFileIterator;
+import ca.mcgill.mcb.pcingola.genotypes.GenotypeVector;
+import ca.mcgill.mcb.pcingola.util.Gpr;
+
+/**
+ * Compact (columnar) representation of all genotypes in a VCF entry.
+ *
+ * The 'GT' sub-field is parsed directly from the VCF line, without creating
+ * one VcfGenotype object (and its hash) per sample. For each sample we only
+ * keep:
+ * 		- Genotype code in 2 bits (see VcfGenotype.getGenotypeCode())
+ * 		- 'variant', 'homozygous' and 'phased' flags (one bit each)
+ * 		- Dosage ('DS' sub-field), only if it is present in the FORMAT field
+ *
+ * Individual alleles are not stored, they are parsed again when requested
+ * (see getGenotype(sampleNum)). All values are the same as the ones
+ * calculated by the corresponding VcfGenotype methods.
+ *
+ * Allele counts (AC, AN) and genotype counts (het / hom) are calculated in
+ * the same pass, so summaries (e.g. VcfEntry.mac(), maf(), isSingleton())
+ * do not need to iterate over samples again.
+ *
+ * Note: If genotypes were already parsed into VcfGenotype objects (e.g.
+ * genotypes added or uncompressed), values are taken from those objects.
+ *
+ * @author pcingola
+ */
+public class VcfGenotypeStore {
+
+	public static final int CODE_MISSING = 3; // Code used to store missing genotypes in 2 bits
+
+	VcfEntry vcfEntry;
+	int size; // Number of samples
+	GenotypeVector codes; // Genotype codes (missing genotypes are stored as CODE_MISSING)
+	HashMap<Integer, Integer> codesLarge; // Genotype codes that do not fit in 2 bits (e.g. ploidy greater than 2). Usually null
+	OpenBitSet variant, homozygous, phased;
+	float dosage[]; // Dosage values ('DS' sub-field). Null if there is no such sub-field
+
+	// Summary (calculated while parsing)
+	int alleleCounts[]; // Number of times each allele is called (index 0 is REF)
+	int alleleNumber; // Total number of called (i.e. non-missing) alleles
+	int countHet, countHomAlt, countHomRef; // Number of samples: heterozygous, homozygous ALT and homozygous REF (only non-missing genotypes)
+	int countVariant; // Number of samples having any non-reference allele
+	int countVariantNoGt; // Number of variant samples without 'GT' information
+	long codeSum; // Sum of all positive genotype codes
+
+	// Parsing from raw fields
+	String src; // Raw genotype fields (usually the VCF line)
+	int offsets[]; // Start of each genotype field in 'src' (see VcfEntry.getGenotypeOffsets())
+	int gtIdx, dsIdx; // Index of 'GT' and 'DS' sub-fields in FORMAT (negative if not found)
+	int numAlts;
+	int gt[]; // Alleles of the last parsed 'GT' sub-field
+	int gtLen; // Number of alleles in the last parsed 'GT' sub-field (negative if there was no 'GT')
+	boolean gtPhased;
+
+	// Parsing from objects
+	List<VcfGenotype> vcfGenotypes;
+
+	/**
+	 * Parse genotypes from raw fields in a VCF entry
+	 */
+	VcfGenotypeStore(VcfEntry vcfEntry) {
+		this.vcfEntry = vcfEntry;
+		src = vcfEntry.genotypeFieldsSrc;
+		offsets = vcfEntry.getGenotypeOffsets();
+		numAlts = (vcfEntry.getAlts() != null ? vcfEntry.getAlts().length : 0);
+		gt = new int[2];
+
+		// Find sub-fields
+		gtIdx = dsIdx = -1;
+		String format = vcfEntry.getFormat();
+		if (format != null) {
+			String fieldNames[] = format.split(":");
+			for (int i = 0; i < fieldNames.length; i++) {
+				if (fieldNames[i].equals("GT")) gtIdx = i;
+				else if (fieldNames[i].equals("DS")) dsIdx = i;
+			}
+		}
+
+		init(offsets.length - 1, numAlts);
+		if (dsIdx >= 0) dosage = new float[size];
+
+		boolean biAllelic = vcfEntry.isBiAllelic();
+		for (int i = 0; i < size; i++) {
+			int start = offsets[i];
+			int end = offsets[i + 1] - 1;
+
+			// Missing or empty genotype field
+			if ((start >= end) || isMissing(start, end)) {
+				set(i, -1, false, biAllelic, false);
+				if (dosage != null) dosage[i] = Float.NaN;
+				continue;
+			}
+
+			// Parse 'GT' sub-field
+			int gtStart = findSubField(start, end, gtIdx);
+			if (gtStart < 0) {
+				// No genotype information
+				boolean isVariant = vcfEntry.isVariant();
+				set(i, -1, isVariant, biAllelic, false);
+				if (isVariant) countVariantNoGt++;
+			} else {
+				parseGt(gtStart, subFieldEnd(gtStart, end));
+				set(i, genotypeCode(), isVariantGt(), isHomozygousGt(), gtPhased);
+				count(gt, gtLen);
+			}
+
+			// Parse 'DS' sub-field
+			if (dosage != null) {
+				int dsStart = findSubField(start, end, dsIdx);
+				int dsEnd = (dsStart >= 0 ? subFieldEnd(dsStart, end) : -1);
+				if ((dsStart < 0) || (dsStart >= dsEnd) || isMissing(dsStart, dsEnd)) dosage[i] = Float.NaN;
+				else dosage[i] = (float) Gpr.parseDoubleSafe(src.substring(dsStart, dsEnd));
+			}
+		}
+	}
+
+	/**
+	 * Use genotypes already parsed
+	 */
+	VcfGenotypeStore(VcfEntry vcfEntry, List<VcfGenotype> vcfGenotypes) {
+		this.vcfEntry = vcfEntry;
+		this.vcfGenotypes = vcfGenotypes;
+		init(vcfGenotypes.size(), (vcfEntry.getAlts() != null ? vcfEntry.getAlts().length : 0));
+
+		String format = vcfEntry.getFormat();
+		boolean hasDs = (format != null) && (format.equals("DS") || format.startsWith("DS:") || format.endsWith(":DS") || (format.indexOf(":DS:") >= 0));
+		if (hasDs) dosage = new float[size];
+
+		int i = 0;
+		for (VcfGenotype vg : vcfGenotypes) {
+			set(i, vg.getGenotypeCode(), vg.isVariant(), vg.isHomozygous(), vg.isPhased());
+			int alleles[] = vg.getGenotype();
+			if (alleles != null) count(alleles, alleles.length);
+			else if (vg.isVariant()) countVariantNoGt++;
+
+			if (dosage != null) {
+				String ds = vg.get("DS");
+				dosage[i] = ((ds == null) || ds.isEmpty() || ds.equals(VcfFileIterator.MISSING) ? Float.NaN : (float) Gpr.parseDoubleSafe(ds));
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Update allele and genotype counters
+	 */
+	void count(int alleles[], int len) {
+		boolean missing = false;
+		for (int i = 0; i < len; i++) {
+			int a = alleles[i];
+			if (a >= 0) {
+				alleleCounts[a]++;
+				alleleNumber++;
+			} else missing = true;
+		}
+
+		// Genotype counts (only non-missing genotypes)
+		if (missing || (len <= 0)) return;
+
+		boolean hom = true;
+		for (int i = 1; i < len; i++)
+			hom &= (alleles[i] == alleles[0]);
+
+		if (!hom) countHet++;
+		else if (alleles[0] > 0) countHomAlt++;
+		else countHomRef++;
+	}
+
+	/**
+	 * Find the start of sub-field number 'idx' in genotype field [start, end[
+	 * @return Start position or -1 if the sub-field does not exist
+	 */
+	int findSubField(int start, int end, int idx) {
+		if (idx < 0) return -1;
+
+		int pos = start;
+		for (int i = 0; i < idx; i++) {
+			pos = src.indexOf(':', pos);
+			if ((pos < 0) || (pos >= end)) return -1;
+			pos++;
+		}
+
+		// Trailing empty sub-fields are ignored (same as String.split)
+		for (int i = pos; i < end; i++)
+			if (src.charAt(i) != ':') return pos;
+
+		return -1;
+	}
+
+	/**
+	 * Number of ALT alleles in last parsed 'GT' (same as VcfGenotype.getGenotypeCode())
+	 */
+	int genotypeCode() {
+		int code = 0;
+		for (int i = 0; i < gtLen; i++) {
+			if (gt[i] < 0) return -1;
+			code += (gt[i] > 0 ? 1 : 0);
+		}
+		return code;
+	}
+
+	/**
+	 * Number of times allele number 'allele' is called (0 is REF, 1 is first ALT, etc.)
+	 */
+	public int getAlleleCount(int allele) {
+		return alleleCounts[allele];
+	}
+
+	/**
+	 * Allele counts for each ALT allele, as an INFO field value (i.e. 'AC')
+	 */
+	public String getAlleleCountsStr() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 1; i < alleleCounts.length; i++)
+			sb.append(i > 1 ? "," : "").append(alleleCounts[i]);
+		return sb.toString();
+	}
+
+	/**
+	 * Total number of called (non-missing) alleles (i.e. 'AN')
+	 */
+	public int getAlleleNumber() {
+		return alleleNumber;
+	}
+
+	/**
+	 * Sum of all positive genotype codes (i.e. number of non-reference
+	 * alleles in all non-missing genotypes, see VcfGenotype.getGenotypeCode())
+	 */
+	public long getCodeSum() {
+		return codeSum;
+	}
+
+	/**
+	 * Number of samples with non-missing, heterozygous genotypes
+	 */
+	public int getCountHet() {
+		return countHet;
+	}
+
+	/**
+	 * Number of samples with non-missing, homozygous ALT genotypes
+	 */
+	public int getCountHomAlt() {
+		return countHomAlt;
+	}
+
+	/**
+	 * Number of samples with non-missing, homozygous REF genotypes
+	 */
+	public int getCountHomRef() {
+		return countHomRef;
+	}
+
+	/**
+	 * Number of 'variant' samples (see VcfGenotype.isVariant())
+	 */
+	public int getCountVariant() {
+		return countVariant;
+	}
+
+	/**
+	 * Number of 'variant' samples not having 'GT' information
+	 */
+	public int getCountVariantNoGt() {
+		return countVariantNoGt;
+	}
+
+	/**
+	 * Dosage for a sample: Use 'DS' sub-field if available, otherwise
+	 * the genotype code (i.e. number of non-reference alleles)
+	 *
+	 * @return Dosage or NaN if missing
+	 */
+	public double getDosage(int sampleNum) {
+		if (dosage != null) return dosage[sampleNum];
+		int code = getGenotypeCode(sampleNum);
+		return code >= 0 ? code : Double.NaN;
+	}
+
+	/**
+	 * Alleles for a sample (same as VcfGenotype.getGenotype())
+	 * Note: Alleles are parsed each time this method is invoked
+	 *
+	 * @return An array of alleles ('-1' means missing) or null if there is no genotype information
+	 */
+	public int[] getGenotype(int sampleNum) {
+		if (vcfGenotypes != null) return vcfGenotypes.get(sampleNum).getGenotype();
+
+		int start = offsets[sampleNum];
+		int end = offsets[sampleNum + 1] - 1;
+		if ((start >= end) || isMissing(start, end)) return null;
+
+		int gtStart = findSubField(start, end, gtIdx);
+		if (gtStart < 0) return null;
+
+		parseGt(gtStart, subFieldEnd(gtStart, end));
+		int alleles[] = new int[gtLen];
+		System.arraycopy(gt, 0, alleles, 0, gtLen);
+		return alleles;
+	}
+
+	/**
+	 * Genotype code (same as VcfGenotype.getGenotypeCode())
+	 * 		-1: missing
+	 * 		 0: Homozygous reference (0/0)
+	 * 		 1: Heterozygous (0/1, 1/0)
+	 * 		 2: Homozygous ALT (1/1)
+	 */
+	public int getGenotypeCode(int sampleNum) {
+		int code = codes.get(sampleNum);
+		if (code != CODE_MISSING) return code;
+		if (codesLarge != null) {
+			Integer codeLarge = codesLarge.get(sampleNum);
+			if (codeLarge != null) return codeLarge;
+		}
+		return -1;
+	}
+
+	public boolean hasDosage() {
+		return dosage != null;
+	}
+
+	void init(int size, int numAlts) {
+		this.size = size;
+		alleleCounts = new int[numAlts + 1];
+		codes = new GenotypeVector(size);
+		variant = new OpenBitSet(size);
+		homozygous = new OpenBitSet(size);
+		phased = new OpenBitSet(size);
+	}
+
+	public boolean isHeterozygous(int sampleNum) {
+		return !homozygous.fastGet(sampleNum);
+	}
+
+	public boolean isHomozygous(int sampleNum) {
+		return homozygous.fastGet(sampleNum);
+	}
+
+	/**
+	 * Are last parsed 'GT' alleles all the same?
+	 */
+	boolean isHomozygousGt() {
+		for (int i = 1; i < gtLen; i++)
+			if (gt[i] != gt[i - 1]) return false;
+		return true;
+	}
+
+	/**
+	 * Is the value in [start, end[ a missing value?
+	 */
+	boolean isMissing(int start, int end) {
+		return ((end - start) == 1) && (src.charAt(start) == '.');
+	}
+
+	public boolean isMissing(int sampleNum) {
+		return getGenotypeCode(sampleNum) < 0;
+	}
+
+	public boolean isPhased(int sampleNum) {
+		return phased.fastGet(sampleNum);
+	}
+
+	public boolean isVariant(int sampleNum) {
+		return variant.fastGet(sampleNum);
+	}
+
+	/**
+	 * Is any allele in last parsed 'GT' non-reference?
+	 */
+	boolean isVariantGt() {
+		for (int i = 0; i < gtLen; i++)
+			if (gt[i] > 0) return true;
+		return false;
+	}
+
+	/**
+	 * Parse an allele number in [start, end[
+	 */
+	int parseAllele(int start, int end, int gtStart, int gtEnd) {
+		if ((start >= end) || isMissing(start, end)) return -1; // Missing value
+
+		int num = 0;
+		for (int i = start; i < end; i++) {
+			char c = src.charAt(i);
+			if ((c < '0') || (c > '9') || (i - start > 8)) {
+				num = Gpr.parseIntSafe(src.substring(start, end)); // Not a simple number
+				break;
+			}
+			num = num * 10 + (c - '0');
+		}
+
+		// Sanity check
+		if ((num - 1) >= numAlts) {
+			boolean plural = numAlts > 1;
+			throw new RuntimeException("Error: Bad genotype field '" + src.substring(gtStart, gtEnd) + "'. Genotype says '" + num + "' but there " + (plural ? "are" : "is") + " only '" + numAlts + "' allele" + (plural ? "s" : "") + " ('" + vcfEntry.getAltsStr() + "').");
+		}
+
+		return num;
+	}
+
+	/**
+	 * Parse 'GT' sub-field in [start, end[ (same as VcfGenotype.parseGt)
+	 * Alleles are stored in 'gt[0 .. gtLen - 1]'
+	 */
+	void parseGt(int start, int end) {
+		gtPhased = false;
+		for (int i = start; i < end; i++)
+			if (src.charAt(i) == '|') {
+				gtPhased = true;
+				break;
+			}
+
+		gtLen = 0;
+		if (start >= end) {
+			gt[gtLen++] = -1; // Empty genotype: One missing value
+			return;
+		}
+
+		char sep = gtPhased ? '|' : '/';
+		int len = 0;
+		for (int tokenStart = start; tokenStart <= end;) {
+			int tokenEnd = src.indexOf(sep, tokenStart);
+			if ((tokenEnd < 0) || (tokenEnd > end)) tokenEnd = end;
+
+			if (gtLen >= gt.length) {
+				int newGt[] = new int[2 * gt.length];
+				System.arraycopy(gt, 0, newGt, 0, gtLen);
+				gt = newGt;
+			}
+			gt[gtLen++] = parseAllele(tokenStart, tokenEnd, start, end);
+			if (tokenEnd > tokenStart) len = gtLen; // Trailing empty tokens are ignored (same as String.split)
+
+			tokenStart = tokenEnd + 1;
+		}
+		gtLen = len;
+	}
+
+	void set(int sampleNum, int code, boolean isVariant, boolean isHomozygous, boolean isPhased) {
+		if (code < 0) codes.set(sampleNum, CODE_MISSING);
+		else if (code < CODE_MISSING) codes.set(sampleNum, code);
+		else {
+			// Code does not fit in 2 bits (e.g. ploidy greater than 2)
+			codes.set(sampleNum, CODE_MISSING);
+			if (codesLarge == null) codesLarge = new HashMap<Integer, Integer>();
+			codesLarge.put(sampleNum, code);
+		}
+
+		if (code > 0) codeSum += code;
+		if (isVariant) {
+			variant.fastSet(sampleNum);
+			countVariant++;
+		}
+		if (isHomozygous) homozygous.fastSet(sampleNum);
+		if (isPhased) phased.fastSet(sampleNum);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * End of sub-field starting at 'start' (genotype field ends at 'end')
+	 */
+	int subFieldEnd(int start, int end) {
+		int pos = src.indexOf(':', start);
+		return ((pos < 0) || (pos > end)) ? end : pos;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			int code = getGenotypeCode(i);
+			sb.append(i > 0 ? "," : "");
+			sb.append(code >= 0 ? Integer.toString(code) : ".");
+		}
+		return sb.toString();
+	}
+}
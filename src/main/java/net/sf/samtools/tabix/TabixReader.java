@@ -282,6 +282,13 @@ public class TabixReader implements Iterable<String> {
 		}
 	}
 
+	/**
+	 * Sequence (chromosome) names, in the same order as in the index
+	 */
+	public String[] getSequenceNames() {
+		return mSeq;
+	}
+
 	private TIntv getIntv(final String s) {
 		TIntv intv = new TIntv();
 		int col = 0, end = 0, beg = 0;